@@ -0,0 +1,15 @@
+-- 角色继承：sys_role 增加上级角色，sys_role_closure 保存继承关系的传递闭包
+-- 闭包由程序在角色新增、修改、删除后根据 sys_role.pid 重新计算（见 RoleClosureService），不需要手工维护
+
+alter table sys_role
+    add column pid bigint null default 0 comment '上级角色ID，为空或 0 表示没有上级' after id;
+
+create table sys_role_closure
+(
+    id            bigint not null comment '主键' primary key,
+    ancestor_id   bigint not null comment '上级角色ID',
+    descendant_id bigint not null comment '下级角色ID',
+    depth         int    not null comment '层级距离，角色自己为 0，直接上级为 1',
+    unique key uk_ancestor_descendant (ancestor_id, descendant_id),
+    key idx_descendant (descendant_id)
+) comment '角色继承关系闭包';
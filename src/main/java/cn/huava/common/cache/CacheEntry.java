@@ -0,0 +1,82 @@
+package cn.huava.common.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 缓存在 Redis 和本地保存的值，附带了提前刷新（XFetch）需要的加载耗时和过期时间<br>
+ *
+ * <pre>
+ * 1. 过期时间在写入时确定，Redis 的 TTL 也按这个时间设置（见 RedisConfig 中的 RandomOffsetTtlFunction）。
+ * 2. 越接近过期、加载越慢，读取时越可能触发提前刷新，详见 {@link #shouldRefresh}。
+ * 3. 只按加载耗时的话，命中索引的查询只有 1 毫秒左右，提前量几乎为 0，所以提前量至少为 TTL 的 MIN_EARLY_RATIO。
+ * 4. 不能是 final 类，否则序列化时不会带上类型信息，反序列化后得到的是 Map。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Data
+@NoArgsConstructor
+public class CacheEntry {
+  /** XFetch 的 beta，大于 1 时更早刷新 */
+  private static final double BETA = 1.0;
+
+  /** 提前刷新的提前量至少为 TTL 的百分之一，TTL 为一天时约 15 分钟 */
+  private static final double MIN_EARLY_RATIO = 0.01;
+
+  private Object value;
+
+  /** 加载这个值花费的时间，单位是毫秒，由 {@link #loadMillisOf} 换算，未知时为 0 */
+  private long loadMillis;
+
+  /** 过期的时间戳，单位是毫秒 */
+  private long expireAt;
+
+  public CacheEntry(Object value, long loadMillis, Duration ttl) {
+    this.value = value;
+    this.loadMillis = loadMillis;
+    this.expireAt = System.currentTimeMillis() + ttl.toMillis();
+  }
+
+  /**
+   * 把加载耗时从纳秒换算成毫秒，向上取整<br>
+   * 命中索引的查询通常不到 1 毫秒，直接截断会得到 0，而 0 表示耗时未知
+   *
+   * @param loadNanos 加载耗时，单位是纳秒
+   * @return 至少为 1 的毫秒数
+   */
+  public static long loadMillisOf(long loadNanos) {
+    return Math.max(1L, Math.ceilDiv(loadNanos, 1_000_000L));
+  }
+
+  /**
+   * 引入 CacheEntry 之前写入 Redis 的值没有附带信息，当作永不提前刷新的值
+   *
+   * @param stored Redis 中读取到的值
+   */
+  public static CacheEntry of(Object stored) {
+    if (stored instanceof CacheEntry entry) {
+      return entry;
+    }
+    CacheEntry entry = new CacheEntry();
+    entry.value = stored;
+    entry.expireAt = Long.MAX_VALUE;
+    return entry;
+  }
+
+  /**
+   * XFetch：now - delta * ln(random) >= expireAt 时刷新，random 在 (0, 1] 之间，<br>
+   * delta 取 loadMillis * beta 与 ttl * MIN_EARLY_RATIO 中较大的一个。<br>
+   * 离过期时间越近、加载越慢，刷新的概率越大；距离过期还有 delta 时每次读取约 37% 的概率刷新，已经过期时一定刷新。
+   *
+   * @param ttl 缓存配置的存活时间（不含随机偏移），用于计算最小的提前量
+   */
+  public boolean shouldRefresh(Duration ttl) {
+    double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+    long now = System.currentTimeMillis();
+    double delta = Math.max(loadMillis * BETA, ttl.toMillis() * MIN_EARLY_RATIO);
+    return now - delta * Math.log(random) >= expireAt;
+  }
+}
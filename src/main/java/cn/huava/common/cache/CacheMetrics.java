@@ -0,0 +1,82 @@
+package cn.huava.common.cache;
+
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * 单个 {@link TwoLevelCache} 的运行统计，计数器都是 LongAdder，多线程同时记录时几乎没有竞争
+ *
+ * @author Camio1945
+ */
+@NullMarked
+class CacheMetrics {
+  /** 加载耗时直方图的区间上限，单位是毫秒，最后还有一个超过最大上限的区间 */
+  private static final long[] LOAD_MILLIS_BOUNDS = {1, 5, 10, 50, 100, 500, 1000};
+
+  final LongAdder localHits = new LongAdder();
+  final LongAdder redisHits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder loadFailures = new LongAdder();
+  final LongAdder singleFlightCollapses = new LongAdder();
+  final LongAdder clusterCollapses = new LongAdder();
+  final LongAdder clusterWaitTimeouts = new LongAdder();
+  final LongAdder refreshes = new LongAdder();
+  final LongAdder evictions = new LongAdder();
+  final LongAdder remoteEvictions = new LongAdder();
+
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadNanos = new LongAdder();
+  private final LongAdder[] loadHistogram = new LongAdder[LOAD_MILLIS_BOUNDS.length + 1];
+
+  CacheMetrics() {
+    for (int i = 0; i < loadHistogram.length; i++) {
+      loadHistogram[i] = new LongAdder();
+    }
+  }
+
+  void recordLoad(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+    long millis = nanos / 1_000_000;
+    int bucket = 0;
+    while (bucket < LOAD_MILLIS_BOUNDS.length && millis > LOAD_MILLIS_BOUNDS[bucket]) {
+      bucket++;
+    }
+    loadHistogram[bucket].increment();
+  }
+
+  CacheMetricsDto snapshot(String name, long localSize, CacheStats localStats) {
+    long hits = localHits.sum() + redisHits.sum();
+    long requests = hits + misses.sum();
+    long loadCount = loads.sum();
+    Map<String, Long> histogram = LinkedHashMap.newLinkedHashMap(loadHistogram.length);
+    for (int i = 0; i < LOAD_MILLIS_BOUNDS.length; i++) {
+      histogram.put("<=" + LOAD_MILLIS_BOUNDS[i] + "ms", loadHistogram[i].sum());
+    }
+    histogram.put(
+        ">" + LOAD_MILLIS_BOUNDS[LOAD_MILLIS_BOUNDS.length - 1] + "ms",
+        loadHistogram[LOAD_MILLIS_BOUNDS.length].sum());
+    return new CacheMetricsDto()
+        .setName(name)
+        .setLocalSize(localSize)
+        .setLocalHitCount(localHits.sum())
+        .setRedisHitCount(redisHits.sum())
+        .setMissCount(misses.sum())
+        .setHitRate(requests == 0 ? 1.0 : (double) hits / requests)
+        .setLoadCount(loadCount)
+        .setLoadFailureCount(loadFailures.sum())
+        .setAverageLoadMillis(loadCount == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / loadCount)
+        .setLoadMillisHistogram(histogram)
+        .setSingleFlightCollapseCount(singleFlightCollapses.sum())
+        .setClusterCollapseCount(clusterCollapses.sum())
+        .setClusterWaitTimeoutCount(clusterWaitTimeouts.sum())
+        .setRefreshCount(refreshes.sum())
+        .setEvictCount(evictions.sum())
+        .setRemoteEvictCount(remoteEvictions.sum())
+        .setLocalEvictionCount(localStats.evictionCount());
+  }
+}
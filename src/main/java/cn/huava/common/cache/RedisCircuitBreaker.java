@@ -0,0 +1,385 @@
+package cn.huava.common.cache;
+
+import cn.huava.common.pojo.dto.RedisCircuitBreakerDto;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.redisson.client.RedisException;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Redis 的熔断器，Redis 变慢或者不可用时降级或者快速失败，而不是每次访问都等到超时（超时 3 秒、重试 3 次）<br>
+ *
+ * <pre>
+ * 1. 关闭：正常访问 Redis，连续失败 failureThreshold 次后打开；耗时超过 slowCallThreshold 的访问即使成功也算一次失败。
+ * 2. 打开：不访问 Redis，直接降级（{@link #call}）或者快速失败（{@link #execute}、{@link #executeAsync}），
+ *    openDuration 之后进入半开。
+ * 3. 半开：只放行一个探测的访问，成功则关闭，失败则重新打开；探测期间其他访问仍然降级。
+ * 4. 只有 Redis 的连接、超时等错误（RedisException、DataAccessException）算作失败，序列化等其他异常照常抛出。
+ * 5. 删除缓存等失效操作没有执行成功时先记下来（{@link #runOrDefer}），Redis 恢复后在后台重新执行，避免 Redis 中留下旧数据；
+ *    记下的数量有上限，超过上限的直接丢弃，只能等待过期；实例重启时还没有执行的也会丢失。
+ * 6. 降级期间缓存未命中时直接查询数据库，同时查询的数量有上限（{@link #limitDatabaseLoad}），等待超时的请求快速失败，
+ *    避免 Redis 故障时所有请求都压到数据库上。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+public class RedisCircuitBreaker {
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /** 一次访问是否可以进行：拒绝、正常访问、作为半开状态的探测 */
+  private enum Permit {
+    REJECTED,
+    NORMAL,
+    PROBE
+  }
+
+  private final int failureThreshold;
+  private final Duration openDuration;
+  private final long slowCallNanos;
+  private final int maxDeferred;
+  private final Semaphore databasePermits;
+  private final Duration databaseWait;
+
+  private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+  /** 最近一次打开的时间，取自 System.nanoTime() */
+  private volatile long openedAt;
+
+  private final Queue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger deferredSize = new AtomicInteger();
+  private final AtomicBoolean replayScheduled = new AtomicBoolean();
+
+  /** 重新执行记下的失效操作，任务很少，一个虚拟线程就够了 */
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          Thread.ofVirtual().name("redis-deferred-replay").factory());
+
+  private final LongAdder trips = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder shortCircuits = new LongAdder();
+  private final LongAdder droppedInvalidations = new LongAdder();
+  private final LongAdder rejectedDatabaseLoads = new LongAdder();
+
+  /**
+   * @param failureThreshold 连续失败多少次后打开
+   * @param openDuration 打开后经过多久进入半开，也是重新执行失效操作的间隔
+   * @param slowCallThreshold 耗时超过这个值的访问算作失败，为 0 时不检查耗时
+   * @param maxDegradedDatabaseLoads 降级期间同时查询数据库的上限
+   * @param degradedDatabaseWait 降级期间等待查询数据库的最长时间，超时后快速失败
+   * @param maxDeferredInvalidations 最多记下多少个没有执行成功的失效操作
+   */
+  public RedisCircuitBreaker(
+      int failureThreshold,
+      Duration openDuration,
+      Duration slowCallThreshold,
+      int maxDegradedDatabaseLoads,
+      Duration degradedDatabaseWait,
+      int maxDeferredInvalidations) {
+    this.failureThreshold = failureThreshold;
+    this.openDuration = openDuration;
+    this.slowCallNanos =
+        slowCallThreshold.isZero() ? Long.MAX_VALUE : slowCallThreshold.toNanos();
+    this.maxDeferred = maxDeferredInvalidations;
+    this.databasePermits = new Semaphore(maxDegradedDatabaseLoads);
+    this.databaseWait = degradedDatabaseWait;
+  }
+
+  public State getState() {
+    return state.get();
+  }
+
+  /** 是否处于关闭状态，即 Redis 正常；打开和半开时调用方应当跳过可有可无的 Redis 访问（如集群内的锁） */
+  public boolean isClosed() {
+    return state.get() == State.CLOSED;
+  }
+
+  /**
+   * 访问 Redis，熔断器打开或者访问失败时降级
+   *
+   * @param action 访问 Redis
+   * @param fallback 降级时的结果，例如当作缓存未命中
+   * @return action 或者 fallback 的结果
+   */
+  public <T extends @Nullable Object> T call(Supplier<T> action, Supplier<T> fallback) {
+    return doCall(action, fallback, true);
+  }
+
+  /** 与 {@link #call} 相同，但耗时不算作慢调用，用于本来就会等待的访问（如等待其他实例释放锁） */
+  public <T extends @Nullable Object> T callBlocking(Supplier<T> action, Supplier<T> fallback) {
+    return doCall(action, fallback, false);
+  }
+
+  /**
+   * 访问 Redis，熔断器打开时快速失败
+   *
+   * @param action 访问 Redis
+   * @return action 的结果
+   * @throws RedisUnavailableException 熔断器打开时
+   */
+  public <T extends @Nullable Object> T execute(Supplier<T> action) {
+    return doCall(action, null, true);
+  }
+
+  /**
+   * 异步访问 Redis，熔断器打开时快速失败，访问完成时（而不是发出请求时）记录成功或者失败
+   *
+   * @param action 发出异步请求
+   * @return action 返回的结果，熔断器打开时是以 RedisUnavailableException 失败的结果
+   */
+  public <T extends @Nullable Object> CompletionStage<T> executeAsync(
+      Supplier<? extends CompletionStage<T>> action) {
+    Permit permit = acquire();
+    if (permit == Permit.REJECTED) {
+      shortCircuits.increment();
+      return CompletableFuture.failedStage(
+          new RedisUnavailableException("Redis is unavailable, circuit breaker is open"));
+    }
+    long start = System.nanoTime();
+    CompletionStage<T> stage;
+    try {
+      stage = action.get();
+    } catch (RuntimeException e) {
+      record(permit, isRedisFailure(e));
+      return CompletableFuture.failedStage(e);
+    } catch (Error e) {
+      record(permit, false);
+      throw e;
+    }
+    return stage.whenComplete(
+        (_, e) -> {
+          boolean slow = System.nanoTime() - start > slowCallNanos;
+          record(permit, e == null ? slow : isRedisFailure(e));
+        });
+  }
+
+  /**
+   * 写入 Redis，熔断器打开时快速失败
+   *
+   * @param action 写入 Redis
+   * @throws RedisUnavailableException 熔断器打开时
+   */
+  public void runOrFail(Runnable action) {
+    doCall(
+        () -> {
+          action.run();
+          return true;
+        },
+        null,
+        true);
+  }
+
+  /**
+   * 写入 Redis，熔断器打开或者写入失败时跳过，用于丢失了也没有关系的写入（如缓存的值）
+   *
+   * @param action 写入 Redis
+   * @return 是否写入成功
+   */
+  public boolean run(Runnable action) {
+    return call(
+        () -> {
+          action.run();
+          return true;
+        },
+        () -> false);
+  }
+
+  /**
+   * 执行失效操作（如删除缓存），熔断器打开或者执行失败时记下来，Redis 恢复后重新执行
+   *
+   * @param action 失效操作，可能执行多次，必须是幂等的
+   */
+  public void runOrDefer(Runnable action) {
+    if (!run(action)) {
+      defer(action);
+    }
+  }
+
+  /**
+   * 降级期间从数据库加载，同时加载的数量有上限
+   *
+   * @param loader 从数据库加载
+   * @return loader 的结果
+   * @throws RedisUnavailableException 等待超时时
+   */
+  public <T extends @Nullable Object> T limitDatabaseLoad(Supplier<T> loader) {
+    boolean acquired;
+    try {
+      acquired = databasePermits.tryAcquire(databaseWait.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RedisUnavailableException("Interrupted while waiting to load from the database");
+    }
+    if (!acquired) {
+      rejectedDatabaseLoads.increment();
+      throw new RedisUnavailableException(
+          "Redis is unavailable and too many requests are loading from the database");
+    }
+    try {
+      return loader.get();
+    } finally {
+      databasePermits.release();
+    }
+  }
+
+  /** 获取统计信息，自实例启动起累计 */
+  public RedisCircuitBreakerDto getMetrics() {
+    return new RedisCircuitBreakerDto()
+        .setState(state.get().name())
+        .setTripCount(trips.sum())
+        .setFailureCount(failures.sum())
+        .setShortCircuitCount(shortCircuits.sum())
+        .setDeferredInvalidationCount(deferredSize.get())
+        .setDroppedInvalidationCount(droppedInvalidations.sum())
+        .setRejectedDatabaseLoadCount(rejectedDatabaseLoads.sum());
+  }
+
+  /** 异常本身或者它的 cause 是否为 Redis 的连接、超时等错误 */
+  static boolean isRedisFailure(Throwable e) {
+    for (@Nullable Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof RedisException || t instanceof DataAccessException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param fallback 为 null 时不降级，打开时抛出 RedisUnavailableException，失败时抛出原来的异常
+   * @param timed 是否把耗时过长的访问算作失败
+   */
+  private <T extends @Nullable Object> T doCall(
+      Supplier<T> action, @Nullable Supplier<T> fallback, boolean timed) {
+    Permit permit = acquire();
+    if (permit == Permit.REJECTED) {
+      shortCircuits.increment();
+      if (fallback == null) {
+        throw new RedisUnavailableException("Redis is unavailable, circuit breaker is open");
+      }
+      return fallback.get();
+    }
+    long start = System.nanoTime();
+    T value;
+    try {
+      value = action.get();
+    } catch (RuntimeException e) {
+      boolean redisFailure = isRedisFailure(e);
+      record(permit, redisFailure);
+      if (!redisFailure || fallback == null) {
+        throw e;
+      }
+      log.debug("Redis call failed, falling back", e);
+      return fallback.get();
+    } catch (Error e) {
+      record(permit, false);
+      throw e;
+    }
+    record(permit, timed && System.nanoTime() - start > slowCallNanos);
+    return value;
+  }
+
+  private Permit acquire() {
+    State current = state.get();
+    if (current == State.CLOSED) {
+      return Permit.NORMAL;
+    }
+    // 同一时间只有一个访问能把状态从打开改为半开，它就是探测
+    if (current == State.OPEN
+        && System.nanoTime() - openedAt >= openDuration.toNanos()
+        && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+      return Permit.PROBE;
+    }
+    return Permit.REJECTED;
+  }
+
+  private void record(Permit permit, boolean failed) {
+    if (!failed) {
+      // 成功是绝大多数情况，计数器本来就是 0 时不写，避免所有线程争用同一个缓存行
+      if (consecutiveFailures.get() != 0) {
+        consecutiveFailures.set(0);
+      }
+      if (permit == Permit.PROBE) {
+        state.set(State.CLOSED);
+        log.info("Redis has recovered, circuit breaker closed");
+        scheduleReplay(Duration.ZERO);
+      }
+      return;
+    }
+    failures.increment();
+    if (permit == Permit.PROBE) {
+      openedAt = System.nanoTime();
+      state.set(State.OPEN);
+      log.warn("Redis is still unavailable, circuit breaker reopened");
+      return;
+    }
+    if (consecutiveFailures.incrementAndGet() >= failureThreshold && isClosed()) {
+      openedAt = System.nanoTime();
+      if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+        consecutiveFailures.set(0);
+        trips.increment();
+        log.warn(
+            "Redis failed {} times in a row, circuit breaker opened for {} ms",
+            failureThreshold,
+            openDuration.toMillis());
+      }
+    }
+  }
+
+  private void defer(Runnable action) {
+    if (deferredSize.incrementAndGet() > maxDeferred) {
+      deferredSize.decrementAndGet();
+      droppedInvalidations.increment();
+      log.debug("Too many deferred Redis invalidations, dropped one");
+      return;
+    }
+    deferred.add(action);
+    // 熔断器没有打开时（偶尔失败一次），不会有关闭的时机触发重新执行，需要自己安排
+    scheduleReplay(openDuration);
+  }
+
+  private void scheduleReplay(Duration delay) {
+    if (deferredSize.get() > 0 && replayScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(this::replay, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /** 只在关闭状态下执行，打开时等待关闭时再次安排；再次失败的操作重新记下，由下一次安排执行 */
+  private void replay() {
+    replayScheduled.set(false);
+    int replayed = 0;
+    for (int i = deferredSize.get(); i > 0 && isClosed(); i--) {
+      Runnable action = deferred.poll();
+      if (action == null) {
+        break;
+      }
+      deferredSize.decrementAndGet();
+      try {
+        if (run(action)) {
+          replayed++;
+        } else {
+          defer(action);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Failed to replay deferred Redis invalidation", e);
+      }
+    }
+    if (replayed > 0) {
+      log.info("Replayed {} deferred Redis invalidations", replayed);
+    }
+  }
+}
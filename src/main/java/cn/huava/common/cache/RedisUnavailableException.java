@@ -0,0 +1,12 @@
+package cn.huava.common.cache;
+
+/**
+ * Redis 的熔断器打开时快速失败抛出的异常，见 {@link RedisCircuitBreaker}，由全局异常处理器转换为 503
+ *
+ * @author Camio1945
+ */
+public class RedisUnavailableException extends RuntimeException {
+  public RedisUnavailableException(String message) {
+    super(message);
+  }
+}
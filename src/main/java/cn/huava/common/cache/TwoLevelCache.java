@@ -0,0 +1,500 @@
+package cn.huava.common.cache;
+
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import cn.huava.common.util.RedisUtil;
+import cn.huava.common.util.SingleFlightUtil;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
+import org.redisson.api.RLock;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+
+/**
+ * 两级缓存：本地（Caffeine）在前，Redis 在后<br>
+ *
+ * <pre>
+ * 1. 读取时先查本地，本地没有再查 Redis，Redis 命中后写入本地，之后的读取不再访问网络。
+ * 2. 写入时同时写 Redis 和本地，不通知其他实例：写入的都是缓存未命中后从数据库加载的值，数据的修改一律通过删除缓存完成。
+ * 3. 删除和清空时先删 Redis 和本地，再通过 {@link TwoLevelCacheManager} 广播，其他实例收到后删除本地的副本；
+ *    在事务中时事务结束后再删除一次，之后还会延迟再删除一次，避免旧数据在删除之后又被写回缓存。
+ *    批量删除（{@link #evictAll}）时 Redis 中的删除和广播通过一次管道完成。
+ * 4. 本地缓存保存的是对象本身，多个线程拿到的是同一个实例，调用方不能修改缓存返回的对象。
+ * 5. 值保存为 {@link CacheEntry}，通过 {@link #get(Object, Callable)} 读取（即 @Cacheable(sync = true)）时，
+ *    快过期的值由一个后台线程提前刷新，其他请求继续使用当前的值，热点数据不会因为过期而在请求线程中同步加载。
+ * 6. 缓存未命中时，同一个 key 的并发加载通过 {@link SingleFlightUtil} 合并，不同的 key 互不影响。
+ * 6.1. 集群内合并加载（clusterSingleFlight）的缓存还会通过 Redis 的锁在所有实例之间合并：拿到锁的实例查询数据库并写入 Redis，
+ *      其他实例等待锁释放之后直接读取 Redis；锁有租期，等待也有上限，超时后自己查询数据库，不会无限等待。
+ * 7. 按代数分区的缓存（generational）在 Redis 的 key 前面加上代数，例如 "cache:role:uris:roleId:v2::g3:1"，
+ *    清空时只把 Redis 中的代数加一，旧代数的 key 不再被访问，等待过期即可，不需要 SCAN 和逐个删除。
+ *    其他实例收到广播后重新读取代数；广播丢失时，本地记住的代数最多使用本地缓存的存活时间，之后重新读取。
+ * 8. 访问 Redis 都经过 {@link RedisCircuitBreaker}：熔断器打开时只使用本地缓存，未命中时限流查询数据库并且只写入本地，
+ *    不再集群内合并加载；删除、清空和广播在 Redis 恢复后重新执行。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+public class TwoLevelCache implements Cache {
+  private final Cache redisCache;
+  private final com.github.benmanes.caffeine.cache.Cache<String, CacheEntry> localCache;
+  private final TwoLevelCacheManager cacheManager;
+  private final Duration redisTtl;
+  private final boolean generational;
+  private final boolean clusterSingleFlight;
+  private final RedisCircuitBreaker redisCircuitBreaker;
+
+  /** 当前的代数及读取时间，null 表示还没有从 Redis 读取，只有 generational 为 true 时使用 */
+  private volatile @Nullable Generation generation;
+
+  /** 代数从 Redis 读取之后最多使用多久，与本地缓存的存活时间相同 */
+  private final long generationTtlNanos;
+
+  /** 正在后台刷新的 key，同一个 key 同时只有一个刷新任务 */
+  private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
+  private final CacheMetrics metrics = new CacheMetrics();
+
+  TwoLevelCache(
+      Cache redisCache,
+      com.github.benmanes.caffeine.cache.Cache<String, CacheEntry> localCache,
+      TwoLevelCacheManager cacheManager,
+      Duration redisTtl,
+      boolean generational,
+      boolean clusterSingleFlight) {
+    this.redisCache = redisCache;
+    this.localCache = localCache;
+    this.cacheManager = cacheManager;
+    this.redisTtl = redisTtl;
+    this.generational = generational;
+    this.clusterSingleFlight = clusterSingleFlight;
+    this.redisCircuitBreaker = cacheManager.getRedisCircuitBreaker();
+    this.generationTtlNanos = cacheManager.getLocalTtl().toNanos();
+  }
+
+  @Override
+  public String getName() {
+    return redisCache.getName();
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return redisCache.getNativeCache();
+  }
+
+  @Override
+  public @Nullable ValueWrapper get(Object key) {
+    CacheEntry entry = getEntry(key);
+    return entry == null ? null : new SimpleValueWrapper(entry.getValue());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> @Nullable T get(Object key, @Nullable Class<T> type) {
+    ValueWrapper wrapper = get(key);
+    Object value = wrapper == null ? null : wrapper.get();
+    if (value != null && type != null && !type.isInstance(value)) {
+      throw new IllegalStateException(
+          "Cached value is not of required type [" + type.getName() + "]: " + value);
+    }
+    return (T) value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> @Nullable T get(Object key, Callable<T> valueLoader) {
+    CacheEntry entry = getEntry(key);
+    if (entry != null) {
+      refreshIfExpiring(key, entry, valueLoader);
+      return (T) entry.getValue();
+    }
+    boolean[] executed = {false};
+    T value =
+        SingleFlightUtil.execute(
+            getName() + "::" + key,
+            () -> {
+              executed[0] = true;
+              CacheEntry loaded = peekEntry(key);
+              if (loaded != null) {
+                return (T) loaded.getValue();
+              }
+              if (!redisCircuitBreaker.isClosed()) {
+                return redisCircuitBreaker.limitDatabaseLoad(() -> load(key, valueLoader));
+              }
+              return clusterSingleFlight
+                  ? loadInCluster(key, valueLoader)
+                  : load(key, valueLoader);
+            });
+    if (!executed[0]) {
+      metrics.singleFlightCollapses.increment();
+    }
+    return value;
+  }
+
+  @Override
+  public void put(Object key, @Nullable Object value) {
+    if (value == null) {
+      redisCircuitBreaker.run(() -> redisCache.put(versionedKey(key), null));
+      return;
+    }
+    putEntry(key, new CacheEntry(value, 0, newRedisTtl()));
+  }
+
+  @Override
+  public void evict(Object key) {
+    metrics.evictions.increment();
+    cacheManager.invalidate(() -> evictNow(key));
+  }
+
+  /**
+   * 一次删除多个 key，供批量修改之后使用：Redis 中的删除和广播通过一次管道完成，而不是每个 key 两次网络往返
+   *
+   * @param keys 缓存的 key
+   */
+  public void evictAll(Collection<?> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    List<?> snapshot = List.copyOf(keys);
+    metrics.evictions.add(snapshot.size());
+    cacheManager.invalidate(() -> evictAllNow(snapshot));
+  }
+
+  /** 按代数分区的缓存只把代数加一，不删除 Redis 中的 key */
+  @Override
+  public void clear() {
+    metrics.evictions.increment();
+    cacheManager.invalidate(this::clearNow);
+  }
+
+  /**
+   * 获取 Redis 中完整的 key（包含缓存名称和当前代数），供批量读写时使用<br>
+   * 按代数分区时第一次调用会从 Redis 读取代数，应当与批量读写一起通过 {@link RedisCircuitBreaker} 调用
+   *
+   * @param key 缓存的 key
+   * @return 与 @Cacheable 读写的 key 相同
+   */
+  public String redisKey(Object key) {
+    return getName() + "::" + versionedKey(key);
+  }
+
+  /**
+   * 获取 Redis 中的值使用的序列化方式（包括按缓存名称设置的压缩），供批量读写时使用
+   *
+   * @return 与 @Cacheable 读写时使用的相同
+   */
+  public SerializationPair<Object> getValueSerializationPair() {
+    return ((RedisCache) redisCache).getCacheConfiguration().getValueSerializationPair();
+  }
+
+  /**
+   * 只查本地缓存，供批量读取时使用：本地没有的再通过一次 Redis 管道读取
+   *
+   * @param key 缓存的 key
+   * @return 本地缓存的值，没有时返回 null
+   */
+  public @Nullable CacheEntry getLocal(Object key) {
+    CacheEntry entry = localCache.getIfPresent(localKey(key));
+    if (entry != null) {
+      metrics.localHits.increment();
+    }
+    return entry;
+  }
+
+  /**
+   * 只写本地缓存，供批量读取时使用：值已经通过 Redis 管道读取或写入
+   *
+   * @param key 缓存的 key
+   * @param entry 缓存的值
+   */
+  public void putLocal(Object key, CacheEntry entry) {
+    localCache.put(localKey(key), entry);
+  }
+
+  /**
+   * 记录批量读取 Redis 的结果，供批量读取时使用
+   *
+   * @param hits Redis 中有值的数量
+   * @param misses Redis 中也没有的数量
+   */
+  public void recordRedisLookups(int hits, int misses) {
+    metrics.redisHits.add(hits);
+    metrics.misses.add(misses);
+  }
+
+  /**
+   * 记录一次从数据库加载的耗时，供批量读取时使用
+   *
+   * @param nanos 加载耗时，单位是纳秒
+   */
+  public void recordLoad(long nanos) {
+    metrics.recordLoad(nanos);
+  }
+
+  /** 新写入 Redis 的值的存活时间，带随机偏移 */
+  public Duration newRedisTtl() {
+    return RedisUtil.randomOffsetDuration(redisTtl);
+  }
+
+  /**
+   * 值快过期时在后台重新加载，当前线程不等待，供批量读取时使用
+   *
+   * @param key 缓存的 key
+   * @param entry 读取到的值
+   * @param valueLoader 重新加载的方法
+   */
+  public void refreshIfExpiring(Object key, CacheEntry entry, Callable<?> valueLoader) {
+    if (!entry.shouldRefresh(redisTtl)) {
+      return;
+    }
+    String localKey = localKey(key);
+    if (!refreshingKeys.add(localKey)) {
+      return;
+    }
+    metrics.refreshes.increment();
+    Thread.ofVirtual()
+        .name("cache-refresh-" + getName())
+        .start(
+            () -> {
+              try {
+                refresh(key, entry, valueLoader);
+              } catch (Exception e) {
+                log.warn("Failed to refresh cache {}::{}", getName(), localKey, e);
+              } finally {
+                refreshingKeys.remove(localKey);
+              }
+            });
+  }
+
+  /** 收到其他实例的广播时调用 */
+  void evictLocal(String localKey) {
+    metrics.remoteEvictions.increment();
+    localCache.invalidate(localKey);
+  }
+
+  /** 收到其他实例的广播时调用 */
+  void clearLocal() {
+    metrics.remoteEvictions.increment();
+    if (generational) {
+      // 代数已经被其他实例修改，下次使用时重新读取
+      synchronized (this) {
+        generation = null;
+      }
+    }
+    localCache.invalidateAll();
+  }
+
+  CacheMetricsDto getMetrics() {
+    return metrics.snapshot(getName(), localCache.estimatedSize(), localCache.stats());
+  }
+
+  private void evictNow(Object key) {
+    redisCircuitBreaker.runOrDefer(() -> redisCache.evict(versionedKey(key)));
+    localCache.invalidate(localKey(key));
+    cacheManager.broadcastEvict(getName(), localKey(key));
+  }
+
+  private void evictAllNow(List<?> keys) {
+    redisCircuitBreaker.runOrDefer(
+        () -> {
+          RBatch batch = RedisUtil.getRedissonClient().createBatch();
+          for (Object key : keys) {
+            batch.getBucket(redisKey(key)).deleteAsync();
+            cacheManager.broadcastEvict(batch, getName(), localKey(key));
+          }
+          batch.execute();
+        });
+    keys.forEach(key -> localCache.invalidate(localKey(key)));
+  }
+
+  private void clearNow() {
+    redisCircuitBreaker.runOrDefer(this::clearRedis);
+    localCache.invalidateAll();
+    cacheManager.broadcastEvict(getName(), null);
+  }
+
+  private void clearRedis() {
+    if (generational) {
+      long next = getGenerationCounter().incrementAndGet();
+      synchronized (this) {
+        generation = new Generation(next, System.nanoTime());
+      }
+    } else {
+      redisCache.clear();
+    }
+  }
+
+  private void refresh(Object key, CacheEntry current, Callable<?> valueLoader) {
+    // 其他实例可能已经刷新过了，此时只需要更新本地缓存
+    ValueWrapper wrapper =
+        redisCircuitBreaker.call(() -> redisCache.get(versionedKey(key)), () -> null);
+    if (wrapper != null && wrapper.get() != null) {
+      CacheEntry remote = CacheEntry.of(wrapper.get());
+      if (remote.getExpireAt() > current.getExpireAt()) {
+        putLocal(key, remote);
+        return;
+      }
+    }
+    load(key, valueLoader);
+  }
+
+  private @Nullable CacheEntry getEntry(Object key) {
+    CacheEntry entry = getLocal(key);
+    if (entry != null) {
+      return entry;
+    }
+    entry = getRedisEntry(key);
+    if (entry == null) {
+      metrics.misses.increment();
+    } else {
+      metrics.redisHits.increment();
+    }
+    return entry;
+  }
+
+  /** 与 {@link #getEntry} 相同，但不计入统计，用于合并加载时的二次检查 */
+  private @Nullable CacheEntry peekEntry(Object key) {
+    CacheEntry entry = localCache.getIfPresent(localKey(key));
+    return entry == null ? getRedisEntry(key) : entry;
+  }
+
+  private @Nullable CacheEntry getRedisEntry(Object key) {
+    ValueWrapper wrapper =
+        redisCircuitBreaker.call(() -> redisCache.get(versionedKey(key)), () -> null);
+    if (wrapper == null || wrapper.get() == null) {
+      return null;
+    }
+    CacheEntry entry = CacheEntry.of(wrapper.get());
+    putLocal(key, entry);
+    return entry;
+  }
+
+  /**
+   * 在集群内合并加载：先拿到锁的实例加载，其他实例等待锁释放后读取 Redis，读不到（加载结果为 null 或者加载失败）时再自己加载
+   */
+  @SuppressWarnings("unchecked")
+  private <T> @Nullable T loadInCluster(Object key, Callable<T> valueLoader) {
+    // 等待锁本来就可能很久，不算作慢调用；Redis 出错时与等待超时一样自己加载
+    RLock lock = redisCircuitBreaker.callBlocking(() -> tryLock(key, valueLoader), () -> null);
+    if (lock == null) {
+      metrics.clusterWaitTimeouts.increment();
+      return load(key, valueLoader);
+    }
+    try {
+      // 拿到锁之前其他实例可能已经加载完成
+      CacheEntry loaded = getRedisEntry(key);
+      if (loaded != null) {
+        metrics.clusterCollapses.increment();
+        return (T) loaded.getValue();
+      }
+      return load(key, valueLoader);
+    } finally {
+      // 加载超过租期时锁已经自动释放了
+      redisCircuitBreaker.run(
+          () -> {
+            if (lock.isHeldByCurrentThread()) {
+              lock.unlock();
+            }
+          });
+    }
+  }
+
+  /** 返回拿到的锁，等待超时时返回 null */
+  private @Nullable RLock tryLock(Object key, Callable<?> valueLoader) {
+    RLock lock = RedisUtil.getRedissonClient().getLock(redisKey(key) + ":loading");
+    try {
+      boolean locked =
+          lock.tryLock(
+              cacheManager.getClusterLoadWait().toMillis(),
+              cacheManager.getClusterLoadLease().toMillis(),
+              TimeUnit.MILLISECONDS);
+      return locked ? lock : null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+  }
+
+  private <T> @Nullable T load(Object key, Callable<T> valueLoader) {
+    long start = System.nanoTime();
+    T value;
+    try {
+      value = valueLoader.call();
+    } catch (Exception e) {
+      metrics.loadFailures.increment();
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+    long nanos = System.nanoTime() - start;
+    metrics.recordLoad(nanos);
+    if (value != null) {
+      putEntry(key, new CacheEntry(value, CacheEntry.loadMillisOf(nanos), newRedisTtl()));
+    }
+    return value;
+  }
+
+  private void putEntry(Object key, CacheEntry entry) {
+    redisCircuitBreaker.run(() -> redisCache.put(versionedKey(key), entry));
+    putLocal(key, entry);
+  }
+
+  /** Redis 中使用的 key，按代数分区时加上代数前缀，本地缓存在代数变化时整体清空，不需要代数 */
+  private Object versionedKey(Object key) {
+    return generational ? "g" + currentGeneration() + ":" + key : key;
+  }
+
+  /**
+   * 读取和重置代数时加锁，避免收到广播之前读到的旧代数在重置之后才写回<br>
+   * 超过本地缓存存活时间的代数重新从 Redis 读取，发现代数变了（广播丢失）时清空本地缓存
+   */
+  private long currentGeneration() {
+    Generation current = generation;
+    if (current != null && !current.isStale(generationTtlNanos)) {
+      return current.value();
+    }
+    synchronized (this) {
+      current = generation;
+      if (current == null || current.isStale(generationTtlNanos)) {
+        long value = getGenerationCounter().get();
+        if (current != null && current.value() != value) {
+          localCache.invalidateAll();
+        }
+        current = new Generation(value, System.nanoTime());
+        generation = current;
+      }
+      return current.value();
+    }
+  }
+
+  private RAtomicLong getGenerationCounter() {
+    return RedisUtil.getRedissonClient().getAtomicLong(getName() + ":generation");
+  }
+
+  /**
+   * 从 Redis 读取到的代数
+   *
+   * @param value 代数
+   * @param readAt 读取的时间，取自 System.nanoTime()
+   */
+  private record Generation(long value, long readAt) {
+    boolean isStale(long ttlNanos) {
+      return System.nanoTime() - readAt >= ttlNanos;
+    }
+  }
+
+  /** 本地缓存与 Redis 一样以字符串作为 key，广播时可以直接使用 */
+  private static String localKey(Object key) {
+    return key.toString();
+  }
+}
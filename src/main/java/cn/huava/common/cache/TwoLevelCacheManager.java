@@ -0,0 +1,235 @@
+package cn.huava.common.cache;
+
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import cn.huava.common.util.RedisChannel;
+import cn.huava.common.util.TransactionUtil;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.redisson.api.RBatch;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * 两级缓存管理器，指定的缓存在 Redis 前面加一层本地缓存（{@link TwoLevelCache}），其他缓存直接使用 Redis<br>
+ *
+ * <pre>
+ * 1. 本地缓存有数量上限，并且在写入一段时间后过期，作为广播消息丢失时的兜底。
+ * 2. 缓存的删除和清空通过 Redis 的发布订阅广播，消息格式为 "实例 id \n 缓存名称 \n key"，清空时没有 key；
+ *    每个实例只处理其他实例发出的消息，自己的本地缓存在发送之前就已经删除了。
+ * 3. 按代数分区的缓存清空时只修改 Redis 中的代数（见 {@link TwoLevelCache}），其他实例收到清空的消息后重新读取代数。
+ * 4. 删除和清空立即执行一次，在事务中时事务结束后再执行一次，之后延迟一段时间再执行一次（延迟双删）：
+ *    事务提交之前，或者提交之后从数据库读取较慢的请求，都可能把旧数据重新写回缓存。
+ * 5. 集群内合并加载的缓存未命中时，所有实例中只有一个查询数据库，其他实例等待它写入 Redis（见 {@link TwoLevelCache}）。
+ * 6. 所有缓存共用一个 {@link RedisCircuitBreaker}，Redis 变慢或者不可用时只使用本地缓存，未命中时限流查询数据库，
+ *    删除和广播在 Redis 恢复后重新执行。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+public class TwoLevelCacheManager implements CacheManager {
+  private static final String EVICT_TOPIC = "cache:local:evict:topic";
+
+  private final CacheManager redisCacheManager;
+  private final Set<String> localCacheNames;
+  private final Set<String> generationalCacheNames;
+  private final Set<String> clusterLoadCacheNames;
+  private final long localMaxSize;
+  private final Duration localTtl;
+  private final Duration redisTtl;
+  private final Duration doubleDeleteDelay;
+  private final Duration clusterLoadWait;
+  private final Duration clusterLoadLease;
+  private final RedisCircuitBreaker redisCircuitBreaker;
+
+  /** 执行延迟双删的第二次删除，任务很少并且很快，一个虚拟线程就够了 */
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          Thread.ofVirtual().name("cache-double-delete").factory());
+
+  /** 区分消息是否由自己发出 */
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+  /** 订阅在后台进行，Redis 不可用时也能创建缓存，见 {@link RedisChannel} */
+  private final RedisChannel channel;
+
+  /**
+   * @param redisCacheManager 提供 Redis 缓存的管理器
+   * @param localCacheNames 需要加本地缓存的缓存名称
+   * @param generationalCacheNames 按代数分区的缓存名称，必须同时在 localCacheNames 中
+   * @param clusterLoadCacheNames 在集群内合并加载的缓存名称，必须同时在 localCacheNames 中
+   * @param localMaxSize 每个本地缓存最多保存的数量
+   * @param localTtl 本地缓存写入后的存活时间
+   * @param redisTtl Redis 缓存写入后的存活时间（不含随机偏移），用于计算 {@link CacheEntry} 的过期时间
+   * @param doubleDeleteDelay 延迟双删中第二次删除的延迟，为 0 时不做第二次删除
+   * @param clusterLoadWait 集群内合并加载时，等待其他实例加载的最长时间，超时后自己加载
+   * @param clusterLoadLease 集群内合并加载时锁的租期，加载的实例宕机时锁最多保留这么久，应大于加载的耗时
+   * @param redisCircuitBreaker 访问 Redis 时使用的熔断器
+   */
+  public TwoLevelCacheManager(
+      CacheManager redisCacheManager,
+      Set<String> localCacheNames,
+      Set<String> generationalCacheNames,
+      Set<String> clusterLoadCacheNames,
+      long localMaxSize,
+      Duration localTtl,
+      Duration redisTtl,
+      Duration doubleDeleteDelay,
+      Duration clusterLoadWait,
+      Duration clusterLoadLease,
+      RedisCircuitBreaker redisCircuitBreaker) {
+    this.redisCacheManager = redisCacheManager;
+    this.localCacheNames = Set.copyOf(localCacheNames);
+    this.generationalCacheNames = Set.copyOf(generationalCacheNames);
+    this.clusterLoadCacheNames = Set.copyOf(clusterLoadCacheNames);
+    this.localMaxSize = localMaxSize;
+    this.localTtl = localTtl;
+    this.redisTtl = redisTtl;
+    this.doubleDeleteDelay = doubleDeleteDelay;
+    this.clusterLoadWait = clusterLoadWait;
+    this.clusterLoadLease = clusterLoadLease;
+    this.redisCircuitBreaker = redisCircuitBreaker;
+    this.channel = new RedisChannel(EVICT_TOPIC, redisCircuitBreaker, this::onEvictMessage);
+  }
+
+  @Override
+  public @Nullable Cache getCache(String name) {
+    Cache cache = caches.get(name);
+    if (cache != null) {
+      return cache;
+    }
+    Cache redisCache = redisCacheManager.getCache(name);
+    if (redisCache == null) {
+      return null;
+    }
+    if (!localCacheNames.contains(name)) {
+      return caches.computeIfAbsent(name, _ -> redisCache);
+    }
+    channel.subscribeIfNecessary();
+    return caches.computeIfAbsent(
+        name,
+        _ ->
+            new TwoLevelCache(
+                redisCache,
+                Caffeine.newBuilder()
+                    .maximumSize(localMaxSize)
+                    .expireAfterWrite(localTtl)
+                    .recordStats()
+                    .<String, CacheEntry>build(),
+                this,
+                redisTtl,
+                generationalCacheNames.contains(name),
+                clusterLoadCacheNames.contains(name)));
+  }
+
+  @Override
+  public Collection<String> getCacheNames() {
+    return Collections.unmodifiableSet(caches.keySet());
+  }
+
+  /**
+   * 获取所有两级缓存的统计信息
+   *
+   * @return 按缓存名称排序
+   */
+  public List<CacheMetricsDto> getMetrics() {
+    return caches.values().stream()
+        .filter(TwoLevelCache.class::isInstance)
+        .map(cache -> ((TwoLevelCache) cache).getMetrics())
+        .sorted(Comparator.comparing(CacheMetricsDto::getName))
+        .toList();
+  }
+
+  /**
+   * 执行删除或清空：立即执行，在事务中时事务结束后再执行，最后延迟执行一次
+   *
+   * @param invalidation 删除或清空操作，包括 Redis、本地缓存和广播
+   */
+  void invalidate(Runnable invalidation) {
+    invalidation.run();
+    if (!TransactionUtil.afterCompletion(
+        () -> {
+          invalidation.run();
+          scheduleDoubleDelete(invalidation);
+        })) {
+      scheduleDoubleDelete(invalidation);
+    }
+  }
+
+  Duration getLocalTtl() {
+    return localTtl;
+  }
+
+  Duration getClusterLoadWait() {
+    return clusterLoadWait;
+  }
+
+  Duration getClusterLoadLease() {
+    return clusterLoadLease;
+  }
+
+  RedisCircuitBreaker getRedisCircuitBreaker() {
+    return redisCircuitBreaker;
+  }
+
+  private void scheduleDoubleDelete(Runnable invalidation) {
+    if (doubleDeleteDelay.isZero()) {
+      return;
+    }
+    Runnable task =
+        () -> {
+          try {
+            invalidation.run();
+          } catch (Exception e) {
+            log.warn("Failed to delete cache again after delay", e);
+          }
+        };
+    scheduler.schedule(task, doubleDeleteDelay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 通知其他实例删除本地缓存，Redis 不可用或者发布失败时记下来，恢复后重新发布
+   *
+   * @param cacheName 缓存名称
+   * @param localKey 本地缓存的 key，为空表示清空整个缓存
+   */
+  void broadcastEvict(String cacheName, @Nullable String localKey) {
+    channel.publishOrDefer(evictMessage(cacheName, localKey));
+  }
+
+  /** 与 {@link #broadcastEvict(String, String)} 相同，但加入管道中，与删除 Redis 中的 key 一起发送 */
+  void broadcastEvict(RBatch batch, String cacheName, String localKey) {
+    String message = evictMessage(cacheName, localKey);
+    batch.getTopic(EVICT_TOPIC, StringCodec.INSTANCE).publishAsync(message);
+  }
+
+  private String evictMessage(String cacheName, @Nullable String localKey) {
+    return instanceId + "\n" + cacheName + (localKey == null ? "" : "\n" + localKey);
+  }
+
+  void onEvictMessage(String message) {
+    String[] parts = message.split("\n", 3);
+    if (parts.length < 2 || instanceId.equals(parts[0])) {
+      return;
+    }
+    if (caches.get(parts[1]) instanceof TwoLevelCache cache) {
+      if (parts.length == 2) {
+        cache.clearLocal();
+      } else {
+        cache.evictLocal(parts[2]);
+      }
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package cn.huava.common.cache.codec;
+
+import cn.huava.common.cache.CacheEntry;
+import java.util.*;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 缓存值的二进制编码，代替带类型信息的 JSON，数据更小，编码和解码也更快<br>
+ *
+ * <pre>
+ * 1. 第一个字节固定为 {@link #MAGIC}，JSON 不可能以这个字节开头，所以以前写入的 JSON 仍然可以读取，
+ *    不需要在发布时清空 Redis。
+ * 2. 接着是一个字节的类型：字符串、整数、日期、字符串集合、Long 列表、{@link CacheEntry}，
+ *    以及通过 {@link BinarySchema} 注册的对象；Long 列表逐个写变长整数，不再需要拼接成字符串。
+ * 3. 其他类型写入 JSON（与以前的格式相同），所以任何可以缓存的值都可以使用这个编码。
+ * 4. 同时用于 Spring Cache（{@link RedisSerializer}）和 RedisUtil（{@link BinaryRedissonCodec}）。
+ * 5. {@link #withCompression} 返回的编码会压缩编码后达到阈值的值，压缩后的数据以 {@link #COMPRESSED_MAGIC} 开头，
+ *    接着是算法的 id 和压缩前的长度；任何一个编码都可以读取压缩和不压缩的数据，所以可以随时修改阈值和算法。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class BinaryCodec implements RedisSerializer<Object> {
+  /** 0xB7 不是合法的 UTF-8 首字节，JSON 的第一个字节不可能是它 */
+  public static final byte MAGIC = (byte) 0xB7;
+
+  /** 压缩后的数据的第一个字节，与 {@link #MAGIC} 一样不是合法的 UTF-8 首字节 */
+  public static final byte COMPRESSED_MAGIC = (byte) 0xB8;
+
+  /** 压缩后的数据的头部最多占用的字节数：魔数、算法的 id、压缩前的长度（变长整数） */
+  private static final int COMPRESSED_HEADER_MAX_LENGTH = 2 + 5;
+
+  /** 压缩前的长度上限，防止错误的数据在解压时申请过大的内存 */
+  private static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+  private static final int TYPE_STRING = 1;
+  private static final int TYPE_LONG = 2;
+  private static final int TYPE_INTEGER = 3;
+  private static final int TYPE_BOOLEAN = 4;
+  private static final int TYPE_DATE = 5;
+  private static final int TYPE_STRING_SET = 6;
+  private static final int TYPE_LONG_LIST = 7;
+  private static final int TYPE_CACHE_ENTRY = 8;
+  private static final int TYPE_SCHEMA = 9;
+  private static final int TYPE_JSON = 15;
+
+  private final RedisSerializer<Object> jsonSerializer;
+  private final Map<Class<?>, BinarySchema<?>> schemasByType;
+  private final Map<Integer, BinarySchema<?>> schemasById;
+  private final Compression compression;
+  private final int compressionThreshold;
+
+  /**
+   * @param jsonSerializer 没有二进制编码的类型使用的序列化方式，也用于读取以前写入的 JSON
+   * @param schemas 注册的对象类型
+   */
+  public BinaryCodec(RedisSerializer<Object> jsonSerializer, List<BinarySchema<?>> schemas) {
+    this.jsonSerializer = jsonSerializer;
+    this.schemasByType = new HashMap<>();
+    this.schemasById = new HashMap<>();
+    for (BinarySchema<?> schema : schemas) {
+      if (schemasById.put(schema.id(), schema) != null) {
+        throw new IllegalArgumentException("Duplicate binary schema id: " + schema.id());
+      }
+      schemasByType.put(schema.type(), schema);
+    }
+    this.compression = Compression.NONE;
+    this.compressionThreshold = Integer.MAX_VALUE;
+  }
+
+  private BinaryCodec(BinaryCodec source, Compression compression, int compressionThreshold) {
+    this.jsonSerializer = source.jsonSerializer;
+    this.schemasByType = source.schemasByType;
+    this.schemasById = source.schemasById;
+    this.compression = compression;
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  /**
+   * 返回注册的类型相同、但会压缩较大的值的编码
+   *
+   * @param compression 压缩算法，{@link Compression#NONE} 表示不压缩
+   * @param thresholdBytes 编码后达到这个字节数才压缩，压缩后没有变小的仍然保存原来的数据
+   */
+  public BinaryCodec withCompression(Compression compression, int thresholdBytes) {
+    if (thresholdBytes < 0) {
+      throw new IllegalArgumentException("Compression threshold must not be negative");
+    }
+    return new BinaryCodec(this, compression, thresholdBytes);
+  }
+
+  @Override
+  public byte[] serialize(@Nullable Object value) throws SerializationException {
+    if (value == null) {
+      return new byte[0];
+    }
+    BinaryOutput out = new BinaryOutput();
+    out.writeByte(MAGIC);
+    writeValue(value, out);
+    byte[] bytes = out.toByteArray();
+    if (compression == Compression.NONE || bytes.length < compressionThreshold) {
+      return bytes;
+    }
+    return compress(bytes);
+  }
+
+  @Override
+  public @Nullable Object deserialize(byte @Nullable [] bytes) throws SerializationException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    if (bytes[0] == COMPRESSED_MAGIC) {
+      bytes = decompress(bytes);
+    } else if (bytes[0] != MAGIC) {
+      return jsonSerializer.deserialize(bytes);
+    }
+    return readValue(new BinaryInput(bytes, 1));
+  }
+
+  /** 字节数组是否由这个编码写入（包括压缩后的），不是的话是以前写入的 JSON */
+  public static boolean isBinary(byte[] bytes) {
+    return bytes.length > 0 && isBinary(bytes[0]);
+  }
+
+  /** 以这个字节开头的数据是否由这个编码写入 */
+  public static boolean isBinary(byte first) {
+    return first == MAGIC || first == COMPRESSED_MAGIC;
+  }
+
+  /** 字节数组是否是压缩后的数据 */
+  public static boolean isCompressed(byte[] bytes) {
+    return bytes.length > 0 && bytes[0] == COMPRESSED_MAGIC;
+  }
+
+  private byte[] compress(byte[] bytes) {
+    // 连同头部都没有变小时不压缩，读取时少一次解压
+    byte[] compressed = compression.compress(bytes, bytes.length - COMPRESSED_HEADER_MAX_LENGTH);
+    if (compressed == null) {
+      return bytes;
+    }
+    BinaryOutput out = new BinaryOutput(COMPRESSED_HEADER_MAX_LENGTH + compressed.length);
+    out.writeByte(COMPRESSED_MAGIC);
+    out.writeByte(compression.getId());
+    out.writeVarLong(bytes.length);
+    out.writeRaw(compressed);
+    return out.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] bytes) {
+    BinaryInput in = new BinaryInput(bytes, 1);
+    Compression algorithm = Compression.byId(in.readByte());
+    long length = in.readVarLong();
+    if (length <= 0 || length > MAX_DECOMPRESSED_LENGTH) {
+      throw new SerializationException("Invalid decompressed cache value length: " + length);
+    }
+    byte[] decompressed = algorithm.decompress(bytes, in.position(), (int) length);
+    if (decompressed[0] != MAGIC) {
+      throw new SerializationException("Corrupted compressed cache value");
+    }
+    return decompressed;
+  }
+
+  private void writeValue(Object value, BinaryOutput out) {
+    switch (value) {
+      case String s -> {
+        out.writeByte(TYPE_STRING);
+        out.writeString(s);
+      }
+      case Long l -> {
+        out.writeByte(TYPE_LONG);
+        out.writeLong(l);
+      }
+      case Integer i -> {
+        out.writeByte(TYPE_INTEGER);
+        out.writeLong(i);
+      }
+      case Boolean b -> {
+        out.writeByte(TYPE_BOOLEAN);
+        out.writeByte(b ? 1 : 0);
+      }
+      case Date d when d.getClass() == Date.class -> {
+        out.writeByte(TYPE_DATE);
+        out.writeLong(d.getTime());
+      }
+      case CacheEntry entry -> {
+        out.writeByte(TYPE_CACHE_ENTRY);
+        out.writeVarLong(entry.getLoadMillis());
+        out.writeVarLong(entry.getExpireAt());
+        writeValue(entry.getValue(), out);
+      }
+      case Set<?> set when allInstanceOf(set, String.class) -> {
+        out.writeByte(TYPE_STRING_SET);
+        out.writeVarLong(set.size());
+        set.forEach(s -> out.writeString((String) s));
+      }
+      case List<?> list when allInstanceOf(list, Long.class) -> {
+        out.writeByte(TYPE_LONG_LIST);
+        out.writeLongs(castLongs(list));
+      }
+      default -> writeObject(value, out);
+    }
+  }
+
+  private void writeObject(Object value, BinaryOutput out) {
+    BinarySchema<?> schema = schemasByType.get(value.getClass());
+    if (schema == null) {
+      out.writeByte(TYPE_JSON);
+      out.writeBytes(jsonSerializer.serialize(value));
+      return;
+    }
+    out.writeByte(TYPE_SCHEMA);
+    out.writeVarLong(schema.id());
+    writeWithSchema(schema, value, out);
+  }
+
+  private @Nullable Object readValue(BinaryInput in) {
+    int type = in.readByte();
+    return switch (type) {
+      case TYPE_STRING -> in.readString();
+      case TYPE_LONG -> in.readLong();
+      case TYPE_INTEGER -> (int) in.readLong();
+      case TYPE_BOOLEAN -> in.readByte() != 0;
+      case TYPE_DATE -> in.readDate();
+      case TYPE_CACHE_ENTRY -> {
+        CacheEntry entry = new CacheEntry();
+        entry.setLoadMillis(in.readVarLong());
+        entry.setExpireAt(in.readVarLong());
+        entry.setValue(readValue(in));
+        yield entry;
+      }
+      case TYPE_STRING_SET -> {
+        int size = in.readLength();
+        Set<String> set = HashSet.newHashSet(size);
+        for (int i = 0; i < size; i++) {
+          set.add(in.readString());
+        }
+        yield set;
+      }
+      case TYPE_LONG_LIST -> in.readLongs();
+      case TYPE_SCHEMA -> {
+        long id = in.readVarLong();
+        BinarySchema<?> schema = schemasById.get((int) id);
+        if (schema == null) {
+          throw new SerializationException("Unknown binary schema id: " + id);
+        }
+        yield schema.read(in);
+      }
+      case TYPE_JSON -> jsonSerializer.deserialize(in.readBytes());
+      default -> throw new SerializationException("Unknown binary cache value type: " + type);
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void writeWithSchema(BinarySchema<T> schema, Object value, BinaryOutput out) {
+    schema.write((T) value, out);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Long> castLongs(List<?> list) {
+    return (List<Long>) list;
+  }
+
+  private static boolean allInstanceOf(Collection<?> values, Class<?> type) {
+    for (Object value : values) {
+      if (!type.isInstance(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,131 @@
+package cn.huava.common.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 二进制编码的读取端，格式见 {@link BinaryOutput}，数据不完整或格式错误时抛出 {@link SerializationException}
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class BinaryInput {
+  private final byte[] buffer;
+  private int position;
+
+  /** 最近一次 {@link #readFieldTag()} 读到的值的类型 */
+  private int wireType;
+
+  public BinaryInput(byte[] buffer) {
+    this(buffer, 0);
+  }
+
+  public BinaryInput(byte[] buffer, int position) {
+    this.buffer = buffer;
+    this.position = position;
+  }
+
+  /** 下一个要读取的字节的位置 */
+  int position() {
+    return position;
+  }
+
+  public int readByte() {
+    require(1);
+    return buffer[position++] & 0xFF;
+  }
+
+  public long readVarLong() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new SerializationException("Malformed varint in binary cache value");
+  }
+
+  public long readLong() {
+    long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public int readLength() {
+    long length = readVarLong();
+    if (length < 0 || length > buffer.length - position) {
+      throw new SerializationException("Invalid length in binary cache value: " + length);
+    }
+    return (int) length;
+  }
+
+  public String readString() {
+    int length = readLength();
+    String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+    position += length;
+    return value;
+  }
+
+  public byte[] readBytes() {
+    int length = readLength();
+    byte[] value = new byte[length];
+    System.arraycopy(buffer, position, value, 0, length);
+    position += length;
+    return value;
+  }
+
+  /** 与 {@link BinaryOutput#writeLongs} 对应 */
+  public List<Long> readLongs() {
+    int count = readLength();
+    List<Long> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readLong());
+    }
+    return values;
+  }
+
+  public boolean readBoolean() {
+    return readVarLong() != 0;
+  }
+
+  public Date readDate() {
+    return new Date(readLong());
+  }
+
+  /** 与 {@link BinaryOutput#writeLongsField} 对应 */
+  public List<Long> readLongsField() {
+    readLength();
+    return readLongs();
+  }
+
+  /**
+   * 读取下一个字段的编号
+   *
+   * @return 字段编号，0 表示所有字段已经读完
+   */
+  public int readFieldTag() {
+    long key = readVarLong();
+    wireType = (int) (key & 0x7);
+    return (int) (key >>> 3);
+  }
+
+  /** 跳过不认识的字段，必须在 {@link #readFieldTag()} 之后调用 */
+  public void skipField() {
+    switch (wireType) {
+      case BinaryOutput.WIRE_VARINT -> readVarLong();
+      case BinaryOutput.WIRE_BYTES -> position += readLength();
+      default -> throw new SerializationException("Unknown wire type: " + wireType);
+    }
+  }
+
+  private void require(int length) {
+    if (position + length > buffer.length) {
+      throw new SerializationException("Unexpected end of binary cache value");
+    }
+  }
+}
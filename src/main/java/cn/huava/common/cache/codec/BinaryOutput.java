@@ -0,0 +1,141 @@
+package cn.huava.common.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 二进制编码的写入端，格式与 {@link BinaryInput} 对应<br>
+ *
+ * <pre>
+ * 1. 整数使用变长编码（varint），有符号数先做 ZigZag 转换，小的 id 和时间戳只占几个字节。
+ * 2. 字符串和字节数组写入长度后再写内容，字符串使用 UTF-8。
+ * 3. 对象的字段写成 "字段 key + 值"，key = 字段编号 &lt;&lt; 3 | 值的类型，值为空的字段不写，最后写 0 表示结束；
+ *    读取时不认识的字段根据值的类型跳过，新增字段后旧版本的程序仍然可以读取。
+ * 4. 不是线程安全的，每次编码使用一个新的实例。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class BinaryOutput {
+  /** 字段值的类型：变长整数 */
+  static final int WIRE_VARINT = 0;
+
+  /** 字段值的类型：长度 + 内容 */
+  static final int WIRE_BYTES = 2;
+
+  private byte[] buffer;
+  private int size;
+
+  public BinaryOutput() {
+    this(64);
+  }
+
+  public BinaryOutput(int initialCapacity) {
+    buffer = new byte[initialCapacity];
+  }
+
+  public void writeByte(int value) {
+    ensureCapacity(1);
+    buffer[size++] = (byte) value;
+  }
+
+  /** 无符号的变长整数，每个字节的低 7 位是数据，最高位表示后面还有字节 */
+  public void writeVarLong(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[size++] = (byte) value;
+  }
+
+  /** 有符号的变长整数，绝对值小的负数也只占很少的字节 */
+  public void writeLong(long value) {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  public void writeString(String value) {
+    writeBytes(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public void writeBytes(byte[] value) {
+    writeVarLong(value.length);
+    writeRaw(value);
+  }
+
+  public void writeRaw(byte[] value) {
+    ensureCapacity(value.length);
+    System.arraycopy(value, 0, buffer, size, value.length);
+    size += value.length;
+  }
+
+  /** 先写数量，再逐个写有符号的变长整数 */
+  public void writeLongs(Collection<Long> values) {
+    writeVarLong(values.size());
+    for (Long value : values) {
+      writeLong(value);
+    }
+  }
+
+  public void writeLongField(int tag, @Nullable Long value) {
+    if (value != null) {
+      writeFieldKey(tag, WIRE_VARINT);
+      writeLong(value);
+    }
+  }
+
+  public void writeBooleanField(int tag, @Nullable Boolean value) {
+    if (value != null) {
+      writeFieldKey(tag, WIRE_VARINT);
+      writeVarLong(value ? 1 : 0);
+    }
+  }
+
+  /** 日期保存为毫秒时间戳，不受时区和格式影响 */
+  public void writeDateField(int tag, @Nullable Date value) {
+    if (value != null) {
+      writeFieldKey(tag, WIRE_VARINT);
+      writeLong(value.getTime());
+    }
+  }
+
+  public void writeStringField(int tag, @Nullable String value) {
+    if (value != null) {
+      writeFieldKey(tag, WIRE_BYTES);
+      writeString(value);
+    }
+  }
+
+  public void writeLongsField(int tag, @Nullable Collection<Long> values) {
+    if (values != null) {
+      BinaryOutput packed = new BinaryOutput(values.size() * 9 + 2);
+      packed.writeLongs(values);
+      writeFieldKey(tag, WIRE_BYTES);
+      writeBytes(packed.toByteArray());
+    }
+  }
+
+  /** 所有字段写完之后调用 */
+  public void writeEnd() {
+    writeVarLong(0);
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  private void writeFieldKey(int tag, int wireType) {
+    writeVarLong(((long) tag << 3) | wireType);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+  }
+}
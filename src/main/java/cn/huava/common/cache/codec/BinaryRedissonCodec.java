@@ -0,0 +1,71 @@
+package cn.huava.common.cache.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.jspecify.annotations.NullMarked;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+/**
+ * 让 Redisson 使用 {@link BinaryCodec}，供 RedisUtil 读写通用的 key 时使用<br>
+ * 读取时不是以 {@link BinaryCodec#MAGIC} 或 {@link BinaryCodec#COMPRESSED_MAGIC} 开头的数据交给以前使用的编码
+ * （Redisson 配置中的默认编码）解码。<br>
+ * Map 的字段名（hash field）仍然使用以前的编码：字段名是查找的依据，换成新编码后以前写入的字段就找不到了，
+ * 所以只有值使用 BinaryCodec。
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class BinaryRedissonCodec extends BaseCodec {
+  private final BinaryCodec binaryCodec;
+  private final Codec legacyCodec;
+
+  private final Encoder encoder =
+      in -> {
+        byte[] bytes = binaryCodec.serialize(in);
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer(bytes.length);
+        out.writeBytes(bytes);
+        return out;
+      };
+
+  private final Decoder<Object> decoder =
+      (buf, state) -> {
+        if (!buf.isReadable() || !BinaryCodec.isBinary(buf.getByte(buf.readerIndex()))) {
+          return legacyCodec.getValueDecoder().decode(buf, state);
+        }
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return binaryCodec.deserialize(bytes);
+      };
+
+  /**
+   * @param binaryCodec 编码方式
+   * @param legacyCodec 以前使用的编码，用于读取以前写入的数据
+   */
+  public BinaryRedissonCodec(BinaryCodec binaryCodec, Codec legacyCodec) {
+    this.binaryCodec = binaryCodec;
+    this.legacyCodec = legacyCodec;
+  }
+
+  @Override
+  public Decoder<Object> getValueDecoder() {
+    return decoder;
+  }
+
+  @Override
+  public Encoder getValueEncoder() {
+    return encoder;
+  }
+
+  @Override
+  public Decoder<Object> getMapKeyDecoder() {
+    return legacyCodec.getMapKeyDecoder();
+  }
+
+  @Override
+  public Encoder getMapKeyEncoder() {
+    return legacyCodec.getMapKeyEncoder();
+  }
+}
@@ -0,0 +1,23 @@
+package cn.huava.common.cache.codec;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * 一个类型的二进制编码方式，注册到 {@link BinaryCodec} 之后，这个类型的缓存不再保存为 JSON<br>
+ * 字段用固定的编号（见 {@link BinaryOutput}），不保存字段名和类名，发布之后编号不能修改或者复用。
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public interface BinarySchema<T> {
+
+  /** 写入数据中的类型编号，在所有注册的类型中唯一，发布之后不能修改 */
+  int id();
+
+  /** 只有类型完全相同的对象才使用这个编码方式，子类仍然保存为 JSON */
+  Class<T> type();
+
+  void write(T value, BinaryOutput out);
+
+  T read(BinaryInput in);
+}
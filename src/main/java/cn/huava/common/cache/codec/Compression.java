@@ -0,0 +1,125 @@
+package cn.huava.common.cache.codec;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * {@link BinaryCodec} 压缩较大的值时使用的算法，id 写在压缩后的数据的头部<br>
+ *
+ * <pre>
+ * 1. 读取时按头部的 id 选择算法，与当前配置的算法无关，所以修改配置后以前写入的数据仍然可以读取。
+ * 2. 新增算法时只能使用新的 id，已经使用过的 id 不能修改或者删除。
+ * 3. DEFLATE 使用 JDK 自带的 {@link Deflater}，不需要额外的依赖和本地库，GraalVM 原生镜像中也可以使用；
+ *    压缩级别为最快，缓存的值大多是重复的字段名和路径，最快的级别已经可以压缩掉大部分。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public enum Compression {
+  /** 不压缩 */
+  NONE(0) {
+    @Override
+    byte @Nullable [] compress(byte[] data, int maxLength) {
+      return null;
+    }
+
+    @Override
+    byte[] decompress(byte[] data, int offset, int originalLength) {
+      throw new SerializationException("Cache value is not compressed");
+    }
+  },
+
+  /** JDK 的 Deflater，zlib 格式，带校验和 */
+  DEFLATE(1) {
+    @Override
+    byte @Nullable [] compress(byte[] data, int maxLength) {
+      if (maxLength <= 0) {
+        return null;
+      }
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] out = new byte[maxLength];
+        int length = 0;
+        while (!deflater.finished() && length < maxLength) {
+          length += deflater.deflate(out, length, maxLength - length);
+        }
+        return deflater.finished() ? Arrays.copyOf(out, length) : null;
+      } finally {
+        deflater.end();
+      }
+    }
+
+    @Override
+    byte[] decompress(byte[] data, int offset, int originalLength) {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(data, offset, data.length - offset);
+        byte[] out = new byte[originalLength];
+        int length = 0;
+        while (length < originalLength && !inflater.finished()) {
+          int read = inflater.inflate(out, length, originalLength - length);
+          if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          length += read;
+        }
+        if (length != originalLength || !inflater.finished()) {
+          throw new SerializationException("Corrupted compressed cache value");
+        }
+        return out;
+      } catch (DataFormatException e) {
+        throw new SerializationException("Corrupted compressed cache value", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  };
+
+  private final int id;
+
+  Compression(int id) {
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /** 按配置中的名称查找，不区分大小写 */
+  public static Compression of(String name) {
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown cache compression: " + name, e);
+    }
+  }
+
+  static Compression byId(int id) {
+    for (Compression compression : values()) {
+      if (compression.id == id) {
+        return compression;
+      }
+    }
+    throw new SerializationException("Unknown cache compression id: " + id);
+  }
+
+  /**
+   * 压缩整个字节数组
+   *
+   * @param maxLength 压缩后的长度上限，超过时放弃压缩
+   * @return 压缩后的数据，不压缩或者没有小于上限时返回 null
+   */
+  abstract byte @Nullable [] compress(byte[] data, int maxLength);
+
+  /** 解压从 offset 开始的数据，解压后的长度必须等于 originalLength */
+  abstract byte[] decompress(byte[] data, int offset, int originalLength);
+}
@@ -1,10 +1,19 @@
 package cn.huava.common.config;
 
+import cn.huava.common.cache.CacheEntry;
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.cache.TwoLevelCacheManager;
+import cn.huava.common.cache.codec.BinaryCodec;
+import cn.huava.common.cache.codec.Compression;
 import cn.huava.common.util.RedisUtil;
+import cn.huava.sys.cache.RoleCache;
+import cn.huava.sys.cache.UserAuthDtoSchema;
+import cn.huava.sys.cache.UserCache;
+import cn.huava.sys.cache.UserRoleCache;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
-import java.util.TimeZone;
+import java.util.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
@@ -15,6 +24,7 @@ import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.*;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.*;
 import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
 import tools.jackson.databind.DefaultTyping;
@@ -38,14 +48,153 @@ public class RedisConfig implements CachingConfigurer {
   @Value("${spring.cache.redis.time-to-live}")
   private long redisTimeToLive;
 
+  @Value("${project.cache.local_max_size:10000}")
+  private long localMaxSize;
+
+  @Value("${project.cache.local_ttl_seconds:60}")
+  private long localTtlSeconds;
+
+  @Value("${project.cache.double_delete_delay_millis:1000}")
+  private long doubleDeleteDelayMillis;
+
+  @Value("${project.cache.cluster_load_wait_millis:3000}")
+  private long clusterLoadWaitMillis;
+
+  @Value("${project.cache.cluster_load_lease_millis:10000}")
+  private long clusterLoadLeaseMillis;
+
+  @Value("${project.cache.redis_breaker_failure_threshold:5}")
+  private int redisBreakerFailureThreshold;
+
+  @Value("${project.cache.redis_breaker_open_seconds:10}")
+  private long redisBreakerOpenSeconds;
+
+  @Value("${project.cache.redis_breaker_slow_call_millis:1000}")
+  private long redisBreakerSlowCallMillis;
+
+  @Value("${project.cache.redis_breaker_degraded_db_concurrency:20}")
+  private int redisBreakerDegradedDbConcurrency;
+
+  @Value("${project.cache.redis_breaker_degraded_db_wait_millis:500}")
+  private long redisBreakerDegradedDbWaitMillis;
+
+  @Value("${project.cache.redis_breaker_max_deferred:10000}")
+  private int redisBreakerMaxDeferred;
+
+  @Value("${project.cache.compression:deflate}")
+  private String compression;
+
+  @Value("${project.cache.compression_threshold_bytes:1024}")
+  private int compressionThresholdBytes;
+
+  @Value("${project.cache.compression_overrides:}")
+  private String compressionOverrides;
+
   @Bean
-  public RedisCacheConfiguration cacheConfiguration() {
+  public RedisCacheConfiguration cacheConfiguration(BinaryCodec binaryCodec) {
     return RedisCacheConfiguration.defaultCacheConfig()
         .entryTtl(new RandomOffsetTtlFunction(Duration.ofMinutes(redisTimeToLive)))
         .disableCachingNullValues()
-        .serializeValuesWith(
-            SerializationPair.fromSerializer(
-                new GenericJacksonJsonRedisSerializer(getObjectMapper())));
+        .serializeValuesWith(SerializationPair.fromSerializer(binaryCodec));
+  }
+
+  /**
+   * 缓存和 RedisUtil 使用的二进制编码，没有注册的类型以及以前写入的数据仍然使用带类型信息的 JSON。
+   *
+   * <p>编码后达到阈值的值会被压缩，单独设置了压缩的缓存见 {@link #cacheManager}。
+   */
+  @Bean
+  public BinaryCodec binaryCodec() {
+    return uncompressedBinaryCodec()
+        .withCompression(Compression.of(compression), compressionThresholdBytes);
+  }
+
+  /** 每个请求都会读取的用户在这里注册二进制编码，对比见 CacheSerializerBenchmark */
+  static BinaryCodec uncompressedBinaryCodec() {
+    return new BinaryCodec(jsonSerializer(), List.of(new UserAuthDtoSchema()));
+  }
+
+  /** 引入 {@link BinaryCodec} 之前缓存使用的序列化方式 */
+  static GenericJacksonJsonRedisSerializer jsonSerializer() {
+    return new GenericJacksonJsonRedisSerializer(getObjectMapper());
+  }
+
+  /** 缓存、RedisUtil 和布隆过滤器共用的熔断器，Redis 变慢或者不可用时不再让每个请求都等到超时 */
+  @Bean
+  public RedisCircuitBreaker redisCircuitBreaker() {
+    return new RedisCircuitBreaker(
+        redisBreakerFailureThreshold,
+        Duration.ofSeconds(redisBreakerOpenSeconds),
+        Duration.ofMillis(redisBreakerSlowCallMillis),
+        redisBreakerDegradedDbConcurrency,
+        Duration.ofMillis(redisBreakerDegradedDbWaitMillis),
+        redisBreakerMaxDeferred);
+  }
+
+  /**
+   * 用户、角色相关的缓存在每个请求中都会用到，在 Redis 前面加一层本地缓存，命中时不再访问网络和反序列化。
+   *
+   * <p>Spring Boot 自动配置的 CacheManager 会因为这个 Bean 的存在而不再创建。
+   */
+  @Bean
+  public TwoLevelCacheManager cacheManager(
+      RedisConnectionFactory connectionFactory,
+      RedisCacheConfiguration cacheConfiguration,
+      BinaryCodec binaryCodec,
+      RedisCircuitBreaker redisCircuitBreaker) {
+    RedisCacheManager redisCacheManager =
+        RedisCacheManager.builder(connectionFactory)
+            .cacheDefaults(cacheConfiguration)
+            .withInitialCacheConfigurations(
+                compressionConfigurations(cacheConfiguration, binaryCodec))
+            .build();
+    redisCacheManager.initializeCaches();
+    Set<String> localCacheNames =
+        Set.of(
+            UserCache.USER_ID_CACHE_PREFIX,
+            UserCache.USER_FULL_ID_CACHE_PREFIX,
+            UserCache.USER_USERNAME_CACHE_PREFIX,
+            RoleCache.URIS_CACHE_PREFIX,
+            UserRoleCache.ROLE_IDS_BY_USER_ID_CACHE_PREFIX);
+    return new TwoLevelCacheManager(
+        redisCacheManager,
+        localCacheNames,
+        Set.of(RoleCache.URIS_CACHE_PREFIX),
+        Set.of(UserCache.USER_ID_CACHE_PREFIX, RoleCache.URIS_CACHE_PREFIX),
+        localMaxSize,
+        Duration.ofSeconds(localTtlSeconds),
+        Duration.ofMinutes(redisTimeToLive),
+        Duration.ofMillis(doubleDeleteDelayMillis),
+        Duration.ofMillis(clusterLoadWaitMillis),
+        Duration.ofMillis(clusterLoadLeaseMillis),
+        redisCircuitBreaker);
+  }
+
+  /**
+   * 按缓存名称单独设置的压缩，配置的格式为 "缓存名称=算法:阈值"，多个用逗号分隔，省略阈值时使用默认的阈值
+   *
+   * @return 缓存名称到缓存配置的映射，除了值的序列化方式以外都与默认的配置相同
+   */
+  private Map<String, RedisCacheConfiguration> compressionConfigurations(
+      RedisCacheConfiguration cacheConfiguration, BinaryCodec binaryCodec) {
+    Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+    for (String override : compressionOverrides.split(",")) {
+      if (override.isBlank()) {
+        continue;
+      }
+      String[] nameAndSetting = override.split("=", 2);
+      if (nameAndSetting.length != 2 || nameAndSetting[0].isBlank()) {
+        throw new IllegalArgumentException("Invalid cache compression override: " + override);
+      }
+      String[] setting = nameAndSetting[1].split(":", 2);
+      int threshold =
+          setting.length == 2 ? Integer.parseInt(setting[1].trim()) : compressionThresholdBytes;
+      BinaryCodec codec = binaryCodec.withCompression(Compression.of(setting[0]), threshold);
+      configurations.put(
+          nameAndSetting[0].trim(),
+          cacheConfiguration.serializeValuesWith(SerializationPair.fromSerializer(codec)));
+    }
+    return configurations;
   }
 
   private static ObjectMapper getObjectMapper() {
@@ -53,6 +202,8 @@ public class RedisConfig implements CachingConfigurer {
         BasicPolymorphicTypeValidator.builder()
             // Allow all POJOs that extend BasePo
             .allowIfSubType(cn.huava.common.pojo.po.BasePo.class)
+            // Allow the wrapper of every value stored by TwoLevelCache
+            .allowIfSubType(CacheEntry.class)
             // Trust Dates
             .allowIfBaseType(java.util.Date.class)
             // Trust Collections
@@ -69,9 +220,15 @@ public class RedisConfig implements CachingConfigurer {
 @NullMarked
 record RandomOffsetTtlFunction(Duration duration) implements RedisCacheWriter.TtlFunction {
 
-  /** 这个方法在每次生成 ttl 时都会执行，保证了缓存不会同时过期，而会产生随机的偏移，因此规避了缓存雪崩的问题 */
+  /**
+   * 这个方法在每次生成 ttl 时都会执行，保证了缓存不会同时过期，而会产生随机的偏移，因此规避了缓存雪崩的问题<br>
+   * {@link CacheEntry} 在创建时已经确定了带随机偏移的过期时间，Redis 的 TTL 与之保持一致，提前刷新才能在过期前发生
+   */
   @Override
   public Duration getTimeToLive(Object key, @Nullable Object value) {
+    if (value instanceof CacheEntry entry) {
+      return Duration.ofMillis(Math.max(1, entry.getExpireAt() - System.currentTimeMillis()));
+    }
     return RedisUtil.randomOffsetDuration(duration);
   }
 }
@@ -1,6 +1,7 @@
 package cn.huava.common.config;
 
 import static cn.huava.common.constant.CommonConstant.REFRESH_TOKEN_URI;
+import static cn.huava.common.constant.CommonConstant.RENEWED_ACCESS_TOKEN_HEADER;
 
 import cn.huava.common.filter.JwtAuthFilter;
 import cn.huava.common.filter.UriAuthFilter;
@@ -58,6 +59,8 @@ public class SecurityConfig {
     config.setAllowedOrigins(List.of("*"));
     config.setAllowedMethods(List.of("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
     config.setAllowedHeaders(List.of("*"));
+    // 跨域时前端默认读不到自定义的响应头，需要显式暴露
+    config.setExposedHeaders(List.of(RENEWED_ACCESS_TOKEN_HEADER));
     source.registerCorsConfiguration("/**", config);
     return new CorsFilter(source);
   }
@@ -55,6 +55,12 @@ public interface CommonConstant {
   /** JWT 令牌的前缀 */
   String BEARER_PREFIX = "Bearer ";
 
+  /** refresh token 的有效期（秒），也是一次登录中 access token 续期的上限：30 days */
+  long REFRESH_TOKEN_TTL_SECONDS = 30L * 24 * 60 * 60;
+
+  /** 滑动续期时，新的 access token 所在的响应头 */
+  String RENEWED_ACCESS_TOKEN_HEADER = "X-Renewed-Access-Token";
+
   interface RoleMessage {
     String IMPORTANT_ROLE = "该角色为最重要的基础角色，不允许进行任何操作";
     String IMPORTANT_USER = "该用户为最重要的基础用户，不允许进行任何操作";
@@ -1,5 +1,6 @@
 package cn.huava.common.controller.handler;
 
+import cn.huava.common.cache.RedisUnavailableException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
@@ -47,6 +48,14 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
   }
 
+  /** RedisUnavailableException.class 异常返回 503 错误，表明 Redis 暂时不可用并且降级的容量已满，稍后重试即可 */
+  @ExceptionHandler(RedisUnavailableException.class)
+  public ResponseEntity<String> handle(RedisUnavailableException e, WebRequest request) {
+    String uri = ((ServletWebRequest) request).getRequest().getRequestURI();
+    log.warn("API {} is unavailable: {}", uri, e.getMessage());
+    return new ResponseEntity<>("服务繁忙，请稍后重试", HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
   /** 其他所有异常统一返回 500 服务器内部错误 */
   @ExceptionHandler(Exception.class)
   public ResponseEntity<String> handleGeneralException(Exception e, WebRequest request) {
@@ -2,9 +2,11 @@ package cn.huava.common.filter;
 
 import static cn.huava.common.constant.CommonConstant.*;
 
+import cn.huava.common.cache.RedisUnavailableException;
 import cn.huava.sys.auth.SysUserDetails;
-import cn.huava.sys.cache.UserCache;
-import cn.huava.sys.pojo.po.UserPo;
+import cn.huava.sys.cache.*;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.service.jwt.AccessTokenClaims;
 import cn.huava.sys.service.jwt.AceJwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -14,8 +16,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 import lombok.*;
+import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -27,10 +31,15 @@ import org.springframework.web.filter.OncePerRequestFilter;
 /**
  * JWT 认证过滤器<br>
  * 1. 如果 token 已过期， 则返回 401 状态码（前端可以根据这个状态码刷新 token 或者重新登录）<br>
- * 2. 如果 token 有效，则从 token 中获取用户 ID，再从缓存中查询用户信息，并设置到 SecurityContextHolder 中，以便后续的请求获取登录用户<br>
+ * 1.1. 如果 token 的纪元小于用户当前的纪元（退出所有设备、修改密码、禁用、删除后），说明已被吊销，同样返回 401 状态码<br>
+ * 2. 如果 token 有效，则从验签时一并解码出的声明中获取用户 ID，再从缓存中查询用户的鉴权信息，并设置到 SecurityContextHolder 中，以便后续的请求获取登录用户（整个请求只查询一次）<br>
+ * 3. 无状态模式（project.jwt_stateless）下，如果 token 中的用户版本号仍是最新的，则直接使用 token 中的用户名和角色，不再查询缓存<br>
+ * 4. 如果 token 快要过期了，则在响应头 X-Renewed-Access-Token 中返回新的 access token，前端拿到后替换掉旧的 token，这样大多数情况下不需要调用刷新 token 的接口<br>
+ * 5. 过滤器中抛出的异常不经过全局异常处理器，所以 Redis 不可用（熔断器打开，本地也没有副本）时在这里返回 503 状态码<br>
  *
  * @author Camio1945
  */
+@Slf4j
 @NullMarked
 @Component
 @RequiredArgsConstructor
@@ -40,6 +49,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
   private final UserCache userCache;
 
+  private final UserVersionCache userVersionCache;
+
+  private final TokenEpochCache tokenEpochCache;
+
+  /** 见 application.yml 文件中关于 jwt_stateless 的注释 */
+  @Value("${project.jwt_stateless:false}")
+  private boolean stateless;
+
   @Override
   protected void doFilterInternal(
       final HttpServletRequest request,
@@ -49,16 +66,47 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     if (!request.getRequestURI().equals(REFRESH_TOKEN_URI)) {
       String token = getTokenFromRequest(request);
       if (StringUtils.hasText(token)) {
-        if (jwtAceService.isTokenExpired(token)) {
-          writeResponse(response);
+        try {
+          if (!authenticate(request, response, token)) {
+            return;
+          }
+        } catch (RedisUnavailableException e) {
+          log.warn("API {} is unavailable: {}", request.getRequestURI(), e.getMessage());
+          writeResponse(
+              response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "服务繁忙，请稍后重试");
           return;
         }
-        setAuthentication(request, token);
       }
     }
     filterChain.doFilter(request, response);
   }
 
+  /** 认证成功时返回 true，否则已经写入了 401 响应，返回 false */
+  private boolean authenticate(
+      HttpServletRequest request, HttpServletResponse response, String token)
+      throws IOException {
+    AccessTokenClaims claims = jwtAceService.verifyAccessToken(token);
+    if (claims.isExpired()) {
+      writeResponse(response, "Access token expired");
+      return false;
+    }
+    if (claims.epc() < tokenEpochCache.getEpoch(claims.sub())) {
+      writeResponse(response, "Access token revoked");
+      return false;
+    }
+    UserDetails userDetails = buildUserDetails(claims);
+    if (userDetails == null) {
+      writeResponse(response, "User not found");
+      return false;
+    }
+    setAuthentication(request, userDetails);
+    String renewedToken = jwtAceService.renewAccessTokenIfNeeded(claims);
+    if (renewedToken != null) {
+      response.setHeader(RENEWED_ACCESS_TOKEN_HEADER, renewedToken);
+    }
+    return true;
+  }
+
   private @Nullable String getTokenFromRequest(HttpServletRequest request) {
     String bearerToken = request.getHeader(AUTHORIZATION_HEADER);
     if (StringUtils.hasText(bearerToken) && bearerToken.startsWith(BEARER_PREFIX)) {
@@ -67,26 +115,44 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     return null;
   }
 
-  private static void writeResponse(HttpServletResponse response) throws IOException {
-    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+  private static void writeResponse(HttpServletResponse response, String message)
+      throws IOException {
+    writeResponse(response, HttpServletResponse.SC_UNAUTHORIZED, message);
+  }
+
+  private static void writeResponse(HttpServletResponse response, int status, String message)
+      throws IOException {
+    response.setStatus(status);
     PrintWriter writer = response.getWriter();
-    writer.write("Access token expired");
+    writer.write(message);
     writer.flush();
   }
 
-  private void setAuthentication(HttpServletRequest request, String token) {
-    Long userId = jwtAceService.getUserIdFromAccessToken(token);
-    String username = userCache.getById(userId).getUsername();
-    UserDetails userDetails = buildUserDetails(username);
+  private void setAuthentication(HttpServletRequest request, UserDetails userDetails) {
     UsernamePasswordAuthenticationToken authenticationToken =
         new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
     authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
   }
 
-  private UserDetails buildUserDetails(String username) {
-    UserPo userPo = new UserPo();
-    userPo.setUsername(username);
-    return new SysUserDetails(userPo, new HashSet<>());
+  /** 构建请求范围内的登录用户，后续 Fn.getLoginUser() 直接读取其中的用户，不再查询缓存 */
+  private @Nullable UserDetails buildUserDetails(AccessTokenClaims claims) {
+    long userId = claims.sub();
+    // 版本号不一致说明签发之后用户信息变更过，此时 token 中的身份信息不可信，退回到查询缓存
+    if (stateless
+        && claims.hasIdentity()
+        && claims.ver() == userVersionCache.getVersion(userId)) {
+      return new SysUserDetails(
+          userId,
+          Objects.requireNonNull(claims.username()),
+          Objects.requireNonNull(claims.roleIds()),
+          new HashSet<>(),
+          () -> userCache.getById(userId));
+    }
+    // 鉴权只读取精简的缓存，完整的用户信息（含密码）只在请求确实需要时才从另一个缓存读取
+    UserAuthDto auth = userCache.getAuthById(userId);
+    return auth == null
+        ? null
+        : new SysUserDetails(auth, new HashSet<>(), () -> userCache.getById(userId));
   }
 }
@@ -3,6 +3,7 @@ package cn.huava.common.filter;
 import cn.huava.common.config.SecurityConfig;
 import cn.huava.common.constant.CommonConstant;
 import cn.huava.common.util.Fn;
+import cn.huava.sys.auth.*;
 import cn.huava.sys.cache.*;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,6 +13,7 @@ import java.io.PrintWriter;
 import java.util.*;
 import lombok.*;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -38,13 +40,17 @@ import org.springframework.web.filter.OncePerRequestFilter;
 @Component
 @RequiredArgsConstructor
 public class UriAuthFilter extends OncePerRequestFilter {
-  private static final String URI_AUTH_RANGE_MAIN = "main";
+  private static final String URI_AUTH_RANGE_ALL = "all";
 
-  private static final String[] MAIN_URI_SUFFIX = {"/create", "/delete", "/update", "/page"};
+  private static final String URI_AUTH_RANGE_MAIN = "main";
 
   private final UserRoleCache userRoleCache;
 
-  private final RoleCache roleCache;
+  private final UriPermMatcher uriPermMatcher;
+
+  private final RolePermBitSets rolePermBitSets;
+
+  private final RoleHierarchy roleHierarchy;
 
   @Value("${project.api_auth_range}")
   private String uriAuthRange;
@@ -68,20 +74,22 @@ public class UriAuthFilter extends OncePerRequestFilter {
     if (authentication == null) {
       return true;
     }
-    String uri = getUri(request);
-    if (!shouldCheckPermission(uri)) {
+    boolean checkAll = URI_AUTH_RANGE_ALL.equals(uriAuthRange);
+    if (!checkAll && !URI_AUTH_RANGE_MAIN.equals(uriAuthRange)) {
+      return true;
+    }
+    UriPermTree tree = uriPermMatcher.getTree();
+    String uri = request.getRequestURI();
+    UriPermTree.Entry perm = tree.match(request.getMethod(), uri);
+    if (!shouldCheckPermission(perm, uri, checkAll)) {
       return true;
     }
-    List<Long> roleIds = getRoleIds();
-    boolean hasPerm = false;
-    for (Long roleId : roleIds) {
-      if (roleId == CommonConstant.ADMIN_ROLE_ID
-          || roleCache.getPermUrisByRoleId(roleId).contains(uri)) {
-        hasPerm = true;
-        break;
-      }
+    List<Long> roleIds = getRoleIds(authentication);
+    if (roleIds.contains(CommonConstant.ADMIN_ROLE_ID)) {
+      return true;
     }
-    return hasPerm;
+    // 没有在 sys_perm 中注册的 uri 不属于任何角色，只有超级管理员可以访问
+    return perm != null && rolePermBitSets.hasPerm(tree, roleIds, perm);
   }
 
   private static void writeResponse(HttpServletResponse response) throws IOException {
@@ -92,26 +100,30 @@ public class UriAuthFilter extends OncePerRequestFilter {
     writer.flush();
   }
 
-  private static String getUri(HttpServletRequest request) {
-    String uri = request.getRequestURI();
-    uri = uri.replaceAll("\\d+$", "");
-    return uri;
-  }
-
-  /** 见 application.yml 文件中关于 api_auth_range 的注释 */
-  private boolean shouldCheckPermission(String uri) {
-    if (URI_AUTH_RANGE_MAIN.equals(uriAuthRange)) {
-      for (String mainUriSuffix : MAIN_URI_SUFFIX) {
-        if (uri.endsWith(mainUriSuffix)) {
-          return true;
-        }
-      }
+  /**
+   * 见 application.yml 文件中关于 api_auth_range 的注释
+   *
+   * @param perm 请求匹配到的权限，没有在 sys_perm 中注册时为 null
+   */
+  private static boolean shouldCheckPermission(
+      UriPermTree.@Nullable Entry perm, String uri, boolean checkAll) {
+    if (checkAll) {
+      return true;
+    }
+    if (perm != null) {
+      return perm.main();
     }
-    return false;
+    return UriPermTree.isMainUri(uri, UriPermTree.stripTrailingDigits(uri));
   }
 
-  private List<Long> getRoleIds() {
-    Long userId = Fn.getLoginUser().getId();
-    return userRoleCache.getRoleIdsByUserId(userId);
+  /** 用户的有效角色，包括所有上级角色 */
+  private List<Long> getRoleIds(Authentication authentication) {
+    // 无状态模式下角色 id 已经由 JwtAuthFilter 从 token 中取出
+    if (authentication.getPrincipal() instanceof SysUserDetails userDetails
+        && userDetails.getRoleIds() != null) {
+      return roleHierarchy.expand(userDetails.getRoleIds());
+    }
+    Long userId = Objects.requireNonNull(Fn.getLoginUserId());
+    return roleHierarchy.expand(userRoleCache.getRoleIdsByUserId(userId));
   }
 }
@@ -0,0 +1,63 @@
+package cn.huava.common.pojo.dto;
+
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * 两级缓存（本地 + Redis）的统计信息，自实例启动起累计，用于 /sys/monitor/cacheStats
+ *
+ * @author Camio1945
+ */
+@Data
+public class CacheMetricsDto {
+  /** 缓存名称 */
+  private String name;
+
+  /** 本地缓存当前的条目数（近似值） */
+  private long localSize;
+
+  /** 本地缓存命中次数 */
+  private long localHitCount;
+
+  /** 本地没有、Redis 命中的次数 */
+  private long redisHitCount;
+
+  /** 两级都没有命中的次数 */
+  private long missCount;
+
+  /** 命中率（本地或 Redis），0 ~ 1，没有任何请求时为 1 */
+  private double hitRate;
+
+  /** 从数据库加载的次数，批量加载算一次 */
+  private long loadCount;
+
+  /** 加载失败的次数 */
+  private long loadFailureCount;
+
+  /** 平均加载耗时，单位是毫秒 */
+  private double averageLoadMillis;
+
+  /** 加载耗时的分布，key 为耗时区间（如 "<=5ms"），value 为次数 */
+  private Map<String, Long> loadMillisHistogram;
+
+  /** 缓存未命中时，等待其他线程加载结果而没有自己查询数据库的次数 */
+  private long singleFlightCollapseCount;
+
+  /** 缓存未命中时，等待其他实例加载完成、直接读取 Redis 而没有查询数据库的次数 */
+  private long clusterCollapseCount;
+
+  /** 缓存未命中时，等待其他实例加载超时、自己查询数据库的次数 */
+  private long clusterWaitTimeoutCount;
+
+  /** 快过期时在后台提前刷新的次数 */
+  private long refreshCount;
+
+  /** 主动删除（数据变化）的次数，包括清空 */
+  private long evictCount;
+
+  /** 收到其他实例的广播而删除本地缓存的次数 */
+  private long remoteEvictCount;
+
+  /** 本地缓存因容量或过期被淘汰的条目数 */
+  private long localEvictionCount;
+}
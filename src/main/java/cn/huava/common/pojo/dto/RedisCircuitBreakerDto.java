@@ -0,0 +1,32 @@
+package cn.huava.common.pojo.dto;
+
+import lombok.Data;
+
+/**
+ * Redis 熔断器的状态和统计信息，自实例启动起累计，用于 /sys/monitor/redisCircuitBreaker
+ *
+ * @author Camio1945
+ */
+@Data
+public class RedisCircuitBreakerDto {
+  /** 当前状态：CLOSED（正常）、OPEN（降级中）、HALF_OPEN（探测中） */
+  private String state;
+
+  /** 从关闭变为打开的次数 */
+  private long tripCount;
+
+  /** 访问 Redis 失败的次数，包括超过慢调用阈值的访问 */
+  private long failureCount;
+
+  /** 熔断器打开而没有访问 Redis、直接降级或者快速失败的次数 */
+  private long shortCircuitCount;
+
+  /** 当前记下的、等待 Redis 恢复后重新执行的失效操作数量 */
+  private long deferredInvalidationCount;
+
+  /** 因为记下的失效操作超过上限而丢弃的数量 */
+  private long droppedInvalidationCount;
+
+  /** 降级期间等待查询数据库超时而快速失败的次数 */
+  private long rejectedDatabaseLoadCount;
+}
@@ -3,7 +3,6 @@ package cn.huava.common.pojo.po;
 import static cn.huava.common.constant.CommonConstant.ADMIN_USER_ID;
 
 import cn.huava.common.util.Fn;
-import cn.huava.sys.pojo.po.UserPo;
 import cn.hutool.v7.core.data.id.IdUtil;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.fasterxml.jackson.annotation.JsonFormat;
@@ -11,6 +10,7 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Objects;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
@@ -57,10 +57,8 @@ public class BasePo implements Serializable {
   }
 
   private static Long getLoginUserId() {
-    UserPo loginUser;
     try {
-      loginUser = Fn.getLoginUser();
-      return loginUser.getId();
+      return Objects.requireNonNull(Fn.getLoginUserId(), "No login user");
     } catch (Exception e) {
       log.warn("Failed to get login user: {}", e.getMessage());
       return ADMIN_USER_ID;
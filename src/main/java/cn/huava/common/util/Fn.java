@@ -60,6 +60,10 @@ public class Fn {
     return LoginUtil.getLoginUser();
   }
 
+  public static Long getLoginUserId() {
+    return LoginUtil.getLoginUserId();
+  }
+
   public static @NonNull HttpServletRequest getRequest() {
     return HttpServletUtil.getRequest();
   }
@@ -1,5 +1,6 @@
 package cn.huava.common.util;
 
+import cn.huava.sys.auth.SysUserDetails;
 import cn.huava.sys.cache.UserCache;
 import cn.huava.sys.pojo.po.UserPo;
 import org.jspecify.annotations.NullMarked;
@@ -17,22 +18,43 @@ class LoginUtil {
 
   /** This method is intentionally protected, please use Fn.getLoginUser() as the only entry. */
   protected static @Nullable UserPo getLoginUser() {
-    UsernamePasswordAuthenticationToken authentication =
-        (UsernamePasswordAuthenticationToken)
-            SecurityContextHolder.getContext().getAuthentication();
-    if (authentication == null) {
-      return null;
-    }
-    UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+    UserDetails userDetails = getUserDetails();
     if (userDetails == null) {
       return null;
     }
-    String username = userDetails.getUsername();
+    // JwtAuthFilter 设置的 principal 已经持有（或者能够延迟加载）登录用户，直接读取，不再查询缓存
+    if (userDetails instanceof SysUserDetails sysUserDetails) {
+      return sysUserDetails.getUser();
+    }
     UserCache userCache = Fn.getBean(UserCache.class);
-    Long id = userCache.getIdByUsername(username);
+    Long id = userCache.getIdByUsername(userDetails.getUsername());
     if (id == null) {
       return null;
     }
     return userCache.getById(id);
   }
+
+  /**
+   * This method is intentionally protected, please use Fn.getLoginUserId() as the only entry.<br>
+   * 只需要用户 id 时使用，无状态模式下不会触发登录用户的延迟加载
+   */
+  protected static @Nullable Long getLoginUserId() {
+    UserDetails userDetails = getUserDetails();
+    if (userDetails instanceof SysUserDetails sysUserDetails
+        && sysUserDetails.getUserId() != null) {
+      return sysUserDetails.getUserId();
+    }
+    UserPo loginUser = getLoginUser();
+    return loginUser == null ? null : loginUser.getId();
+  }
+
+  private static @Nullable UserDetails getUserDetails() {
+    UsernamePasswordAuthenticationToken authentication =
+        (UsernamePasswordAuthenticationToken)
+            SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null) {
+      return null;
+    }
+    return (UserDetails) authentication.getPrincipal();
+  }
 }
@@ -0,0 +1,186 @@
+package cn.huava.common.util;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import org.jspecify.annotations.NullMarked;
+import org.redisson.api.RBatch;
+import org.redisson.client.codec.StringCodec;
+
+/**
+ * 批量的写入和删除，通过一次 Redis 管道（RBatch）执行，由 {@link RedisUtil#batch()} 创建<br>
+ *
+ * <pre>
+ * 1. 操作按加入的顺序发送，不管有多少个操作都只有一次网络往返。
+ * 2. 值使用与 RedisUtil 相同的编码，写入的值可以通过 RedisUtil.get 读取。
+ * 3. 加入时只记下操作，执行时才创建管道，所以同一个批量操作可以执行多次：
+ *    {@link #executeOrDefer()} 在 Redis 不可用时记下来，恢复后重新执行，适合批量修改之后删除缓存。
+ * 4. 管道不是事务，Redis 出错时可能只执行了一部分；重新执行的操作必须是幂等的（写入固定的值、删除）。
+ * 5. 不是线程安全的，在一个线程中加入操作并执行。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class RedisBatch {
+  private final List<Consumer<RBatch>> operations = new ArrayList<>();
+
+  RedisBatch() {}
+
+  /**
+   * 写入一个值
+   *
+   * @param key Key
+   * @param value Value
+   * @return this
+   */
+  public RedisBatch set(String key, Object value) {
+    operations.add(batch -> batch.getBucket(key, RedisUtil.getCodec()).setAsync(value));
+    return this;
+  }
+
+  /**
+   * 写入一个值，带过期时间
+   *
+   * @param key Key
+   * @param value Value
+   * @param ttl Time to live
+   * @return this
+   */
+  public RedisBatch set(String key, Object value, Duration ttl) {
+    operations.add(batch -> batch.getBucket(key, RedisUtil.getCodec()).setAsync(value, ttl));
+    return this;
+  }
+
+  /**
+   * 写入多个值
+   *
+   * @param values key 到值的映射
+   * @return this
+   */
+  public RedisBatch setAll(Map<String, ?> values) {
+    values.forEach(this::set);
+    return this;
+  }
+
+  /**
+   * 写入多个值，过期时间相同
+   *
+   * @param values key 到值的映射
+   * @param ttl Time to live
+   * @return this
+   */
+  public RedisBatch setAll(Map<String, ?> values, Duration ttl) {
+    values.forEach((key, value) -> set(key, value, ttl));
+    return this;
+  }
+
+  /**
+   * 删除一个或多个 key
+   *
+   * @param keys Keys
+   * @return this
+   */
+  public RedisBatch delete(String... keys) {
+    return delete(Arrays.asList(keys));
+  }
+
+  /**
+   * 删除多个 key，每个 key 单独删除，集群模式下不要求在同一个槽
+   *
+   * @param keys Keys
+   * @return this
+   */
+  public RedisBatch delete(Collection<String> keys) {
+    for (String key : keys) {
+      operations.add(batch -> batch.getBucket(key).deleteAsync());
+    }
+    return this;
+  }
+
+  /**
+   * 写入 Map 中的一个值
+   *
+   * @param mapName Map name
+   * @param key Key
+   * @param value Value
+   * @return this
+   */
+  public RedisBatch putMapValue(String mapName, String key, Object value) {
+    operations.add(
+        batch ->
+            batch.<String, Object>getMap(mapName, RedisUtil.getCodec()).fastPutAsync(key, value));
+    return this;
+  }
+
+  /**
+   * 发布一条字符串消息，在同一个管道中排在之前的操作之后
+   *
+   * @param topic Topic name
+   * @param message Message
+   * @return this
+   */
+  public RedisBatch publish(String topic, String message) {
+    operations.add(batch -> batch.getTopic(topic, StringCodec.INSTANCE).publishAsync(message));
+    return this;
+  }
+
+  /** 已经加入的操作数量 */
+  public int size() {
+    return operations.size();
+  }
+
+  public boolean isEmpty() {
+    return operations.isEmpty();
+  }
+
+  /**
+   * 执行加入的所有操作，熔断器打开时快速失败
+   *
+   * @throws cn.huava.common.cache.RedisUnavailableException 熔断器打开时
+   */
+  public void execute() {
+    if (!operations.isEmpty()) {
+      List<Consumer<RBatch>> snapshot = List.copyOf(operations);
+      RedisUtil.getCircuitBreaker().runOrFail(() -> executeNow(snapshot));
+    }
+  }
+
+  /**
+   * 异步执行加入的所有操作
+   *
+   * @return 全部执行完成时完成，熔断器打开时是以 RedisUnavailableException 失败的结果
+   */
+  public CompletionStage<Void> executeAsync() {
+    if (operations.isEmpty()) {
+      return CompletableFuture.completedStage(null);
+    }
+    List<Consumer<RBatch>> snapshot = List.copyOf(operations);
+    return RedisUtil.getCircuitBreaker()
+        .executeAsync(() -> createBatch(snapshot).executeAsync().<Void>thenApply(_ -> null));
+  }
+
+  /**
+   * 执行加入的所有操作，Redis 不可用或者执行失败时记下来，恢复后重新执行，见 {@link RedisCircuitBreaker#runOrDefer}<br>
+   * 只能用于幂等的操作，比如批量修改之后删除缓存
+   */
+  public void executeOrDefer() {
+    if (!operations.isEmpty()) {
+      List<Consumer<RBatch>> snapshot = List.copyOf(operations);
+      RedisUtil.getCircuitBreaker().runOrDefer(() -> executeNow(snapshot));
+    }
+  }
+
+  private static void executeNow(List<Consumer<RBatch>> operations) {
+    createBatch(operations).execute();
+  }
+
+  private static RBatch createBatch(List<Consumer<RBatch>> operations) {
+    RBatch batch = RedisUtil.getRedissonClient().createBatch();
+    operations.forEach(operation -> operation.accept(batch));
+    return batch;
+  }
+}
@@ -0,0 +1,128 @@
+package cn.huava.common.util;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.redisson.api.RTopic;
+import org.redisson.client.codec.StringCodec;
+
+/**
+ * Redis 发布订阅的一个频道，消息为字符串，用于通知所有实例丢弃或者更新本地的副本<br>
+ *
+ * <pre>
+ * 1. 订阅在后台线程中进行，请求线程不会等待；订阅经过熔断器，失败时每隔 SUBSCRIBE_RETRY_DELAY 重试，直到成功。
+ * 2. 订阅成功之前以及 Redis 不可用期间的消息都会丢失，所以使用者必须有兜底（如本地副本定期过期或者重新加载）。
+ * 3. 发布也经过熔断器：{@link #publish} 失败时跳过，{@link #publishOrDefer} 失败时记下来，Redis 恢复后重新发布。
+ * 4. RTopic 和熔断器在第一次使用的线程中获取，之后后台线程直接使用，不再通过 RedisUtil 获取。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+public class RedisChannel {
+  /** 订阅失败之后多久重试 */
+  private static final Duration SUBSCRIBE_RETRY_DELAY = Duration.ofSeconds(5);
+
+  /** 订阅和重试在后台执行，很少并且不着急，所有频道共用一个虚拟线程 */
+  private static final ScheduledExecutorService SUBSCRIBER =
+      Executors.newSingleThreadScheduledExecutor(
+          Thread.ofVirtual().name("redis-channel-subscribe").factory());
+
+  private final String name;
+
+  private final Consumer<String> listener;
+
+  /** 是否已经开始订阅，订阅只提交一次，失败时由后台线程自己重试 */
+  private final AtomicBoolean subscribing = new AtomicBoolean();
+
+  private volatile @Nullable RedisCircuitBreaker circuitBreaker;
+
+  private volatile @Nullable RTopic topic;
+
+  /**
+   * 使用 {@link RedisUtil#getCircuitBreaker()}
+   *
+   * @param name 频道名称
+   * @param listener 收到消息时调用，在 Redisson 的线程中执行，不能阻塞
+   */
+  public RedisChannel(String name, Consumer<String> listener) {
+    this.name = name;
+    this.listener = listener;
+  }
+
+  /**
+   * @param name 频道名称
+   * @param circuitBreaker 订阅和发布时使用的熔断器
+   * @param listener 收到消息时调用，在 Redisson 的线程中执行，不能阻塞
+   */
+  public RedisChannel(String name, RedisCircuitBreaker circuitBreaker, Consumer<String> listener) {
+    this(name, listener);
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /** 还没有订阅时在后台订阅，立即返回 */
+  public void subscribeIfNecessary() {
+    if (!subscribing.get() && subscribing.compareAndSet(false, true)) {
+      RTopic current = getTopic();
+      RedisCircuitBreaker breaker = getCircuitBreaker();
+      SUBSCRIBER.execute(() -> subscribe(current, breaker));
+    }
+  }
+
+  /**
+   * 发布一条消息，Redis 不可用或者发布失败时跳过
+   *
+   * @return 是否发布成功
+   */
+  public boolean publish(String message) {
+    subscribeIfNecessary();
+    RTopic current = getTopic();
+    return getCircuitBreaker().run(() -> current.publish(message));
+  }
+
+  /** 发布一条消息，Redis 不可用或者发布失败时记下来，恢复后重新发布，只能用于重复收到也没有关系的消息 */
+  public void publishOrDefer(String message) {
+    subscribeIfNecessary();
+    RTopic current = getTopic();
+    getCircuitBreaker().runOrDefer(() -> current.publish(message));
+  }
+
+  private void subscribe(RTopic current, RedisCircuitBreaker breaker) {
+    try {
+      breaker.runOrFail(
+          () -> current.addListener(String.class, (_, message) -> listener.accept(message)));
+    } catch (RuntimeException e) {
+      log.warn("Failed to subscribe to {}, retry in {}", name, SUBSCRIBE_RETRY_DELAY, e);
+      SUBSCRIBER.schedule(
+          () -> subscribe(current, breaker),
+          SUBSCRIBE_RETRY_DELAY.toMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private RTopic getTopic() {
+    RTopic current = topic;
+    if (current == null) {
+      current = RedisUtil.getRedissonClient().getTopic(name, StringCodec.INSTANCE);
+      topic = current;
+    }
+    return current;
+  }
+
+  private RedisCircuitBreaker getCircuitBreaker() {
+    RedisCircuitBreaker current = circuitBreaker;
+    if (current == null) {
+      current = RedisUtil.getCircuitBreaker();
+      circuitBreaker = current;
+    }
+    return current;
+  }
+}
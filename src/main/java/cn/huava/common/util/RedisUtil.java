@@ -3,6 +3,9 @@ package cn.huava.common.util;
 import static cn.huava.common.constant.CommonConstant.ENV_PROD;
 import static cn.huava.common.constant.CommonConstant.ENV_PRODUCTION;
 
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.cache.codec.BinaryCodec;
+import cn.huava.common.cache.codec.BinaryRedissonCodec;
 import cn.hutool.v7.core.convert.ConvertUtil;
 import cn.hutool.v7.core.lang.Assert;
 import cn.hutool.v7.core.math.NumberUtil;
@@ -10,19 +13,32 @@ import cn.hutool.v7.core.util.RandomUtil;
 import cn.hutool.v7.extra.spring.SpringUtil;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.jspecify.annotations.NonNull;
 import org.redisson.api.*;
+import org.redisson.client.codec.Codec;
 import org.springframework.core.env.Environment;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisServerCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 /**
+ * Redis 工具类<br>
+ * get、set、delete、hasKey 和 Map 相关的方法都经过 {@link RedisCircuitBreaker}，Redis 不可用时快速失败，
+ * 抛出 RedisUnavailableException，不会每次都等到超时。<br>
+ * 操作多个 key 时使用 getAll、setAll、deleteAll 或者 {@link #batch()}，通过一次管道完成，而不是每个 key 一次网络往返；
+ * 以 Async 结尾的方法不等待 Redis 的响应，熔断器打开时返回失败的 CompletionStage。
+ *
  * @author Camio1945
  */
 public class RedisUtil {
   private static RedissonClient redissonClient;
 
+  private static Codec codec;
+
+  private static RedisCircuitBreaker circuitBreaker;
+
   private RedisUtil() {}
 
   // ============================ Common ==============================
@@ -35,7 +51,7 @@ public class RedisUtil {
    */
   public static boolean hasKey(String key) {
     RBucket<Object> bucket = getRedissonClient().getBucket(key);
-    return bucket.isExists();
+    return getCircuitBreaker().execute(bucket::isExists);
   }
 
   public static RedissonClient getRedissonClient() {
@@ -46,6 +62,29 @@ public class RedisUtil {
     return redissonClient;
   }
 
+  /** get、set 和 Map 相关的方法使用的编码，与缓存相同，见 {@link BinaryCodec}；Map 的字段名仍然使用以前的编码 */
+  public static Codec getCodec() {
+    if (codec == null) {
+      codec =
+          SingleFlightUtil.execute(
+              "redisUtilCodec",
+              () ->
+                  new BinaryRedissonCodec(
+                      Fn.getBean(BinaryCodec.class), getRedissonClient().getConfig().getCodec()));
+    }
+    return codec;
+  }
+
+  /** 访问 Redis 时使用的熔断器，与缓存共用一个 */
+  public static RedisCircuitBreaker getCircuitBreaker() {
+    if (circuitBreaker == null) {
+      circuitBreaker =
+          SingleFlightUtil.execute(
+              "redisCircuitBreaker", () -> Fn.getBean(RedisCircuitBreaker.class));
+    }
+    return circuitBreaker;
+  }
+
   /** 清空非生产环境的 Redis 数据库（由于该操作非常危险，因此不允许在生产环境下执行） */
   public static void flushNonProductionDb() {
     String env = SpringUtil.getProperty("spring.profiles.active");
@@ -53,12 +92,19 @@ public class RedisUtil {
     getRedissonClient().getKeys().flushdb();
   }
 
+  /**
+   * 整个 Redis 实例的命中率，包括所有缓存和其他使用同一个 Redis 的应用，单个缓存的统计见 /sys/monitor/cacheStats
+   *
+   * @return 百分比，保留 4 位小数
+   */
   public static double getHitRatioPercentage() {
-    RedisConnection connection =
+    Properties info;
+    try (RedisConnection connection =
         Objects.requireNonNull(Fn.getBean(StringRedisTemplate.class).getConnectionFactory())
-            .getConnection();
-    RedisServerCommands redisServerCommands = connection.serverCommands();
-    Properties info = redisServerCommands.info();
+            .getConnection()) {
+      RedisServerCommands redisServerCommands = connection.serverCommands();
+      info = redisServerCommands.info();
+    }
     long keyspaceHits = ConvertUtil.toLong(info.getProperty("keyspace_hits"));
     long keyspaceMisses = ConvertUtil.toLong(info.getProperty("keyspace_misses"));
     long total = keyspaceHits + keyspaceMisses;
@@ -99,7 +145,8 @@ public class RedisUtil {
    * @param keys Keys
    */
   public static void delete(@NonNull String... keys) {
-    getRedissonClient().getKeys().delete(keys);
+    RKeys redisKeys = getRedissonClient().getKeys();
+    getCircuitBreaker().execute(() -> redisKeys.delete(keys));
   }
 
   /**
@@ -109,8 +156,8 @@ public class RedisUtil {
    * @return Value associated with the key
    */
   public static <T> T get(String key) {
-    RBucket<T> bucket = getRedissonClient().getBucket(key);
-    return bucket.get();
+    RBucket<T> bucket = getRedissonClient().getBucket(key, getCodec());
+    return getCircuitBreaker().execute(bucket::get);
   }
 
   /**
@@ -120,12 +167,10 @@ public class RedisUtil {
    * @param value Value
    */
   public static void set(String key, Object value) {
-    RBucket<Object> bucket = getRedissonClient().getBucket(key);
-    bucket.set(value);
+    RBucket<Object> bucket = getRedissonClient().getBucket(key, getCodec());
+    getCircuitBreaker().runOrFail(() -> bucket.set(value));
   }
 
-  // ============================ Map ==============================
-
   /**
    * Set a key-value pair in Redis with expiration time.
    *
@@ -134,10 +179,12 @@ public class RedisUtil {
    * @param ttlInSeconds Time to live (seconds)
    */
   public static void set(String key, Object value, long ttlInSeconds) {
-    RBucket<Object> bucket = getRedissonClient().getBucket(key);
-    bucket.set(value, Duration.ofSeconds(ttlInSeconds));
+    RBucket<Object> bucket = getRedissonClient().getBucket(key, getCodec());
+    getCircuitBreaker().runOrFail(() -> bucket.set(value, Duration.ofSeconds(ttlInSeconds)));
   }
 
+  // ============================ Map ==============================
+
   /**
    * Get a value from a Redis Map by key.
    *
@@ -146,8 +193,8 @@ public class RedisUtil {
    * @return Value associated with the key
    */
   public static <T> T getMapValue(String mapName, String key) {
-    RMap<String, T> map = getRedissonClient().getMap(mapName);
-    return map.get(key);
+    RMap<String, T> map = getRedissonClient().getMap(mapName, getCodec());
+    return getCircuitBreaker().execute(() -> map.get(key));
   }
 
   /**
@@ -158,8 +205,8 @@ public class RedisUtil {
    * @param value Value
    */
   public static void putMapValue(String mapName, String key, Object value) {
-    RMap<String, Object> map = getRedissonClient().getMap(mapName);
-    map.put(key, value);
+    RMap<String, Object> map = getRedissonClient().getMap(mapName, getCodec());
+    getCircuitBreaker().runOrFail(() -> map.put(key, value));
   }
 
   /**
@@ -169,7 +216,169 @@ public class RedisUtil {
    * @return Set of keys
    */
   public static Set<String> getMapKeys(String mapName) {
-    RMap<String, Object> map = getRedissonClient().getMap(mapName);
-    return map.keySet();
+    RMap<String, Object> map = getRedissonClient().getMap(mapName, getCodec());
+    // keySet() 是遍历时才访问 Redis 的视图，这里一次读取完，才能通过熔断器
+    return getCircuitBreaker().execute(map::readAllKeySet);
+  }
+
+  // ============================ Batch ==============================
+
+  /**
+   * 创建批量操作，加入的写入和删除通过一次 Redis 管道执行，见 {@link RedisBatch}
+   *
+   * @return 空的批量操作
+   */
+  public static RedisBatch batch() {
+    return new RedisBatch();
+  }
+
+  /**
+   * Get the values of multiple keys from Redis in one pipeline.
+   *
+   * @param keys Keys
+   * @return 有值的 key 到值的映射，按 keys 的顺序，不存在的 key 不包含在内
+   */
+  public static <T> Map<String, T> getAll(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return new LinkedHashMap<>();
+    }
+    return getCircuitBreaker()
+        .execute(
+            () -> {
+              RBatch batch = getRedissonClient().createBatch();
+              Map<String, RFuture<T>> futures = queueGets(batch, keys);
+              batch.execute();
+              return collectValues(futures);
+            });
+  }
+
+  /**
+   * Set multiple key-value pairs in Redis in one pipeline.
+   *
+   * @param values key 到值的映射
+   */
+  public static void setAll(Map<String, ?> values) {
+    batch().setAll(values).execute();
+  }
+
+  /**
+   * Set multiple key-value pairs in Redis in one pipeline with the same expiration time.
+   *
+   * @param values key 到值的映射
+   * @param ttlInSeconds Time to live (seconds)
+   */
+  public static void setAll(Map<String, ?> values, long ttlInSeconds) {
+    batch().setAll(values, Duration.ofSeconds(ttlInSeconds)).execute();
+  }
+
+  /**
+   * Delete multiple keys from Redis in one pipeline, the keys can be in different cluster slots.
+   *
+   * @param keys Keys
+   * @return 实际删除的数量
+   */
+  public static long deleteAll(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    return getCircuitBreaker()
+        .execute(
+            () -> {
+              RBatch batch = getRedissonClient().createBatch();
+              List<RFuture<Boolean>> futures = new ArrayList<>(keys.size());
+              keys.forEach(key -> futures.add(batch.getBucket(key).deleteAsync()));
+              batch.execute();
+              return futures.stream().filter(future -> future.toCompletableFuture().join()).count();
+            });
+  }
+
+  // ============================ Async ==============================
+
+  /**
+   * Get the value of a key from Redis asynchronously.
+   *
+   * @param key Key
+   * @return Value associated with the key
+   */
+  public static <T> CompletionStage<T> getAsync(String key) {
+    RBucket<T> bucket = getRedissonClient().getBucket(key, getCodec());
+    return getCircuitBreaker().executeAsync(bucket::getAsync);
+  }
+
+  /**
+   * Get the values of multiple keys from Redis asynchronously in one pipeline.
+   *
+   * @param keys Keys
+   * @return 与 {@link #getAll} 相同
+   */
+  public static <T> CompletionStage<Map<String, T>> getAllAsync(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return CompletableFuture.completedStage(new LinkedHashMap<>());
+    }
+    return getCircuitBreaker()
+        .executeAsync(
+            () -> {
+              RBatch batch = getRedissonClient().createBatch();
+              Map<String, RFuture<T>> futures = queueGets(batch, keys);
+              return batch.executeAsync().thenApply(_ -> collectValues(futures));
+            });
+  }
+
+  /**
+   * Set a key-value pair in Redis asynchronously.
+   *
+   * @param key Key
+   * @param value Value
+   * @return 写入完成时完成
+   */
+  public static CompletionStage<Void> setAsync(String key, Object value) {
+    RBucket<Object> bucket = getRedissonClient().getBucket(key, getCodec());
+    return getCircuitBreaker().executeAsync(() -> bucket.setAsync(value));
+  }
+
+  /**
+   * Set a key-value pair in Redis asynchronously with expiration time.
+   *
+   * @param key Key
+   * @param value Value
+   * @param ttlInSeconds Time to live (seconds)
+   * @return 写入完成时完成
+   */
+  public static CompletionStage<Void> setAsync(String key, Object value, long ttlInSeconds) {
+    RBucket<Object> bucket = getRedissonClient().getBucket(key, getCodec());
+    return getCircuitBreaker()
+        .executeAsync(() -> bucket.setAsync(value, Duration.ofSeconds(ttlInSeconds)));
+  }
+
+  /**
+   * Delete a key (or keys) from Redis asynchronously.
+   *
+   * @param keys Keys
+   * @return 实际删除的数量
+   */
+  public static CompletionStage<Long> deleteAsync(@NonNull String... keys) {
+    RKeys redisKeys = getRedissonClient().getKeys();
+    return getCircuitBreaker().executeAsync(() -> redisKeys.deleteAsync(keys));
+  }
+
+  private static <T> Map<String, RFuture<T>> queueGets(RBatch batch, Collection<String> keys) {
+    Map<String, RFuture<T>> futures = LinkedHashMap.newLinkedHashMap(keys.size());
+    for (String key : keys) {
+      futures.put(key, batch.<T>getBucket(key, getCodec()).getAsync());
+    }
+    return futures;
+  }
+
+  /** 管道执行完成之后调用，每个 future 都已经完成 */
+  private static <T> Map<String, T> collectValues(Map<String, RFuture<T>> futures) {
+    Map<String, T> values = LinkedHashMap.newLinkedHashMap(futures.size());
+    futures.forEach(
+        (key, future) -> {
+          T value = future.toCompletableFuture().join();
+          if (value != null) {
+            values.put(key, value);
+          }
+        });
+    return values;
   }
 }
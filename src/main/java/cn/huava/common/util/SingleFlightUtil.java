@@ -1,7 +1,9 @@
 package cn.huava.common.util;
 
 import cn.hutool.v7.core.exception.ExceptionUtil;
+import java.time.Duration;
 import java.util.concurrent.*;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Singleton mode tool class, used to solve the problem of resource contention in multithreading.
@@ -11,6 +13,14 @@ import java.util.concurrent.*;
  * threads return the same object. <br>
  *
  * <pre>
+ * 1. 每个 key 对应一个 CompletableFuture，key 已经在执行时直接复用，不会为每次调用创建新的任务对象。
+ * 2. {@link #execute} 在调用方的线程中执行，其他线程同步等待，可以指定等待的上限。
+ * 3. {@link #executeAsync} 在虚拟线程中执行，每个调用方得到各自的 future：可以单独设置超时或者取消，
+ *    只是放弃等待，不影响其他调用方和正在执行的任务；还可以在完成后把结果保留一小段时间，紧接着到达的调用直接使用。
+ * 4. 等待都是通过 CompletableFuture 完成的，虚拟线程等待时会让出载体线程。
+ * </pre>
+ *
+ * <pre>
  * Kudos to <a href="https://pkg.go.dev/golang.org/x/sync/singleflight"> golang's singleflight</a>
  * </pre>
  *
@@ -18,37 +28,99 @@ import java.util.concurrent.*;
  */
 public class SingleFlightUtil {
 
-  @SuppressWarnings("rawtypes")
-  private static final ConcurrentHashMap<String, FutureTask> KEY_TO_FUTURE_TASK_MAP =
+  private static final ConcurrentHashMap<String, CompletableFuture<?>> KEY_TO_FUTURE_MAP =
       new ConcurrentHashMap<>();
 
+  /** 异步执行的任务通常是阻塞的 IO（查询数据库、Redis），每个任务一个虚拟线程 */
+  private static final ExecutorService ASYNC_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
   private SingleFlightUtil() {}
 
-  @SuppressWarnings("unchecked")
   public static <T> T execute(String key, Callable<T> fn) {
-    FutureTask<T> task = new FutureTask<>(fn);
-    FutureTask<T> existingTask = KEY_TO_FUTURE_TASK_MAP.putIfAbsent(key, task);
-    try {
-      // 如果 key 不存在，则 existingTask 为 null，此时需要执行 task.run()，否则直接返回 existingTask.get()
-      if (existingTask == null) {
-        T res;
-        try {
-          task.run();
-          res = task.get();
-        } finally {
-          KEY_TO_FUTURE_TASK_MAP.remove(key);
-        }
-        return res;
-      } else {
-        return existingTask.get();
+    return execute(key, fn, null);
+  }
+
+  /**
+   * 同步执行，没有其他线程在执行这个 key 时在当前线程中执行
+   *
+   * @param timeout 等待其他线程的结果的上限，为 null 时一直等待；当前线程自己执行时不受限制
+   * @throws RuntimeException 等待超时时 cause 为 TimeoutException，执行失败时 cause 为 ExecutionException
+   */
+  public static <T> T execute(String key, Callable<T> fn, @Nullable Duration timeout) {
+    CompletableFuture<T> future = getFuture(key);
+    if (future == null) {
+      CompletableFuture<T> created = new CompletableFuture<>();
+      future = putIfAbsent(key, created);
+      if (future == null) {
+        run(key, fn, created, Duration.ZERO);
+        future = created;
       }
+    }
+    try {
+      return timeout == null ? future.get() : future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
     } catch (InterruptedException e) {
       // The code here is not covered during unit testing and can be ignored
       Thread.currentThread().interrupt();
       throw ExceptionUtil.wrapRuntime(e);
-    } catch (ExecutionException e) {
-      // The code here is not covered during unit testing and can be ignored
+    } catch (ExecutionException | TimeoutException e) {
       throw ExceptionUtil.wrapRuntime(e);
     }
   }
+
+  public static <T> CompletableFuture<T> executeAsync(String key, Callable<T> fn) {
+    return executeAsync(key, fn, null, Duration.ZERO);
+  }
+
+  /**
+   * 异步执行，没有其他调用方在执行这个 key 时在虚拟线程中执行
+   *
+   * @param timeout 当前调用方等待的上限，超时后返回的 future 以 TimeoutException 结束，为 null 时一直等待
+   * @param shareWindow 执行成功后结果继续保留的时间，这段时间内的调用直接使用这个结果，为 0 时完成后立即移除；失败的结果不保留
+   * @return 当前调用方自己的 future，取消或者超时都不会影响其他调用方，也不会中断正在执行的任务
+   */
+  public static <T> CompletableFuture<T> executeAsync(
+      String key, Callable<T> fn, @Nullable Duration timeout, Duration shareWindow) {
+    CompletableFuture<T> future = getFuture(key);
+    if (future == null) {
+      CompletableFuture<T> created = new CompletableFuture<>();
+      future = putIfAbsent(key, created);
+      if (future == null) {
+        ASYNC_EXECUTOR.execute(() -> run(key, fn, created, shareWindow));
+        future = created;
+      }
+    }
+    CompletableFuture<T> own = future.copy();
+    return timeout == null ? own : own.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private static <T> void run(
+      String key, Callable<T> fn, CompletableFuture<T> future, Duration shareWindow) {
+    T value;
+    try {
+      value = fn.call();
+    } catch (Throwable e) {
+      // 先移除再完成，调用方看到失败之后再调用一定会重新执行
+      KEY_TO_FUTURE_MAP.remove(key, future);
+      future.completeExceptionally(e);
+      return;
+    }
+    if (shareWindow.isZero()) {
+      KEY_TO_FUTURE_MAP.remove(key, future);
+    } else {
+      CompletableFuture.delayedExecutor(shareWindow.toNanos(), TimeUnit.NANOSECONDS)
+          .execute(() -> KEY_TO_FUTURE_MAP.remove(key, future));
+    }
+    future.complete(value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> @Nullable CompletableFuture<T> getFuture(String key) {
+    return (CompletableFuture<T>) KEY_TO_FUTURE_MAP.get(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> @Nullable CompletableFuture<T> putIfAbsent(
+      String key, CompletableFuture<T> future) {
+    return (CompletableFuture<T>) KEY_TO_FUTURE_MAP.putIfAbsent(key, future);
+  }
 }
@@ -0,0 +1,37 @@
+package cn.huava.common.util;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关的工具类
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class TransactionUtil {
+  private TransactionUtil() {}
+
+  /**
+   * 如果当前在事务中，在事务结束（提交或回滚）之后执行，否则不执行<br>
+   * 用于删除缓存：事务提交之前其他线程读到的仍然是旧数据，可能在删除之后又被写回缓存，所以提交后需要再删除一次；
+   * 回滚时事务内读到的未提交数据也可能被写入了缓存，同样需要删除。
+   *
+   * @param action 要执行的操作
+   * @return 是否在事务中，即是否会在事务结束之后执行
+   */
+  public static boolean afterCompletion(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return false;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            action.run();
+          }
+        });
+    return true;
+  }
+}
@@ -0,0 +1,135 @@
+package cn.huava.sys.auth;
+
+import cn.huava.common.util.RedisChannel;
+import cn.huava.sys.mapper.RoleClosureMapper;
+import cn.huava.sys.pojo.po.RoleClosurePo;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 角色继承关系在内存中的快照，由 sys_role_closure 加载，鉴权时不需要递归查询或遍历角色树<br>
+ *
+ * <pre>
+ * 1. 角色继承其所有上级角色的权限，用户的有效角色为其角色加上这些角色的所有上级角色。
+ * 2. 快照只保存有上级的角色，大多数角色没有上级，此时 {@link #expand} 直接返回传入的列表，不创建对象。
+ * 3. 角色的上级变化后调用 {@link #refresh()}，通过 Redis 的发布订阅通知所有实例丢弃快照，下次使用时重新加载。
+ * 4. 通知可能丢失（如 Redis 不可用或者还没有订阅成功），所以快照最多使用 local_ttl_seconds，之后也会重新加载。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+@Component
+@RequiredArgsConstructor
+public class RoleHierarchy {
+  private static final String REFRESH_TOPIC = "sys:role:hierarchy:topic";
+
+  private final RoleClosureMapper roleClosureMapper;
+
+  /** 每次刷新加一，用于判断加载期间是否有刷新 */
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile @Nullable Snapshot snapshot;
+
+  /** 快照最多使用多少秒，与本地缓存相同 */
+  @Value("${project.cache.local_ttl_seconds:60}")
+  private long maxAgeSeconds;
+
+  private final RedisChannel channel = new RedisChannel(REFRESH_TOPIC, _ -> discard());
+
+  /**
+   * 获取有效角色
+   *
+   * @param roleIds 用户直接拥有的角色 id
+   * @return 传入的角色 id 加上它们所有上级角色的 id，不重复，都没有上级时直接返回传入的列表
+   */
+  public List<Long> expand(List<Long> roleIds) {
+    Map<Long, List<Long>> ancestors = getAncestors();
+    if (!hasAnyAncestor(ancestors, roleIds)) {
+      return roleIds;
+    }
+    Set<Long> expanded = new LinkedHashSet<>(roleIds);
+    for (Long roleId : roleIds) {
+      expanded.addAll(ancestors.getOrDefault(roleId, List.of()));
+    }
+    return List.copyOf(expanded);
+  }
+
+  /** 角色的上级发生变化后调用，所有实例都会在下次使用时重新加载 */
+  public void refresh() {
+    discard();
+    channel.publishOrDefer("refresh");
+  }
+
+  private static boolean hasAnyAncestor(Map<Long, List<Long>> ancestors, List<Long> roleIds) {
+    if (ancestors.isEmpty()) {
+      return false;
+    }
+    for (Long roleId : roleIds) {
+      if (ancestors.containsKey(roleId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Map<Long, List<Long>> getAncestors() {
+    long maxAgeNanos = TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+    Snapshot current = snapshot;
+    if (current != null && !current.isOlderThan(maxAgeNanos)) {
+      return current.ancestorsByRoleId();
+    }
+    channel.subscribeIfNecessary();
+    synchronized (this) {
+      current = snapshot;
+      if (current != null && !current.isOlderThan(maxAgeNanos)) {
+        return current.ancestorsByRoleId();
+      }
+      long expectedGeneration = generation.get();
+      long loadedAt = System.nanoTime();
+      Map<Long, List<Long>> ancestors = load();
+      if (generation.get() == expectedGeneration) {
+        snapshot = new Snapshot(ancestors, loadedAt);
+      }
+      return ancestors;
+    }
+  }
+
+  private Map<Long, List<Long>> load() {
+    List<RoleClosurePo> links =
+        roleClosureMapper.selectList(
+            new LambdaQueryWrapper<RoleClosurePo>()
+                .gt(RoleClosurePo::getDepth, 0)
+                .orderByAsc(RoleClosurePo::getDepth));
+    Map<Long, List<Long>> ancestors = new HashMap<>();
+    for (RoleClosurePo link : links) {
+      ancestors
+          .computeIfAbsent(link.getDescendantId(), _ -> new ArrayList<>())
+          .add(link.getAncestorId());
+    }
+    ancestors.replaceAll((_, ids) -> List.copyOf(ids));
+    return Map.copyOf(ancestors);
+  }
+
+  private void discard() {
+    generation.incrementAndGet();
+    snapshot = null;
+  }
+
+  /**
+   * @param ancestorsByRoleId 角色 id 到其所有上级角色 id 的映射，由近及远，不包含没有上级的角色
+   * @param loadedAt 开始加载的时间，取自 System.nanoTime()
+   */
+  private record Snapshot(Map<Long, List<Long>> ancestorsByRoleId, long loadedAt) {
+    boolean isOlderThan(long maxAgeNanos) {
+      return System.nanoTime() - loadedAt >= maxAgeNanos;
+    }
+  }
+}
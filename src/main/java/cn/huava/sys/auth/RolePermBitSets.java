@@ -0,0 +1,145 @@
+package cn.huava.sys.auth;
+
+import cn.huava.common.util.Fn;
+import cn.huava.common.util.RedisChannel;
+import cn.huava.sys.cache.RoleCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.stereotype.Component;
+
+/**
+ * 角色拥有的权限位图，下标为 {@link UriPermTree.Entry#index()}，鉴权时只需要判断一个位<br>
+ *
+ * <pre>
+ * 1. 每个角色的位图由 {@link RoleCache} 中的权限 uri 转换而来，保存在本地，多个角色同时缺失时批量加载。
+ * 2. 用户的权限位图是其所有角色位图的并集，按角色 id 列表缓存在本地，角色相同的用户共用同一个位图，
+ *    用户的角色变化后角色 id 列表也随之变化，不需要单独失效。
+ * 3. 权限序号只在同一棵 {@link UriPermTree} 内有效，基数树重新编译后所有位图一起丢弃。
+ * 4. 角色的权限变化后调用 {@link #invalidate()}，通过 Redis 的发布订阅通知所有实例丢弃位图；
+ *    消息可能丢失，所以位图在写入一段时间后也会过期，作为兜底。
+ * 5. 位图创建后不再修改，可以被多个线程同时读取。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+@Component
+@RequiredArgsConstructor
+public class RolePermBitSets {
+  private static final String INVALIDATE_TOPIC = "sys:role:permBits:topic";
+
+  private static final int MAX_SIZE = 10_000;
+
+  /** 位图的最长存活时间，也是发布订阅消息丢失时最长的滞后时间 */
+  private static final Duration TTL = Duration.ofMinutes(1);
+
+  private final RoleCache roleCache;
+
+  private volatile Snapshot snapshot = new Snapshot(UriPermTree.empty());
+
+  private final RedisChannel channel = new RedisChannel(INVALIDATE_TOPIC, _ -> discard());
+
+  /**
+   * 判断角色列表中是否有任意一个角色拥有该权限
+   *
+   * @param tree 匹配出 perm 的基数树
+   * @param roleIds 用户的角色 id 列表
+   * @param perm 请求匹配到的权限
+   */
+  public boolean hasPerm(UriPermTree tree, List<Long> roleIds, UriPermTree.Entry perm) {
+    if (roleIds.isEmpty()) {
+      return false;
+    }
+    return getSnapshot(tree).getUserBits(roleIds).get(perm.index());
+  }
+
+  /** 角色的权限发生变化后调用，所有实例都会丢弃已经计算好的位图 */
+  public void invalidate() {
+    discard();
+    channel.publishOrDefer("invalidate");
+  }
+
+  private Snapshot getSnapshot(UriPermTree tree) {
+    Snapshot current = snapshot;
+    if (current.tree == tree) {
+      return current;
+    }
+    channel.subscribeIfNecessary();
+    synchronized (this) {
+      current = snapshot;
+      if (current.tree != tree) {
+        current = new Snapshot(tree);
+        snapshot = current;
+      }
+      return current;
+    }
+  }
+
+  private void discard() {
+    synchronized (this) {
+      snapshot = new Snapshot(snapshot.tree);
+    }
+  }
+
+  /** 基于同一棵基数树计算出来的位图 */
+  private final class Snapshot {
+    private final UriPermTree tree;
+
+    private final Cache<Long, BitSet> roleBits = newCache();
+
+    private final Cache<List<Long>, BitSet> userBits = newCache();
+
+    private Snapshot(UriPermTree tree) {
+      this.tree = tree;
+    }
+
+    private BitSet getUserBits(List<Long> roleIds) {
+      if (roleIds.size() == 1) {
+        return getRoleBits(roleIds.getFirst());
+      }
+      BitSet bits = userBits.getIfPresent(roleIds);
+      return bits != null ? bits : userBits.get(List.copyOf(roleIds), this::union);
+    }
+
+    /** 没有位图的角色通过 {@link RoleCache#getPermUrisByRoleIds} 一次批量加载 */
+    private BitSet union(List<Long> roleIds) {
+      List<Long> missedIds =
+          roleIds.stream().filter(id -> roleBits.getIfPresent(id) == null).toList();
+      if (!missedIds.isEmpty()) {
+        roleCache
+            .getPermUrisByRoleIds(missedIds)
+            .forEach((roleId, uris) -> roleBits.put(roleId, toBits(uris)));
+      }
+      BitSet bits = new BitSet(tree.size());
+      for (Long roleId : roleIds) {
+        bits.or(getRoleBits(roleId));
+      }
+      return bits;
+    }
+
+    private BitSet getRoleBits(Long roleId) {
+      return roleBits.get(roleId, id -> toBits(roleCache.getPermUrisByRoleId(id)));
+    }
+
+    private BitSet toBits(Set<String> uris) {
+      BitSet bits = new BitSet(tree.size());
+      for (String uri : uris) {
+        UriPermTree.Entry entry = Fn.isBlank(uri) ? null : tree.getByUri(uri);
+        if (entry != null) {
+          bits.set(entry.index());
+        }
+      }
+      return bits;
+    }
+  }
+
+  private static <K> Cache<K, BitSet> newCache() {
+    return Caffeine.newBuilder().maximumSize(MAX_SIZE).expireAfterWrite(TTL).build();
+  }
+}
@@ -1,22 +1,90 @@
 package cn.huava.sys.auth;
 
+import cn.huava.sys.pojo.dto.UserAuthDto;
 import cn.huava.sys.pojo.po.UserPo;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import org.jspecify.annotations.Nullable;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 /**
- * used by spring
+ * used by spring<br>
+ * 由 JwtAuthFilter 在每个请求开始时创建并放入 SecurityContextHolder，只在当前请求（当前线程）内使用，
+ * 因此解析出的登录用户直接保存在字段中，同一个请求内多次获取登录用户不会重复查询缓存。
  *
  * @author Camio1945
  */
 public class SysUserDetails implements UserDetails {
-  private final UserPo userPo;
   private final Collection<? extends GrantedAuthority> authorities;
 
+  /** 无状态模式下从 access token 中取出的角色 id，其他情况下为 null，由使用方自行查询 */
+  private final @Nullable List<Long> roleIds;
+
+  private final @Nullable Long userId;
+
+  private final @Nullable String username;
+
+  /** 缓存中的用户是否启用，为 null 时从完整的用户信息中读取 */
+  private final @Nullable Boolean enabled;
+
+  /** 登录用户，延迟加载时第一次使用才有值 */
+  private @Nullable UserPo userPo;
+
+  private @Nullable Supplier<@Nullable UserPo> userLoader;
+
   public SysUserDetails(UserPo userPo, Collection<? extends GrantedAuthority> authorities) {
+    this(userPo, authorities, null);
+  }
+
+  /** 已经查询到完整的用户信息时使用 */
+  public SysUserDetails(
+      UserPo userPo,
+      Collection<? extends GrantedAuthority> authorities,
+      @Nullable List<Long> roleIds) {
     this.userPo = userPo;
     this.authorities = authorities;
+    this.roleIds = roleIds;
+    this.userId = null;
+    this.username = null;
+    this.enabled = null;
+  }
+
+  /**
+   * 从缓存中读取到鉴权信息时使用：用户 id、用户名、是否启用直接可用，完整的用户信息在第一次使用时才读取
+   *
+   * @param userLoader 加载完整的用户信息，最多调用一次
+   */
+  public SysUserDetails(
+      UserAuthDto auth,
+      Collection<? extends GrantedAuthority> authorities,
+      Supplier<@Nullable UserPo> userLoader) {
+    this.userId = auth.id();
+    this.username = auth.username();
+    this.enabled = auth.enabled();
+    this.roleIds = null;
+    this.authorities = authorities;
+    this.userLoader = userLoader;
+  }
+
+  /**
+   * 无状态模式下使用：只知道 token 中的用户 id、用户名和角色 id，完整的用户信息在第一次使用时才加载
+   *
+   * @param userLoader 加载完整的用户信息，最多调用一次
+   */
+  public SysUserDetails(
+      long userId,
+      String username,
+      List<Long> roleIds,
+      Collection<? extends GrantedAuthority> authorities,
+      Supplier<@Nullable UserPo> userLoader) {
+    this.userId = userId;
+    this.username = username;
+    this.roleIds = roleIds;
+    this.enabled = null;
+    this.authorities = authorities;
+    this.userLoader = userLoader;
   }
 
   @Override
@@ -26,16 +94,48 @@ public class SysUserDetails implements UserDetails {
 
   @Override
   public String getPassword() {
-    return userPo.getPassword();
+    UserPo user = getUser();
+    return user == null ? null : user.getPassword();
   }
 
   @Override
   public String getUsername() {
-    return userPo.getUsername();
+    if (userPo == null && username != null) {
+      return username;
+    }
+    UserPo user = getUser();
+    return user == null ? null : user.getUsername();
   }
 
   @Override
   public boolean isEnabled() {
-    return userPo.getIsEnabled();
+    if (userPo == null && enabled != null) {
+      return enabled;
+    }
+    UserPo user = getUser();
+    return user != null && user.getIsEnabled();
+  }
+
+  /** 用户 id，不会触发延迟加载，可能为 null */
+  public @Nullable Long getUserId() {
+    return userPo != null ? userPo.getId() : userId;
+  }
+
+  public @Nullable List<Long> getRoleIds() {
+    return roleIds;
+  }
+
+  /**
+   * 获取登录用户，延迟加载时第一次调用会加载并保存下来，之后直接返回
+   *
+   * @return 登录用户，用户不存在时为 null
+   */
+  public @Nullable UserPo getUser() {
+    Supplier<@Nullable UserPo> loader = userLoader;
+    if (userPo == null && loader != null) {
+      userLoader = null;
+      userPo = loader.get();
+    }
+    return userPo;
   }
 }
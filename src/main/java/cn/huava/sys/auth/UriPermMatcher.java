@@ -0,0 +1,121 @@
+package cn.huava.sys.auth;
+
+import cn.huava.common.util.Fn;
+import cn.huava.common.util.RedisChannel;
+import cn.huava.sys.mapper.PermMapper;
+import cn.huava.sys.pojo.po.PermPo;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把请求匹配到 sys_perm 中注册的权限上，供 UriAuthFilter 使用<br>
+ *
+ * <pre>
+ * 1. 启动完成后把所有未删除的权限编译成 {@link UriPermTree}，之后每个请求的匹配都不需要查询数据库或 Redis。
+ * 2. 权限新增、修改、删除后调用 {@link #refresh()}，通过 Redis 的发布订阅通知所有实例丢弃旧的基数树，下次匹配时重新编译。
+ * 3. 编译期间如果又收到了刷新通知，编译出来的基数树只用于本次匹配，不会保存下来，避免保存了旧的权限。
+ * 4. 通知可能丢失（如 Redis 不可用或者还没有订阅成功），所以基数树最多使用 local_ttl_seconds，之后也会重新编译。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+@Component
+@RequiredArgsConstructor
+public class UriPermMatcher {
+  private static final String REFRESH_TOPIC = "sys:perm:uriTree:topic";
+
+  private final PermMapper permMapper;
+
+  /** 每次刷新加一，用于判断编译期间是否有刷新 */
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile @Nullable CompiledTree compiled;
+
+  /** 基数树最多使用多少秒，与本地缓存相同 */
+  @Value("${project.cache.local_ttl_seconds:60}")
+  private long maxAgeSeconds;
+
+  private final RedisChannel channel = new RedisChannel(REFRESH_TOPIC, _ -> discard());
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void compileOnStartup() {
+    UriPermTree tree = getTree();
+    log.info("Compiled {} uri permissions", tree.size());
+  }
+
+  /** 权限发生变化后调用，所有实例都会在下次匹配时重新编译 */
+  public void refresh() {
+    discard();
+    channel.publishOrDefer("refresh");
+  }
+
+  /**
+   * 获取当前的基数树，鉴权时用同一棵树匹配权限和判断权限位图，见 {@link RolePermBitSets}
+   *
+   * @return 当前的基数树，被丢弃后第一次调用时重新编译
+   */
+  public UriPermTree getTree() {
+    long maxAgeNanos = TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+    CompiledTree current = compiled;
+    if (current != null && !current.isOlderThan(maxAgeNanos)) {
+      return current.tree();
+    }
+    channel.subscribeIfNecessary();
+    synchronized (this) {
+      current = compiled;
+      if (current != null && !current.isOlderThan(maxAgeNanos)) {
+        return current.tree();
+      }
+      long expectedGeneration = generation.get();
+      long compiledAt = System.nanoTime();
+      UriPermTree tree = compile();
+      if (generation.get() == expectedGeneration) {
+        compiled = new CompiledTree(tree, compiledAt);
+      }
+      return tree;
+    }
+  }
+
+  private UriPermTree compile() {
+    List<PermPo> perms =
+        permMapper.selectList(
+            Fn.undeletedWrapper(PermPo::getDeleteInfo)
+                .select(PermPo::getId, PermPo::getUri)
+                .orderByAsc(PermPo::getId));
+    UriPermTree.Builder builder = UriPermTree.builder();
+    for (PermPo perm : perms) {
+      if (perm.getUri() != null
+          && !perm.getUri().isBlank()
+          && !builder.add(perm.getId(), perm.getUri())) {
+        log.warn("Ignored duplicate or malformed uri [{}] of perm {}", perm.getUri(), perm.getId());
+      }
+    }
+    return builder.build();
+  }
+
+  private void discard() {
+    generation.incrementAndGet();
+    compiled = null;
+  }
+
+  /**
+   * @param tree 编译出来的基数树
+   * @param compiledAt 开始编译的时间，取自 System.nanoTime()
+   */
+  private record CompiledTree(UriPermTree tree, long compiledAt) {
+    boolean isOlderThan(long maxAgeNanos) {
+      return System.nanoTime() - compiledAt >= maxAgeNanos;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package cn.huava.sys.auth;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 由 sys_perm.uri 编译出来的基数树（radix tree），把请求路径匹配到权限上，不可变，可以被多个线程同时使用<br>
+ *
+ * <pre>
+ * 1. 权限的 uri 支持以下写法：
+ *    1.1. 普通路径，如 /sys/user/create。
+ *    1.2. 路径变量，用 {name} 或 * 表示一整段，如 /sys/user/get/{id}，匹配 /sys/user/get/1 但不匹配 /sys/user/get/。
+ *    1.3. 以 HTTP 方法开头，用空格分隔，如 "DELETE /sys/user/delete"，表示只匹配该方法，不写则匹配所有方法。
+ * 2. 兼容以前的写法：路径没有匹配上并且以数字结尾时，去掉结尾的数字再匹配一次，所以 /sys/user/get/ 可以匹配 /sys/user/get/1。
+ * 3. 匹配的时间复杂度与路径长度成正比，不使用正则表达式，也不创建任何对象。
+ * 4. 同一个节点上静态路径优先于路径变量，静态路径匹配不上时才回退到路径变量。
+ * 5. 每个权限按添加顺序分配一个从 0 开始的连续序号，用作权限位图（BitSet）中的下标，序号只在同一棵树内有效。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public final class UriPermTree {
+  /** api_auth_range 为 main 时需要校验的接口后缀 */
+  private static final String[] MAIN_URI_SUFFIXES = {"/create", "/delete", "/update", "/page"};
+
+  private static final String[] METHODS = {
+    "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"
+  };
+
+  private static final UriPermTree EMPTY = new Builder().build();
+
+  private final Node root;
+
+  private final Map<String, Entry> entriesByUri;
+
+  private UriPermTree(Node root, Map<String, Entry> entriesByUri) {
+    this.root = root;
+    this.entriesByUri = entriesByUri;
+  }
+
+  public static UriPermTree empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** 编译进来的权限数量，也是权限序号的上限（不包含） */
+  public int size() {
+    return entriesByUri.size();
+  }
+
+  /**
+   * 按权限的原始 uri 查找权限，用于把角色拥有的权限 uri 转换成权限序号
+   *
+   * @param uri sys_perm.uri 的原始值（去掉首尾空格）
+   * @return 权限，不存在（如已删除）时为 null
+   */
+  public @Nullable Entry getByUri(String uri) {
+    return entriesByUri.get(uri.trim());
+  }
+
+  /**
+   * 把请求匹配到权限上
+   *
+   * @param method HTTP 方法，如 GET
+   * @param path 请求路径，即 request.getRequestURI()
+   * @return 匹配到的权限，没有匹配到时为 null
+   */
+  public @Nullable Entry match(@Nullable String method, String path) {
+    int methodIndex = methodIndex(method);
+    int end = path.length();
+    Entry entry = match(root, path, 0, end, methodIndex);
+    if (entry == null) {
+      int strippedEnd = stripTrailingDigits(path);
+      if (strippedEnd < end) {
+        entry = match(root, path, 0, strippedEnd, methodIndex);
+      }
+    }
+    return entry;
+  }
+
+  /** 返回去掉结尾数字后的路径长度 */
+  public static int stripTrailingDigits(String path) {
+    int end = path.length();
+    while (end > 0 && Character.isDigit(path.charAt(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+  /** 路径的前 end 个字符是否以 /create、/delete、/update、/page 结尾，见 application.yml 中关于 api_auth_range 的注释 */
+  public static boolean isMainUri(String path, int end) {
+    for (String suffix : MAIN_URI_SUFFIXES) {
+      int start = end - suffix.length();
+      if (start >= 0 && path.regionMatches(start, suffix, 0, suffix.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static @Nullable Entry match(Node node, String path, int pos, int end, int method) {
+    if (pos == end) {
+      return node.getEntry(method);
+    }
+    char c = path.charAt(pos);
+    Node child = node.getStaticChild(c);
+    if (child != null) {
+      String label = child.label;
+      int len = label.length();
+      if (end - pos >= len && path.regionMatches(pos, label, 0, len)) {
+        Entry entry = match(child, path, pos + len, end, method);
+        if (entry != null) {
+          return entry;
+        }
+      }
+    }
+    Node paramChild = node.paramChild;
+    if (paramChild != null && c != '/') {
+      int segmentEnd = pos + 1;
+      while (segmentEnd < end && path.charAt(segmentEnd) != '/') {
+        segmentEnd++;
+      }
+      return match(paramChild, path, segmentEnd, end, method);
+    }
+    return null;
+  }
+
+  private static int methodIndex(@Nullable String method) {
+    if (method != null) {
+      for (int i = 0; i < METHODS.length; i++) {
+        if (METHODS[i].equalsIgnoreCase(method)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 匹配结果，编译时创建，匹配时直接返回同一个对象
+   *
+   * @param permId 权限 id
+   * @param index 权限在本棵树中的序号，从 0 开始连续分配
+   * @param uri 权限的 uri，即 sys_perm.uri 的原始值
+   * @param main 是否是 /create、/delete、/update、/page 结尾的接口
+   */
+  public record Entry(long permId, int index, String uri, boolean main) {}
+
+  /** 编译基数树，非线程安全，build 之后不能再添加 */
+  public static final class Builder {
+    private final Node root = new Node("");
+
+    private final Map<String, Entry> entriesByUri = new HashMap<>();
+
+    private Builder() {}
+
+    /**
+     * 添加一个权限，uri 为空或者重复（方法和路径都相同）时忽略，重复时保留先添加的
+     *
+     * @return 是否添加成功
+     */
+    public boolean add(long permId, @Nullable String uri) {
+      if (uri == null || uri.isBlank()) {
+        return false;
+      }
+      String trimmed = uri.trim();
+      int methodIndex = -1;
+      String pattern = trimmed;
+      int space = trimmed.indexOf(' ');
+      if (space > 0) {
+        methodIndex = methodIndex(trimmed.substring(0, space));
+        if (methodIndex < 0) {
+          return false;
+        }
+        pattern = trimmed.substring(space + 1).trim();
+      }
+      if (pattern.isEmpty() || entriesByUri.containsKey(trimmed)) {
+        return false;
+      }
+      Node node = insertPattern(pattern);
+      int index = entriesByUri.size();
+      Entry entry = new Entry(permId, index, trimmed, isMainUri(pattern, pattern.length()));
+      if (!node.setEntry(methodIndex, entry)) {
+        return false;
+      }
+      entriesByUri.put(trimmed, entry);
+      return true;
+    }
+
+    public UriPermTree build() {
+      return new UriPermTree(root, Map.copyOf(entriesByUri));
+    }
+
+    private Node insertPattern(String pattern) {
+      Node node = root;
+      int pos = 0;
+      int length = pattern.length();
+      while (pos < length) {
+        int paramStart = findParamStart(pattern, pos);
+        if (paramStart < 0) {
+          return insertStatic(node, pattern.substring(pos));
+        }
+        node = insertStatic(node, pattern.substring(pos, paramStart));
+        if (node.paramChild == null) {
+          node.paramChild = new Node("");
+        }
+        node = node.paramChild;
+        int paramEnd = pattern.indexOf('/', paramStart);
+        pos = paramEnd < 0 ? length : paramEnd;
+      }
+      return node;
+    }
+
+    /** 从 pos 开始找到下一个路径变量（{name} 或 *）所在段的起始位置，没有时返回 -1 */
+    private static int findParamStart(String pattern, int pos) {
+      int segmentStart = pos;
+      for (int i = pos; i < pattern.length(); i++) {
+        char c = pattern.charAt(i);
+        if (c == '/') {
+          segmentStart = i + 1;
+        } else if (i == segmentStart && (c == '{' || c == '*')) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static Node insertStatic(Node node, String path) {
+      if (path.isEmpty()) {
+        return node;
+      }
+      Node child = node.getStaticChild(path.charAt(0));
+      if (child == null) {
+        child = new Node(path);
+        node.addStaticChild(child);
+        return child;
+      }
+      String label = child.label;
+      int common = 0;
+      int max = Math.min(label.length(), path.length());
+      while (common < max && label.charAt(common) == path.charAt(common)) {
+        common++;
+      }
+      if (common < label.length()) {
+        Node middle = new Node(label.substring(0, common));
+        child.label = label.substring(common);
+        middle.addStaticChild(child);
+        node.replaceStaticChild(middle);
+        child = middle;
+      }
+      return insertStatic(child, path.substring(common));
+    }
+  }
+
+  private static final class Node {
+    private String label;
+
+    /** 静态子节点的首字符，与 staticChildren 一一对应 */
+    private char[] indices = new char[0];
+
+    private Node[] staticChildren = new Node[0];
+
+    /** 路径变量子节点，匹配一整段（不包含 /） */
+    private @Nullable Node paramChild;
+
+    /** 匹配所有方法的权限 */
+    private @Nullable Entry anyMethodEntry;
+
+    /** 按方法区分的权限，下标与 METHODS 一致 */
+    private @Nullable Entry @Nullable [] methodEntries;
+
+    private Node(String label) {
+      this.label = label;
+    }
+
+    private @Nullable Node getStaticChild(char c) {
+      char[] chars = indices;
+      for (int i = 0; i < chars.length; i++) {
+        if (chars[i] == c) {
+          return staticChildren[i];
+        }
+      }
+      return null;
+    }
+
+    private void addStaticChild(Node child) {
+      int length = indices.length;
+      indices = Arrays.copyOf(indices, length + 1);
+      staticChildren = Arrays.copyOf(staticChildren, length + 1);
+      indices[length] = child.label.charAt(0);
+      staticChildren[length] = child;
+    }
+
+    private void replaceStaticChild(Node child) {
+      char c = child.label.charAt(0);
+      for (int i = 0; i < indices.length; i++) {
+        if (indices[i] == c) {
+          staticChildren[i] = child;
+          return;
+        }
+      }
+      throw new IllegalStateException("No static child starts with " + c);
+    }
+
+    private @Nullable Entry getEntry(int method) {
+      @Nullable Entry[] entries = methodEntries;
+      if (method >= 0 && entries != null && entries[method] != null) {
+        return entries[method];
+      }
+      return anyMethodEntry;
+    }
+
+    private boolean setEntry(int method, Entry entry) {
+      if (method < 0) {
+        if (anyMethodEntry != null) {
+          return false;
+        }
+        anyMethodEntry = entry;
+        return true;
+      }
+      if (methodEntries == null) {
+        methodEntries = new Entry[METHODS.length];
+      }
+      if (methodEntries[method] != null) {
+        return false;
+      }
+      methodEntries[method] = entry;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package cn.huava.sys.cache;
+
+import cn.huava.common.util.Fn;
+import cn.huava.sys.auth.UriPermMatcher;
+import cn.huava.sys.mapper.RefreshTokenMapper;
+import cn.huava.sys.mapper.RoleMapper;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.pojo.po.RolePo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时预热缓存，避免发布或清空 Redis 之后的第一波请求同时查询数据库<br>
+ *
+ * <pre>
+ * 1. 预热的内容：权限基数树、所有角色的权限 uri、最近登录过的用户（用户信息、用户名、用户的角色）。
+ * 2. 角色和用户按批次在虚拟线程中并行加载，读取走的都是正常的缓存方法，已经缓存的数据不会重复查询数据库。
+ * 3. Spring Boot 在所有 ApplicationReadyEvent 监听器返回之后才把就绪状态设置为 ACCEPTING_TRAFFIC，
+ *    所以预热在监听器中同步执行，完成或超时之前实例不会被认为已就绪。
+ * 4. 超时后未完成的批次被取消，预热失败也只记录日志，不影响启动。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+@Component
+@RequiredArgsConstructor
+public class CacheWarmer {
+  private static final int BATCH_SIZE = 100;
+
+  private final RoleMapper roleMapper;
+  private final RefreshTokenMapper refreshTokenMapper;
+  private final RoleCache roleCache;
+  private final UserCache userCache;
+  private final UserRoleCache userRoleCache;
+  private final UriPermMatcher uriPermMatcher;
+
+  @Value("${project.cache.warm_up_users:1000}")
+  private int warmUpUsers;
+
+  @Value("${project.cache.warm_up_seconds:30}")
+  private long warmUpSeconds;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    long start = System.currentTimeMillis();
+    AtomicInteger loaded = new AtomicInteger();
+    boolean completed;
+    try {
+      completed = runAll(createTasks(loaded));
+    } catch (RuntimeException e) {
+      log.warn("Cache warm-up failed after loading {} entries", loaded.get(), e);
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    if (completed) {
+      log.info("Cache warm-up loaded {} entries in {} ms", loaded.get(), elapsed);
+    } else {
+      log.warn(
+          "Cache warm-up stopped after {} ms with {} entries loaded, budget is {} s",
+          elapsed,
+          loaded.get(),
+          warmUpSeconds);
+    }
+  }
+
+  private List<Callable<Void>> createTasks(AtomicInteger loaded) {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    tasks.add(
+        () -> {
+          loaded.addAndGet(uriPermMatcher.getTree().size());
+          return null;
+        });
+    List<Long> roleIds =
+        roleMapper.selectList(Fn.undeletedWrapper(RolePo::getDeleteInfo)).stream()
+            .map(RolePo::getId)
+            .toList();
+    for (List<Long> batch : partition(roleIds)) {
+      tasks.add(
+          () -> {
+            loaded.addAndGet(roleCache.getPermUrisByRoleIds(batch).size());
+            return null;
+          });
+    }
+    List<Long> userIds =
+        warmUpUsers > 0 ? refreshTokenMapper.selectRecentUserIds(warmUpUsers) : List.of();
+    for (List<Long> batch : partition(userIds)) {
+      tasks.add(
+          () -> {
+            batch.forEach(userId -> loaded.addAndGet(warmUpUser(userId)));
+            return null;
+          });
+    }
+    return tasks;
+  }
+
+  /** 返回加载的缓存数量 */
+  private int warmUpUser(Long userId) {
+    UserAuthDto user = userCache.getAuthById(userId);
+    if (user == null) {
+      return 0;
+    }
+    userCache.getIdByUsername(user.username());
+    userRoleCache.getRoleIdsByUserId(userId);
+    return 3;
+  }
+
+  /**
+   * @return 是否所有任务都在时间上限内完成
+   */
+  private boolean runAll(List<Callable<Void>> tasks) throws InterruptedException {
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    try {
+      boolean completed = true;
+      for (Future<Void> future : executor.invokeAll(tasks, warmUpSeconds, TimeUnit.SECONDS)) {
+        if (future.isCancelled()) {
+          completed = false;
+        } else if (future.state() == Future.State.FAILED) {
+          log.warn("Cache warm-up batch failed", future.exceptionNow());
+        }
+      }
+      return completed;
+    } finally {
+      // 被取消的任务可能还阻塞在数据库查询上，不等待它们结束
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<List<Long>> partition(List<Long> ids) {
+    List<List<Long>> batches = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+      batches.add(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size())));
+    }
+    return batches;
+  }
+}
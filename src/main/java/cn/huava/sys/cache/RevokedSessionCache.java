@@ -0,0 +1,52 @@
+package cn.huava.sys.cache;
+
+import static cn.huava.common.constant.CommonConstant.REFRESH_TOKEN_TTL_SECONDS;
+
+import cn.huava.common.util.RedisUtil;
+import java.time.Duration;
+import org.jspecify.annotations.NullMarked;
+import org.redisson.api.RBucket;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+
+/**
+ * 已经退出的登录会话（会话 id 即 refresh token 记录的主键）<br>
+ * 退出单个设备时只删除一个 refresh token，不修改 token 纪元，续期 access token 时通过这里判断会话是否已经退出，
+ * 请求中不需要查询数据库。退出所有设备时纪元加 1，旧的 access token 直接失效，不需要记录在这里。<br>
+ * 续期最多持续到登录之后 refresh token 的有效期，所以记录保存同样长的时间后自动过期。
+ *
+ * @author Camio1945
+ */
+@Service
+@NullMarked
+public class RevokedSessionCache {
+  public static final String REVOKED_SESSION_PREFIX = "user:revokedSession";
+
+  private static final Duration TTL = Duration.ofSeconds(REFRESH_TOKEN_TTL_SECONDS);
+
+  /**
+   * 记录会话已经退出，Redis 不可用时记下来，恢复后重新写入
+   *
+   * @param sid 会话 id
+   */
+  public void revoke(long sid) {
+    RBucket<String> bucket = getBucket(sid);
+    RedisUtil.getCircuitBreaker().runOrDefer(() -> bucket.set("1", TTL));
+  }
+
+  /**
+   * 会话是否已经退出
+   *
+   * @param sid 会话 id
+   * @return Redis 不可用时无法确认，按已经退出处理，调用方不续期即可
+   */
+  public boolean isRevoked(long sid) {
+    RBucket<String> bucket = getBucket(sid);
+    return RedisUtil.getCircuitBreaker().call(bucket::isExists, () -> true);
+  }
+
+  private static RBucket<String> getBucket(long sid) {
+    return RedisUtil.getRedissonClient()
+        .getBucket(REVOKED_SESSION_PREFIX + "::" + sid, StringCodec.INSTANCE);
+  }
+}
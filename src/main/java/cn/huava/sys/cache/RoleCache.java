@@ -2,24 +2,36 @@ package cn.huava.sys.cache;
 
 import static java.util.stream.Collectors.toSet;
 
+import cn.huava.common.cache.CacheEntry;
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.cache.TwoLevelCache;
+import cn.huava.common.util.Fn;
 import cn.huava.common.util.RedisUtil;
 import cn.huava.common.util.SingleFlightUtil;
 import cn.huava.sys.mapper.*;
+import cn.huava.sys.pojo.dto.RolePermUriDto;
 import cn.huava.sys.pojo.po.PermPo;
 import cn.huava.sys.pojo.po.RolePermPo;
 import cn.hutool.v7.core.collection.CollUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
 import lombok.AllArgsConstructor;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.redis.util.ByteUtils;
 import org.springframework.stereotype.Service;
 
 /**
- * 角色缓存
+ * 角色缓存<br>
+ * 权限的 uri 修改后，所有包含这个权限的角色的缓存都会过期，所以缓存按代数分区，通过 {@link #deleteAllCache()}
+ * 一次使所有角色的缓存失效；只修改一个角色的权限时通过 {@link #deleteCache(Long)} 删除这个角色的缓存。
  *
  * @author Camio1945
  */
@@ -27,15 +39,21 @@ import org.springframework.stereotype.Service;
 @NullMarked
 @AllArgsConstructor
 public class RoleCache {
-  public static final String URIS_CACHE_PREFIX = "cache:role:uris:roleId";
+  /** 以前保存的是集合，现在是 {@link CacheEntry}，换了名称，滚动发布期间旧版本的实例不会读到新的格式 */
+  public static final String URIS_CACHE_PREFIX = "cache:role:uris:roleId:v2";
 
   private RolePermMapper rolePermMapper;
   private PermMapper permMapper;
 
-  @Cacheable(value = URIS_CACHE_PREFIX, key = "#roleId", unless = "#result == null")
+  private CacheManager cacheManager;
+
+  /** 与 {@link TwoLevelCache} 共用，Redis 不可用时批量读写也降级为只使用本地缓存 */
+  private RedisCircuitBreaker redisCircuitBreaker;
+
+  /** 并发加载的合并和快过期时的提前刷新由 {@link TwoLevelCache} 完成 */
+  @Cacheable(value = URIS_CACHE_PREFIX, key = "#roleId", sync = true)
   public Set<String> getPermUrisByRoleId(Long roleId) {
-    String key = URIS_CACHE_PREFIX + "::" + roleId;
-    return SingleFlightUtil.execute(key, () -> getPermUrisByRoleIdInner(roleId));
+    return getPermUrisByRoleIdInner(roleId);
   }
 
   private Set<String> getPermUrisByRoleIdInner(Long roleId) {
@@ -46,10 +64,161 @@ public class RoleCache {
     if (CollUtil.isEmpty(permIds)) {
       return Collections.emptySet();
     }
-    return permMapper.selectByIds(permIds).stream().map(PermPo::getUri).collect(toSet());
+    return permMapper.selectByIds(permIds).stream()
+        .map(PermPo::getUri)
+        .filter(Fn::isNotBlank)
+        .collect(toSet());
+  }
+
+  /**
+   * 一次获取多个角色拥有的权限 uri
+   *
+   * <pre>
+   * 1. 先查本地缓存（{@link TwoLevelCache}），本地没有的角色通过一次 Redis 管道（RBatch）读取。
+   * 2. 没有命中缓存的角色通过一次关联查询从数据库加载，再通过一次管道写回缓存。
+   * 3. 缓存与 {@link #getPermUrisByRoleId} 的完全相同，两个方法可以混合使用。
+   * 4. 命中的角色快过期时在后台提前刷新，当前请求不等待。
+   * 5. Redis 不可用（熔断器打开）时跳过 Redis，本地没有的角色限流查询数据库，结果只写入本地缓存。
+   * </pre>
+   *
+   * @param roleIds 角色 id
+   * @return 角色 id 到权限 uri 的映射，包含所有传入的角色，没有权限的角色为空集合
+   */
+  public Map<Long, Set<String>> getPermUrisByRoleIds(Collection<Long> roleIds) {
+    Map<Long, Set<String>> result = HashMap.newHashMap(roleIds.size());
+    TwoLevelCache cache = getCache();
+    List<Long> ids = new ArrayList<>(roleIds.size());
+    for (Long roleId : new LinkedHashSet<>(roleIds)) {
+      CacheEntry entry = cache.getLocal(roleId);
+      if (entry == null) {
+        ids.add(roleId);
+      } else {
+        putResult(cache, roleId, entry, result);
+      }
+    }
+    if (ids.isEmpty()) {
+      return result;
+    }
+    // Redis 不可用时当作都没有命中
+    List<Long> missedIds =
+        redisCircuitBreaker.call(() -> getFromRedis(cache, ids, result), () -> ids);
+    cache.recordRedisLookups(ids.size() - missedIds.size(), missedIds.size());
+    if (missedIds.isEmpty()) {
+      return result;
+    }
+    String flightKey = URIS_CACHE_PREFIX + "::" + missedIds;
+    if (redisCircuitBreaker.isClosed()) {
+      result.putAll(SingleFlightUtil.execute(flightKey, () -> loadAndCache(cache, missedIds)));
+    } else {
+      result.putAll(
+          redisCircuitBreaker.limitDatabaseLoad(
+              () -> SingleFlightUtil.execute(flightKey, () -> loadAndCache(cache, missedIds))));
+    }
+    return result;
+  }
+
+  /**
+   * 通过一次 Redis 管道读取，命中的写入本地缓存和 result
+   *
+   * @return 没有命中的角色 id
+   */
+  private List<Long> getFromRedis(
+      TwoLevelCache cache, List<Long> ids, Map<Long, Set<String>> result) {
+    RBatch batch = RedisUtil.getRedissonClient().createBatch();
+    List<RFuture<byte[]>> futures = new ArrayList<>(ids.size());
+    for (Long id : ids) {
+      futures.add(batch.<byte[]>getBucket(cache.redisKey(id), ByteArrayCodec.INSTANCE).getAsync());
+    }
+    batch.execute();
+    List<Long> missedIds = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      CacheEntry entry = deserialize(cache, futures.get(i).toCompletableFuture().join());
+      if (entry == null) {
+        missedIds.add(ids.get(i));
+      } else {
+        cache.putLocal(ids.get(i), entry);
+        putResult(cache, ids.get(i), entry, result);
+      }
+    }
+    return missedIds;
+  }
+
+  private void putResult(
+      TwoLevelCache cache, Long roleId, CacheEntry entry, Map<Long, Set<String>> result) {
+    result.put(roleId, castUris((Set<?>) entry.getValue()));
+    cache.refreshIfExpiring(roleId, entry, () -> getPermUrisByRoleIdInner(roleId));
+  }
+
+  private Map<Long, Set<String>> loadAndCache(TwoLevelCache cache, List<Long> roleIds) {
+    long start = System.nanoTime();
+    Map<Long, Set<String>> loaded = HashMap.newHashMap(roleIds.size());
+    roleIds.forEach(roleId -> loaded.put(roleId, new HashSet<>()));
+    for (RolePermUriDto dto : rolePermMapper.selectPermUrisByRoleIds(roleIds)) {
+      loaded.get(dto.getRoleId()).add(dto.getUri());
+    }
+    long loadNanos = System.nanoTime() - start;
+    cache.recordLoad(loadNanos);
+    long loadMillis = CacheEntry.loadMillisOf(loadNanos);
+    Map<Long, Duration> ttls = HashMap.newHashMap(loaded.size());
+    Map<Long, CacheEntry> entries = HashMap.newHashMap(loaded.size());
+    loaded.forEach(
+        (roleId, uris) -> {
+          Duration ttl = cache.newRedisTtl();
+          CacheEntry entry = new CacheEntry(uris, loadMillis, ttl);
+          ttls.put(roleId, ttl);
+          entries.put(roleId, entry);
+          cache.putLocal(roleId, entry);
+        });
+    // 写入 Redis 失败时只是少了一次缓存，本地缓存已经写入了
+    redisCircuitBreaker.run(
+        () -> {
+          RBatch batch = RedisUtil.getRedissonClient().createBatch();
+          entries.forEach(
+              (roleId, entry) ->
+                  batch
+                      .getBucket(cache.redisKey(roleId), ByteArrayCodec.INSTANCE)
+                      .setAsync(serialize(cache, entry), ttls.get(roleId)));
+          batch.execute();
+        });
+    return loaded;
+  }
+
+  /**
+   * 与 @Cacheable 使用同一个序列化方式，批量读写的缓存与单个读写的缓存可以互相使用<br>
+   * 兼容引入 {@link CacheEntry} 之前直接保存的集合
+   */
+  private static @Nullable CacheEntry deserialize(TwoLevelCache cache, byte @Nullable [] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    Object value = cache.getValueSerializationPair().read(ByteBuffer.wrap(bytes));
+    if (value == null) {
+      return null;
+    }
+    CacheEntry entry = CacheEntry.of(value);
+    return entry.getValue() instanceof Set<?> ? entry : null;
   }
 
+  @SuppressWarnings("unchecked")
+  private static Set<String> castUris(Set<?> uris) {
+    return (Set<String>) uris;
+  }
+
+  private TwoLevelCache getCache() {
+    return (TwoLevelCache) Objects.requireNonNull(cacheManager.getCache(URIS_CACHE_PREFIX));
+  }
+
+  private static byte[] serialize(TwoLevelCache cache, CacheEntry entry) {
+    return ByteUtils.getBytes(cache.getValueSerializationPair().write(entry));
+  }
+
+  /** 通过 CacheManager 删除，所有实例的本地缓存也会一起删除 */
   public void deleteCache(Long roleId) {
-    RedisUtil.delete(URIS_CACHE_PREFIX + "::" + roleId);
+    getCache().evict(roleId);
+  }
+
+  /** 使所有角色的缓存失效，只修改代数，不删除 Redis 中的 key */
+  public void deleteAllCache() {
+    getCache().clear();
   }
 }
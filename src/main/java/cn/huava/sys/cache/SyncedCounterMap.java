@@ -0,0 +1,117 @@
+package cn.huava.sys.cache;
+
+import cn.huava.common.util.RedisChannel;
+import cn.huava.common.util.RedisUtil;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.redisson.api.RAtomicLong;
+
+/**
+ * 按 id 保存在 Redis 中的单调递增计数器（如用户版本号），本地保留一份副本，读取时不访问 Redis<br>
+ *
+ * <pre>
+ * 1. 计数器的权威值是 Redis 中的 RAtomicLong，key 为 keyPrefix::id，不设置过期时间。
+ * 2. 递增后通过 Redis 的发布订阅通知所有实例更新本地副本，本地副本只会变大，不会被乱序的消息改小。
+ * 3. 发布订阅的消息可能丢失（如网络断开时），所以本地副本在写入一段时间后会在后台重新从 Redis 加载，作为兜底。
+ * 4. 访问 Redis 都经过熔断器（见 RedisUtil）：Redis 不可用时后台重新加载直接保留原来的副本，副本不会过期，
+ *    否则 Redis 长时间不可用时所有用户的鉴权都会失败；本地没有副本的 id 和递增操作快速失败，通知跳过。
+ * 5. 订阅在后台线程中进行（见 {@link RedisChannel}），请求线程不会等待订阅；
+ *    订阅成功之前收不到通知，本地副本靠后台重新加载更新，与消息丢失时一样。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+final class SyncedCounterMap {
+  private static final int LOCAL_MAX_SIZE = 100_000;
+
+  /** 本地副本写入后多久在后台重新加载，也是发布订阅消息丢失时本地副本大致的最长滞后时间 */
+  private static final Duration LOCAL_TTL = Duration.ofSeconds(30);
+
+  private final String keyPrefix;
+
+  private final LoadingCache<Long, Long> local;
+
+  private final RedisChannel channel;
+
+  SyncedCounterMap(String keyPrefix) {
+    this.keyPrefix = keyPrefix;
+    this.channel = new RedisChannel(keyPrefix + ":topic", this::onMessage);
+    this.local =
+        Caffeine.newBuilder()
+            .maximumSize(LOCAL_MAX_SIZE)
+            .refreshAfterWrite(LOCAL_TTL)
+            .build(
+                new CacheLoader<Long, Long>() {
+                  @Override
+                  public Long load(Long id) {
+                    return SyncedCounterMap.this.load(id);
+                  }
+
+                  @Override
+                  public Long reload(Long id, Long oldValue) {
+                    return reloadOrKeep(id, oldValue);
+                  }
+                });
+  }
+
+  /** 获取计数器的当前值，从未递增过的计数器为 0 */
+  long get(long id) {
+    channel.subscribeIfNecessary();
+    return local.get(id);
+  }
+
+  /** 直接从 Redis 读取计数器的当前值并刷新本地副本，用于不能容忍本地副本滞后的场景（如签发 token） */
+  long getLatest(long id) {
+    channel.subscribeIfNecessary();
+    long value = load(id);
+    local.asMap().merge(id, value, Math::max);
+    return value;
+  }
+
+  /**
+   * 递增计数器并通知所有实例
+   *
+   * @return 递增后的值
+   */
+  long increment(long id) {
+    channel.subscribeIfNecessary();
+    RAtomicLong counter = RedisUtil.getRedissonClient().getAtomicLong(key(id));
+    long value = RedisUtil.getCircuitBreaker().execute(counter::incrementAndGet);
+    local.asMap().merge(id, value, Math::max);
+    // 通知丢失时其他实例靠后台重新加载兜底，所以 Redis 不可用时直接跳过
+    channel.publish(id + ":" + value);
+    return value;
+  }
+
+  private long load(long id) {
+    RAtomicLong counter = RedisUtil.getRedissonClient().getAtomicLong(key(id));
+    return RedisUtil.getCircuitBreaker().execute(counter::get);
+  }
+
+  /** 后台重新加载，Redis 不可用或者读取失败时保留原来的副本，读到的值也不会比原来的小 */
+  private long reloadOrKeep(long id, long oldValue) {
+    RAtomicLong counter = RedisUtil.getRedissonClient().getAtomicLong(key(id));
+    return Math.max(oldValue, RedisUtil.getCircuitBreaker().call(counter::get, () -> oldValue));
+  }
+
+  private String key(long id) {
+    return keyPrefix + "::" + id;
+  }
+
+  private void onMessage(String message) {
+    int colon = message.indexOf(':');
+    try {
+      long id = Long.parseLong(message.substring(0, colon));
+      long value = Long.parseLong(message.substring(colon + 1));
+      local.asMap().merge(id, value, Math::max);
+    } catch (RuntimeException e) {
+      log.warn("Ignored malformed counter message [{}] on {}", message, keyPrefix, e);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package cn.huava.sys.cache;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.stereotype.Service;
+
+/**
+ * 用户的 token 纪元（epoch）<br>
+ * 签发 access token 时写入当前纪元，退出所有设备、修改密码、禁用、删除用户时纪元加 1，
+ * 此前签发的 access token 即使没有过期也会立即失效。<br>
+ * 校验时只读本地副本，本地副本通过 Redis 的发布订阅更新，不增加请求的网络开销。
+ *
+ * @author Camio1945
+ */
+@Service
+@NullMarked
+public class TokenEpochCache {
+  public static final String TOKEN_EPOCH_PREFIX = "user:tokenEpoch";
+
+  private final SyncedCounterMap epochs = new SyncedCounterMap(TOKEN_EPOCH_PREFIX);
+
+  /**
+   * 获取用户的当前纪元，本地副本命中时不访问 Redis
+   *
+   * @param userId 用户 id
+   * @return 纪元，从未吊销过 token 的用户为 0
+   */
+  public long getEpoch(long userId) {
+    return epochs.get(userId);
+  }
+
+  /** 与 {@link #getEpoch} 相同，但总是从 Redis 读取最新值，用于签发 token */
+  public long getLatestEpoch(long userId) {
+    return epochs.getLatest(userId);
+  }
+
+  /**
+   * 吊销用户已经签发的所有 access token
+   *
+   * @param userId 用户 id
+   */
+  public void increaseEpoch(long userId) {
+    epochs.increment(userId);
+  }
+}
@@ -0,0 +1,58 @@
+package cn.huava.sys.cache;
+
+import cn.huava.common.cache.codec.BinaryInput;
+import cn.huava.common.cache.codec.BinaryOutput;
+import cn.huava.common.cache.codec.BinarySchema;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * {@link UserCache} 中缓存的用户的二进制编码，字段编号发布之后不能修改或者复用，新增字段使用新的编号
+ *
+ * @author Camio1945
+ */
+@NullMarked
+public class UserAuthDtoSchema implements BinarySchema<UserAuthDto> {
+  private static final int ID = 1;
+  private static final int USERNAME = 2;
+  private static final int ENABLED = 3;
+  private static final int DELETED = 4;
+
+  /** 1 是以前缓存完整用户（UserExtPo）时使用的编号，不再使用 */
+  @Override
+  public int id() {
+    return 2;
+  }
+
+  @Override
+  public Class<UserAuthDto> type() {
+    return UserAuthDto.class;
+  }
+
+  @Override
+  public void write(UserAuthDto user, BinaryOutput out) {
+    out.writeLongField(ID, user.id());
+    out.writeStringField(USERNAME, user.username());
+    out.writeBooleanField(ENABLED, user.enabled());
+    out.writeBooleanField(DELETED, user.deleted());
+    out.writeEnd();
+  }
+
+  @Override
+  public UserAuthDto read(BinaryInput in) {
+    long id = 0;
+    String username = "";
+    boolean enabled = false;
+    boolean deleted = false;
+    for (int tag = in.readFieldTag(); tag != 0; tag = in.readFieldTag()) {
+      switch (tag) {
+        case ID -> id = in.readLong();
+        case USERNAME -> username = in.readString();
+        case ENABLED -> enabled = in.readBoolean();
+        case DELETED -> deleted = in.readBoolean();
+        default -> in.skipField();
+      }
+    }
+    return new UserAuthDto(id, username, enabled, deleted);
+  }
+}
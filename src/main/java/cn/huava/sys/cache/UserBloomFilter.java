@@ -0,0 +1,228 @@
+package cn.huava.sys.cache;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.util.RedisUtil;
+import cn.huava.common.util.TransactionUtil;
+import cn.huava.sys.mapper.UserMapper;
+import cn.huava.sys.pojo.po.UserExtPo;
+import cn.huava.sys.pojo.po.UserPo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 用户 id 和用户名的布隆过滤器，防止查询不存在的用户时穿透缓存查询数据库<br>
+ *
+ * <pre>
+ * 1. 查询结果为 null 时不会缓存（见 RedisConfig），过期的 token、随机用户名的登录请求每次都会查询数据库；
+ *    UserCache 在查询数据库之前先检查过滤器，过滤器中不存在的 id 和用户名直接返回 null。
+ * 2. 过滤器保存在 Redis 中（RBloomFilter），所有实例共用；新增用户、修改用户名时加入。
+ *    布隆过滤器不能移除元素，删除的用户和旧的用户名由定期重建清理（已删除用户的 id 仍然保留，鉴权时需要区分）。
+ * 3. 重建时写入新一代的过滤器，写完之后再切换代数指针，旧的一代稍后过期；重建期间新增的用户同时写入新旧两代。
+ *    在事务中新增的用户在事务结束后再加入一次，因为重建查不到还没有提交的数据。
+ *    多个实例通过锁保证同一时间只有一个实例在重建。
+ * 4. 过滤器还没有建好或者 Redis 出错时视为“可能存在”，退回到查询数据库，不会把存在的用户误判为不存在。
+ *    Redis 不可用（熔断器打开）时不访问 Redis，新增的用户在 Redis 恢复后再加入，重建推迟到下一次。
+ * </pre>
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+@Component
+@RequiredArgsConstructor
+public class UserBloomFilter {
+  static final String KEY_PREFIX = "bloom:user";
+
+  /** 当前使用的一代，0 表示还没有建好 */
+  static final String GENERATION_KEY = KEY_PREFIX + ":generation";
+
+  /** 正在重建的一代，0 表示没有在重建 */
+  static final String BUILDING_KEY = KEY_PREFIX + ":building";
+
+  private static final String LOCK_KEY = KEY_PREFIX + ":rebuild";
+
+  private static final int PAGE_SIZE = 1000;
+
+  /** 切换之后旧的一代保留一段时间，正在写入旧一代的请求不会因为过滤器不存在而报错 */
+  private static final Duration OLD_GENERATION_TTL = Duration.ofMinutes(10);
+
+  private final UserMapper userMapper;
+  private final RedisCircuitBreaker redisCircuitBreaker;
+
+  /** 重建在后台执行，很少并且不着急，一个虚拟线程就够了 */
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          Thread.ofVirtual().name("user-bloom-rebuild").factory());
+
+  @Value("${project.cache.user_bloom_expected_insertions:1000000}")
+  private long expectedInsertions;
+
+  @Value("${project.cache.user_bloom_false_probability:0.01}")
+  private double falseProbability;
+
+  @Value("${project.cache.user_bloom_rebuild_hours:24}")
+  private long rebuildHours;
+
+  /** 启动后在后台重建一次，之后定期重建，不影响启动速度 */
+  @EventListener(ApplicationReadyEvent.class)
+  public void scheduleRebuild() {
+    if (rebuildHours > 0) {
+      scheduler.scheduleWithFixedDelay(this::rebuildQuietly, 0, rebuildHours, TimeUnit.HOURS);
+    } else {
+      scheduler.execute(this::rebuildQuietly);
+    }
+  }
+
+  /** id 为 id 的用户是否可能存在（包括已删除的用户），返回 false 时一定不存在 */
+  public boolean mightContainId(long id) {
+    return mightContain(idElement(id));
+  }
+
+  /** 用户名为 username 的用户是否可能存在，返回 false 时一定不存在 */
+  public boolean mightContainUsername(String username) {
+    return mightContain(usernameElement(username));
+  }
+
+  /**
+   * 新增用户或者修改用户名之后调用，立即加入，在事务中时事务结束后再加入一次<br>
+   * 只在提交前加入时，同时进行的重建查不到未提交的数据，而切换到的新一代又不包含这次加入的元素，用户会被误判为不存在
+   *
+   * @param user 至少有 id 的用户，用户名为 null 时只加入 id
+   */
+  public void add(UserPo user) {
+    List<String> elements = elements(user);
+    // 漏加会把存在的用户误判为不存在，所以 Redis 不可用时记下来，恢复后再加入
+    Runnable add = () -> redisCircuitBreaker.runOrDefer(() -> addNow(elements));
+    add.run();
+    TransactionUtil.afterCompletion(add);
+  }
+
+  private void addNow(List<String> elements) {
+    RedissonClient client = RedisUtil.getRedissonClient();
+    // 先读正在重建的一代：如果读到 0，要么重建还没开始（重建会查到这个用户），要么已经切换完成（下面读到的就是新一代）
+    long building = client.getAtomicLong(BUILDING_KEY).get();
+    long current = client.getAtomicLong(GENERATION_KEY).get();
+    if (building > 0) {
+      filter(building).add(elements);
+    }
+    if (current > 0 && current != building) {
+      filter(current).add(elements);
+    }
+  }
+
+  /** 在当前实例中重建过滤器，其他实例正在重建时直接返回 */
+  public void rebuild() {
+    if (!redisCircuitBreaker.isClosed()) {
+      log.info("Redis is unavailable, user bloom filter rebuild skipped");
+      return;
+    }
+    RedissonClient client = RedisUtil.getRedissonClient();
+    RLock lock = client.getLock(LOCK_KEY);
+    if (!lock.tryLock()) {
+      log.info("User bloom filter is being rebuilt by another instance, skipped");
+      return;
+    }
+    try {
+      long start = System.currentTimeMillis();
+      long current = client.getAtomicLong(GENERATION_KEY).get();
+      long next = current + 1;
+      RBloomFilter<String> filter = filter(next);
+      // 上一次重建中途失败时会留下未完成的过滤器
+      filter.delete();
+      long userCount = userMapper.selectCount(null);
+      // 每个用户有 id 和用户名两个元素，再为两次重建之间新增的用户留出同样多的空间
+      filter.tryInit(Math.max(expectedInsertions, userCount * 4), falseProbability);
+      client.getAtomicLong(BUILDING_KEY).set(next);
+      long loaded = loadAll(filter);
+      client.getAtomicLong(GENERATION_KEY).set(next);
+      if (current > 0) {
+        filter(current).expire(OLD_GENERATION_TTL);
+      }
+      log.info(
+          "User bloom filter generation {} rebuilt with {} users in {} ms",
+          next,
+          loaded,
+          System.currentTimeMillis() - start);
+    } finally {
+      client.getAtomicLong(BUILDING_KEY).delete();
+      lock.unlock();
+    }
+  }
+
+  private void rebuildQuietly() {
+    try {
+      rebuild();
+    } catch (RuntimeException e) {
+      // 重建失败时继续使用旧的一代（或者退回到查询数据库），下一次定期重建再试
+      log.warn("User bloom filter rebuild failed", e);
+    }
+  }
+
+  /** 返回加入的用户数量 */
+  private long loadAll(RBloomFilter<String> filter) {
+    long loaded = 0;
+    long lastId = 0;
+    List<UserExtPo> page;
+    do {
+      page = userMapper.selectIdAndUsernamePage(lastId, PAGE_SIZE);
+      if (page.isEmpty()) {
+        break;
+      }
+      List<String> elements = new ArrayList<>(page.size() * 2);
+      page.forEach(user -> elements.addAll(elements(user)));
+      filter.add(elements);
+      loaded += page.size();
+      lastId = page.getLast().getId();
+    } while (page.size() == PAGE_SIZE);
+    return loaded;
+  }
+
+  private boolean mightContain(String element) {
+    try {
+      return redisCircuitBreaker.call(
+          () -> {
+            long generation = RedisUtil.getRedissonClient().getAtomicLong(GENERATION_KEY).get();
+            return generation == 0 || filter(generation).contains(element);
+          },
+          () -> true);
+    } catch (RuntimeException e) {
+      log.warn("User bloom filter is unavailable, falling back to the database", e);
+      return true;
+    }
+  }
+
+  private static RBloomFilter<String> filter(long generation) {
+    return RedisUtil.getRedissonClient()
+        .getBloomFilter(KEY_PREFIX + ":g" + generation, StringCodec.INSTANCE);
+  }
+
+  private static List<String> elements(UserPo user) {
+    String username = user.getUsername();
+    return username == null
+        ? List.of(idElement(user.getId()))
+        : List.of(idElement(user.getId()), usernameElement(username));
+  }
+
+  private static String idElement(long id) {
+    return "id:" + id;
+  }
+
+  private static String usernameElement(String username) {
+    return "username:" + username;
+  }
+}
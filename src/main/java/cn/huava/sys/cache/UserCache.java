@@ -1,17 +1,26 @@
 package cn.huava.sys.cache;
 
-import cn.huava.common.util.*;
+import cn.huava.common.cache.TwoLevelCache;
+import cn.huava.common.util.Fn;
 import cn.huava.sys.mapper.UserMapper;
+import cn.huava.sys.pojo.dto.UserAuthDto;
 import cn.huava.sys.pojo.po.UserExtPo;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import lombok.*;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 /**
- * 用户缓存
+ * 用户缓存<br>
+ * 按 id 缓存了两份：每个请求都用到的鉴权信息 {@link UserAuthDto}，以及需要时才读取的完整用户（含密码）。<br>
+ * 查询结果为 null 时不缓存，所以查询数据库之前先检查 {@link UserBloomFilter}，一定不存在的用户不查询数据库。
  *
  * @author Camio1945
  */
@@ -19,10 +28,17 @@ import org.springframework.stereotype.Service;
 @NullMarked
 @RequiredArgsConstructor
 public class UserCache {
-  public static final String USER_ID_CACHE_PREFIX = "cache:user:id";
+  /** 以前缓存的是完整的用户，格式不同，所以换了名称 */
+  public static final String USER_ID_CACHE_PREFIX = "cache:user:auth:id";
+
+  /** 以前的 cache:user:id 使用已经删除的二进制格式，所以换了名称 */
+  public static final String USER_FULL_ID_CACHE_PREFIX = "cache:user:full:id";
+
   public static final String USER_USERNAME_CACHE_PREFIX = "cache:user:username";
 
   private final UserMapper userMapper;
+  private final CacheManager cacheManager;
+  private final UserBloomFilter userBloomFilter;
 
   /**
    * 1. Don't add `final` key word, otherwise will get circular dependency error. <br>
@@ -32,15 +48,40 @@ public class UserCache {
   private @Nullable UserCache userCacheInner;
 
   /**
-   * 根据 id 获取用户
+   * 根据 id 获取鉴权用的用户信息，只查询需要的字段
    *
    * @param id 用户 id
-   * @return 用户
+   * @return 用户不存在时为 null，已删除的用户也会返回
    */
-  @Cacheable(value = USER_ID_CACHE_PREFIX, key = "#id", unless = "#result == null")
+  @Cacheable(value = USER_ID_CACHE_PREFIX, key = "#id", sync = true)
+  public @Nullable UserAuthDto getAuthById(Long id) {
+    if (!userBloomFilter.mightContainId(id)) {
+      return null;
+    }
+    LambdaQueryWrapper<UserExtPo> wrapper =
+        new LambdaQueryWrapper<UserExtPo>()
+            .eq(UserExtPo::getId, id)
+            .select(
+                UserExtPo::getId,
+                UserExtPo::getUsername,
+                UserExtPo::getIsEnabled,
+                UserExtPo::getDeleteInfo);
+    UserExtPo user = userMapper.selectOne(wrapper);
+    return user == null ? null : UserAuthDto.of(user);
+  }
+
+  /**
+   * 根据 id 获取完整的用户，只在请求确实需要完整信息时使用，鉴权使用 {@link #getAuthById}
+   *
+   * @param id 用户 id
+   * @return 用户不存在时为 null，已删除的用户也会返回
+   */
+  @Cacheable(value = USER_FULL_ID_CACHE_PREFIX, key = "#id", sync = true)
   public @Nullable UserExtPo getById(Long id) {
-    String key = USER_ID_CACHE_PREFIX + "::" + id;
-    return SingleFlightUtil.execute(key, () -> userMapper.selectById(id));
+    if (!userBloomFilter.mightContainId(id)) {
+      return null;
+    }
+    return userMapper.selectById(id);
   }
 
   /**
@@ -62,18 +103,15 @@ public class UserCache {
    *     java.lang.ClassCastException: class java.lang.Integer cannot be cast to class
    *     java.lang.Long
    */
-  @Cacheable(value = USER_USERNAME_CACHE_PREFIX, key = "#username", unless = "#result == null")
+  @Cacheable(value = USER_USERNAME_CACHE_PREFIX, key = "#username", sync = true)
   public @Nullable String getStrIdByUsername(String username) {
-    String key = USER_USERNAME_CACHE_PREFIX + "::" + username;
-    return SingleFlightUtil.execute(
-        key,
-        () -> {
-          LambdaQueryWrapper<UserExtPo> wrapper = Fn.undeletedWrapper(UserExtPo::getDeleteInfo);
-          UserExtPo userExtPo =
-              userMapper.selectOne(
-                  wrapper.eq(UserExtPo::getUsername, username).select(UserExtPo::getId));
-          return userExtPo == null ? null : userExtPo.getId().toString();
-        });
+    if (!userBloomFilter.mightContainUsername(username)) {
+      return null;
+    }
+    LambdaQueryWrapper<UserExtPo> wrapper = Fn.undeletedWrapper(UserExtPo::getDeleteInfo);
+    UserExtPo userExtPo =
+        userMapper.selectOne(wrapper.eq(UserExtPo::getUsername, username).select(UserExtPo::getId));
+    return userExtPo == null ? null : userExtPo.getId().toString();
   }
 
   private UserCache getUserCacheInner() {
@@ -92,15 +130,40 @@ public class UserCache {
    * @param after 已经保存到数据库之后的用户
    */
   public void afterSaveOrUpdate(UserExtPo after) {
+    // 先加入过滤器，否则删除缓存之后的查询可能把新增的用户判断为不存在
+    userBloomFilter.add(after);
     deleteKeys(after);
   }
 
+  /** 通过 CacheManager 删除，所有实例的本地缓存也会一起删除 */
   private void deleteKeys(UserExtPo user) {
-    String[] keys = {
-      USER_ID_CACHE_PREFIX + "::" + user.getId(),
-      USER_USERNAME_CACHE_PREFIX + "::" + user.getUsername()
-    };
-    RedisUtil.delete(keys);
+    evict(USER_ID_CACHE_PREFIX, user.getId());
+    evict(USER_FULL_ID_CACHE_PREFIX, user.getId());
+    evict(USER_USERNAME_CACHE_PREFIX, user.getUsername());
+  }
+
+  private void evict(String cacheName, Object key) {
+    Cache cache = cacheManager.getCache(cacheName);
+    if (cache != null) {
+      cache.evict(key);
+    }
+  }
+
+  /**
+   * 批量新增、修改或删除后的缓存处理，所有用户的缓存通过一次 Redis 管道删除
+   *
+   * @param users 新增、修改之后或者删除之前的用户
+   */
+  public void afterBatchChange(Collection<UserExtPo> users) {
+    users.forEach(userBloomFilter::add);
+    List<Long> ids = users.stream().map(UserExtPo::getId).toList();
+    evictAll(USER_ID_CACHE_PREFIX, ids);
+    evictAll(USER_FULL_ID_CACHE_PREFIX, ids);
+    evictAll(USER_USERNAME_CACHE_PREFIX, users.stream().map(UserExtPo::getUsername).toList());
+  }
+
+  private void evictAll(String cacheName, List<?> keys) {
+    ((TwoLevelCache) Objects.requireNonNull(cacheManager.getCache(cacheName))).evictAll(keys);
   }
 
   /**
@@ -118,6 +181,6 @@ public class UserCache {
    * @param before 更新前的用户
    */
   public void beforeUpdate(UserExtPo before) {
-    RedisUtil.delete(USER_USERNAME_CACHE_PREFIX + "::" + before.getUsername());
+    evict(USER_USERNAME_CACHE_PREFIX, before.getUsername());
   }
 }
@@ -1,15 +1,17 @@
 package cn.huava.sys.cache;
 
-import static java.util.stream.Collectors.joining;
-
-import cn.huava.common.util.*;
+import cn.huava.common.cache.TwoLevelCache;
+import cn.huava.common.cache.codec.BinaryCodec;
 import cn.huava.sys.mapper.UserRoleMapper;
 import cn.huava.sys.pojo.po.UserRolePo;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import lombok.AllArgsConstructor;
 import org.jspecify.annotations.NullMarked;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 /**
@@ -21,38 +23,38 @@ import org.springframework.stereotype.Service;
 @NullMarked
 @AllArgsConstructor
 public class UserRoleCache {
-  public static final String ROLE_IDS_BY_USER_ID_CACHE_PREFIX = "cache:userRole:userId";
+  /** 以前缓存的是逗号分隔的字符串，格式不同，所以换了名称 */
+  public static final String ROLE_IDS_BY_USER_ID_CACHE_PREFIX = "cache:userRole:roleIdList:userId";
 
   private UserRoleMapper userRoleMapper;
+  private CacheManager cacheManager;
 
   /**
-   * 1. Don't use @Cacheable, otherwise will get this error: <br>
-   * SerializationException: Could not read JSON:Unexpected token (START_ARRAY), expected
-   * VALUE_STRING: need String, Number of Boolean value that contains type id (for subtype of
-   * java.lang.Object)
+   * 通过 CacheManager 读写，命中本地缓存时不访问 Redis，并发加载的合并和提前刷新也由缓存完成。<br>
+   * 缓存的值是 List&lt;Long&gt;，在 Redis 中保存为变长整数的数组，见 {@link BinaryCodec}。
    */
   public List<Long> getRoleIdsByUserId(Long userId) {
-    String key = ROLE_IDS_BY_USER_ID_CACHE_PREFIX + "::" + userId;
-    String roleIdsStr = RedisUtil.get(key);
-    if (Fn.isBlank(roleIdsStr)) {
-      roleIdsStr =
-          SingleFlightUtil.execute(
-              key,
-              () -> {
-                LambdaQueryWrapper<UserRolePo> wrapper =
-                    new LambdaQueryWrapper<UserRolePo>()
-                        .eq(UserRolePo::getUserId, userId)
-                        .select(UserRolePo::getRoleId);
-                return userRoleMapper.selectList(wrapper).stream()
-                    .map(userRolePo -> userRolePo.getRoleId().toString())
-                    .collect(joining(","));
-              });
-      RedisUtil.set(key, roleIdsStr, RedisUtil.randomOffsetDurationInSeconds());
-    }
-    return Arrays.stream(roleIdsStr.split(",")).map(Long::parseLong).toList();
+    return Objects.requireNonNull(getCache().get(userId, () -> loadRoleIds(userId)));
+  }
+
+  private List<Long> loadRoleIds(Long userId) {
+    LambdaQueryWrapper<UserRolePo> wrapper =
+        new LambdaQueryWrapper<UserRolePo>()
+            .eq(UserRolePo::getUserId, userId)
+            .select(UserRolePo::getRoleId);
+    return userRoleMapper.selectList(wrapper).stream().map(UserRolePo::getRoleId).toList();
   }
 
   public void deleteCache(Long userId) {
-    RedisUtil.delete(ROLE_IDS_BY_USER_ID_CACHE_PREFIX + "::" + userId);
+    getCache().evict(userId);
+  }
+
+  /** 批量修改用户的角色之后使用，所有用户的缓存通过一次 Redis 管道删除 */
+  public void deleteCaches(Collection<Long> userIds) {
+    ((TwoLevelCache) getCache()).evictAll(userIds);
+  }
+
+  private Cache getCache() {
+    return Objects.requireNonNull(cacheManager.getCache(ROLE_IDS_BY_USER_ID_CACHE_PREFIX));
   }
 }
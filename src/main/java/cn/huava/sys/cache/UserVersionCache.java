@@ -0,0 +1,43 @@
+package cn.huava.sys.cache;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.stereotype.Service;
+
+/**
+ * 用户版本号<br>
+ * 用户的用户名、角色、启用状态等会写入 access token 的信息发生变化时，版本号加 1。<br>
+ * 无状态模式下，token 中的版本号与当前版本号一致时，才能直接信任 token 中的身份信息。
+ *
+ * @author Camio1945
+ */
+@Service
+@NullMarked
+public class UserVersionCache {
+  public static final String USER_VERSION_PREFIX = "user:version";
+
+  private final SyncedCounterMap versions = new SyncedCounterMap(USER_VERSION_PREFIX);
+
+  /**
+   * 获取用户的当前版本号，本地副本命中时不访问 Redis
+   *
+   * @param userId 用户 id
+   * @return 版本号，从未变更过的用户为 0
+   */
+  public long getVersion(long userId) {
+    return versions.get(userId);
+  }
+
+  /** 与 {@link #getVersion} 相同，但总是从 Redis 读取最新值，用于签发 token */
+  public long getLatestVersion(long userId) {
+    return versions.getLatest(userId);
+  }
+
+  /**
+   * 用户信息变更后调用，使已签发的 token 中的身份信息失效
+   *
+   * @param userId 用户 id
+   */
+  public void increaseVersion(long userId) {
+    versions.increment(userId);
+  }
+}
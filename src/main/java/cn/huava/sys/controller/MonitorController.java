@@ -0,0 +1,48 @@
+package cn.huava.sys.controller;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.cache.TwoLevelCacheManager;
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import cn.huava.common.pojo.dto.RedisCircuitBreakerDto;
+import cn.huava.sys.pojo.dto.CacheStatsDto;
+import cn.huava.sys.service.jwt.AceJwtService;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 运行状态监控
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@NullMarked
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/sys/monitor")
+public class MonitorController {
+  private final AceJwtService aceJwtService;
+  private final TwoLevelCacheManager cacheManager;
+  private final RedisCircuitBreaker redisCircuitBreaker;
+
+  /** 已验签 access token 缓存的命中情况，命中一次就省掉一次 HMAC 计算和一次 JSON 解析 */
+  @GetMapping("/tokenCacheStats")
+  public ResponseEntity<CacheStatsDto> tokenCacheStats() {
+    return ResponseEntity.ok(aceJwtService.getVerifiedTokenCacheStats());
+  }
+
+  /** 用户、角色相关的两级缓存各自的命中、加载和删除情况，用于根据实际数据调整过期时间 */
+  @GetMapping("/cacheStats")
+  public ResponseEntity<List<CacheMetricsDto>> cacheStats() {
+    return ResponseEntity.ok(cacheManager.getMetrics());
+  }
+
+  /** Redis 熔断器的当前状态，以及打开、降级、快速失败的次数 */
+  @GetMapping("/redisCircuitBreaker")
+  public ResponseEntity<RedisCircuitBreakerDto> redisCircuitBreaker() {
+    return ResponseEntity.ok(redisCircuitBreaker.getMetrics());
+  }
+}
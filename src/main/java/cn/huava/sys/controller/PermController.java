@@ -1,6 +1,9 @@
 package cn.huava.sys.controller;
 
 import cn.huava.common.controller.BaseController;
+import cn.huava.common.util.TransactionUtil;
+import cn.huava.sys.auth.UriPermMatcher;
+import cn.huava.sys.cache.RoleCache;
 import cn.huava.sys.mapper.PermMapper;
 import cn.huava.sys.pojo.dto.PermDto;
 import cn.huava.sys.pojo.po.PermPo;
@@ -9,6 +12,7 @@ import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,10 +25,37 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 @RequestMapping("/sys/perm")
 public class PermController extends BaseController<AcePermService, PermMapper, PermPo> {
+  private final UriPermMatcher uriPermMatcher;
+  private final RoleCache roleCache;
 
   /** Uses in menu page */
   @GetMapping("/getAll")
   public ResponseEntity<List<PermDto>> getAll(boolean isElementExcluded) {
     return ResponseEntity.ok(service.getAllPerm(isElementExcluded));
   }
+
+  @Override
+  protected void afterSave(PermPo entity) {
+    refresh();
+  }
+
+  @Override
+  protected void afterUpdate(PermPo entity) {
+    refresh();
+  }
+
+  @Override
+  protected void afterDelete(@Nullable Object obj) {
+    refresh();
+  }
+
+  /**
+   * 权限的 uri 可能被多个角色使用，修改后所有角色的 uri 缓存都失效<br>
+   * 事务提交之前重新编译的基数树读到的仍然是旧的权限，所以事务结束后再丢弃一次
+   */
+  private void refresh() {
+    roleCache.deleteAllCache();
+    uriPermMatcher.refresh();
+    TransactionUtil.afterCompletion(uriPermMatcher::refresh);
+  }
 }
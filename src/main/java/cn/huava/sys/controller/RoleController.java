@@ -49,4 +49,19 @@ public class RoleController extends BaseController<AceRoleService, RoleMapper, R
   public ResponseEntity<List<Long>> getPerm(@PathVariable final Long id) {
     return ResponseEntity.ok(service.getPerm(id));
   }
+
+  @Override
+  protected void afterSave(RolePo entity) {
+    service.afterHierarchyChanged();
+  }
+
+  @Override
+  protected void afterUpdate(RolePo entity) {
+    service.afterHierarchyChanged();
+  }
+
+  @Override
+  protected void afterDelete(@Nullable Object obj) {
+    service.afterHierarchyChanged();
+  }
 }
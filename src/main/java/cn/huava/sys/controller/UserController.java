@@ -4,8 +4,7 @@ import cn.huava.common.controller.BaseController;
 import cn.huava.common.pojo.dto.PageDto;
 import cn.huava.common.pojo.qo.PageQo;
 import cn.huava.common.util.Fn;
-import cn.huava.sys.cache.UserCache;
-import cn.huava.sys.cache.UserRoleCache;
+import cn.huava.sys.cache.*;
 import cn.huava.sys.mapper.UserMapper;
 import cn.huava.sys.pojo.dto.*;
 import cn.huava.sys.pojo.po.UserExtPo;
@@ -14,6 +13,7 @@ import cn.huava.sys.pojo.qo.UpdatePasswordQo;
 import cn.huava.sys.service.user.AceUserService;
 import cn.huava.sys.service.userrole.AceUserRoleService;
 import jakarta.servlet.http.HttpServletRequest;
+import java.util.Objects;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
@@ -36,6 +36,7 @@ public class UserController extends BaseController<AceUserService, UserMapper, U
   private final AceUserRoleService userRoleService;
   private final UserCache userCache;
   private final UserRoleCache userRoleCache;
+  private final UserVersionCache userVersionCache;
 
   @GetMapping("/page")
   public ResponseEntity<PageDto<UserDto>> page(
@@ -68,6 +69,13 @@ public class UserController extends BaseController<AceUserService, UserMapper, U
     return ResponseEntity.ok(null);
   }
 
+  /** 退出所有设备，当前用户在所有设备上的 token 立即失效 */
+  @PostMapping("/logoutAll")
+  public ResponseEntity<Void> logoutAll() {
+    service.logoutAll(Fn.getLoginUserId());
+    return ResponseEntity.ok(null);
+  }
+
   @GetMapping("/isUsernameExists")
   public ResponseEntity<Boolean> isUsernameExists(
       @Nullable final Long neId, final String username) {
@@ -106,7 +114,7 @@ public class UserController extends BaseController<AceUserService, UserMapper, U
   @Override
   protected void beforeUpdate(UserExtPo entity) {
     String password = entity.getPassword();
-    UserExtPo before = userCache.getById(entity.getId());
+    UserExtPo before = Objects.requireNonNull(userCache.getById(entity.getId()));
     if (Fn.isBlank(password)) {
       String dbPassword = before.getPassword();
       entity.setPassword(dbPassword);
@@ -119,6 +127,10 @@ public class UserController extends BaseController<AceUserService, UserMapper, U
   @Override
   protected void afterUpdate(UserExtPo entity) {
     afterSaveOrUpdate(entity);
+    // 禁用用户后，该用户已经签发的 token 立即失效
+    if (Boolean.FALSE.equals(entity.getIsEnabled())) {
+      service.logoutAll(entity.getId());
+    }
   }
 
   @Override
@@ -128,12 +140,16 @@ public class UserController extends BaseController<AceUserService, UserMapper, U
 
   @Override
   protected void afterDelete(Object obj) {
-    userCache.afterDelete((UserExtPo) obj);
+    UserExtPo before = (UserExtPo) obj;
+    userCache.afterDelete(before);
+    userVersionCache.increaseVersion(before.getId());
+    service.logoutAll(before.getId());
   }
 
   private void afterSaveOrUpdate(UserExtPo entity) {
     userRoleService.saveUserRole(entity.getId(), entity.getRoleIds());
     userCache.afterSaveOrUpdate(entity);
     userRoleCache.deleteCache(entity.getId());
+    userVersionCache.increaseVersion(entity.getId());
   }
 }
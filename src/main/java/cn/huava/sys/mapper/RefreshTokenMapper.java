@@ -2,7 +2,11 @@ package cn.huava.sys.mapper;
 
 import cn.huava.sys.pojo.po.RefreshTokenPo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import java.util.List;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.jspecify.annotations.NullMarked;
 
 /**
  * 刷新 token Mapper 持久化层
@@ -10,4 +14,22 @@ import org.apache.ibatis.annotations.Mapper;
  * @author Camio1945
  */
 @Mapper
-public interface RefreshTokenMapper extends BaseMapper<RefreshTokenPo> {}
+@NullMarked
+public interface RefreshTokenMapper extends BaseMapper<RefreshTokenPo> {
+
+  /**
+   * 查询最近登录过的用户
+   *
+   * @param limit 最多返回的用户数量
+   * @return 用户 id，按最近一次签发刷新 token 的时间倒序
+   */
+  @Select(
+      """
+      select sys_user_id from sys_refresh_token
+      where delete_info = 0
+      group by sys_user_id
+      order by max(created_at) desc
+      limit #{limit}
+      """)
+  List<Long> selectRecentUserIds(@Param("limit") int limit);
+}
@@ -0,0 +1,13 @@
+package cn.huava.sys.mapper;
+
+import cn.huava.sys.pojo.po.RoleClosurePo;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 角色继承关系闭包 Mapper 持久化层
+ *
+ * @author Camio1945
+ */
+@Mapper
+public interface RoleClosureMapper extends BaseMapper<RoleClosurePo> {}
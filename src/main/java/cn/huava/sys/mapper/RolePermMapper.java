@@ -1,8 +1,14 @@
 package cn.huava.sys.mapper;
 
+import cn.huava.sys.pojo.dto.RolePermUriDto;
 import cn.huava.sys.pojo.po.RolePermPo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import java.util.Collection;
+import java.util.List;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.jspecify.annotations.NullMarked;
 
 /**
  * 角色所拥有的权限 Mapper 持久化层
@@ -10,4 +16,26 @@ import org.apache.ibatis.annotations.Mapper;
  * @author Camio1945
  */
 @Mapper
-public interface RolePermMapper extends BaseMapper<RolePermPo> {}
+@NullMarked
+public interface RolePermMapper extends BaseMapper<RolePermPo> {
+
+  /**
+   * 一次查询多个角色拥有的权限 uri
+   *
+   * @param roleIds 角色 id，不能为空
+   * @return 角色 id 与权限 uri，没有 uri 的权限（如目录、菜单）不返回
+   */
+  @Select(
+      """
+      <script>
+      select rp.role_id as roleId, p.uri as uri from sys_role_perm as rp, sys_perm as p
+      where rp.perm_id = p.id
+      and p.uri is not null and p.uri != ''
+      and rp.role_id in
+      <foreach collection="roleIds" item="roleId" open="(" separator="," close=")">
+        #{roleId}
+      </foreach>
+      </script>
+      """)
+  List<RolePermUriDto> selectPermUrisByRoleIds(@Param("roleIds") Collection<Long> roleIds);
+}
@@ -2,7 +2,10 @@ package cn.huava.sys.mapper;
 
 import cn.huava.sys.pojo.po.UserExtPo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import java.util.List;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 /**
  * 用户 Mapper 持久化层
@@ -10,4 +13,22 @@ import org.apache.ibatis.annotations.Mapper;
  * @author Camio1945
  */
 @Mapper
-public interface UserMapper extends BaseMapper<UserExtPo> {}
+public interface UserMapper extends BaseMapper<UserExtPo> {
+
+  /**
+   * 按 id 顺序分页查询用户的 id 和用户名（包括已删除的用户），用于重建布隆过滤器
+   *
+   * @param afterId 只查询 id 大于这个值的用户，第一页传 0
+   * @param limit 每页的数量
+   * @return 只有 id 和 username 有值的用户
+   */
+  @Select(
+      """
+      select id, username from sys_user
+      where id > #{afterId}
+      order by id
+      limit #{limit}
+      """)
+  List<UserExtPo> selectIdAndUsernamePage(
+      @Param("afterId") long afterId, @Param("limit") int limit);
+}
@@ -0,0 +1,27 @@
+package cn.huava.sys.pojo.dto;
+
+import lombok.Data;
+
+/**
+ * 本地缓存的统计信息，用于 /sys/monitor 下的接口
+ *
+ * @author Camio1945
+ */
+@Data
+public class CacheStatsDto {
+  /** 缓存名称 */
+  private String name;
+
+  /** 当前缓存的条目数（近似值） */
+  private long size;
+
+  private long hitCount;
+
+  private long missCount;
+
+  /** 命中率，0 ~ 1，没有任何请求时为 1 */
+  private double hitRate;
+
+  /** 因容量或过期被淘汰的条目数 */
+  private long evictionCount;
+}
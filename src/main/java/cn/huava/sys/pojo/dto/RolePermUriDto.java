@@ -0,0 +1,14 @@
+package cn.huava.sys.pojo.dto;
+
+import lombok.Data;
+
+/**
+ * 角色拥有的权限 uri，用于一次查询多个角色的权限
+ *
+ * @author Camio1945
+ */
+@Data
+public class RolePermUriDto {
+  private Long roleId;
+  private String uri;
+}
@@ -0,0 +1,29 @@
+package cn.huava.sys.pojo.dto;
+
+import cn.huava.sys.pojo.po.UserPo;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * 鉴权时使用的用户信息（不可变），由 UserCache 缓存，每个请求都会读取<br>
+ * 只包含鉴权需要的字段，不包含密码等信息；管理页面需要的完整用户信息直接查询数据库，不经过这个缓存。
+ *
+ * @param id 用户 id
+ * @param username 用户名
+ * @param enabled 是否启用
+ * @param deleted 是否已删除
+ * @author Camio1945
+ */
+@NullMarked
+public record UserAuthDto(long id, String username, boolean enabled, boolean deleted) {
+
+  /**
+   * @param user 至少查询了 id、username、isEnabled、deleteInfo 这几个字段的用户
+   */
+  public static UserAuthDto of(UserPo user) {
+    return new UserAuthDto(
+        user.getId(),
+        user.getUsername(),
+        Boolean.TRUE.equals(user.getIsEnabled()),
+        user.getDeleteInfo() != null && user.getDeleteInfo() > 0);
+  }
+}
@@ -0,0 +1,38 @@
+package cn.huava.sys.pojo.po;
+
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import java.io.Serial;
+import java.io.Serializable;
+import lombok.Data;
+
+/**
+ * 角色继承关系的传递闭包，每个角色与它的每个上级角色（包括它自己）各有一行
+ *
+ * @author Camio1945
+ */
+@Data
+@TableName("sys_role_closure")
+public class RoleClosurePo implements Serializable {
+  @Serial private static final long serialVersionUID = 1L;
+
+  /** 主键 */
+  @TableId private Long id;
+
+  /** 上级角色ID */
+  private Long ancestorId;
+
+  /** 下级角色ID */
+  private Long descendantId;
+
+  /** 层级距离，角色自己为 0，直接上级为 1 */
+  private Integer depth;
+
+  public RoleClosurePo() {}
+
+  public RoleClosurePo(Long ancestorId, Long descendantId, Integer depth) {
+    this.ancestorId = ancestorId;
+    this.descendantId = descendantId;
+    this.depth = depth;
+  }
+}
@@ -19,7 +19,11 @@ import lombok.Data;
     groups = {Create.class, Update.class})
 @BeforeDeleteRole(groups = {Delete.class})
 @BeforeUpdateRole(groups = {Update.class})
+@ValidRoleParent(groups = {Create.class, Update.class})
 public class RolePo extends BasePo {
+  /** 上级角色ID，为空或 0 表示没有上级，角色会继承所有上级角色的权限 */
+  private Long pid;
+
   /** 名称 */
   @NotBlank(
       message = "名称不能为空",
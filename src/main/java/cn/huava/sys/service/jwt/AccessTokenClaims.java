@@ -0,0 +1,66 @@
+package cn.huava.sys.service.jwt;
+
+import cn.huava.common.constant.CommonConstant;
+import java.util.List;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 已经验签并解码过的 access token 声明（不可变），由 {@link AceJwtService#verifyAccessToken} 生成<br>
+ * 过滤器拿到它之后不需要再次解析 token
+ *
+ * @param sub 用户 id
+ * @param iat 签发时间（秒），token 中没有时为 0
+ * @param exp 过期时间（秒），token 中没有时为 {@link Long#MAX_VALUE}，即永不过期
+ * @param epc 签发时用户的 token 纪元，小于用户当前纪元的 token 已被吊销，token 中没有时为 0
+ * @param username 用户名，只有开启了无状态模式（project.jwt_stateless）时签发的 token 才有
+ * @param roleIds 用户拥有的角色 id，只有开启了无状态模式时签发的 token 才有
+ * @param ver 签发时的用户版本号，只有开启了无状态模式时签发的 token 才有，没有时为 {@link #NO_VERSION}
+ * @param sid 登录会话 id，即登录时保存的 refresh token 记录的主键，续期时据此确认会话没有退出，没有时为 {@link #NO_SESSION}
+ * @param lat 登录时间（秒），即 refresh token 的签发时间，续期不能超过 refresh token 的有效期，没有时为 0
+ * @author Camio1945
+ */
+@NullMarked
+public record AccessTokenClaims(
+    long sub,
+    long iat,
+    long exp,
+    long epc,
+    @Nullable String username,
+    @Nullable List<Long> roleIds,
+    long ver,
+    long sid,
+    long lat) {
+  public static final long NO_VERSION = -1L;
+
+  /** 升级前签发的 token 没有会话 id，不能续期，只能过期后通过 refresh token 换取新 token */
+  public static final long NO_SESSION = 0L;
+
+  public AccessTokenClaims(long sub, long iat, long exp) {
+    this(sub, iat, exp, 0L, null, null, NO_VERSION);
+  }
+
+  public AccessTokenClaims(
+      long sub,
+      long iat,
+      long exp,
+      long epc,
+      @Nullable String username,
+      @Nullable List<Long> roleIds,
+      long ver) {
+    this(sub, iat, exp, epc, username, roleIds, ver, NO_SESSION, 0L);
+  }
+
+  public boolean isExpired() {
+    return isExpired(System.currentTimeMillis());
+  }
+
+  public boolean isExpired(long nowMillis) {
+    return exp != Long.MAX_VALUE && exp * CommonConstant.MILLIS_PER_SECOND <= nowMillis;
+  }
+
+  /** token 中是否携带了完整的身份信息（用户名、角色、版本号），携带了才能在无状态模式下直接使用 */
+  public boolean hasIdentity() {
+    return username != null && roleIds != null && ver != NO_VERSION;
+  }
+}
@@ -1,13 +1,19 @@
 package cn.huava.sys.service.jwt;
 
-import cn.huava.common.constant.CommonConstant;
+import static cn.huava.common.constant.CommonConstant.MILLIS_PER_SECOND;
+import static cn.huava.common.constant.CommonConstant.REFRESH_TOKEN_TTL_SECONDS;
+
+import cn.huava.sys.cache.RevokedSessionCache;
+import cn.huava.sys.pojo.dto.CacheStatsDto;
 import cn.huava.sys.pojo.dto.UserJwtDto;
-import cn.hutool.v7.core.lang.Assert;
-import cn.hutool.v7.json.jwt.JWT;
+import com.github.benmanes.caffeine.cache.*;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Duration;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -21,29 +27,155 @@ import org.springframework.stereotype.Service;
 @Service
 @RequiredArgsConstructor
 public class AceJwtService {
+  /** 已验签 access token 缓存的最大条目数，每个条目大约占用 600 字节 */
+  private static final int VERIFIED_TOKEN_CACHE_MAX_SIZE = 100_000;
+
+  /** 同一个会话在本实例上两次续期之间的最短间隔，避免同一时刻的多个请求都签发新 token */
+  private static final Duration RENEW_INTERVAL = Duration.ofMinutes(1);
+
   private final CreateTokenService createTokenService;
 
-  private final JwtUtilService jwtUtilService = new JwtUtilService();
+  private final RevokedSessionCache revokedSessionCache;
+
+  /**
+   * 已经验签过的 access token<br>
+   * key 为完整的 token 字符串：只用签名段作为 key 时，签名相同而 header.payload 被篡改的 token 也会命中；value 为解码出的声明。<br>
+   * 条目在 token 的 exp 时刻过期，超过容量时按 W-TinyLFU 淘汰。
+   */
+  private final Cache<String, AccessTokenClaims> verifiedTokenCache =
+      Caffeine.newBuilder()
+          .maximumSize(VERIFIED_TOKEN_CACHE_MAX_SIZE)
+          .expireAfter(Expiry.creating(AceJwtService::timeToExpire))
+          .recordStats()
+          .build();
+
+  /** 最近续期过 access token 的会话 id，用于按会话限制续期频率，同时限制查询会话是否退出的频率 */
+  private final Cache<Long, Boolean> recentRenewals =
+      Caffeine.newBuilder()
+          .maximumSize(VERIFIED_TOKEN_CACHE_MAX_SIZE)
+          .expireAfterWrite(RENEW_INTERVAL)
+          .build();
 
   @Value("${project.jwt_key_base64}")
   private String jwtKeyBase64;
 
+  /** 见 application.yml 文件中关于 jwt_renew_window_minutes 的注释 */
+  @Value("${project.jwt_renew_window_minutes:10}")
+  private long renewWindowMinutes;
+
+  /** 由 {@link #jwtKeyBase64} 解码出的密钥初始化，只初始化一次 */
+  private @Nullable Hs256JwtEngine jwtEngine;
+
   public UserJwtDto createToken(Long userId) {
-    return createTokenService.createToken(userId, getJwtKeyBytes());
+    return createTokenService.createToken(userId, getJwtEngine());
+  }
+
+  /**
+   * 用 refresh token 换取 access token，新 token 属于 refresh token 所在的会话
+   *
+   * @param userId 用户 id
+   * @param sid 会话 id，即 refresh token 记录的主键
+   * @param lat 登录时间（秒），即 refresh token 的签发时间
+   */
+  public String createAccessToken(long userId, long sid, long lat) {
+    return createTokenService.createAccessToken(userId, sid, lat, getJwtEngine());
+  }
+
+  private Hs256JwtEngine getJwtEngine() {
+    Hs256JwtEngine engine = jwtEngine;
+    if (engine == null) {
+      engine = new Hs256JwtEngine(Base64.getDecoder().decode(jwtKeyBase64));
+      jwtEngine = engine;
+    }
+    return engine;
+  }
+
+  /**
+   * 验签并解码 access token，整个过程只解析一次 token、只计算一次 HMAC。<br>
+   * 验签通过且未过期的 token 会被缓存，同一个 token 再次请求时直接返回缓存的声明，不再计算 HMAC 和解析 JSON。
+   *
+   * @param token access token
+   * @return 不可变的声明对象，是否过期由调用方通过 {@link AccessTokenClaims#isExpired()} 判断
+   * @throws IllegalArgumentException 签名不正确或者缺少 sub 时
+   */
+  public AccessTokenClaims verifyAccessToken(final String token) {
+    AccessTokenClaims claims = verifiedTokenCache.getIfPresent(token);
+    if (claims == null) {
+      claims = decodeAccessToken(token);
+      if (!claims.isExpired()) {
+        verifiedTokenCache.put(token, claims);
+      }
+    }
+    return claims;
+  }
+
+  /**
+   * 滑动续期：token 剩余有效期不超过续期窗口时，签发一个新的 access token<br>
+   * 同一个会话每分钟最多续期一次，其余请求返回 null，客户端继续使用旧 token 直到拿到新 token。<br>
+   * 续期不能让 token 活得比登录会话更久：没有会话 id 的旧 token、登录时间超过 refresh token 有效期的 token，
+   * 以及会话已经退出（见 {@link RevokedSessionCache}）的 token 都不续期，只能过期后重新登录或者刷新。<br>
+   * 会话是否退出只读取 Redis，请求中不查询数据库；退出所有设备的 token 已经因为纪元变化被过滤器拒绝，不会走到这里。
+   *
+   * @param claims 已经验签并且未过期、未被吊销的 token 声明
+   * @return 新的 access token，不需要续期或者被限流时返回 null
+   */
+  public @Nullable String renewAccessTokenIfNeeded(AccessTokenClaims claims) {
+    if (renewWindowMinutes <= 0 || claims.exp() > Long.MAX_VALUE / MILLIS_PER_SECOND) {
+      return null;
+    }
+    long remainingMillis = claims.exp() * MILLIS_PER_SECOND - System.currentTimeMillis();
+    if (remainingMillis > Duration.ofMinutes(renewWindowMinutes).toMillis()) {
+      return null;
+    }
+    if (claims.sid() == AccessTokenClaims.NO_SESSION
+        || System.currentTimeMillis() / MILLIS_PER_SECOND - claims.lat()
+            >= REFRESH_TOKEN_TTL_SECONDS) {
+      return null;
+    }
+    if (recentRenewals.asMap().putIfAbsent(claims.sid(), Boolean.TRUE) != null) {
+      return null;
+    }
+    if (revokedSessionCache.isRevoked(claims.sid())) {
+      return null;
+    }
+    return createTokenService.createAccessToken(
+        claims.sub(), claims.sid(), claims.lat(), getJwtEngine());
   }
 
-  private byte[] getJwtKeyBytes() {
-    return Base64.getDecoder().decode(jwtKeyBase64);
+  private AccessTokenClaims decodeAccessToken(String token) {
+    Hs256JwtEngine.ClaimsReader claims = getJwtEngine().verify(token);
+    if (claims == null || !claims.has("sub")) {
+      throw new IllegalArgumentException("invalid token");
+    }
+    return new AccessTokenClaims(
+        claims.getLong("sub", 0L),
+        claims.getLong("iat", 0L),
+        claims.getLong("exp", Long.MAX_VALUE),
+        claims.getLong("epc", 0L),
+        claims.getString("username"),
+        claims.getLongList("roles"),
+        claims.getLong("ver", AccessTokenClaims.NO_VERSION),
+        claims.getLong("sid", AccessTokenClaims.NO_SESSION),
+        claims.getLong("lat", 0L));
   }
 
-  public Long getUserIdFromAccessToken(final String token) {
-    return jwtUtilService.parseToken(token).getPayload("sub", Long.class);
+  private static Duration timeToExpire(String token, AccessTokenClaims claims) {
+    if (claims.exp() > Long.MAX_VALUE / MILLIS_PER_SECOND) {
+      return Duration.ofNanos(Long.MAX_VALUE);
+    }
+    long millis = claims.exp() * MILLIS_PER_SECOND - System.currentTimeMillis();
+    return Duration.ofMillis(Math.max(millis, 0L));
   }
 
-  public boolean isTokenExpired(final String token) {
-    Assert.isTrue(jwtUtilService.verify(token, getJwtKeyBytes()), "invalid token");
-    JWT jwt = jwtUtilService.parseToken(token);
-    Long exp = jwt.getPayload("exp", Long.class);
-    return exp != null && exp * CommonConstant.MILLIS_PER_SECOND <= System.currentTimeMillis();
+  /** 已验签 access token 缓存的统计信息 */
+  public CacheStatsDto getVerifiedTokenCacheStats() {
+    CacheStats stats = verifiedTokenCache.stats();
+    return new CacheStatsDto()
+        .setName("verifiedAccessToken")
+        .setSize(verifiedTokenCache.estimatedSize())
+        .setHitCount(stats.hitCount())
+        .setMissCount(stats.missCount())
+        .setHitRate(stats.hitRate())
+        .setEvictionCount(stats.evictionCount());
   }
 }
@@ -1,17 +1,19 @@
 package cn.huava.sys.service.jwt;
 
+import static cn.huava.common.constant.CommonConstant.REFRESH_TOKEN_TTL_SECONDS;
+
 import cn.huava.common.service.BaseService;
+import cn.huava.sys.cache.*;
 import cn.huava.sys.mapper.UserMapper;
 import cn.huava.sys.pojo.dto.UserJwtDto;
 import cn.huava.sys.pojo.po.UserExtPo;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Objects;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
-import cn.hutool.v7.json.jwt.JWTUtil;
-import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -24,29 +26,71 @@ import org.springframework.stereotype.Service;
 @NullMarked
 @RequiredArgsConstructor
 class CreateTokenService extends BaseService<UserMapper, UserExtPo> {
+  private final UserCache userCache;
+
+  private final UserRoleCache userRoleCache;
+
+  private final UserVersionCache userVersionCache;
+
+  private final TokenEpochCache tokenEpochCache;
+
+  /** 见 application.yml 文件中关于 jwt_stateless 的注释 */
+  @Value("${project.jwt_stateless:false}")
+  private boolean stateless;
 
-  protected UserJwtDto createToken(Long userId, byte[] jwtKey) {
+  protected UserJwtDto createToken(Long userId, Hs256JwtEngine jwtEngine) {
+    long now = System.currentTimeMillis() / 1000;
+    // 这个 ID 是必须的，否则在同一秒内生成的 refreshToken 可能会相同，但数据要求惟一；
+    // 它同时是会话 id：保存 refresh token 时用作主键，access token 的 sid 指向这条记录
+    long sid = IdWorker.getId();
     return new UserJwtDto()
-        .setAccessToken(createAccessToken(userId, jwtKey))
-        .setRefreshToken(createRefreshToken(jwtKey));
+        .setAccessToken(createAccessToken(userId, sid, now, jwtEngine))
+        .setRefreshToken(createRefreshToken(sid, now, jwtEngine));
   }
 
-  private static String createAccessToken(Long userId, byte[] jwtKey) {
-    Map<String, Object> payload = HashMap.newHashMap(3);
-    payload.put("sub", userId);
-    payload.put("iat", System.currentTimeMillis() / 1000);
+  /**
+   * 创建 access token，绑定到一次登录（会话）
+   *
+   * @param sid 会话 id，即 refresh token 记录的主键
+   * @param lat 登录时间（秒），即 refresh token 的签发时间，token 的过期时间不会超过 refresh token 的过期时间
+   */
+  protected String createAccessToken(long userId, long sid, long lat, Hs256JwtEngine jwtEngine) {
+    long now = System.currentTimeMillis() / 1000;
     // 1 hour
-    payload.put("exp", System.currentTimeMillis() / 1000 + 60 * 60);
-    return JWTUtil.createToken(payload, jwtKey);
+    long exp = Math.min(now + 60 * 60, lat + REFRESH_TOKEN_TTL_SECONDS);
+    long epc = tokenEpochCache.getLatestEpoch(userId);
+    if (!stateless) {
+      return jwtEngine.sign(
+          claims ->
+              claims
+                  .put("sub", userId)
+                  .put("iat", now)
+                  .put("exp", exp)
+                  .put("epc", epc)
+                  .put("sid", sid)
+                  .put("lat", lat));
+    }
+    // 必须先读版本号再读用户信息：如果两次读取之间用户被修改了，token 中的版本号就是旧的，使用时会被识别出来
+    long ver = userVersionCache.getLatestVersion(userId);
+    String username = Objects.requireNonNull(userCache.getAuthById(userId)).username();
+    List<Long> roleIds = userRoleCache.getRoleIdsByUserId(userId);
+    return jwtEngine.sign(
+        claims ->
+            claims
+                .put("sub", userId)
+                .put("iat", now)
+                .put("exp", exp)
+                .put("epc", epc)
+                .put("username", username)
+                .put("roles", roleIds)
+                .put("ver", ver)
+                .put("sid", sid)
+                .put("lat", lat));
   }
 
-  private static String createRefreshToken(byte[] jwtKey) {
-    Map<String, Object> payload = HashMap.newHashMap(3);
-    // 这个 ID 是必须的，否则在同一秒内生成的 refreshToken 可能会相同，但数据要求惟一
-    payload.put("id", IdWorker.getIdStr());
-    payload.put("iat", System.currentTimeMillis() / 1000);
-    // 30 days
-    payload.put("exp", System.currentTimeMillis() / 1000 + 30 * 24 * 60 * 60);
-    return JWTUtil.createToken(payload, jwtKey);
+  private static String createRefreshToken(long sid, long now, Hs256JwtEngine jwtEngine) {
+    String id = String.valueOf(sid);
+    return jwtEngine.sign(
+        claims -> claims.put("id", id).put("iat", now).put("exp", now + REFRESH_TOKEN_TTL_SECONDS));
   }
 }
@@ -0,0 +1,695 @@
+package cn.huava.sys.service.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.function.Consumer;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * HS256 JWT 签名、验签引擎，用来替代 hutool 的 JWTUtil（JWTUtil 每次调用都会新建签名器、密钥和 JSON 对象）<br>
+ *
+ * <pre>
+ * 1. 每个线程持有一份已经初始化好的 {@link Mac} 和若干可复用的字节缓冲区，签发和验签都不需要加锁，也几乎不产生垃圾对象。
+ * 2. 生成的 token 与 hutool 生成的格式一致（header 相同），两者签发的 token 可以互相验证。
+ * 3. 验签时先把 "header.payload" 逐字符写入缓冲区计算 HMAC，再把签名解码到缓冲区，以常量时间逐字节比较，
+ *    整个过程不会生成中间字符串。
+ * 4. 只信任 HS256，不读取 header 中的 alg，因此不存在 "alg: none" 一类的攻击。
+ * </pre>
+ *
+ * 注意：{@link #verify} 返回的 {@link ClaimsReader} 属于当前线程的缓冲区，在同一线程下一次调用本类的方法之前必须读完。
+ *
+ * @author Camio1945
+ */
+@NullMarked
+final class Hs256JwtEngine {
+  private static final String HMAC_SHA256 = "HmacSHA256";
+
+  /** HMAC-SHA256 签名的字节数 */
+  private static final int SIGNATURE_LENGTH = 32;
+
+  /** 超过这个长度的 token 直接视为非法，避免恶意的超长请求头撑大缓冲区 */
+  private static final int MAX_TOKEN_LENGTH = 8 * 1024;
+
+  private static final byte[] BASE64_URL_ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final int[] BASE64_URL_DECODE_TABLE = new int[128];
+
+  /** 与 hutool 相同的 header：{"typ":"JWT","alg":"HS256"}，预先编码好 */
+  private static final byte[] HEADER;
+
+  static {
+    Arrays.fill(BASE64_URL_DECODE_TABLE, -1);
+    for (int i = 0; i < BASE64_URL_ALPHABET.length; i++) {
+      BASE64_URL_DECODE_TABLE[BASE64_URL_ALPHABET[i]] = i;
+    }
+    byte[] header = "{\"typ\":\"JWT\",\"alg\":\"HS256\"}".getBytes(StandardCharsets.US_ASCII);
+    byte[] encoded = new byte[encodedLength(header.length)];
+    encode(header, 0, header.length, encoded, 0);
+    HEADER = encoded;
+  }
+
+  private final SecretKeySpec keySpec;
+
+  private final ThreadLocal<Workspace> workspaces;
+
+  Hs256JwtEngine(byte[] key) {
+    this.keySpec = new SecretKeySpec(key, HMAC_SHA256);
+    this.workspaces = ThreadLocal.withInitial(() -> new Workspace(newMac(keySpec)));
+  }
+
+  private static Mac newMac(SecretKeySpec keySpec) {
+    try {
+      Mac mac = Mac.getInstance(HMAC_SHA256);
+      mac.init(keySpec);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to initialize " + HMAC_SHA256, e);
+    }
+  }
+
+  /**
+   * 签发 token
+   *
+   * @param claims 向写入器中写入声明，如 {@code w -> w.put("sub", 1L).put("exp", exp)}
+   * @return 紧凑格式的 token：header.payload.signature
+   */
+  String sign(Consumer<ClaimsWriter> claims) {
+    Workspace ws = workspaces.get();
+    ClaimsWriter writer = ws.writer.begin();
+    claims.accept(writer);
+    writer.end();
+    int payloadLength = encodedLength(writer.length);
+    int tokenLength = HEADER.length + 1 + payloadLength + 1 + encodedLength(SIGNATURE_LENGTH);
+    byte[] out = ws.ensureOut(tokenLength);
+    System.arraycopy(HEADER, 0, out, 0, HEADER.length);
+    int pos = HEADER.length;
+    out[pos++] = '.';
+    pos = encode(writer.buf, 0, writer.length, out, pos);
+    hmac(ws, out, pos, ws.expected);
+    out[pos++] = '.';
+    pos = encode(ws.expected, 0, SIGNATURE_LENGTH, out, pos);
+    return new String(out, 0, pos, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * 验签并解码 payload
+   *
+   * @param token 紧凑格式的 token
+   * @return 签名正确时返回 payload 的读取器，格式错误或签名不正确时返回 null
+   */
+  @Nullable ClaimsReader verify(String token) {
+    int length = token.length();
+    if (length > MAX_TOKEN_LENGTH) {
+      return null;
+    }
+    int dot1 = token.indexOf('.');
+    int dot2 = dot1 < 0 ? -1 : token.indexOf('.', dot1 + 1);
+    if (dot1 <= 0 || dot2 < 0 || token.indexOf('.', dot2 + 1) >= 0) {
+      return null;
+    }
+    Workspace ws = workspaces.get();
+    byte[] in = ws.ensureIn(dot2);
+    for (int i = 0; i < dot2; i++) {
+      char c = token.charAt(i);
+      if (c >= 0x80) {
+        return null;
+      }
+      in[i] = (byte) c;
+    }
+    hmac(ws, in, dot2, ws.expected);
+    if (decode(token, dot2 + 1, length, ws.actual) != SIGNATURE_LENGTH
+        || !constantTimeEquals(ws.expected, ws.actual)) {
+      return null;
+    }
+    byte[] json = ws.reader.ensureCapacity(decodedLength(dot2 - dot1 - 1));
+    int jsonLength = decode(in, dot1 + 1, dot2, json);
+    return jsonLength < 0 ? null : ws.reader.parse(jsonLength);
+  }
+
+  private static void hmac(Workspace ws, byte[] data, int length, byte[] result) {
+    Mac mac = ws.mac;
+    mac.update(data, 0, length);
+    try {
+      mac.doFinal(result, 0);
+    } catch (GeneralSecurityException e) {
+      // The code here is not covered during unit testing, the result buffer is always large enough
+      mac.reset();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** 常量时间比较，耗时与第一个不相等的字节位置无关，避免计时攻击 */
+  private static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+    int diff = 0;
+    for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+      diff |= expected[i] ^ actual[i];
+    }
+    return diff == 0;
+  }
+
+  // ============================ Base64 URL (without padding) ==============================
+
+  private static int encodedLength(int length) {
+    return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+  }
+
+  private static int decodedLength(int length) {
+    return (length / 4) * 3 + Math.max(length % 4 - 1, 0);
+  }
+
+  private static int encode(byte[] src, int from, int to, byte[] dst, int dstPos) {
+    int i = from;
+    while (i + 2 < to) {
+      int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits >>> 18];
+      dst[dstPos++] = BASE64_URL_ALPHABET[(bits >>> 12) & 0x3f];
+      dst[dstPos++] = BASE64_URL_ALPHABET[(bits >>> 6) & 0x3f];
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits & 0x3f];
+    }
+    int remaining = to - i;
+    if (remaining == 1) {
+      int bits = (src[i] & 0xff) << 4;
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits >>> 6];
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits & 0x3f];
+    } else if (remaining == 2) {
+      int bits = ((src[i] & 0xff) << 8 | (src[i + 1] & 0xff)) << 2;
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits >>> 12];
+      dst[dstPos++] = BASE64_URL_ALPHABET[(bits >>> 6) & 0x3f];
+      dst[dstPos++] = BASE64_URL_ALPHABET[bits & 0x3f];
+    }
+    return dstPos;
+  }
+
+  /**
+   * 解码字节数组中 [from, to) 的部分，返回解码后的字节数<br>
+   * 只接受规范的编码：非法字符（包括 '=' 填充）、长度除以 4 余 1、最后一个字符中多余的位不为 0、
+   * 以及 dst 容量不足时返回 -1，同一个 token 只有一种写法
+   */
+  private static int decode(byte[] src, int from, int to, byte[] dst) {
+    if ((to - from) % 4 == 1) {
+      return -1;
+    }
+    int bits = 0;
+    int bitCount = 0;
+    int pos = 0;
+    for (int i = from; i < to; i++) {
+      int value = src[i] < 0 ? -1 : BASE64_URL_DECODE_TABLE[src[i]];
+      if (value < 0) {
+        return -1;
+      }
+      bits = bits << 6 | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        if (pos == dst.length) {
+          return -1;
+        }
+        dst[pos++] = (byte) (bits >>> bitCount);
+      }
+    }
+    return hasTrailingBits(bits, bitCount) ? -1 : pos;
+  }
+
+  /** 与 {@link #decode(byte[], int, int, byte[])} 相同，只是直接读取字符串 */
+  private static int decode(String src, int from, int to, byte[] dst) {
+    if ((to - from) % 4 == 1) {
+      return -1;
+    }
+    int bits = 0;
+    int bitCount = 0;
+    int pos = 0;
+    for (int i = from; i < to; i++) {
+      char c = src.charAt(i);
+      int value = c >= 0x80 ? -1 : BASE64_URL_DECODE_TABLE[c];
+      if (value < 0) {
+        return -1;
+      }
+      bits = bits << 6 | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        if (pos == dst.length) {
+          return -1;
+        }
+        dst[pos++] = (byte) (bits >>> bitCount);
+      }
+    }
+    return hasTrailingBits(bits, bitCount) ? -1 : pos;
+  }
+
+  /** 最后一个字符中没有用到的低位，规范的编码中必须为 0 */
+  private static boolean hasTrailingBits(int bits, int bitCount) {
+    return (bits & ((1 << bitCount) - 1)) != 0;
+  }
+
+  /** 每个线程一份的工作区 */
+  private static final class Workspace {
+    private final Mac mac;
+    private final byte[] expected = new byte[SIGNATURE_LENGTH];
+    private final byte[] actual = new byte[SIGNATURE_LENGTH];
+    private final ClaimsWriter writer = new ClaimsWriter();
+    private final ClaimsReader reader = new ClaimsReader();
+    private byte[] in = new byte[512];
+    private byte[] out = new byte[512];
+
+    private Workspace(Mac mac) {
+      this.mac = mac;
+    }
+
+    private byte[] ensureIn(int capacity) {
+      if (in.length < capacity) {
+        in = new byte[Math.max(capacity, in.length * 2)];
+      }
+      return in;
+    }
+
+    private byte[] ensureOut(int capacity) {
+      if (out.length < capacity) {
+        out = new byte[Math.max(capacity, out.length * 2)];
+      }
+      return out;
+    }
+  }
+
+  /** 把声明直接写成 JSON 字节，只支持扁平的对象，字段名需要是不含特殊字符的 ASCII 字符串 */
+  static final class ClaimsWriter {
+    private byte[] buf = new byte[256];
+    private int length;
+
+    private ClaimsWriter begin() {
+      length = 0;
+      write('{');
+      return this;
+    }
+
+    private void end() {
+      write('}');
+    }
+
+    ClaimsWriter put(String name, long value) {
+      writeName(name);
+      writeLong(value);
+      return this;
+    }
+
+    ClaimsWriter put(String name, String value) {
+      writeName(name);
+      writeString(value);
+      return this;
+    }
+
+    ClaimsWriter put(String name, List<Long> values) {
+      writeName(name);
+      write('[');
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeLong(values.get(i));
+      }
+      write(']');
+      return this;
+    }
+
+    private void writeName(String name) {
+      if (length > 1) {
+        write(',');
+      }
+      write('"');
+      writeAscii(name);
+      write('"');
+      write(':');
+    }
+
+    private void writeLong(long value) {
+      if (value == Long.MIN_VALUE) {
+        writeAscii(Long.toString(value));
+        return;
+      }
+      if (value < 0) {
+        write('-');
+        value = -value;
+      }
+      int digits = 1;
+      for (long v = value / 10; v > 0; v /= 10) {
+        digits++;
+      }
+      ensureCapacity(digits);
+      for (int i = length + digits - 1; i >= length; i--) {
+        buf[i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+      length += digits;
+    }
+
+    private void writeAscii(String str) {
+      int len = str.length();
+      ensureCapacity(len);
+      for (int i = 0; i < len; i++) {
+        buf[length++] = (byte) str.charAt(i);
+      }
+    }
+
+    private void writeString(String str) {
+      write('"');
+      int len = str.length();
+      for (int i = 0; i < len; i++) {
+        char c = str.charAt(i);
+        if (c == '"' || c == '\\') {
+          write('\\');
+          write(c);
+        } else if (c < 0x20) {
+          writeAscii(String.format("\\u%04x", (int) c));
+        } else if (c < 0x80) {
+          write(c);
+        } else {
+          int codePoint = str.codePointAt(i);
+          if (Character.isSupplementaryCodePoint(codePoint)) {
+            i++;
+          }
+          writeUtf8(codePoint);
+        }
+      }
+      write('"');
+    }
+
+    private void writeUtf8(int codePoint) {
+      ensureCapacity(4);
+      if (codePoint < 0x800) {
+        buf[length++] = (byte) (0xc0 | codePoint >> 6);
+      } else if (codePoint < 0x10000) {
+        buf[length++] = (byte) (0xe0 | codePoint >> 12);
+        buf[length++] = (byte) (0x80 | (codePoint >> 6 & 0x3f));
+      } else {
+        buf[length++] = (byte) (0xf0 | codePoint >> 18);
+        buf[length++] = (byte) (0x80 | (codePoint >> 12 & 0x3f));
+        buf[length++] = (byte) (0x80 | (codePoint >> 6 & 0x3f));
+      }
+      buf[length++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void write(int b) {
+      ensureCapacity(1);
+      buf[length++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(length + extra, buf.length * 2));
+      }
+    }
+  }
+
+  /**
+   * payload 的读取器，只解析最外层对象的字段位置，字段值在读取时才解码。<br>
+   * 能够读取 hutool 生成的 payload（数字既可能是数字也可能是字符串）。
+   */
+  static final class ClaimsReader {
+    private static final int MAX_FIELDS = 32;
+
+    private byte[] json = new byte[256];
+    private int length;
+    private int fieldCount;
+    private final int[] nameStarts = new int[MAX_FIELDS];
+    private final int[] nameEnds = new int[MAX_FIELDS];
+    private final int[] valueStarts = new int[MAX_FIELDS];
+    private final int[] valueEnds = new int[MAX_FIELDS];
+
+    private byte[] ensureCapacity(int capacity) {
+      if (json.length < capacity) {
+        json = new byte[Math.max(capacity, json.length * 2)];
+      }
+      return json;
+    }
+
+    private @Nullable ClaimsReader parse(int jsonLength) {
+      length = jsonLength;
+      fieldCount = 0;
+      int pos = skipWhitespace(0);
+      if (pos >= length || json[pos] != '{') {
+        return null;
+      }
+      pos = skipWhitespace(pos + 1);
+      if (pos < length && json[pos] == '}') {
+        return this;
+      }
+      while (pos < length && fieldCount < MAX_FIELDS) {
+        if (json[pos] != '"') {
+          return null;
+        }
+        int nameEnd = skipString(pos);
+        if (nameEnd < 0) {
+          return null;
+        }
+        nameStarts[fieldCount] = pos + 1;
+        nameEnds[fieldCount] = nameEnd - 1;
+        pos = skipWhitespace(nameEnd);
+        if (pos >= length || json[pos] != ':') {
+          return null;
+        }
+        pos = skipWhitespace(pos + 1);
+        int valueEnd = skipValue(pos);
+        if (valueEnd < 0) {
+          return null;
+        }
+        valueStarts[fieldCount] = pos;
+        valueEnds[fieldCount] = valueEnd;
+        fieldCount++;
+        pos = skipWhitespace(valueEnd);
+        if (pos < length && json[pos] == ',') {
+          pos = skipWhitespace(pos + 1);
+        } else if (pos < length && json[pos] == '}') {
+          return this;
+        } else {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    boolean has(String name) {
+      return indexOf(name) >= 0;
+    }
+
+    /**
+     * 读取整数声明，值为数字或者只包含数字的字符串都可以
+     *
+     * @return 字段不存在或者不是整数时返回 defaultValue
+     */
+    long getLong(String name, long defaultValue) {
+      int index = indexOf(name);
+      if (index < 0) {
+        return defaultValue;
+      }
+      int start = valueStarts[index];
+      int end = valueEnds[index];
+      if (json[start] == '"') {
+        start++;
+        end--;
+      }
+      return parseLong(start, end, defaultValue);
+    }
+
+    /** 读取字符串声明，字段不存在或者为 null 时返回 null，数字会原样转成字符串 */
+    @Nullable String getString(String name) {
+      int index = indexOf(name);
+      if (index < 0) {
+        return null;
+      }
+      int start = valueStarts[index];
+      int end = valueEnds[index];
+      if (json[start] != '"') {
+        String raw = new String(json, start, end - start, StandardCharsets.UTF_8);
+        return "null".equals(raw) ? null : raw;
+      }
+      return unescape(start + 1, end - 1);
+    }
+
+    /**
+     * 读取整数数组声明，如 [1,2,3]，元素为数字或者只包含数字的字符串都可以
+     *
+     * @return 字段不存在、不是数组或者包含非整数元素时返回 null
+     */
+    @Nullable List<Long> getLongList(String name) {
+      int index = indexOf(name);
+      if (index < 0 || json[valueStarts[index]] != '[') {
+        return null;
+      }
+      int end = valueEnds[index] - 1;
+      int pos = skipWhitespace(valueStarts[index] + 1);
+      if (pos == end) {
+        return List.of();
+      }
+      List<Long> values = new ArrayList<>();
+      while (pos < end) {
+        int elementEnd = pos;
+        while (elementEnd < end && json[elementEnd] != ',') {
+          elementEnd++;
+        }
+        int start = pos;
+        int stop = elementEnd;
+        while (stop > start && json[stop - 1] <= ' ') {
+          stop--;
+        }
+        if (stop - start >= 2 && json[start] == '"' && json[stop - 1] == '"') {
+          start++;
+          stop--;
+        }
+        long value = parseLong(start, stop, Long.MIN_VALUE);
+        if (value == Long.MIN_VALUE) {
+          return null;
+        }
+        values.add(value);
+        pos = skipWhitespace(elementEnd + 1);
+      }
+      return List.copyOf(values);
+    }
+
+    private long parseLong(int start, int end, long defaultValue) {
+      boolean negative = start < end && json[start] == '-';
+      int i = negative ? start + 1 : start;
+      if (i >= end || end - i > 19) {
+        return defaultValue;
+      }
+      long value = 0;
+      try {
+        for (; i < end; i++) {
+          int digit = json[i] - '0';
+          if (digit < 0 || digit > 9) {
+            return defaultValue;
+          }
+          value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+      } catch (ArithmeticException e) {
+        // 超出 long 范围的数字不是合法的整数声明
+        return defaultValue;
+      }
+      return negative ? -value : value;
+    }
+
+    private int indexOf(String name) {
+      int nameLength = name.length();
+      for (int f = 0; f < fieldCount; f++) {
+        int start = nameStarts[f];
+        if (nameEnds[f] - start != nameLength) {
+          continue;
+        }
+        boolean matches = true;
+        for (int i = 0; i < nameLength; i++) {
+          if (json[start + i] != name.charAt(i)) {
+            matches = false;
+            break;
+          }
+        }
+        if (matches) {
+          return f;
+        }
+      }
+      return -1;
+    }
+
+    private String unescape(int start, int end) {
+      int backslash = -1;
+      for (int i = start; i < end; i++) {
+        if (json[i] == '\\') {
+          backslash = i;
+          break;
+        }
+      }
+      if (backslash < 0) {
+        return new String(json, start, end - start, StandardCharsets.UTF_8);
+      }
+      StringBuilder sb = new StringBuilder(end - start);
+      sb.append(new String(json, start, backslash - start, StandardCharsets.UTF_8));
+      int i = backslash;
+      while (i < end) {
+        if (json[i] != '\\') {
+          int next = i;
+          while (next < end && json[next] != '\\') {
+            next++;
+          }
+          sb.append(new String(json, i, next - i, StandardCharsets.UTF_8));
+          i = next;
+          continue;
+        }
+        char c = (char) json[i + 1];
+        switch (c) {
+          case 'b' -> sb.append('\b');
+          case 'f' -> sb.append('\f');
+          case 'n' -> sb.append('\n');
+          case 'r' -> sb.append('\r');
+          case 't' -> sb.append('\t');
+          case 'u' -> {
+            String hex = new String(json, i + 2, 4, StandardCharsets.US_ASCII);
+            sb.append((char) Integer.parseInt(hex, 16));
+            i += 4;
+          }
+          default -> sb.append(c);
+        }
+        i += 2;
+      }
+      return sb.toString();
+    }
+
+    private int skipWhitespace(int pos) {
+      while (pos < length
+          && (json[pos] == ' ' || json[pos] == '\t' || json[pos] == '\n' || json[pos] == '\r')) {
+        pos++;
+      }
+      return pos;
+    }
+
+    /** pos 指向字符串开头的引号，返回结尾引号之后的位置，格式错误时返回 -1 */
+    private int skipString(int pos) {
+      for (int i = pos + 1; i < length; i++) {
+        if (json[i] == '\\') {
+          i++;
+        } else if (json[i] == '"') {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+
+    /** 跳过一个任意类型的值（包括嵌套的对象和数组），返回值之后的位置，格式错误时返回 -1 */
+    private int skipValue(int pos) {
+      if (pos >= length) {
+        return -1;
+      }
+      byte b = json[pos];
+      if (b == '"') {
+        return skipString(pos);
+      }
+      if (b == '{' || b == '[') {
+        int depth = 0;
+        for (int i = pos; i < length; i++) {
+          byte c = json[i];
+          if (c == '"') {
+            i = skipString(i);
+            if (i < 0) {
+              return -1;
+            }
+            i--;
+          } else if (c == '{' || c == '[') {
+            depth++;
+          } else if ((c == '}' || c == ']') && --depth == 0) {
+            return i + 1;
+          }
+        }
+        return -1;
+      }
+      int i = pos;
+      while (i < length && json[i] != ',' && json[i] != '}' && json[i] != ']'
+          && json[i] != ' ' && json[i] != '\t' && json[i] != '\n' && json[i] != '\r') {
+        i++;
+      }
+      return i == pos ? -1 : i;
+    }
+  }
+}
@@ -5,7 +5,9 @@ import cn.huava.common.service.BaseService;
 import cn.huava.common.util.Fn;
 import cn.huava.sys.mapper.RefreshTokenMapper;
 import cn.huava.sys.pojo.po.RefreshTokenPo;
+import cn.hutool.v7.json.jwt.JWTUtil;
 import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NullMarked;
@@ -22,10 +24,15 @@ import org.springframework.stereotype.Service;
 @NullMarked
 @AllArgsConstructor
 public class AceRefreshTokenService extends BaseService<RefreshTokenMapper, RefreshTokenPo> {
+  /**
+   * 保存登录时签发的 refresh token<br>
+   * 主键使用 refresh token 中的 id（会话 id），同一次登录签发的 access token 通过 sid 找到这条记录
+   */
   public void saveRefreshToken(Long sysUserId, String refreshToken) {
     RefreshTokenPo po = new RefreshTokenPo().setRefreshToken(refreshToken).setSysUserId(sysUserId);
     po.setCreatedBy(sysUserId).setUpdatedBy(sysUserId);
     BasePo.beforeCreate(po);
+    po.setId(Long.valueOf(JWTUtil.parseToken(refreshToken).getPayload("id", String.class)));
     save(po);
   }
 
@@ -35,4 +42,21 @@ public class AceRefreshTokenService extends BaseService<RefreshTokenMapper, Refr
             .eq(RefreshTokenPo::getRefreshToken, refreshToken);
     return getOne(wrapper);
   }
+
+  /**
+   * 软删除用户所有未删除的 refresh token
+   *
+   * @param sysUserId 用户 id
+   */
+  public void softDeleteByUserId(Long sysUserId) {
+    RefreshTokenPo deleted = new RefreshTokenPo();
+    BasePo.beforeDelete(deleted);
+    update(
+        new LambdaUpdateWrapper<RefreshTokenPo>()
+            .eq(RefreshTokenPo::getSysUserId, sysUserId)
+            .eq(RefreshTokenPo::getDeleteInfo, 0L)
+            .set(RefreshTokenPo::getDeleteInfo, deleted.getDeleteInfo())
+            .set(RefreshTokenPo::getUpdatedBy, deleted.getUpdatedBy())
+            .set(RefreshTokenPo::getUpdatedAt, deleted.getUpdatedAt()));
+  }
 }
@@ -6,6 +6,9 @@ import cn.huava.common.pojo.dto.PageDto;
 import cn.huava.common.pojo.qo.PageQo;
 import cn.huava.common.service.BaseService;
 import cn.huava.common.util.Fn;
+import cn.huava.common.util.TransactionUtil;
+import cn.huava.sys.auth.RoleHierarchy;
+import cn.huava.sys.auth.RolePermBitSets;
 import cn.huava.sys.cache.RoleCache;
 import cn.huava.sys.mapper.RoleMapper;
 import cn.huava.sys.pojo.po.*;
@@ -35,6 +38,9 @@ public class AceRoleService extends BaseService<RoleMapper, RolePo> {
   private final RolePageService rolePageService;
   private final AceRolePermService rolePermService;
   private final RoleCache roleCache;
+  private final RolePermBitSets rolePermBitSets;
+  private final RoleClosureService roleClosureService;
+  private final RoleHierarchy roleHierarchy;
 
   public PageDto<RolePo> rolePage(PageQo<RolePo> pageQo, final RolePo params) {
     return rolePageService.rolePage(pageQo, params);
@@ -47,6 +53,26 @@ public class AceRoleService extends BaseService<RoleMapper, RolePo> {
             .ne(id != null, RolePo::getId, id));
   }
 
+  /**
+   * 角色新增、修改、删除后调用，重新计算角色继承关系的闭包并通知所有实例<br>
+   * 事务提交之前其他实例重新加载的仍然是旧的闭包，所以事务结束后再通知一次
+   */
+  public void afterHierarchyChanged() {
+    roleClosureService.rebuildClosure();
+    roleHierarchy.refresh();
+    TransactionUtil.afterCompletion(roleHierarchy::refresh);
+  }
+
+  /** ancestorId 是否是 roleId 自己或者它的上级角色，用于防止角色继承关系出现环 */
+  public boolean isAncestorOrSelf(long ancestorId, long roleId) {
+    return roleClosureService.isAncestorOrSelf(ancestorId, roleId);
+  }
+
+  /** 是否有未删除的下级角色 */
+  public boolean hasChildren(Long id) {
+    return exists(Fn.undeletedWrapper(RolePo::getDeleteInfo).eq(RolePo::getPid, id));
+  }
+
   @Transactional(rollbackFor = Throwable.class)
   public void setPerm(SetPermQo setPermQo) {
     Assert.isTrue(ADMIN_ROLE_ID != setPermQo.getRoleId(), "不允许修改超级管理员角色的权限");
@@ -58,7 +84,10 @@ public class AceRoleService extends BaseService<RoleMapper, RolePo> {
           permIds.stream().map(permId -> new RolePermPo(roleId, permId)).toList();
       rolePermService.saveBatch(rolePermPos);
     }
+    // 缓存在事务结束后会再删除一次，位图由缓存计算而来，也需要在事务结束后再丢弃一次
     roleCache.deleteCache(roleId);
+    rolePermBitSets.invalidate();
+    TransactionUtil.afterCompletion(rolePermBitSets::invalidate);
   }
 
   public List<Long> getPerm(Long id) {
@@ -0,0 +1,85 @@
+package cn.huava.sys.service.role;
+
+import cn.huava.common.service.BaseService;
+import cn.huava.common.util.Fn;
+import cn.huava.sys.mapper.RoleClosureMapper;
+import cn.huava.sys.mapper.RoleMapper;
+import cn.huava.sys.pojo.po.RoleClosurePo;
+import cn.huava.sys.pojo.po.RolePo;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import java.util.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * 维护角色继承关系的传递闭包（sys_role_closure）<br>
+ * 角色的增删改都很少，所以每次都根据 sys_role.pid 重新计算整个闭包，再与表中已有的行比较，只增删有变化的行。
+ *
+ * @author Camio1945
+ */
+@Slf4j
+@Service
+@NullMarked
+@RequiredArgsConstructor
+class RoleClosureService extends BaseService<RoleClosureMapper, RoleClosurePo> {
+  private final RoleMapper roleMapper;
+
+  protected void rebuildClosure() {
+    Set<Link> expected = computeLinks();
+    Map<Link, Long> existing = new HashMap<>();
+    for (RoleClosurePo po : list()) {
+      existing.put(new Link(po.getAncestorId(), po.getDescendantId(), po.getDepth()), po.getId());
+    }
+    List<Long> staleIds =
+        existing.entrySet().stream()
+            .filter(entry -> !expected.contains(entry.getKey()))
+            .map(Map.Entry::getValue)
+            .toList();
+    List<RoleClosurePo> missing =
+        expected.stream()
+            .filter(link -> !existing.containsKey(link))
+            .map(link -> new RoleClosurePo(link.ancestorId, link.descendantId, link.depth))
+            .toList();
+    if (!staleIds.isEmpty()) {
+      removeByIds(staleIds);
+    }
+    if (!missing.isEmpty()) {
+      saveBatch(missing);
+    }
+  }
+
+  /** ancestorId 是否是 roleId 自己或者它的上级角色 */
+  protected boolean isAncestorOrSelf(long ancestorId, long roleId) {
+    return ancestorId == roleId
+        || exists(
+            new LambdaQueryWrapper<RoleClosurePo>()
+                .eq(RoleClosurePo::getAncestorId, ancestorId)
+                .eq(RoleClosurePo::getDescendantId, roleId));
+  }
+
+  private Set<Link> computeLinks() {
+    List<RolePo> roles = roleMapper.selectList(Fn.undeletedWrapper(RolePo::getDeleteInfo));
+    Map<Long, @Nullable Long> pidById = HashMap.newHashMap(roles.size());
+    roles.forEach(role -> pidById.put(role.getId(), role.getPid()));
+    Set<Link> links = new HashSet<>();
+    for (Long roleId : pidById.keySet()) {
+      links.add(new Link(roleId, roleId, 0));
+      Long ancestorId = pidById.get(roleId);
+      int depth = 1;
+      while (ancestorId != null && pidById.containsKey(ancestorId)) {
+        if (depth > pidById.size() || ancestorId.equals(roleId)) {
+          log.warn("Cycle detected in role hierarchy at role {}", roleId);
+          break;
+        }
+        links.add(new Link(ancestorId, roleId, depth++));
+        ancestorId = pidById.get(ancestorId);
+      }
+    }
+    return links;
+  }
+
+  private record Link(long ancestorId, long descendantId, int depth) {}
+}
@@ -50,6 +50,15 @@ public class AceUserService extends BaseService<UserMapper, UserExtPo> {
     logoutService.logout(refreshToken);
   }
 
+  /**
+   * 退出所有设备，用户在所有设备上的 token 立即失效
+   *
+   * @param userId 用户 id
+   */
+  public void logoutAll(final Long userId) {
+    logoutService.logoutAll(userId);
+  }
+
   public PageDto<UserDto> userPage(PageQo<UserExtPo> pageQo, UserExtPo params) {
     return userPageService.userPage(pageQo, params);
   }
@@ -70,6 +79,8 @@ public class AceUserService extends BaseService<UserMapper, UserExtPo> {
             .set(UserExtPo::getPassword, encodedNewPassword);
     update(wrapper);
     userCache.afterSaveOrUpdate((UserExtPo) loginUser);
+    // 修改密码后，所有设备（包括当前设备）都需要重新登录
+    logoutService.logoutAll(loginUser.getId());
   }
 
   public UserInfoDto getUserInfoDto() {
@@ -6,6 +6,7 @@ import static java.util.stream.Collectors.toSet;
 import cn.huava.common.constant.CommonConstant;
 import cn.huava.common.service.BaseService;
 import cn.huava.common.util.Fn;
+import cn.huava.sys.auth.RoleHierarchy;
 import cn.huava.sys.cache.UserRoleCache;
 import cn.huava.sys.mapper.UserMapper;
 import cn.huava.sys.pojo.dto.UserInfoDto;
@@ -32,6 +33,7 @@ class GetUserInfoService extends BaseService<UserMapper, UserExtPo> {
   private final AceRolePermService rolePermService;
   private final AcePermService permService;
   private final UserRoleCache userRoleCache;
+  private final RoleHierarchy roleHierarchy;
 
   protected UserInfoDto getUserInfoDto() {
     UserInfoDto userInfoDto = new UserInfoDto();
@@ -59,7 +61,7 @@ class GetUserInfoService extends BaseService<UserMapper, UserExtPo> {
     boolean isAdminRole = loginUser.getId() == CommonConstant.ADMIN_USER_ID;
     List<Long> roleIds = null;
     if (!isAdminRole) {
-      roleIds = userRoleCache.getRoleIdsByUserId(loginUser.getId());
+      roleIds = roleHierarchy.expand(userRoleCache.getRoleIdsByUserId(loginUser.getId()));
       isAdminRole = roleIds.contains(CommonConstant.ADMIN_ROLE_ID);
     }
     final Set<Long> permIds = getPermIds(isAdminRole, roleIds);
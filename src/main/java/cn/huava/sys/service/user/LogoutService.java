@@ -1,6 +1,8 @@
 package cn.huava.sys.service.user;
 
 import cn.huava.common.service.BaseService;
+import cn.huava.sys.cache.RevokedSessionCache;
+import cn.huava.sys.cache.TokenEpochCache;
 import cn.huava.sys.mapper.UserMapper;
 import cn.huava.sys.pojo.po.RefreshTokenPo;
 import cn.huava.sys.pojo.po.UserExtPo;
@@ -21,10 +23,30 @@ class LogoutService extends BaseService<UserMapper, UserExtPo> {
 
   private final AceRefreshTokenService aceRefreshTokenService;
 
+  private final TokenEpochCache tokenEpochCache;
+
+  private final RevokedSessionCache revokedSessionCache;
+
+  /**
+   * 退出当前设备：删除这次登录的 refresh token，这次登录签发的 access token 不再续期
+   *
+   * @param refreshToken 这次登录的 refresh token
+   */
   protected void logout(final String refreshToken) {
     RefreshTokenPo refreshTokenPo = aceRefreshTokenService.getByRefreshToken(refreshToken);
     if (refreshTokenPo != null) {
       aceRefreshTokenService.softDelete(refreshTokenPo.getId());
+      revokedSessionCache.revoke(refreshTokenPo.getId());
     }
   }
+
+  /**
+   * 退出所有设备：删除用户所有的 refresh token，并吊销已经签发的所有 access token
+   *
+   * @param userId 用户 id
+   */
+  protected void logoutAll(final Long userId) {
+    aceRefreshTokenService.softDeleteByUserId(userId);
+    tokenEpochCache.increaseEpoch(userId);
+  }
 }
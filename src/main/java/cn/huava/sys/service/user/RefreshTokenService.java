@@ -2,8 +2,9 @@ package cn.huava.sys.service.user;
 
 import cn.huava.common.constant.CommonConstant;
 import cn.huava.common.service.BaseService;
+import cn.huava.sys.cache.UserCache;
 import cn.huava.sys.mapper.UserMapper;
-import cn.huava.sys.pojo.dto.UserJwtDto;
+import cn.huava.sys.pojo.dto.UserAuthDto;
 import cn.huava.sys.pojo.po.RefreshTokenPo;
 import cn.huava.sys.pojo.po.UserExtPo;
 import cn.huava.sys.service.jwt.AceJwtService;
@@ -27,6 +28,7 @@ class RefreshTokenService extends BaseService<UserMapper, UserExtPo> {
 
   private final AceRefreshTokenService aceRefreshTokenService;
   private final AceJwtService aceJwtService;
+  private final UserCache userCache;
 
   protected String refreshToken(String refreshToken) {
     RefreshTokenPo po = aceRefreshTokenService.getByRefreshToken(refreshToken);
@@ -38,7 +40,16 @@ class RefreshTokenService extends BaseService<UserMapper, UserExtPo> {
     if (exp == null || exp * CommonConstant.MILLIS_PER_SECOND < System.currentTimeMillis()) {
       throw new IllegalArgumentException("Refresh token expired");
     }
-    UserJwtDto res = aceJwtService.createToken(po.getSysUserId());
-    return res.getAccessToken();
+    // 用户被删除或禁用时，即使 refresh token 还没有被删除也不能再换取 access token
+    UserAuthDto user = userCache.getAuthById(po.getSysUserId());
+    if (user == null || user.deleted()) {
+      throw new IllegalArgumentException("Refresh token invalid");
+    }
+    if (!user.enabled()) {
+      throw new IllegalArgumentException("用户已被禁用");
+    }
+    // 新 token 绑定到这个 refresh token 所在的会话，会话退出后不能再续期
+    Long iat = jwt.getPayload("iat", Long.class);
+    return aceJwtService.createAccessToken(po.getSysUserId(), po.getId(), iat == null ? 0L : iat);
   }
 }
@@ -5,6 +5,7 @@ import static cn.huava.common.constant.CommonConstant.RoleMessage.IMPORTANT_ROLE
 
 import cn.huava.common.util.Fn;
 import cn.huava.sys.pojo.po.RolePo;
+import cn.huava.sys.service.role.AceRoleService;
 import cn.huava.sys.service.userrole.AceUserRoleService;
 import cn.huava.common.validation.BaseValidator;
 import jakarta.validation.ConstraintValidator;
@@ -32,6 +33,9 @@ public class BeforeDeleteRoleValidator extends BaseValidator
     if (userCount > 0) {
       return customMessage(context, "角色下存在用户，不能删除");
     }
+    if (Fn.getBean(AceRoleService.class).hasChildren(id)) {
+      return customMessage(context, "角色下存在下级角色，不能删除");
+    }
     return true;
   }
 }
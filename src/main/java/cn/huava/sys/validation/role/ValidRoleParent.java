@@ -0,0 +1,23 @@
+package cn.huava.sys.validation.role;
+
+import jakarta.validation.*;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 校验角色的上级角色，与 {@link ValidRoleParentValidator} 配合使用
+ *
+ * @author Camio1945
+ */
+@Constraint(validatedBy = ValidRoleParentValidator.class)
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ValidRoleParent {
+  String message() default "";
+
+  Class<?>[] groups() default {};
+
+  Class<? extends Payload>[] payload() default {};
+}
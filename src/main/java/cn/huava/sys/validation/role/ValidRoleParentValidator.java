@@ -0,0 +1,41 @@
+package cn.huava.sys.validation.role;
+
+import static cn.huava.common.constant.CommonConstant.ADMIN_ROLE_ID;
+
+import cn.huava.common.util.Fn;
+import cn.huava.common.validation.BaseValidator;
+import cn.huava.sys.pojo.po.RolePo;
+import cn.huava.sys.service.role.AceRoleService;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+/**
+ * 角色上级的校验器，与 {@link ValidRoleParent} 注解配合使用<br>
+ * 上级角色必须存在，不能是超级管理员角色（否则下级角色会变成超级管理员），也不能是自己或自己的下级角色（否则会出现环）。
+ *
+ * @author Camio1945
+ */
+public class ValidRoleParentValidator extends BaseValidator
+    implements ConstraintValidator<ValidRoleParent, RolePo> {
+
+  @Override
+  public boolean isValid(RolePo rolePo, ConstraintValidatorContext context) {
+    Long pid = rolePo.getPid();
+    if (pid == null || pid == 0) {
+      return true;
+    }
+    if (pid == ADMIN_ROLE_ID) {
+      return customMessage(context, "不允许以超级管理员角色作为上级角色");
+    }
+    AceRoleService roleService = Fn.getBean(AceRoleService.class);
+    RolePo parent = roleService.getById(pid);
+    if (parent == null || parent.getDeleteInfo() > 0) {
+      return customMessage(context, "上级角色不存在");
+    }
+    Long id = rolePo.getId();
+    if (id != null && roleService.isAncestorOrSelf(id, pid)) {
+      return customMessage(context, "上级角色不能是自己或自己的下级角色");
+    }
+    return true;
+  }
+}
@@ -0,0 +1,87 @@
+package cn.huava.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link CacheEntry}
+ *
+ * @author Camio1945
+ */
+class CacheEntryTest {
+  private static final Duration ONE_DAY = Duration.ofDays(1);
+
+  @Test
+  void should_always_refresh_expired_entry() {
+    CacheEntry entry = new CacheEntry("value", 0, Duration.ofMillis(-1));
+    assertThat(entry.shouldRefresh(ONE_DAY)).isTrue();
+  }
+
+  @Test
+  void should_not_refresh_fresh_entry() {
+    CacheEntry entry = new CacheEntry("value", 10, ONE_DAY);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(entry.shouldRefresh(ONE_DAY)).isFalse();
+    }
+  }
+
+  @Test
+  void should_refresh_slow_entry_earlier() {
+    // 加载耗时 1 秒，距离过期还有 1 秒，大约 37% 的读取会触发刷新
+    CacheEntry slow = new CacheEntry("value", 1000, Duration.ofSeconds(1));
+    CacheEntry fast = new CacheEntry("value", 1, Duration.ofSeconds(1));
+    int slowRefreshes = 0;
+    int fastRefreshes = 0;
+    for (int i = 0; i < 1000; i++) {
+      slowRefreshes += slow.shouldRefresh(Duration.ofSeconds(1)) ? 1 : 0;
+      fastRefreshes += fast.shouldRefresh(Duration.ofSeconds(1)) ? 1 : 0;
+    }
+    assertThat(slowRefreshes).isBetween(200, 600);
+    assertThat(fastRefreshes).isZero();
+  }
+
+  @Test
+  void should_round_sub_millisecond_load_up_to_one_milli() {
+    assertThat(CacheEntry.loadMillisOf(0)).isEqualTo(1);
+    assertThat(CacheEntry.loadMillisOf(200_000)).isEqualTo(1);
+    assertThat(CacheEntry.loadMillisOf(1_000_000)).isEqualTo(1);
+    assertThat(CacheEntry.loadMillisOf(1_000_001)).isEqualTo(2);
+  }
+
+  @Test
+  void should_refresh_fast_loaded_entry_right_before_expiry() {
+    // 0.2 毫秒的加载换算成 1 毫秒，到期前 1 毫秒内的读取大约 37% 会触发刷新；截断为 0 时永远不会
+    CacheEntry entry =
+        new CacheEntry("value", CacheEntry.loadMillisOf(200_000), Duration.ofMillis(1));
+    int refreshes = 0;
+    for (int i = 0; i < 1000; i++) {
+      refreshes += entry.shouldRefresh(Duration.ofMillis(1)) ? 1 : 0;
+    }
+    assertThat(refreshes).isPositive();
+  }
+
+  @Test
+  void should_refresh_fast_loaded_entry_minutes_before_expiry_of_long_ttl() {
+    // TTL 为一天时提前量至少约 14.4 分钟：加载只花 1 毫秒，距离过期还有 10 分钟时大约一半的读取会触发刷新
+    CacheEntry expiring = new CacheEntry("value", 1, Duration.ofMinutes(10));
+    CacheEntry fresh = new CacheEntry("value", 1, Duration.ofHours(6));
+    int expiringRefreshes = 0;
+    int freshRefreshes = 0;
+    for (int i = 0; i < 1000; i++) {
+      expiringRefreshes += expiring.shouldRefresh(ONE_DAY) ? 1 : 0;
+      freshRefreshes += fresh.shouldRefresh(ONE_DAY) ? 1 : 0;
+    }
+    assertThat(expiringRefreshes).isBetween(300, 700);
+    assertThat(freshRefreshes).isZero();
+  }
+
+  @Test
+  void should_never_refresh_legacy_value_early() {
+    CacheEntry entry = CacheEntry.of("legacy");
+    assertThat(entry.getValue()).isEqualTo("legacy");
+    assertThat(entry.shouldRefresh(ONE_DAY)).isFalse();
+    assertThat(CacheEntry.of(entry)).isSameAs(entry);
+  }
+}
@@ -0,0 +1,252 @@
+package cn.huava.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import cn.huava.common.cache.RedisCircuitBreaker.State;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.RedisTimeoutException;
+
+/**
+ * Tests for {@link RedisCircuitBreaker}
+ *
+ * @author Camio1945
+ */
+class RedisCircuitBreakerTest {
+  private static final Duration OPEN = Duration.ofMillis(50);
+
+  @Test
+  void should_open_after_consecutive_failures_and_fall_back() {
+    RedisCircuitBreaker breaker = breaker(2, Duration.ZERO);
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThat(breaker.call(() -> fail(calls), () -> "fallback")).isEqualTo("fallback");
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    assertThat(breaker.call(() -> fail(calls), () -> "fallback")).isEqualTo("fallback");
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThat(breaker.call(() -> fail(calls), () -> "fallback")).isEqualTo("fallback");
+
+    assertThat(calls).hasValue(2);
+    assertThat(breaker.getMetrics().getTripCount()).isOne();
+    assertThat(breaker.getMetrics().getFailureCount()).isEqualTo(2);
+    assertThat(breaker.getMetrics().getShortCircuitCount()).isOne();
+  }
+
+  @Test
+  void should_reset_failure_count_after_success() {
+    RedisCircuitBreaker breaker = breaker(2, Duration.ZERO);
+
+    breaker.call(() -> fail(new AtomicInteger()), () -> "fallback");
+    breaker.call(() -> "value", () -> "fallback");
+    breaker.call(() -> fail(new AtomicInteger()), () -> "fallback");
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void should_rethrow_other_exceptions_without_counting() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+
+    assertThatThrownBy(
+            () ->
+                breaker.call(
+                    () -> {
+                      throw new IllegalStateException("bad data");
+                    },
+                    () -> "fallback"))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void should_recognize_wrapped_redis_failures() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+
+    breaker.call(
+        () -> {
+          throw new CompletionException(new RedisTimeoutException("timeout"));
+        },
+        () -> "fallback");
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void should_count_slow_calls_as_failures() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ofMillis(1));
+
+    breaker.call(
+        () -> {
+          LockSupport.parkNanos(Duration.ofMillis(20).toNanos());
+          return "slow";
+        },
+        () -> "fallback");
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void should_not_count_blocking_calls_as_slow() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ofMillis(1));
+
+    breaker.callBlocking(
+        () -> {
+          LockSupport.parkNanos(Duration.ofMillis(20).toNanos());
+          return "locked";
+        },
+        () -> "fallback");
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void should_fail_fast_when_open() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(() -> breaker.execute(calls::incrementAndGet))
+        .isInstanceOf(RedisUnavailableException.class);
+    assertThatThrownBy(() -> breaker.runOrFail(calls::incrementAndGet))
+        .isInstanceOf(RedisUnavailableException.class);
+    assertThat(calls).hasValue(0);
+  }
+
+  @Test
+  void should_rethrow_redis_failure_when_failing_fast() {
+    RedisCircuitBreaker breaker = breaker(5, Duration.ZERO);
+
+    assertThatThrownBy(() -> breaker.execute(() -> fail(new AtomicInteger())))
+        .isInstanceOf(RedisConnectionException.class);
+  }
+
+  @Test
+  void should_record_async_result_when_completed() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    assertThat(breaker.executeAsync(() -> completedFuture("value")).toCompletableFuture().join())
+        .isEqualTo("value");
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    CompletionStage<String> stage = breaker.executeAsync(() -> pending);
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    pending.completeExceptionally(new RedisConnectionException("Redis is down"));
+
+    assertThat(stage.toCompletableFuture()).isCompletedExceptionally();
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void should_fail_async_calls_fast_when_open() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+    AtomicInteger calls = new AtomicInteger();
+
+    CompletionStage<Integer> stage =
+        breaker.executeAsync(() -> completedFuture(calls.incrementAndGet()));
+
+    assertThatThrownBy(() -> stage.toCompletableFuture().join())
+        .hasCauseInstanceOf(RedisUnavailableException.class);
+    assertThat(calls).hasValue(0);
+  }
+
+  @Test
+  void should_let_one_probe_through_and_close_on_success() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+    LockSupport.parkNanos(OPEN.multipliedBy(2).toNanos());
+
+    String value =
+        breaker.call(
+            () -> {
+              // 探测期间其他访问仍然降级
+              assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+              assertThat(breaker.call(() -> "other", () -> "fallback")).isEqualTo("fallback");
+              return "probe";
+            },
+            () -> "fallback");
+
+    assertThat(value).isEqualTo("probe");
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void should_reopen_when_probe_fails() {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+    LockSupport.parkNanos(OPEN.multipliedBy(2).toNanos());
+
+    breaker.run(RedisCircuitBreakerTest::failRun);
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThat(breaker.call(() -> "value", () -> "fallback")).isEqualTo("fallback");
+  }
+
+  @Test
+  void should_replay_deferred_invalidations_after_recovery() throws InterruptedException {
+    RedisCircuitBreaker breaker = breaker(1, Duration.ZERO);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+    AtomicInteger deletes = new AtomicInteger();
+
+    breaker.runOrDefer(deletes::incrementAndGet);
+    assertThat(deletes).hasValue(0);
+    assertThat(breaker.getMetrics().getDeferredInvalidationCount()).isOne();
+
+    LockSupport.parkNanos(OPEN.multipliedBy(2).toNanos());
+    breaker.call(() -> "probe", () -> "fallback");
+
+    for (int i = 0; i < 50 && deletes.get() == 0; i++) {
+      Thread.sleep(100);
+    }
+    assertThat(deletes).hasValue(1);
+    assertThat(breaker.getMetrics().getDeferredInvalidationCount()).isZero();
+  }
+
+  @Test
+  void should_drop_invalidations_beyond_limit() {
+    RedisCircuitBreaker breaker = new RedisCircuitBreaker(1, OPEN, Duration.ZERO, 1, OPEN, 1);
+    breaker.run(RedisCircuitBreakerTest::failRun);
+
+    breaker.runOrDefer(() -> {});
+    breaker.runOrDefer(() -> {});
+
+    assertThat(breaker.getMetrics().getDeferredInvalidationCount()).isOne();
+    assertThat(breaker.getMetrics().getDroppedInvalidationCount()).isOne();
+  }
+
+  @Test
+  void should_limit_concurrent_database_loads() {
+    RedisCircuitBreaker breaker = new RedisCircuitBreaker(1, OPEN, Duration.ZERO, 1, OPEN, 1);
+
+    String value =
+        breaker.limitDatabaseLoad(
+            () -> {
+              // 唯一的名额正在使用，等待超时后快速失败
+              assertThatThrownBy(() -> breaker.limitDatabaseLoad(() -> "nested"))
+                  .isInstanceOf(RedisUnavailableException.class);
+              return "loaded";
+            });
+
+    assertThat(value).isEqualTo("loaded");
+    assertThat(breaker.limitDatabaseLoad(() -> "again")).isEqualTo("again");
+    assertThat(breaker.getMetrics().getRejectedDatabaseLoadCount()).isOne();
+  }
+
+  private static RedisCircuitBreaker breaker(int failureThreshold, Duration slowCall) {
+    return new RedisCircuitBreaker(failureThreshold, OPEN, slowCall, 1, Duration.ZERO, 100);
+  }
+
+  private static String fail(AtomicInteger calls) {
+    calls.incrementAndGet();
+    throw new RedisConnectionException("Redis is down");
+  }
+
+  private static void failRun() {
+    throw new RedisConnectionException("Redis is down");
+  }
+}
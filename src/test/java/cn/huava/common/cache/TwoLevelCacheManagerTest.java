@@ -0,0 +1,538 @@
+package cn.huava.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import cn.huava.common.util.RedisUtil;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucketAsync;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RTopicAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.RedisConnectionException;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+/**
+ * Tests for {@link TwoLevelCacheManager} and {@link TwoLevelCache}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class TwoLevelCacheManagerTest {
+  private static final String LOCAL = "cache:local";
+  private static final String REMOTE_ONLY = "cache:remote";
+  private static final String GENERATIONAL = "cache:generational";
+  private static final String CLUSTER = "cache:cluster";
+
+  @Mock private CacheManager redisCacheManager;
+
+  @Mock private Cache redisCache;
+
+  @Mock private RedissonClient redissonClient;
+
+  @Mock private RTopic topic;
+
+  @Mock private Cache generationalRedisCache;
+
+  @Mock private RAtomicLong generation;
+
+  @Mock private Cache clusterRedisCache;
+
+  @Mock private RLock lock;
+
+  private MockedStatic<RedisUtil> mockedRedisUtil;
+
+  private RedisCircuitBreaker redisCircuitBreaker;
+
+  private TwoLevelCacheManager cacheManager;
+
+  @BeforeEach
+  void setUp() {
+    mockedRedisUtil = mockStatic(RedisUtil.class, withSettings().strictness(Strictness.LENIENT));
+    mockedRedisUtil.when(RedisUtil::getRedissonClient).thenReturn(redissonClient);
+    lenient().when(redissonClient.getTopic(anyString(), any())).thenReturn(topic);
+    mockedRedisUtil
+        .when(() -> RedisUtil.randomOffsetDuration(any()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    lenient().when(redisCacheManager.getCache(anyString())).thenReturn(redisCache);
+    lenient().when(redisCache.getName()).thenReturn(LOCAL);
+    lenient().when(redisCacheManager.getCache(GENERATIONAL)).thenReturn(generationalRedisCache);
+    lenient().when(generationalRedisCache.getName()).thenReturn(GENERATIONAL);
+    lenient().when(redisCacheManager.getCache(CLUSTER)).thenReturn(clusterRedisCache);
+    lenient().when(clusterRedisCache.getName()).thenReturn(CLUSTER);
+    lenient().when(redissonClient.getLock(CLUSTER + "::1:loading")).thenReturn(lock);
+    redisCircuitBreaker =
+        new RedisCircuitBreaker(2, Duration.ofMinutes(1), Duration.ZERO, 1, Duration.ZERO, 100);
+    cacheManager =
+        new TwoLevelCacheManager(
+            redisCacheManager,
+            Set.of(LOCAL, GENERATIONAL, CLUSTER),
+            Set.of(GENERATIONAL),
+            Set.of(CLUSTER),
+            100,
+            Duration.ofMinutes(1),
+            Duration.ofDays(1),
+            Duration.ZERO,
+            Duration.ofMillis(500),
+            Duration.ofSeconds(10),
+            redisCircuitBreaker);
+  }
+
+  @AfterEach
+  void tearDown() {
+    mockedRedisUtil.close();
+  }
+
+  @Test
+  void should_only_wrap_configured_caches() {
+    assertThat(cacheManager.getCache(LOCAL)).isInstanceOf(TwoLevelCache.class);
+    assertThat(cacheManager.getCache(REMOTE_ONLY)).isSameAs(redisCache);
+    assertThat(cacheManager.getCache(LOCAL)).isSameAs(cacheManager.getCache(LOCAL));
+    assertThat(cacheManager.getCacheNames()).containsExactlyInAnyOrder(LOCAL, REMOTE_ONLY);
+  }
+
+  @Test
+  void should_read_redis_once_and_then_local() {
+    CacheEntry stored = new CacheEntry("value", 0, Duration.ofDays(1));
+    when(redisCache.get(1L)).thenReturn(new SimpleValueWrapper(stored));
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    assertThat(cache.get(1L, String.class)).isEqualTo("value");
+    assertThat(cache.get(1L, String.class)).isEqualTo("value");
+    verify(redisCache, times(1)).get(1L);
+  }
+
+  @Test
+  void should_read_value_stored_without_entry() {
+    when(redisCache.get(1L)).thenReturn(new SimpleValueWrapper("legacy"));
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("legacy");
+  }
+
+  @Test
+  void should_load_and_write_both_levels_on_miss() {
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+    assertThat(cache.get(1L, () -> "reloaded")).isEqualTo("loaded");
+    ArgumentCaptor<CacheEntry> entry = ArgumentCaptor.forClass(CacheEntry.class);
+    verify(redisCache).put(eq(1L), entry.capture());
+    assertThat(entry.getValue().getValue()).isEqualTo("loaded");
+    assertThat(entry.getValue().getExpireAt()).isGreaterThan(System.currentTimeMillis());
+    verify(topic, never()).publish(any());
+  }
+
+  @Test
+  void should_not_cache_null() {
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    assertThat(cache.get(1L, () -> null)).isNull();
+    verify(redisCache, never()).put(any(), any());
+  }
+
+  @Test
+  void should_refresh_expiring_entry_in_background() throws Exception {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.putLocal(1L, new CacheEntry("old", 10, Duration.ZERO));
+    CountDownLatch refreshed = new CountDownLatch(1);
+
+    Object value =
+        cache.get(
+            1L,
+            () -> {
+              refreshed.countDown();
+              return "new";
+            });
+
+    // 当前请求拿到的仍然是旧值，新值在后台加载
+    assertThat(value).isEqualTo("old");
+    assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+    waitUntil(() -> "new".equals(cache.getLocal(1L).getValue()));
+    verify(redisCache).put(eq(1L), any(CacheEntry.class));
+  }
+
+  @Test
+  void should_use_entry_refreshed_by_other_instance() throws Exception {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    CacheEntry expiring = new CacheEntry("old", 10, Duration.ZERO);
+    CacheEntry remote = new CacheEntry("remote", 10, Duration.ofDays(1));
+    cache.putLocal(1L, expiring);
+    when(redisCache.get(1L)).thenReturn(new SimpleValueWrapper(remote));
+
+    cache.refreshIfExpiring(1L, expiring, () -> "loaded");
+
+    waitUntil(() -> cache.getLocal(1L) == remote);
+    verify(redisCache, never()).put(any(), any());
+  }
+
+  @Test
+  void should_count_hits_misses_loads_and_evictions() {
+    when(redisCache.get(2L)).thenReturn(new SimpleValueWrapper(entry("remote")));
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    cache.get(1L, () -> "loaded");
+    cache.get(1L, () -> "loaded");
+    cache.get(2L, () -> "loaded");
+    cache.evict(1L);
+
+    CacheMetricsDto metrics = cacheManager.getMetrics().getFirst();
+    assertThat(metrics.getName()).isEqualTo(LOCAL);
+    assertThat(metrics.getLocalHitCount()).isOne();
+    assertThat(metrics.getRedisHitCount()).isOne();
+    assertThat(metrics.getMissCount()).isOne();
+    assertThat(metrics.getHitRate()).isEqualTo(2.0 / 3);
+    assertThat(metrics.getLoadCount()).isOne();
+    assertThat(metrics.getLoadMillisHistogram()).containsEntry("<=1ms", 1L).hasSize(8);
+    assertThat(metrics.getEvictCount()).isOne();
+    assertThat(metrics.getRemoteEvictCount()).isZero();
+    assertThat(metrics.getLocalSize()).isOne();
+  }
+
+  @Test
+  void should_evict_both_levels_and_broadcast() {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.putLocal(1L, entry("value"));
+
+    cache.evict(1L);
+
+    assertThat(cache.getLocal(1L)).isNull();
+    verify(redisCache).evict(1L);
+    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+    verify(topic).publish(message.capture());
+    assertThat(message.getValue()).endsWith("\n" + LOCAL + "\n1");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void should_evict_many_keys_and_broadcast_in_one_pipeline() {
+    RBatch batch = mock(RBatch.class);
+    RBucketAsync<Object> bucket = mock(RBucketAsync.class);
+    RTopicAsync batchTopic = mock(RTopicAsync.class);
+    when(redissonClient.createBatch()).thenReturn(batch);
+    doReturn(bucket).when(batch).getBucket(anyString());
+    when(batch.getTopic(anyString(), any())).thenReturn(batchTopic);
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.putLocal(1L, entry("value"));
+    cache.putLocal(2L, entry("value"));
+
+    cache.evictAll(List.of(1L, 2L));
+
+    assertThat(cache.getLocal(1L)).isNull();
+    assertThat(cache.getLocal(2L)).isNull();
+    verify(batch).getBucket(LOCAL + "::1");
+    verify(batch).getBucket(LOCAL + "::2");
+    verify(bucket, times(2)).deleteAsync();
+    verify(batchTopic).publishAsync(endsWith("\n" + LOCAL + "\n1"));
+    verify(batchTopic).publishAsync(endsWith("\n" + LOCAL + "\n2"));
+    verify(batch).execute();
+    verify(redisCache, never()).evict(any());
+    verify(topic, never()).publish(any());
+    assertThat(cacheManager.getMetrics().getFirst().getEvictCount()).isEqualTo(2);
+  }
+
+  @Test
+  void should_evict_again_after_transaction_completes() {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      cache.evict(1L);
+      verify(redisCache, times(1)).evict(1L);
+      // 提交之前其他请求读到旧值并写回了缓存
+      cache.putLocal(1L, entry("old"));
+
+      TransactionSynchronizationUtils.invokeAfterCompletion(
+          TransactionSynchronizationManager.getSynchronizations(),
+          TransactionSynchronization.STATUS_COMMITTED);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThat(cache.getLocal(1L)).isNull();
+    verify(redisCache, times(2)).evict(1L);
+    assertThat(cacheManager.getMetrics().getFirst().getEvictCount()).isOne();
+  }
+
+  @Test
+  void should_evict_again_after_delay() throws Exception {
+    TwoLevelCacheManager delayed =
+        new TwoLevelCacheManager(
+            redisCacheManager,
+            Set.of(LOCAL),
+            Set.of(),
+            Set.of(),
+            100,
+            Duration.ofMinutes(1),
+            Duration.ofDays(1),
+            Duration.ofMillis(100),
+            Duration.ZERO,
+            Duration.ZERO,
+            redisCircuitBreaker);
+    TwoLevelCache cache = (TwoLevelCache) delayed.getCache(LOCAL);
+
+    cache.evict(1L);
+    verify(redisCache, times(1)).evict(1L);
+    cache.putLocal(1L, entry("old"));
+
+    verify(topic, timeout(5000).times(2)).publish(anyString());
+    verify(redisCache, times(2)).evict(1L);
+    assertThat(cache.getLocal(1L)).isNull();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void should_evict_local_copy_when_other_instance_broadcasts() {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    ArgumentCaptor<MessageListener<String>> listener =
+        ArgumentCaptor.forClass(MessageListener.class);
+    verify(topic, timeout(5000)).addListener(eq(String.class), listener.capture());
+    cache.putLocal(1L, entry("value"));
+    cache.putLocal(2L, entry("value"));
+
+    listener.getValue().onMessage(LOCAL, "other-instance\n" + LOCAL + "\n1");
+    assertThat(cache.getLocal(1L)).isNull();
+    assertThat(cache.getLocal(2L)).isNotNull();
+
+    listener.getValue().onMessage(LOCAL, "other-instance\n" + LOCAL);
+    assertThat(cache.getLocal(2L)).isNull();
+  }
+
+  @Test
+  void should_create_cache_while_subscription_fails() {
+    when(topic.addListener(eq(String.class), any()))
+        .thenThrow(new RedisConnectionException("Unable to connect to Redis"));
+
+    assertThat(cacheManager.getCache(LOCAL)).isInstanceOf(TwoLevelCache.class);
+    verify(topic, timeout(5000)).addListener(eq(String.class), any());
+    // 订阅在后台重试，之后创建缓存时不会在请求线程中再次订阅
+    assertThat(cacheManager.getCache(GENERATIONAL)).isInstanceOf(TwoLevelCache.class);
+    verify(topic, times(1)).addListener(eq(String.class), any());
+  }
+
+  @Test
+  void should_ignore_own_broadcast() {
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.evict(1L);
+    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+    verify(topic).publish(message.capture());
+    cache.putLocal(1L, entry("value"));
+
+    cacheManager.onEvictMessage(message.getValue());
+
+    assertThat(cache.getLocal(1L)).isNotNull();
+  }
+
+  @Test
+  void should_prefix_redis_key_with_generation() {
+    when(redissonClient.getAtomicLong(GENERATIONAL + ":generation")).thenReturn(generation);
+    when(generation.get()).thenReturn(3L);
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(GENERATIONAL);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+    assertThat(cache.redisKey(1L)).isEqualTo(GENERATIONAL + "::g3:1");
+    verify(generationalRedisCache).get("g3:1");
+    verify(generationalRedisCache).put(eq("g3:1"), any(CacheEntry.class));
+    verify(generation, times(1)).get();
+  }
+
+  @Test
+  void should_bump_generation_instead_of_deleting_keys() {
+    when(redissonClient.getAtomicLong(GENERATIONAL + ":generation")).thenReturn(generation);
+    when(generation.get()).thenReturn(3L);
+    when(generation.incrementAndGet()).thenReturn(4L);
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(GENERATIONAL);
+    cache.get(1L, () -> "old");
+
+    cache.clear();
+
+    assertThat(cache.getLocal(1L)).isNull();
+    assertThat(cache.get(1L, () -> "new")).isEqualTo("new");
+    verify(generationalRedisCache, never()).clear();
+    verify(generationalRedisCache).put(eq("g4:1"), any(CacheEntry.class));
+    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+    verify(topic).publish(message.capture());
+    assertThat(message.getValue()).endsWith("\n" + GENERATIONAL);
+  }
+
+  @Test
+  void should_reload_generation_when_other_instance_clears() {
+    when(redissonClient.getAtomicLong(GENERATIONAL + ":generation")).thenReturn(generation);
+    when(generation.get()).thenReturn(3L, 4L);
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(GENERATIONAL);
+    assertThat(cache.redisKey(1L)).endsWith("::g3:1");
+
+    cacheManager.onEvictMessage("other-instance\n" + GENERATIONAL);
+
+    assertThat(cache.redisKey(1L)).endsWith("::g4:1");
+    assertThat(cache.redisKey(1L)).endsWith("::g4:1");
+    verify(generation, times(2)).get();
+  }
+
+  @Test
+  void should_reread_generation_after_local_ttl_when_broadcast_is_lost() throws Exception {
+    when(redissonClient.getAtomicLong(GENERATIONAL + ":generation")).thenReturn(generation);
+    when(generation.get()).thenReturn(3L, 4L);
+    TwoLevelCacheManager shortTtl =
+        new TwoLevelCacheManager(
+            redisCacheManager,
+            Set.of(GENERATIONAL),
+            Set.of(GENERATIONAL),
+            Set.of(),
+            100,
+            Duration.ofMillis(200),
+            Duration.ofDays(1),
+            Duration.ZERO,
+            Duration.ZERO,
+            Duration.ZERO,
+            redisCircuitBreaker);
+    TwoLevelCache cache = (TwoLevelCache) shortTtl.getCache(GENERATIONAL);
+    assertThat(cache.redisKey(1L)).endsWith("::g3:1");
+    assertThat(cache.redisKey(1L)).endsWith("::g3:1");
+
+    // No broadcast arrives, the generation is read again once it is older than the local TTL
+    waitUntil(() -> cache.redisKey(1L).endsWith("::g4:1"));
+    verify(generation, times(2)).get();
+  }
+
+  @Test
+  void should_load_under_cluster_lock() throws Exception {
+    when(lock.tryLock(500, 10_000, TimeUnit.MILLISECONDS)).thenReturn(true);
+    when(lock.isHeldByCurrentThread()).thenReturn(true);
+    Cache cache = cacheManager.getCache(CLUSTER);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+
+    verify(clusterRedisCache).put(eq(1L), any(CacheEntry.class));
+    verify(lock).unlock();
+    assertThat(cacheManager.getMetrics().getFirst().getClusterCollapseCount()).isZero();
+  }
+
+  @Test
+  void should_use_value_loaded_by_other_instance_while_waiting() throws Exception {
+    // 本地和 Redis 都没有，等待锁的过程中其他实例加载完成并写入了 Redis
+    when(clusterRedisCache.get(1L))
+        .thenReturn(null, null, new SimpleValueWrapper(entry("remote")));
+    when(lock.tryLock(500, 10_000, TimeUnit.MILLISECONDS)).thenReturn(true);
+    when(lock.isHeldByCurrentThread()).thenReturn(true);
+    Cache cache = cacheManager.getCache(CLUSTER);
+
+    assertThat(cache.get(1L, () -> fail("should not load"))).isEqualTo("remote");
+
+    verify(clusterRedisCache, never()).put(any(), any());
+    verify(lock).unlock();
+    CacheMetricsDto metrics = cacheManager.getMetrics().getFirst();
+    assertThat(metrics.getClusterCollapseCount()).isOne();
+    assertThat(metrics.getLoadCount()).isZero();
+  }
+
+  @Test
+  void should_load_itself_when_cluster_wait_times_out() throws Exception {
+    when(lock.tryLock(500, 10_000, TimeUnit.MILLISECONDS)).thenReturn(false);
+    Cache cache = cacheManager.getCache(CLUSTER);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+
+    verify(clusterRedisCache).put(eq(1L), any(CacheEntry.class));
+    verify(lock, never()).unlock();
+    assertThat(cacheManager.getMetrics().getFirst().getClusterWaitTimeoutCount()).isOne();
+  }
+
+  @Test
+  void should_not_lock_for_other_caches() {
+    Cache cache = cacheManager.getCache(LOCAL);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+
+    verify(redissonClient, never()).getLock(anyString());
+  }
+
+  @Test
+  void should_serve_local_and_load_from_database_when_redis_is_down() {
+    when(redisCache.get(1L)).thenThrow(new RedisConnectionFailureException("Redis is down"));
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.putLocal(2L, entry("local"));
+
+    // 读取和合并加载前的二次检查各失败一次，熔断器打开，之后直接查询数据库
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+    assertThat(redisCircuitBreaker.getState()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+    assertThat(cache.get(3L, () -> "other")).isEqualTo("other");
+    assertThat(cache.get(2L, String.class)).isEqualTo("local");
+    assertThat(cache.get(1L, String.class)).isEqualTo("loaded");
+
+    verify(redisCache, never()).get(3L);
+    verify(redisCache, never()).put(any(), any());
+  }
+
+  @Test
+  void should_defer_eviction_and_broadcast_while_redis_is_down() {
+    openCircuitBreaker();
+    TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(LOCAL);
+    cache.putLocal(1L, entry("value"));
+
+    cache.evict(1L);
+
+    assertThat(cache.getLocal(1L)).isNull();
+    verify(redisCache, never()).evict(any());
+    verify(topic, never()).publish(any());
+    assertThat(redisCircuitBreaker.getMetrics().getDeferredInvalidationCount()).isEqualTo(2);
+  }
+
+  @Test
+  void should_not_lock_in_cluster_while_redis_is_down() {
+    openCircuitBreaker();
+    Cache cache = cacheManager.getCache(CLUSTER);
+
+    assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+
+    verify(redissonClient, never()).getLock(anyString());
+    verify(clusterRedisCache, never()).get(any());
+  }
+
+  private void openCircuitBreaker() {
+    for (int i = 0; i < 2; i++) {
+      redisCircuitBreaker.run(
+          () -> {
+            throw new RedisConnectionException("Redis is down");
+          });
+    }
+    assertThat(redisCircuitBreaker.isClosed()).isFalse();
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 50 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(100);
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
+  private static CacheEntry entry(Object value) {
+    return new CacheEntry(value, 0, Duration.ofDays(1));
+  }
+}
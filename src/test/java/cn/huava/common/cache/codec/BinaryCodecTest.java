@@ -0,0 +1,199 @@
+package cn.huava.common.cache.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.cache.CacheEntry;
+import cn.huava.sys.cache.UserAuthDtoSchema;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.pojo.po.RolePo;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Tests for {@link BinaryCodec}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class BinaryCodecTest {
+  @Mock private RedisSerializer<Object> jsonSerializer;
+
+  private BinaryCodec codec;
+
+  @BeforeEach
+  void setUp() {
+    codec = new BinaryCodec(jsonSerializer, List.of(new UserAuthDtoSchema()));
+  }
+
+  @Test
+  void should_round_trip_simple_values() {
+    Date date = new Date();
+    for (Object value : List.of("测试", -1L, Long.MAX_VALUE, 42, true, date)) {
+      assertThat(codec.deserialize(codec.serialize(value))).isEqualTo(value);
+    }
+    assertThat(codec.serialize(null)).isEmpty();
+    assertThat(codec.deserialize(new byte[0])).isNull();
+    verifyNoInteractions(jsonSerializer);
+  }
+
+  @Test
+  void should_round_trip_collections_and_cache_entry() {
+    Set<String> uris = Set.of("/sys/user/page", "/sys/role/page");
+    CacheEntry entry = new CacheEntry(uris, 12, Duration.ZERO);
+
+    CacheEntry read = (CacheEntry) codec.deserialize(codec.serialize(entry));
+
+    assertThat(read).isEqualTo(entry);
+    List<Long> roleIds = List.of(1L, 1_826_000_000_000_000_000L);
+    assertThat(codec.deserialize(codec.serialize(roleIds))).isEqualTo(roleIds);
+    assertThat(codec.deserialize(codec.serialize(List.of()))).isEqualTo(List.of());
+  }
+
+  @Test
+  void should_pack_long_list_into_varints() {
+    // 魔数 + 类型 + 数量 + 3 个一字节的变长整数
+    assertThat(codec.serialize(List.of(1L, 2L, 3L))).hasSize(6);
+  }
+
+  @Test
+  void should_round_trip_user_with_schema() {
+    UserAuthDto user = new UserAuthDto(1_826_000_000_000_000_000L, "admin", true, false);
+
+    Object read = codec.deserialize(codec.serialize(new CacheEntry(user, 3, Duration.ofDays(1))));
+
+    assertThat(((CacheEntry) read).getValue()).isEqualTo(user);
+    verifyNoInteractions(jsonSerializer);
+  }
+
+  @Test
+  void should_skip_unknown_fields() {
+    BinaryOutput out = new BinaryOutput();
+    out.writeStringField(99, "new field");
+    out.writeLongsField(98, List.of(1L));
+    out.writeStringField(2, "admin");
+    out.writeEnd();
+
+    UserAuthDto user = new UserAuthDtoSchema().read(new BinaryInput(out.toByteArray()));
+
+    assertThat(user.username()).isEqualTo("admin");
+  }
+
+  @Test
+  void should_use_json_for_other_types() {
+    RolePo role = new RolePo();
+    byte[] json = "[\"RolePo\",{}]".getBytes(StandardCharsets.UTF_8);
+    when(jsonSerializer.serialize(role)).thenReturn(json);
+    when(jsonSerializer.deserialize(json)).thenReturn(role);
+
+    byte[] bytes = codec.serialize(role);
+
+    assertThat(BinaryCodec.isBinary(bytes)).isTrue();
+    assertThat(codec.deserialize(bytes)).isSameAs(role);
+  }
+
+  @Test
+  void should_read_legacy_json() {
+    byte[] json = "[\"java.util.HashSet\",[]]".getBytes(StandardCharsets.UTF_8);
+    when(jsonSerializer.deserialize(json)).thenReturn(Set.of());
+
+    assertThat(BinaryCodec.isBinary(json)).isFalse();
+    assertThat(codec.deserialize(json)).isEqualTo(Set.of());
+  }
+
+  @Test
+  void should_reject_truncated_value() {
+    byte[] bytes = codec.serialize("truncated");
+
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+    assertThatThrownBy(() -> codec.deserialize(truncated))
+        .isInstanceOf(SerializationException.class);
+  }
+
+  @Test
+  void should_compress_large_values() {
+    BinaryCodec compressing = codec.withCompression(Compression.DEFLATE, 64);
+    Set<String> uris = largeUris();
+
+    byte[] bytes = compressing.serialize(uris);
+
+    assertThat(BinaryCodec.isCompressed(bytes)).isTrue();
+    assertThat(BinaryCodec.isBinary(bytes)).isTrue();
+    assertThat(bytes.length).isLessThan(codec.serialize(uris).length);
+    assertThat(compressing.deserialize(bytes)).isEqualTo(uris);
+  }
+
+  @Test
+  void should_not_compress_values_below_threshold() {
+    BinaryCodec compressing = codec.withCompression(Compression.DEFLATE, 1024);
+    String value = "/sys/user/page".repeat(10);
+
+    assertThat(compressing.serialize(value)).isEqualTo(codec.serialize(value));
+    assertThat(codec.withCompression(Compression.NONE, 0).serialize(largeUris()))
+        .isEqualTo(codec.serialize(largeUris()));
+  }
+
+  @Test
+  void should_keep_original_when_compression_does_not_help() {
+    BinaryCodec compressing = codec.withCompression(Compression.DEFLATE, 0);
+    List<Long> roleIds = List.of(1L, 2L, 3L);
+
+    assertThat(compressing.serialize(roleIds)).isEqualTo(codec.serialize(roleIds));
+  }
+
+  @Test
+  void should_read_compressed_and_uncompressed_values_with_any_codec() {
+    BinaryCodec compressing = codec.withCompression(Compression.DEFLATE, 64);
+    CacheEntry entry = new CacheEntry(largeUris(), 12, Duration.ZERO);
+
+    byte[] compressed = compressing.serialize(entry);
+    byte[] uncompressed = codec.serialize(entry);
+
+    assertThat(codec.deserialize(compressed)).isEqualTo(entry);
+    assertThat(compressing.deserialize(uncompressed)).isEqualTo(entry);
+  }
+
+  @Test
+  void should_reject_corrupted_compressed_value() {
+    byte[] bytes = codec.withCompression(Compression.DEFLATE, 64).serialize(largeUris());
+
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length - 8);
+    byte[] unknownAlgorithm = bytes.clone();
+    unknownAlgorithm[1] = 99;
+
+    assertThatThrownBy(() -> codec.deserialize(truncated))
+        .isInstanceOf(SerializationException.class);
+    assertThatThrownBy(() -> codec.deserialize(unknownAlgorithm))
+        .isInstanceOf(SerializationException.class);
+  }
+
+  @Test
+  void should_find_compression_by_name() {
+    assertThat(Compression.of(" Deflate ")).isEqualTo(Compression.DEFLATE);
+    assertThatThrownBy(() -> Compression.of("lz4")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static Set<String> largeUris() {
+    Set<String> uris = new HashSet<>();
+    for (String module : List.of("user", "role", "perm", "dept", "post", "dict")) {
+      for (String action : List.of("create", "delete", "update", "page", "get")) {
+        uris.add("/sys/" + module + "/" + action);
+      }
+    }
+    return uris;
+  }
+}
@@ -0,0 +1,70 @@
+package cn.huava.common.cache.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Tests for {@link BinaryRedissonCodec}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class BinaryRedissonCodecTest {
+  @Mock private RedisSerializer<Object> jsonSerializer;
+
+  private BinaryRedissonCodec codec;
+
+  private final List<ByteBuf> buffers = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    BinaryCodec binaryCodec = new BinaryCodec(jsonSerializer, List.of());
+    codec = new BinaryRedissonCodec(binaryCodec, StringCodec.INSTANCE);
+  }
+
+  @AfterEach
+  void tearDown() {
+    buffers.forEach(ByteBuf::release);
+  }
+
+  @Test
+  void should_encode_map_keys_with_legacy_codec() throws Exception {
+    ByteBuf key = track(codec.getMapKeyEncoder().encode("field"));
+    ByteBuf legacyKey = track(StringCodec.INSTANCE.getMapKeyEncoder().encode("field"));
+
+    assertThat(ByteBufUtil.getBytes(key)).isEqualTo(ByteBufUtil.getBytes(legacyKey));
+    assertThat(codec.getMapKeyDecoder().decode(key, null)).isEqualTo("field");
+  }
+
+  @Test
+  void should_encode_map_values_with_binary_codec() throws Exception {
+    ByteBuf value = track(codec.getMapValueEncoder().encode(42L));
+
+    assertThat(BinaryCodec.isBinary(value.getByte(value.readerIndex()))).isTrue();
+    assertThat(codec.getMapValueDecoder().decode(value, null)).isEqualTo(42L);
+  }
+
+  @Test
+  void should_decode_legacy_values_with_legacy_codec() throws Exception {
+    ByteBuf legacy = track(StringCodec.INSTANCE.getValueEncoder().encode("legacy"));
+
+    assertThat(codec.getMapValueDecoder().decode(legacy, null)).isEqualTo("legacy");
+  }
+
+  private ByteBuf track(ByteBuf buf) {
+    buffers.add(buf);
+    return buf;
+  }
+}
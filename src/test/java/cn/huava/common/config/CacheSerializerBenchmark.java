@@ -0,0 +1,118 @@
+package cn.huava.common.config;
+
+import cn.huava.common.cache.CacheEntry;
+import cn.huava.common.cache.codec.BinaryCodec;
+import cn.huava.common.cache.codec.Compression;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.pojo.po.UserExtPo;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 对比缓存以前使用的带类型信息的 JSON 与 {@link BinaryCodec} 的序列化、反序列化耗时，数据大小在启动时打印。<br>
+ * deflate 是阈值为 0 的压缩编码，每个值都尝试压缩，用于估计压缩的耗时和压缩后的大小，以便调整阈值。<br>
+ * 这不是单元测试，直接运行 main 方法即可（需要先执行 mvnw test-compile 生成 JMH 的辅助类）。
+ *
+ * @author Camio1945
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializerBenchmark {
+  private RedisSerializer<Object> serializer;
+
+  private Object value;
+
+  private byte[] bytes;
+
+  @Param({"json", "binary", "deflate"})
+  private String format;
+
+  /**
+   * 与缓存中实际保存的值相同，都包装在 CacheEntry 中；以前缓存的是完整的用户，现在只缓存鉴权信息；<br>
+   * JSON 不能读取 List&lt;Long&gt;，以前保存为逗号分隔的字符串
+   */
+  @Param({"user", "roleUris", "roleIds"})
+  private String valueType;
+
+  @Setup
+  public void setUp() {
+    serializer =
+        switch (format) {
+          case "json" -> RedisConfig.jsonSerializer();
+          case "binary" -> RedisConfig.uncompressedBinaryCodec();
+          default -> RedisConfig.uncompressedBinaryCodec().withCompression(Compression.DEFLATE, 0);
+        };
+    value = new CacheEntry(createValue(), 5, Duration.ofDays(1));
+    bytes = serializer.serialize(value);
+    System.out.printf("%n%s %s: %d bytes%n", format, valueType, bytes.length);
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return serializer.serialize(value);
+  }
+
+  @Benchmark
+  public Object deserialize() {
+    return serializer.deserialize(bytes);
+  }
+
+  private Object createValue() {
+    return switch (valueType) {
+      case "user" -> {
+        if (!"json".equals(format)) {
+          yield new UserAuthDto(1_826_000_000_000_000_000L, "zhangsan", true, false);
+        }
+        UserExtPo user = new UserExtPo();
+        user.setUsername("zhangsan")
+            .setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoO5uR2PZ0Hh0ZCx3nGdPe3zNhr8S7Q9yK")
+            .setRealName("张三")
+            .setPhoneNumber("18510336677")
+            .setGender("M")
+            .setIsEnabled(true)
+            .setLastLoginIp("192.168.1.100")
+            .setLastLoginDate(new Date());
+        user.setRoleIds(List.of(1_826_000_000_000_000_001L, 1_826_000_000_000_000_002L));
+        user.setId(1_826_000_000_000_000_000L)
+            .setCreatedBy(1L)
+            .setCreatedAt(new Date())
+            .setUpdatedBy(1L)
+            .setUpdatedAt(new Date())
+            .setDeleteInfo(0L);
+        yield user;
+      }
+      case "roleUris" -> {
+        Set<String> uris = new HashSet<>();
+        for (String module : List.of("user", "role", "perm", "dept", "post", "dict")) {
+          for (String action : List.of("create", "delete", "update", "page", "get")) {
+            uris.add("/sys/" + module + "/" + action);
+          }
+        }
+        yield uris;
+      }
+      default -> {
+        List<Long> roleIds =
+            LongStream.rangeClosed(1, 5).mapToObj(i -> 1_826_000_000_000_000_000L + i).toList();
+        yield "json".equals(format)
+            ? String.join(",", roleIds.stream().map(String::valueOf).toList())
+            : roleIds;
+      }
+    };
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(CacheSerializerBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
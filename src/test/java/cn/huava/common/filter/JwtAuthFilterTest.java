@@ -2,24 +2,36 @@ package cn.huava.common.filter;
 
 import static cn.huava.common.constant.CommonConstant.AUTHORIZATION_HEADER;
 import static cn.huava.common.constant.CommonConstant.BEARER_PREFIX;
+import static cn.huava.common.constant.CommonConstant.RENEWED_ACCESS_TOKEN_HEADER;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
+import cn.huava.common.cache.RedisUnavailableException;
+import cn.huava.sys.auth.SysUserDetails;
+import cn.huava.sys.cache.TokenEpochCache;
 import cn.huava.sys.cache.UserCache;
-import cn.huava.sys.pojo.po.UserPo;
+import cn.huava.sys.cache.UserVersionCache;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.pojo.po.UserExtPo;
+import cn.huava.sys.service.jwt.AccessTokenClaims;
 import cn.huava.sys.service.jwt.AceJwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 /**
  * Unit tests for JwtAuthFilter
@@ -33,6 +45,10 @@ class JwtAuthFilterTest {
 
   @Mock private UserCache userCache;
 
+  @Mock private UserVersionCache userVersionCache;
+
+  @Mock private TokenEpochCache tokenEpochCache;
+
   @Mock private HttpServletRequest request;
 
   @Mock private HttpServletResponse response;
@@ -45,6 +61,12 @@ class JwtAuthFilterTest {
   void setUp() {
     // Reset mocks before each test
     reset(request, response, filterChain, jwtAceService, userCache);
+    reset(userVersionCache, tokenEpochCache);
+  }
+
+  @AfterEach
+  void tearDown() {
+    SecurityContextHolder.clearContext();
   }
 
   @Test
@@ -55,7 +77,8 @@ class JwtAuthFilterTest {
 
     when(request.getRequestURI()).thenReturn("/some/protected/resource");
     when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(authHeader);
-    when(jwtAceService.isTokenExpired(expiredToken)).thenReturn(true);
+    when(jwtAceService.verifyAccessToken(expiredToken))
+        .thenReturn(new AccessTokenClaims(1L, 0L, 1L));
 
     // Setup PrintWriter for response.getWriter() mock only for this test
     StringWriter stringWriter = new StringWriter();
@@ -71,6 +94,44 @@ class JwtAuthFilterTest {
     verify(filterChain, never()).doFilter(any(), any()); // Should not continue the filter chain
   }
 
+  @Test
+  void should_return_unauthorized_when_token_epoch_is_behind() throws Exception {
+    String revokedToken = "revoked.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + revokedToken);
+    when(jwtAceService.verifyAccessToken(revokedToken))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE, 2L, null, null, -1L));
+    when(tokenEpochCache.getEpoch(1L)).thenReturn(3L);
+    StringWriter stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(response).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+    assertThat(stringWriter.toString()).isEqualTo("Access token revoked");
+    verify(filterChain, never()).doFilter(any(), any());
+    verify(userCache, never()).getAuthById(any());
+  }
+
+  @Test
+  void should_return_service_unavailable_when_redis_is_down() throws Exception {
+    String token = "valid.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + token);
+    when(jwtAceService.verifyAccessToken(token))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE));
+    when(tokenEpochCache.getEpoch(1L))
+        .thenThrow(new RedisUnavailableException("Redis is unavailable, circuit breaker is open"));
+    StringWriter stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    assertThat(stringWriter.toString()).isEqualTo("服务繁忙，请稍后重试");
+    verify(filterChain, never()).doFilter(any(), any());
+  }
+
   @Test
   void should_continue_filter_chain_when_valid_token() throws Exception {
     // Given
@@ -79,9 +140,9 @@ class JwtAuthFilterTest {
 
     when(request.getRequestURI()).thenReturn("/some/protected/resource");
     when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(authHeader);
-    when(jwtAceService.isTokenExpired(validToken)).thenReturn(false);
-    when(jwtAceService.getUserIdFromAccessToken(validToken)).thenReturn(1L);
-    when(userCache.getById(1L)).thenReturn(new cn.huava.sys.pojo.po.UserExtPo());
+    when(jwtAceService.verifyAccessToken(validToken))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE));
+    when(userCache.getAuthById(1L)).thenReturn(auth("admin"));
 
     // When
     jwtAuthFilter.doFilterInternal(request, response, filterChain);
@@ -91,6 +152,40 @@ class JwtAuthFilterTest {
     verify(response, never()).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
   }
 
+  @Test
+  void should_return_unauthorized_when_user_not_found() throws Exception {
+    String validToken = "valid.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + validToken);
+    when(jwtAceService.verifyAccessToken(validToken))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE));
+    when(userCache.getAuthById(1L)).thenReturn(null);
+    StringWriter stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(response).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+    assertThat(stringWriter.toString()).isEqualTo("User not found");
+    verify(filterChain, never()).doFilter(any(), any());
+  }
+
+  @Test
+  void should_set_renewed_token_header_when_token_is_renewed() throws Exception {
+    String validToken = "valid.token.here";
+    AccessTokenClaims claims = new AccessTokenClaims(1L, 0L, Long.MAX_VALUE);
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + validToken);
+    when(jwtAceService.verifyAccessToken(validToken)).thenReturn(claims);
+    when(jwtAceService.renewAccessTokenIfNeeded(claims)).thenReturn("renewed.token.here");
+    when(userCache.getAuthById(1L)).thenReturn(auth("admin"));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(response).setHeader(RENEWED_ACCESS_TOKEN_HEADER, "renewed.token.here");
+    verify(filterChain).doFilter(any(), any());
+  }
+
   @Test
   void should_continue_filter_chain_when_no_token() throws Exception {
     // Given
@@ -130,7 +225,83 @@ class JwtAuthFilterTest {
 
     // Then
     verify(filterChain).doFilter(any(), any()); // Should continue the filter chain without validation
-    verify(jwtAceService, never()).isTokenExpired(any());
+    verify(jwtAceService, never()).verifyAccessToken(any());
     verify(response, never()).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
   }
-}
\ No newline at end of file
+
+  @Test
+  void should_use_identity_in_token_when_stateless_and_version_matches() throws Exception {
+    setStateless(true);
+    String token = "stateless.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + token);
+    when(jwtAceService.verifyAccessToken(token))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE, 0L, "tom", List.of(2L), 3L));
+    when(userVersionCache.getVersion(1L)).thenReturn(3L);
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(any(), any());
+    verify(userCache, never()).getAuthById(any());
+    SysUserDetails userDetails = getPrincipal();
+    assertThat(userDetails.getUserId()).isEqualTo(1L);
+    assertThat(userDetails.getUsername()).isEqualTo("tom");
+    assertThat(userDetails.getRoleIds()).containsExactly(2L);
+  }
+
+  @Test
+  void should_fall_back_to_cache_when_stateless_and_version_changed() throws Exception {
+    setStateless(true);
+    String token = "stale.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + token);
+    when(jwtAceService.verifyAccessToken(token))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE, 0L, "tom", List.of(2L), 3L));
+    when(userVersionCache.getVersion(1L)).thenReturn(4L);
+    when(userCache.getAuthById(1L)).thenReturn(auth("jerry"));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(any(), any());
+    SysUserDetails userDetails = getPrincipal();
+    assertThat(userDetails.getUsername()).isEqualTo("jerry");
+    assertThat(userDetails.getRoleIds()).isNull();
+    assertThat(userDetails.isEnabled()).isTrue();
+    // 缓存中的鉴权信息已经足够，完整的用户信息只在第一次使用时才读取
+    verify(userCache, never()).getById(any());
+    UserExtPo user = new UserExtPo();
+    when(userCache.getById(1L)).thenReturn(user);
+    assertThat(userDetails.getUser()).isSameAs(user);
+  }
+
+  @Test
+  void should_ignore_identity_in_token_when_not_stateless() throws Exception {
+    setStateless(false);
+    String token = "stateless.token.here";
+    when(request.getRequestURI()).thenReturn("/some/protected/resource");
+    when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + token);
+    when(jwtAceService.verifyAccessToken(token))
+        .thenReturn(new AccessTokenClaims(1L, 0L, Long.MAX_VALUE, 0L, "tom", List.of(2L), 3L));
+    when(userCache.getAuthById(1L)).thenReturn(auth("tom"));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(userVersionCache, never()).getVersion(anyLong());
+    assertThat(getPrincipal().getRoleIds()).isNull();
+  }
+
+  private void setStateless(boolean stateless) throws Exception {
+    Field field = JwtAuthFilter.class.getDeclaredField("stateless");
+    field.setAccessible(true);
+    field.set(jwtAuthFilter, stateless);
+  }
+
+  private static UserAuthDto auth(String username) {
+    return new UserAuthDto(1L, username, true, false);
+  }
+
+  private static SysUserDetails getPrincipal() {
+    return (SysUserDetails)
+        SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+  }
+}
@@ -5,7 +5,11 @@ import static org.mockito.Mockito.*;
 
 import cn.huava.common.constant.CommonConstant;
 import cn.huava.common.util.Fn;
-import cn.huava.sys.cache.RoleCache;
+import cn.huava.sys.auth.RoleHierarchy;
+import cn.huava.sys.auth.RolePermBitSets;
+import cn.huava.sys.auth.SysUserDetails;
+import cn.huava.sys.auth.UriPermMatcher;
+import cn.huava.sys.auth.UriPermTree;
 import cn.huava.sys.cache.UserRoleCache;
 import cn.huava.sys.pojo.po.UserPo;
 import jakarta.servlet.FilterChain;
@@ -36,7 +40,11 @@ class UriAuthFilterTest {
 
   @Mock private UserRoleCache userRoleCache;
 
-  @Mock private RoleCache roleCache;
+  @Mock private UriPermMatcher uriPermMatcher;
+
+  @Mock private RolePermBitSets rolePermBitSets;
+
+  @Mock private RoleHierarchy roleHierarchy;
 
   @Mock private HttpServletRequest request;
 
@@ -48,15 +56,26 @@ class UriAuthFilterTest {
 
   @InjectMocks private UriAuthFilter uriAuthFilter;
 
+  private UriPermTree tree;
+
   @BeforeEach
   void setUp() throws Exception {
     // Reset mocks before each test
-    reset(request, response, filterChain, userRoleCache, roleCache);
+    reset(request, response, filterChain, userRoleCache, rolePermBitSets, roleHierarchy);
 
     // Set the uriAuthRange field using reflection since it's @Value injected
     Field uriAuthRangeField = UriAuthFilter.class.getDeclaredField("uriAuthRange");
     uriAuthRangeField.setAccessible(true);
     uriAuthRangeField.set(uriAuthFilter, "main"); // Default to "main" for most tests
+
+    UriPermTree.Builder builder = UriPermTree.builder();
+    builder.add(1L, "/api/resource/create");
+    builder.add(2L, "/api/resource/view");
+    builder.add(3L, "/sys/role/get/{id}");
+    builder.add(4L, "DELETE /api/resource/delete");
+    tree = builder.build();
+    lenient().when(uriPermMatcher.getTree()).thenReturn(tree);
+    lenient().when(roleHierarchy.expand(any())).thenAnswer(invocation -> invocation.getArgument(0));
   }
 
   @Test
@@ -73,15 +92,14 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Mock role assignments
       when(userRoleCache.getRoleIdsByUserId(1L)).thenReturn(List.of(2L));
 
       // Mock role permissions - user has permission for the URI
-      when(roleCache.getPermUrisByRoleId(2L)).thenReturn(Set.of("/api/resource/create"));
+      when(rolePermBitSets.hasPerm(tree, List.of(2L), tree.getByUri("/api/resource/create")))
+          .thenReturn(true);
 
       // When
       uriAuthFilter.doFilterInternal(request, response, filterChain);
@@ -105,15 +123,14 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Mock role assignments
       when(userRoleCache.getRoleIdsByUserId(1L)).thenReturn(List.of(2L));
 
       // Mock role permissions - user does NOT have permission for the URI
-      when(roleCache.getPermUrisByRoleId(2L)).thenReturn(Set.of("/api/resource/read"));
+      when(rolePermBitSets.hasPerm(tree, List.of(2L), tree.getByUri("/api/resource/create")))
+          .thenReturn(false);
 
       // Setup PrintWriter for response.getWriter() mock
       StringWriter stringWriter = new StringWriter();
@@ -143,9 +160,7 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Mock role assignments - user has no roles
       when(userRoleCache.getRoleIdsByUserId(1L)).thenReturn(List.of());
@@ -178,9 +193,7 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Mock role assignments - user has admin role
       when(userRoleCache.getRoleIdsByUserId(1L)).thenReturn(List.of(CommonConstant.ADMIN_ROLE_ID));
@@ -191,6 +204,7 @@ class UriAuthFilterTest {
       // Then - Admin should have access regardless of specific URI permissions
       verify(filterChain).doFilter(any(), any()); // Should continue the filter chain
       verify(response, never()).setStatus(HttpServletResponse.SC_FORBIDDEN);
+      verifyNoInteractions(rolePermBitSets);
     }
   }
 
@@ -207,9 +221,7 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // When
       uriAuthFilter.doFilterInternal(request, response, filterChain);
@@ -233,9 +245,7 @@ class UriAuthFilterTest {
       when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      mockUser.setId(1L);
-      when(Fn.getLoginUser()).thenReturn(mockUser);
+      when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Set the uriAuthRange field to "other" using reflection
       Field uriAuthRangeField = UriAuthFilter.class.getDeclaredField("uriAuthRange");
@@ -272,16 +282,13 @@ class UriAuthFilterTest {
       lenient().when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
 
       // Mock user login
-      UserPo mockUser = new UserPo();
-      lenient().when(Fn.getLoginUser()).thenReturn(mockUser);
+      lenient().when(Fn.getLoginUserId()).thenReturn(1L);
 
       // Mock role assignments
       lenient().when(userRoleCache.getRoleIdsByUserId(1L)).thenReturn(List.of(2L));
 
       // Mock role permissions - user has permission for the URI after number removal
-      lenient()
-          .when(roleCache.getPermUrisByRoleId(2L))
-          .thenReturn(Set.of("/api/resource")); // Permission for base URI after number removal
+      lenient().when(rolePermBitSets.hasPerm(any(), any(), any())).thenReturn(true);
 
       // When
       uriAuthFilter.doFilterInternal(request, response, filterChain);
@@ -291,4 +298,159 @@ class UriAuthFilterTest {
       verify(response, never()).setStatus(HttpServletResponse.SC_FORBIDDEN);
     }
   }
+
+  @Test
+  void should_use_role_ids_in_principal_when_present() throws Exception {
+    lenient().when(request.getRequestURI()).thenReturn("/api/resource/create");
+
+    try (var _ = mockStatic(SecurityContextHolder.class);
+        var _ = mockStatic(Fn.class)) {
+
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      UserPo principalUser = new UserPo();
+      principalUser.setId(1L);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(principalUser, Set.of(), List.of(2L)));
+      when(rolePermBitSets.hasPerm(tree, List.of(2L), tree.getByUri("/api/resource/create")))
+          .thenReturn(true);
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(filterChain).doFilter(any(), any());
+      verify(userRoleCache, never()).getRoleIdsByUserId(any());
+    }
+  }
+
+  @Test
+  void should_skip_registered_perm_that_is_not_main_when_range_is_main() throws Exception {
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/sys/role/get/1");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(filterChain).doFilter(any(), any());
+      verifyNoInteractions(userRoleCache, rolePermBitSets);
+    }
+  }
+
+  @Test
+  void should_check_method_specific_perm() throws Exception {
+    when(request.getMethod()).thenReturn("DELETE");
+    when(request.getRequestURI()).thenReturn("/api/resource/delete");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(new UserPo(), Set.of(), List.of(2L)));
+      UriPermTree.Entry perm = tree.getByUri("DELETE /api/resource/delete");
+      when(rolePermBitSets.hasPerm(tree, List.of(2L), perm)).thenReturn(true);
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(filterChain).doFilter(any(), any());
+    }
+  }
+
+  @Test
+  void should_only_allow_admin_for_unregistered_main_uri() throws Exception {
+    when(request.getRequestURI()).thenReturn("/api/unregistered/update");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(new UserPo(), Set.of(), List.of(2L)));
+      when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(response).setStatus(HttpServletResponse.SC_FORBIDDEN);
+      verifyNoInteractions(rolePermBitSets);
+    }
+  }
+
+  @Test
+  void should_check_every_registered_uri_when_range_is_all() throws Exception {
+    setUriAuthRange("all");
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/api/resource/view");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(new UserPo(), Set.of(), List.of(2L)));
+      UriPermTree.Entry perm = tree.getByUri("/api/resource/view");
+      when(rolePermBitSets.hasPerm(tree, List.of(2L), perm)).thenReturn(false);
+      when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(response).setStatus(HttpServletResponse.SC_FORBIDDEN);
+      verify(filterChain, never()).doFilter(any(), any());
+    }
+  }
+
+  @Test
+  void should_only_allow_admin_for_unregistered_uri_when_range_is_all() throws Exception {
+    setUriAuthRange("all");
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/api/unregistered");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(new UserPo(), Set.of(), List.of(2L)))
+          .thenReturn(
+              new SysUserDetails(new UserPo(), Set.of(), List.of(CommonConstant.ADMIN_ROLE_ID)));
+      when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+      verify(response).setStatus(HttpServletResponse.SC_FORBIDDEN);
+      verify(filterChain, never()).doFilter(any(), any());
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+      verify(filterChain).doFilter(any(), any());
+      verifyNoInteractions(rolePermBitSets);
+    }
+  }
+
+  @Test
+  void should_check_permission_with_inherited_roles() throws Exception {
+    when(request.getRequestURI()).thenReturn("/api/resource/create");
+
+    try (var _ = mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(SecurityContextHolder.getContext()).thenReturn(mockSecurityContext);
+      when(mockSecurityContext.getAuthentication()).thenReturn(authentication);
+      when(authentication.getPrincipal())
+          .thenReturn(new SysUserDetails(new UserPo(), Set.of(), List.of(3L)));
+      when(roleHierarchy.expand(List.of(3L))).thenReturn(List.of(3L, 2L));
+      UriPermTree.Entry perm = tree.getByUri("/api/resource/create");
+      when(rolePermBitSets.hasPerm(tree, List.of(3L, 2L), perm)).thenReturn(true);
+
+      uriAuthFilter.doFilterInternal(request, response, filterChain);
+
+      verify(filterChain).doFilter(any(), any());
+    }
+  }
+
+  private void setUriAuthRange(String range) throws Exception {
+    Field uriAuthRangeField = UriAuthFilter.class.getDeclaredField("uriAuthRange");
+    uriAuthRangeField.setAccessible(true);
+    uriAuthRangeField.set(uriAuthFilter, range);
+  }
 }
@@ -3,10 +3,13 @@ package cn.huava.common.util;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import cn.huava.sys.auth.SysUserDetails;
 import cn.huava.sys.cache.UserCache;
 import cn.huava.sys.pojo.po.UserExtPo;
 import cn.huava.sys.pojo.po.UserPo;
 import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -28,6 +31,7 @@ class LoginUtilTest {
 
   @Mock private UserCache userCache;
 
+
   @BeforeEach
   void setUp() {
     // Setup any common  initialization here if needed
@@ -118,7 +122,7 @@ class LoginUtilTest {
   }
 
   @Test
-  void should_return_null_when_getById_returns_null() throws Exception {
+  void should_return_null_when_selectById_returns_null() throws Exception {
     try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder =
         mockStatic(SecurityContextHolder.class)) {
 
@@ -184,4 +188,83 @@ class LoginUtilTest {
       }
     }
   }
+
+  @Test
+  void should_read_user_from_principal_without_looking_up_cache() throws Exception {
+    UserPo principalUser = new UserPo();
+    principalUser.setId(1L);
+    principalUser.setUsername("user");
+
+    try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder =
+        mockStatic(SecurityContextHolder.class)) {
+
+      UsernamePasswordAuthenticationToken mockAuthentication =
+          mock(UsernamePasswordAuthenticationToken.class);
+      when(mockAuthentication.getPrincipal())
+          .thenReturn(new SysUserDetails(principalUser, new HashSet<>()));
+
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(mockSecurityContext.getAuthentication()).thenReturn(mockAuthentication);
+      mockedSecurityContextHolder
+          .when(SecurityContextHolder::getContext)
+          .thenReturn(mockSecurityContext);
+
+      Method getLoginUserMethod = LoginUtil.class.getDeclaredMethod("getLoginUser");
+      getLoginUserMethod.setAccessible(true);
+      assertThat(getLoginUserMethod.invoke(null)).isSameAs(principalUser);
+      assertThat(getLoginUserMethod.invoke(null)).isSameAs(principalUser);
+      verifyNoInteractions(userCache);
+    }
+  }
+
+  @Test
+  void should_load_user_lazily_only_once_and_get_id_without_loading() throws Exception {
+    UserExtPo expectedUser = new UserExtPo();
+    expectedUser.setId(1L);
+
+    try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder =
+        mockStatic(SecurityContextHolder.class)) {
+
+      UsernamePasswordAuthenticationToken mockAuthentication =
+          mock(UsernamePasswordAuthenticationToken.class);
+      SysUserDetails userDetails =
+          new SysUserDetails(
+              1L, "user", List.of(2L), new HashSet<>(), () -> userCache.getById(1L));
+      when(mockAuthentication.getPrincipal()).thenReturn(userDetails);
+
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(mockSecurityContext.getAuthentication()).thenReturn(mockAuthentication);
+      mockedSecurityContextHolder
+          .when(SecurityContextHolder::getContext)
+          .thenReturn(mockSecurityContext);
+
+      Method getLoginUserIdMethod = LoginUtil.class.getDeclaredMethod("getLoginUserId");
+      getLoginUserIdMethod.setAccessible(true);
+      assertThat(getLoginUserIdMethod.invoke(null)).isEqualTo(1L);
+      verify(userCache, never()).getById(any());
+
+      when(userCache.getById(1L)).thenReturn(expectedUser);
+      Method getLoginUserMethod = LoginUtil.class.getDeclaredMethod("getLoginUser");
+      getLoginUserMethod.setAccessible(true);
+      assertThat(getLoginUserMethod.invoke(null)).isSameAs(expectedUser);
+      assertThat(getLoginUserMethod.invoke(null)).isSameAs(expectedUser);
+      verify(userCache, times(1)).getById(1L);
+    }
+  }
+
+  @Test
+  void should_return_null_login_user_id_when_not_logged_in() throws Exception {
+    try (MockedStatic<SecurityContextHolder> mockedSecurityContextHolder =
+        mockStatic(SecurityContextHolder.class)) {
+      SecurityContext mockSecurityContext = mock(SecurityContext.class);
+      when(mockSecurityContext.getAuthentication()).thenReturn(null);
+      mockedSecurityContextHolder
+          .when(SecurityContextHolder::getContext)
+          .thenReturn(mockSecurityContext);
+
+      Method getLoginUserIdMethod = LoginUtil.class.getDeclaredMethod("getLoginUserId");
+      getLoginUserIdMethod.setAccessible(true);
+      assertThat(getLoginUserIdMethod.invoke(null)).isNull();
+    }
+  }
 }
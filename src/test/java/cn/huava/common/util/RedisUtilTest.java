@@ -7,6 +7,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import cn.huava.common.WithSpringBootTestAnnotation;
 import cn.hutool.v7.core.data.id.IdUtil;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.jupiter.api.Test;
 
@@ -38,6 +41,51 @@ class RedisUtilTest extends WithSpringBootTestAnnotation {
     assertTrue(keys.contains(key));
   }
 
+  @Test
+  void should_set_get_and_delete_many_keys_in_one_pipeline() {
+    String prefix = "test:batch:" + IdUtil.nanoId(10) + ":";
+    Map<String, Object> values = Map.of(prefix + 1, "one", prefix + 2, 2L);
+    RedisUtil.setAll(values, 60);
+
+    Map<String, Object> read = RedisUtil.getAll(List.of(prefix + 1, prefix + 2, prefix + 3));
+
+    assertThat(read).isEqualTo(values);
+    assertThat(RedisUtil.deleteAll(List.of(prefix + 1, prefix + 2, prefix + 3))).isEqualTo(2);
+    assertThat(RedisUtil.getAll(values.keySet())).isEmpty();
+  }
+
+  @Test
+  void should_get_set_and_delete_asynchronously() {
+    String key = "test:async:" + IdUtil.nanoId(10);
+    RedisUtil.setAsync(key, "value", 60).toCompletableFuture().join();
+
+    assertThat(RedisUtil.<String>getAsync(key).toCompletableFuture().join()).isEqualTo("value");
+    assertThat(RedisUtil.<String>getAllAsync(List.of(key)).toCompletableFuture().join())
+        .containsEntry(key, "value");
+    assertThat(RedisUtil.deleteAsync(key).toCompletableFuture().join()).isOne();
+    assertThat(RedisUtil.hasKey(key)).isFalse();
+  }
+
+  @Test
+  void should_execute_queued_operations_in_one_pipeline() {
+    String key = "test:batch:" + IdUtil.nanoId(10);
+    String mapName = key + ":map";
+    RedisBatch batch =
+        RedisUtil.batch()
+            .set(key, "value", Duration.ofMinutes(1))
+            .putMapValue(mapName, "field", "mapValue");
+    assertThat(batch.size()).isEqualTo(2);
+
+    batch.execute();
+
+    assertThat((String) RedisUtil.get(key)).isEqualTo("value");
+    assertThat((String) RedisUtil.getMapValue(mapName, "field")).isEqualTo("mapValue");
+    RedisUtil.batch().delete(key).executeAsync().toCompletableFuture().join();
+    RedisUtil.batch().delete(mapName).executeOrDefer();
+    assertThat(RedisUtil.hasKey(key)).isFalse();
+    assertThat(RedisUtil.hasKey(mapName)).isFalse();
+  }
+
   @Test
   void should_get_hit_ratio_percentage() {
     RedisUtil.getHitRatioPercentage();
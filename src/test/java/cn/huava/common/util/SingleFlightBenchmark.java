@@ -0,0 +1,77 @@
+package cn.huava.common.util;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 同一个 key 有 1 ~ 64 个并发调用方时，{@link SingleFlightUtil} 各种用法的吞吐量，与不合并直接加载对比<br>
+ * 加载模拟一次 50 微秒的数据库查询；JMH 的线程数就是同一个 key 的并发调用方数量，每个线程数单独运行一轮。<br>
+ * 这不是单元测试，直接运行 main 方法即可（需要先执行 mvnw test-compile 生成 JMH 的辅助类）。
+ *
+ * @author Camio1945
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SingleFlightBenchmark {
+  private static final String KEY = "benchmark-key";
+
+  private static final long LOAD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private static final Callable<Long> LOADER =
+      () -> {
+        LockSupport.parkNanos(LOAD_NANOS);
+        return System.nanoTime();
+      };
+
+  /** 不合并，每个调用方都自己加载 */
+  @Benchmark
+  public Long direct() throws Exception {
+    return LOADER.call();
+  }
+
+  /** 同步合并，在调用方的线程中加载 */
+  @Benchmark
+  public Long sync() {
+    return SingleFlightUtil.execute(KEY, LOADER);
+  }
+
+  /** 同步合并，等待其他线程的结果有上限 */
+  @Benchmark
+  public Long syncWithTimeout() {
+    return SingleFlightUtil.execute(KEY, LOADER, Duration.ofSeconds(1));
+  }
+
+  /** 异步合并，在虚拟线程中加载，调用方等待自己的 future */
+  @Benchmark
+  public Long async() {
+    return SingleFlightUtil.executeAsync(KEY, LOADER).join();
+  }
+
+  /** 异步合并，结果在完成后保留 1 毫秒，紧接着到达的调用方直接使用 */
+  @Benchmark
+  public Long asyncWithShareWindow() {
+    return SingleFlightUtil.executeAsync(KEY, LOADER, Duration.ofSeconds(1), Duration.ofMillis(1))
+        .join();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : new int[] {1, 4, 16, 64}) {
+      new Runner(
+              new OptionsBuilder()
+                  .include(SingleFlightBenchmark.class.getSimpleName())
+                  .threads(threads)
+                  .build())
+          .run();
+    }
+  }
+}
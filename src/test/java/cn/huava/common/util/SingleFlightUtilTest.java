@@ -2,7 +2,11 @@ package cn.huava.common.util;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 
@@ -159,4 +163,97 @@ class SingleFlightUtilTest {
     // This verifies that the InterruptedException path is handled correctly
     assertThat(secondThread.isInterrupted() || !secondThread.isAlive()).isTrue();
   }
+
+  @Test
+  void should_time_out_waiting_caller_when_executing_thread_is_slow() throws InterruptedException {
+    String key = "sync-timeout-key";
+    CountDownLatch release = new CountDownLatch(1);
+    Callable<String> slowCallable =
+        () -> {
+          release.await();
+          return "slow-result";
+        };
+    Thread firstThread = new Thread(() -> SingleFlightUtil.execute(key, slowCallable));
+    firstThread.start();
+    Thread.sleep(50);
+
+    assertThatThrownBy(() -> SingleFlightUtil.execute(key, slowCallable, Duration.ofMillis(50)))
+        .isInstanceOf(RuntimeException.class)
+        .hasCauseInstanceOf(TimeoutException.class);
+
+    release.countDown();
+    firstThread.join(2000);
+  }
+
+  @Test
+  void should_share_async_execution_between_callers() {
+    String key = "async-key";
+    AtomicInteger executionCount = new AtomicInteger(0);
+    CountDownLatch release = new CountDownLatch(1);
+    Callable<String> callable =
+        () -> {
+          release.await();
+          return "async-" + executionCount.incrementAndGet();
+        };
+
+    CompletableFuture<String> first = SingleFlightUtil.executeAsync(key, callable);
+    CompletableFuture<String> second = SingleFlightUtil.executeAsync(key, callable);
+    release.countDown();
+
+    assertThat(first.join()).isEqualTo("async-1");
+    assertThat(second.join()).isEqualTo("async-1");
+    assertThat(executionCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  void should_not_affect_other_callers_when_one_times_out_or_is_cancelled() {
+    String key = "async-timeout-key";
+    CountDownLatch release = new CountDownLatch(1);
+    Callable<String> callable =
+        () -> {
+          release.await();
+          return "result";
+        };
+
+    CompletableFuture<String> impatient =
+        SingleFlightUtil.executeAsync(key, callable, Duration.ofMillis(50), Duration.ZERO);
+    CompletableFuture<String> cancelled = SingleFlightUtil.executeAsync(key, callable);
+    CompletableFuture<String> patient = SingleFlightUtil.executeAsync(key, callable);
+    cancelled.cancel(true);
+
+    assertThatThrownBy(impatient::join).hasCauseInstanceOf(TimeoutException.class);
+    release.countDown();
+    assertThat(patient.join()).isEqualTo("result");
+    assertThat(cancelled).isCancelled();
+  }
+
+  @Test
+  void should_reuse_result_within_share_window() {
+    String key = "async-share-key";
+    AtomicInteger executionCount = new AtomicInteger(0);
+    Callable<Integer> callable = executionCount::incrementAndGet;
+    Duration window = Duration.ofSeconds(5);
+
+    assertThat(SingleFlightUtil.executeAsync(key, callable, null, window).join()).isEqualTo(1);
+    assertThat(SingleFlightUtil.executeAsync(key, callable, null, window).join()).isEqualTo(1);
+    assertThat(executionCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  void should_not_share_failed_result() {
+    String key = "async-failure-key";
+    AtomicInteger executionCount = new AtomicInteger(0);
+    Callable<Integer> callable =
+        () -> {
+          if (executionCount.incrementAndGet() == 1) {
+            throw new IllegalStateException("first call fails");
+          }
+          return executionCount.get();
+        };
+    Duration window = Duration.ofSeconds(5);
+
+    assertThatThrownBy(() -> SingleFlightUtil.executeAsync(key, callable, null, window).join())
+        .hasCauseInstanceOf(IllegalStateException.class);
+    assertThat(SingleFlightUtil.executeAsync(key, callable, null, window).join()).isEqualTo(2);
+  }
 }
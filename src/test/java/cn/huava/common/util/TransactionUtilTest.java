@@ -0,0 +1,53 @@
+package cn.huava.common.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+/**
+ * Tests for {@link TransactionUtil}
+ *
+ * @author Camio1945
+ */
+class TransactionUtilTest {
+
+  @AfterEach
+  void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void should_not_run_without_transaction() {
+    AtomicInteger count = new AtomicInteger();
+
+    assertThat(TransactionUtil.afterCompletion(count::incrementAndGet)).isFalse();
+
+    assertThat(count.get()).isZero();
+  }
+
+  @Test
+  void should_run_after_commit_and_rollback() {
+    TransactionSynchronizationManager.initSynchronization();
+    AtomicInteger count = new AtomicInteger();
+
+    assertThat(TransactionUtil.afterCompletion(count::incrementAndGet)).isTrue();
+    assertThat(count.get()).isZero();
+
+    TransactionSynchronizationUtils.invokeAfterCompletion(
+        TransactionSynchronizationManager.getSynchronizations(),
+        TransactionSynchronization.STATUS_COMMITTED);
+    assertThat(count.get()).isOne();
+
+    TransactionSynchronizationUtils.invokeAfterCompletion(
+        TransactionSynchronizationManager.getSynchronizations(),
+        TransactionSynchronization.STATUS_ROLLED_BACK);
+    assertThat(count.get()).isEqualTo(2);
+  }
+}
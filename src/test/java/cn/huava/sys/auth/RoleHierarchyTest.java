@@ -0,0 +1,107 @@
+package cn.huava.sys.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.util.RedisUtil;
+import cn.huava.sys.mapper.RoleClosureMapper;
+import cn.huava.sys.pojo.po.RoleClosurePo;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests for {@link RoleHierarchy}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class RoleHierarchyTest {
+  @Mock private RoleClosureMapper roleClosureMapper;
+
+  @Mock private RedissonClient redissonClient;
+
+  @Mock private RTopic topic;
+
+  private MockedStatic<RedisUtil> mockedRedisUtil;
+
+  private RoleHierarchy roleHierarchy;
+
+  @BeforeEach
+  void setUp() {
+    mockedRedisUtil = mockStatic(RedisUtil.class, withSettings().strictness(Strictness.LENIENT));
+    mockedRedisUtil.when(RedisUtil::getRedissonClient).thenReturn(redissonClient);
+    RedisCircuitBreaker redisCircuitBreaker =
+        new RedisCircuitBreaker(2, Duration.ofMinutes(1), Duration.ZERO, 1, Duration.ZERO, 100);
+    mockedRedisUtil.when(RedisUtil::getCircuitBreaker).thenReturn(redisCircuitBreaker);
+    lenient().when(redissonClient.getTopic(anyString(), any())).thenReturn(topic);
+    roleHierarchy = new RoleHierarchy(roleClosureMapper);
+    ReflectionTestUtils.setField(roleHierarchy, "maxAgeSeconds", 60L);
+  }
+
+  @AfterEach
+  void tearDown() {
+    mockedRedisUtil.close();
+  }
+
+  @Test
+  void should_return_same_list_when_roles_have_no_ancestors() {
+    // 4 的上级是 3，3 的上级是 2
+    when(roleClosureMapper.selectList(any()))
+        .thenReturn(List.of(link(3L, 4L, 1), link(2L, 3L, 1), link(2L, 4L, 2)));
+    List<Long> roleIds = List.of(2L, 5L);
+
+    assertThat(roleHierarchy.expand(roleIds)).isSameAs(roleIds);
+  }
+
+  @Test
+  void should_add_all_ancestors_without_duplicates() {
+    when(roleClosureMapper.selectList(any()))
+        .thenReturn(List.of(link(3L, 4L, 1), link(2L, 3L, 1), link(2L, 4L, 2)));
+
+    assertThat(roleHierarchy.expand(List.of(4L))).containsExactly(4L, 3L, 2L);
+    assertThat(roleHierarchy.expand(List.of(3L, 5L, 2L))).containsExactly(3L, 5L, 2L);
+    verify(roleClosureMapper, times(1)).selectList(any());
+  }
+
+  @Test
+  void should_reload_after_refresh() {
+    when(roleClosureMapper.selectList(any()))
+        .thenReturn(List.of())
+        .thenReturn(List.of(link(2L, 3L, 1)));
+
+    assertThat(roleHierarchy.expand(List.of(3L))).containsExactly(3L);
+    roleHierarchy.refresh();
+    assertThat(roleHierarchy.expand(List.of(3L))).containsExactly(3L, 2L);
+    verify(topic).publish("refresh");
+  }
+
+  @Test
+  void should_reload_when_snapshot_is_too_old_even_without_refresh() {
+    ReflectionTestUtils.setField(roleHierarchy, "maxAgeSeconds", 0L);
+    when(roleClosureMapper.selectList(any()))
+        .thenReturn(List.of())
+        .thenReturn(List.of(link(2L, 3L, 1)));
+
+    assertThat(roleHierarchy.expand(List.of(3L))).containsExactly(3L);
+    // 没有调用 refresh，相当于通知丢失了
+    assertThat(roleHierarchy.expand(List.of(3L))).containsExactly(3L, 2L);
+    verify(topic, never()).publish(anyString());
+  }
+
+  private static RoleClosurePo link(Long ancestorId, Long descendantId, int depth) {
+    return new RoleClosurePo(ancestorId, descendantId, depth);
+  }
+}
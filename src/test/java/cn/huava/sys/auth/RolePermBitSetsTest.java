@@ -0,0 +1,136 @@
+package cn.huava.sys.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.util.RedisUtil;
+import cn.huava.sys.cache.RoleCache;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+
+/**
+ * Tests for {@link RolePermBitSets}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class RolePermBitSetsTest {
+  @Mock private RoleCache roleCache;
+
+  @Mock private RedissonClient redissonClient;
+
+  @Mock private RTopic topic;
+
+  private MockedStatic<RedisUtil> mockedRedisUtil;
+
+  private RolePermBitSets rolePermBitSets;
+
+  private UriPermTree tree;
+
+  @BeforeEach
+  void setUp() {
+    mockedRedisUtil = mockStatic(RedisUtil.class, withSettings().strictness(Strictness.LENIENT));
+    mockedRedisUtil.when(RedisUtil::getRedissonClient).thenReturn(redissonClient);
+    RedisCircuitBreaker redisCircuitBreaker =
+        new RedisCircuitBreaker(2, Duration.ofMinutes(1), Duration.ZERO, 1, Duration.ZERO, 100);
+    mockedRedisUtil.when(RedisUtil::getCircuitBreaker).thenReturn(redisCircuitBreaker);
+    lenient().when(redissonClient.getTopic(anyString(), any())).thenReturn(topic);
+    rolePermBitSets = new RolePermBitSets(roleCache);
+    tree = newTree();
+  }
+
+  @AfterEach
+  void tearDown() {
+    mockedRedisUtil.close();
+  }
+
+  @Test
+  void should_check_single_role() {
+    when(roleCache.getPermUrisByRoleId(2L))
+        .thenReturn(Set.of("/sys/user/create", "/sys/deleted/create"));
+
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/create"))).isTrue();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/delete"))).isFalse();
+    verify(roleCache, times(1)).getPermUrisByRoleId(2L);
+    verify(topic, timeout(5000)).addListener(eq(String.class), any());
+  }
+
+  @Test
+  void should_union_all_roles_and_cache_by_role_ids() {
+    when(roleCache.getPermUrisByRoleIds(List.of(2L, 3L)))
+        .thenReturn(Map.of(2L, Set.of("/sys/user/create"), 3L, Set.of("/sys/role/page")));
+
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L, 3L), perm("/sys/user/create"))).isTrue();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L, 3L), perm("/sys/role/page"))).isTrue();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L, 3L), perm("/sys/user/delete"))).isFalse();
+    verify(roleCache, times(1)).getPermUrisByRoleIds(any());
+    verify(roleCache, never()).getPermUrisByRoleId(any());
+  }
+
+  @Test
+  void should_only_batch_load_roles_without_bitset() {
+    when(roleCache.getPermUrisByRoleId(2L)).thenReturn(Set.of("/sys/user/create"));
+    when(roleCache.getPermUrisByRoleIds(List.of(3L)))
+        .thenReturn(Map.of(3L, Set.of("/sys/role/page")));
+
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/create"))).isTrue();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L, 3L), perm("/sys/role/page"))).isTrue();
+    verify(roleCache, times(1)).getPermUrisByRoleId(2L);
+  }
+
+  @Test
+  void should_deny_when_no_roles() {
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(), perm("/sys/user/create"))).isFalse();
+    verifyNoInteractions(roleCache);
+  }
+
+  @Test
+  void should_reload_after_invalidate() {
+    when(roleCache.getPermUrisByRoleId(2L))
+        .thenReturn(Set.of("/sys/user/create"))
+        .thenReturn(Set.of("/sys/user/delete"));
+
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/create"))).isTrue();
+    rolePermBitSets.invalidate();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/create"))).isFalse();
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/delete"))).isTrue();
+    verify(topic).publish("invalidate");
+  }
+
+  @Test
+  void should_reload_when_tree_changes() {
+    when(roleCache.getPermUrisByRoleId(2L)).thenReturn(Set.of("/sys/user/create"));
+    UriPermTree newTree = newTree();
+
+    assertThat(rolePermBitSets.hasPerm(tree, List.of(2L), perm("/sys/user/create"))).isTrue();
+    UriPermTree.Entry perm = newTree.getByUri("/sys/user/create");
+    assertThat(rolePermBitSets.hasPerm(newTree, List.of(2L), perm)).isTrue();
+    verify(roleCache, times(2)).getPermUrisByRoleId(2L);
+  }
+
+  private UriPermTree.Entry perm(String uri) {
+    return tree.getByUri(uri);
+  }
+
+  private static UriPermTree newTree() {
+    UriPermTree.Builder builder = UriPermTree.builder();
+    builder.add(1L, "/sys/user/create");
+    builder.add(2L, "/sys/user/delete");
+    builder.add(3L, "/sys/role/page");
+    return builder.build();
+  }
+}
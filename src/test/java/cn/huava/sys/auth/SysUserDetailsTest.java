@@ -1,10 +1,12 @@
 package cn.huava.sys.auth;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import cn.huava.sys.pojo.po.UserPo;
 import java.util.Collection;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -47,4 +49,38 @@ class SysUserDetailsTest {
     Mockito.when(userPo.getIsEnabled()).thenReturn(true);
     assertTrue(sysUserDetails.isEnabled());
   }
+
+  @Test
+  void testGetUserIdAndRoleIds() {
+    Mockito.when(userPo.getId()).thenReturn(3L);
+    assertEquals(3L, sysUserDetails.getUserId());
+    assertNull(sysUserDetails.getRoleIds());
+    SysUserDetails withRoles = new SysUserDetails(userPo, authorities, List.of(1L, 2L));
+    assertEquals(List.of(1L, 2L), withRoles.getRoleIds());
+  }
+
+  @Test
+  void testLazyUser() {
+    UserPo loaded = new UserPo();
+    loaded.setPassword("password123");
+    loaded.setIsEnabled(true);
+    int[] loadCount = {0};
+    SysUserDetails lazy =
+        new SysUserDetails(
+            5L,
+            "user123",
+            List.of(1L),
+            authorities,
+            () -> {
+              loadCount[0]++;
+              return loaded;
+            });
+    assertEquals(5L, lazy.getUserId());
+    assertEquals("user123", lazy.getUsername());
+    assertEquals(0, loadCount[0]);
+    assertEquals("password123", lazy.getPassword());
+    assertTrue(lazy.isEnabled());
+    assertEquals(loaded, lazy.getUser());
+    assertEquals(1, loadCount[0]);
+  }
 }
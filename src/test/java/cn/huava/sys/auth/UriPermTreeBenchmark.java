@@ -0,0 +1,65 @@
+package cn.huava.sys.auth;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 对比 UriAuthFilter 以前的写法（正则去掉结尾数字，再用字符串集合判断）与 {@link UriPermTree} 匹配权限的吞吐量。<br>
+ * 这不是单元测试，直接运行 main 方法即可（需要先执行 mvnw test-compile 生成 JMH 的辅助类）。
+ *
+ * @author Camio1945
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class UriPermTreeBenchmark {
+  private static final String[] MODULES = {"user", "role", "perm", "dept", "post", "dict"};
+
+  private static final String[] ACTIONS = {"create", "delete", "update", "page", "get/"};
+
+  private final Set<String> uris = new HashSet<>();
+
+  private UriPermTree tree;
+
+  @Param({"/sys/role/update", "/sys/dict/get/123", "/sys/unknown/list"})
+  private String requestUri;
+
+  @Setup
+  public void setUp() {
+    UriPermTree.Builder builder = UriPermTree.builder();
+    long id = 1;
+    for (String module : MODULES) {
+      for (String action : ACTIONS) {
+        String uri = "/sys/" + module + "/" + action;
+        uris.add(uri);
+        builder.add(id++, uri);
+      }
+    }
+    tree = builder.build();
+  }
+
+  @Benchmark
+  public boolean regexAndStringSet() {
+    String uri = requestUri.replaceAll("\\d+$", "");
+    return uris.contains(uri);
+  }
+
+  @Benchmark
+  public UriPermTree.Entry radixTree() {
+    return tree.match("POST", requestUri);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(UriPermTreeBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
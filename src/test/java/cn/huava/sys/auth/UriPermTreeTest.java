@@ -0,0 +1,120 @@
+package cn.huava.sys.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Camio1945
+ */
+class UriPermTreeTest {
+  private UriPermTree tree;
+
+  @BeforeEach
+  void setUp() {
+    UriPermTree.Builder builder = UriPermTree.builder();
+    builder.add(1L, "/sys/user/create");
+    builder.add(2L, "/sys/user/page");
+    builder.add(3L, "/sys/user/get/");
+    builder.add(4L, "/sys/role/get/{id}");
+    builder.add(5L, "/sys/role/{id}/perm");
+    builder.add(6L, "/sys/role/export/perm");
+    builder.add(7L, "DELETE /sys/perm/delete");
+    builder.add(8L, "/sys/perm/delete");
+    builder.add(9L, "/sys/perm/*");
+    tree = builder.build();
+  }
+
+  @Test
+  void should_match_static_uri() {
+    UriPermTree.Entry entry = tree.match("POST", "/sys/user/create");
+    assertThat(entry).isNotNull();
+    assertThat(entry.permId()).isEqualTo(1L);
+    assertThat(entry.uri()).isEqualTo("/sys/user/create");
+    assertThat(entry.main()).isTrue();
+    assertThat(tree.match("GET", "/sys/user/page").permId()).isEqualTo(2L);
+  }
+
+  @Test
+  void should_not_match_prefix_or_unknown_uri() {
+    assertThat(tree.match("POST", "/sys/user/creat")).isNull();
+    assertThat(tree.match("POST", "/sys/user/create/more")).isNull();
+    assertThat(tree.match("GET", "/sys/unknown")).isNull();
+    assertThat(tree.match("GET", "")).isNull();
+  }
+
+  @Test
+  void should_strip_trailing_digits_as_before() {
+    UriPermTree.Entry entry = tree.match("GET", "/sys/user/get/123");
+    assertThat(entry).isNotNull();
+    assertThat(entry.permId()).isEqualTo(3L);
+    assertThat(entry.main()).isFalse();
+  }
+
+  @Test
+  void should_match_path_variable_within_one_segment() {
+    assertThat(tree.match("GET", "/sys/role/get/12").permId()).isEqualTo(4L);
+    assertThat(tree.match("GET", "/sys/role/get/abc").permId()).isEqualTo(4L);
+    assertThat(tree.match("GET", "/sys/role/12/perm").permId()).isEqualTo(5L);
+    assertThat(tree.match("GET", "/sys/role/get/")).isNull();
+    assertThat(tree.match("GET", "/sys/role/get/1/2")).isNull();
+  }
+
+  @Test
+  void should_prefer_static_segment_to_path_variable() {
+    assertThat(tree.match("GET", "/sys/role/export/perm").permId()).isEqualTo(6L);
+    assertThat(tree.match("GET", "/sys/role/exports/perm").permId()).isEqualTo(5L);
+    assertThat(tree.match("GET", "/sys/perm/delete").permId()).isEqualTo(8L);
+    assertThat(tree.match("GET", "/sys/perm/update").permId()).isEqualTo(9L);
+  }
+
+  @Test
+  void should_prefer_method_specific_perm() {
+    assertThat(tree.match("DELETE", "/sys/perm/delete").permId()).isEqualTo(7L);
+    assertThat(tree.match("delete", "/sys/perm/delete").permId()).isEqualTo(7L);
+    assertThat(tree.match("POST", "/sys/perm/delete").permId()).isEqualTo(8L);
+    assertThat(tree.match(null, "/sys/perm/delete").permId()).isEqualTo(8L);
+  }
+
+  @Test
+  void should_ignore_blank_duplicate_and_unknown_method() {
+    UriPermTree.Builder builder = UriPermTree.builder();
+    assertThat(builder.add(1L, "/a")).isTrue();
+    assertThat(builder.add(2L, "/a")).isFalse();
+    assertThat(builder.add(3L, " ")).isFalse();
+    assertThat(builder.add(4L, null)).isFalse();
+    assertThat(builder.add(5L, "FETCH /a")).isFalse();
+    assertThat(builder.add(6L, "GET /a")).isTrue();
+    UriPermTree built = builder.build();
+    assertThat(built.size()).isEqualTo(2);
+    assertThat(built.match("POST", "/a").permId()).isEqualTo(1L);
+    assertThat(built.match("GET", "/a").permId()).isEqualTo(6L);
+  }
+
+  @Test
+  void should_split_shared_prefixes() {
+    UriPermTree.Builder builder = UriPermTree.builder();
+    builder.add(1L, "/sys/user/update");
+    builder.add(2L, "/sys/user/updatePassword");
+    builder.add(3L, "/sys/u");
+    UriPermTree built = builder.build();
+    assertThat(built.match("GET", "/sys/user/update").permId()).isEqualTo(1L);
+    assertThat(built.match("GET", "/sys/user/updatePassword").permId()).isEqualTo(2L);
+    assertThat(built.match("GET", "/sys/u").permId()).isEqualTo(3L);
+    assertThat(built.match("GET", "/sys/us")).isNull();
+  }
+
+  @Test
+  void should_match_nothing_when_empty() {
+    assertThat(UriPermTree.empty().match("GET", "/sys/user/create")).isNull();
+  }
+
+  @Test
+  void should_detect_main_uri() {
+    assertThat(UriPermTree.isMainUri("/sys/user/delete", 16)).isTrue();
+    assertThat(UriPermTree.isMainUri("/sys/user/page12", 14)).isTrue();
+    assertThat(UriPermTree.isMainUri("/sys/user/view", 14)).isFalse();
+    assertThat(UriPermTree.stripTrailingDigits("/sys/user/get/123")).isEqualTo(14);
+  }
+}
@@ -0,0 +1,105 @@
+package cn.huava.sys.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import cn.huava.sys.auth.UriPermMatcher;
+import cn.huava.sys.auth.UriPermTree;
+import cn.huava.sys.mapper.RefreshTokenMapper;
+import cn.huava.sys.mapper.RoleMapper;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.pojo.po.RolePo;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests for {@link CacheWarmer}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class CacheWarmerTest {
+  @Mock private RoleMapper roleMapper;
+  @Mock private RefreshTokenMapper refreshTokenMapper;
+  @Mock private RoleCache roleCache;
+  @Mock private UserCache userCache;
+  @Mock private UserRoleCache userRoleCache;
+  @Mock private UriPermMatcher uriPermMatcher;
+
+  @InjectMocks private CacheWarmer cacheWarmer;
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(cacheWarmer, "warmUpUsers", 10);
+    ReflectionTestUtils.setField(cacheWarmer, "warmUpSeconds", 30L);
+    lenient().when(uriPermMatcher.getTree()).thenReturn(UriPermTree.empty());
+  }
+
+  @Test
+  void should_warm_up_roles_in_batches_and_recent_users() {
+    List<RolePo> roles = LongStream.rangeClosed(1, 150).mapToObj(CacheWarmerTest::role).toList();
+    when(roleMapper.selectList(any())).thenReturn(roles);
+    when(roleCache.getPermUrisByRoleIds(any())).thenReturn(Map.of());
+    when(refreshTokenMapper.selectRecentUserIds(10)).thenReturn(List.of(1L, 2L));
+    when(userCache.getAuthById(1L)).thenReturn(new UserAuthDto(1L, "admin", true, false));
+
+    cacheWarmer.warmUp();
+
+    verify(roleCache, times(2)).getPermUrisByRoleIds(any());
+    verify(userCache).getAuthById(2L);
+    verify(userCache).getIdByUsername("admin");
+    verify(userRoleCache).getRoleIdsByUserId(1L);
+    verify(userRoleCache, never()).getRoleIdsByUserId(2L);
+  }
+
+  @Test
+  void should_skip_users_when_disabled() {
+    ReflectionTestUtils.setField(cacheWarmer, "warmUpUsers", 0);
+    when(roleMapper.selectList(any())).thenReturn(List.of());
+
+    cacheWarmer.warmUp();
+
+    verifyNoInteractions(refreshTokenMapper, userCache, userRoleCache);
+  }
+
+  @Test
+  void should_not_fail_startup_when_database_is_unavailable() {
+    when(roleMapper.selectList(any())).thenThrow(new IllegalStateException("db down"));
+
+    assertThatCode(() -> cacheWarmer.warmUp()).doesNotThrowAnyException();
+  }
+
+  @Test
+  void should_stop_when_budget_runs_out() {
+    ReflectionTestUtils.setField(cacheWarmer, "warmUpSeconds", 1L);
+    when(roleMapper.selectList(any())).thenReturn(List.of(role(1L)));
+    when(refreshTokenMapper.selectRecentUserIds(10)).thenReturn(List.of());
+    when(roleCache.getPermUrisByRoleIds(any()))
+        .thenAnswer(
+            _ -> {
+              Thread.sleep(60_000);
+              return Map.of();
+            });
+
+    long start = System.currentTimeMillis();
+    cacheWarmer.warmUp();
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(10_000);
+  }
+
+  private static RolePo role(long id) {
+    RolePo role = new RolePo();
+    role.setId(id);
+    return role;
+  }
+}
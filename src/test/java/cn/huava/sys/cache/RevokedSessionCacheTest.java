@@ -0,0 +1,30 @@
+package cn.huava.sys.cache;
+
+import static cn.huava.sys.cache.RevokedSessionCache.REVOKED_SESSION_PREFIX;
+import static org.assertj.core.api.Assertions.*;
+
+import cn.huava.common.WithSpringBootTestAnnotation;
+import cn.huava.common.util.RedisUtil;
+import cn.hutool.v7.core.data.id.IdUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests for {@link RevokedSessionCache}
+ *
+ * @author Camio1945
+ */
+class RevokedSessionCacheTest extends WithSpringBootTestAnnotation {
+
+  @Autowired private RevokedSessionCache revokedSessionCache;
+
+  @Test
+  void should_revoke_session() {
+    long sid = IdUtil.getSnowflakeNextId();
+    assertThat(revokedSessionCache.isRevoked(sid)).isFalse();
+    revokedSessionCache.revoke(sid);
+    assertThat(revokedSessionCache.isRevoked(sid)).isTrue();
+    assertThat(revokedSessionCache.isRevoked(IdUtil.getSnowflakeNextId())).isFalse();
+    RedisUtil.delete(REVOKED_SESSION_PREFIX + "::" + sid);
+  }
+}
@@ -1,24 +1,98 @@
 package cn.huava.sys.cache;
 
 import static cn.huava.common.constant.CommonConstant.ADMIN_ROLE_ID;
-import static cn.huava.sys.cache.RoleCache.URIS_CACHE_PREFIX;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import cn.huava.common.WithSpringBootTestAnnotation;
+import cn.huava.common.cache.TwoLevelCache;
 import cn.huava.common.util.RedisUtil;
+import cn.hutool.v7.core.data.id.IdUtil;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 
 class RoleCacheTest extends WithSpringBootTestAnnotation {
   @Autowired private RoleCache roleCache;
+  @Autowired private CacheManager cacheManager;
 
   @Test
   void should_get_empty_perm_uris_by_admin_role_id() {
-    String key = URIS_CACHE_PREFIX + "::" + ADMIN_ROLE_ID;
+    String key = redisKey(ADMIN_ROLE_ID);
     roleCache.deleteCache(ADMIN_ROLE_ID);
     Set<String> permUris = roleCache.getPermUrisByRoleId(ADMIN_ROLE_ID);
     assertThat(permUris).isNotNull().isEmpty();
     assertThat(RedisUtil.hasKey(key)).isTrue();
   }
+
+  @Test
+  void should_get_perm_uris_by_role_ids_in_one_batch() {
+    long missingRoleId = IdUtil.getSnowflakeNextId();
+    roleCache.deleteCache(ADMIN_ROLE_ID);
+    roleCache.deleteCache(missingRoleId);
+
+    Map<Long, Set<String>> loaded =
+        roleCache.getPermUrisByRoleIds(List.of(ADMIN_ROLE_ID, missingRoleId, missingRoleId));
+    assertThat(loaded).containsOnlyKeys(ADMIN_ROLE_ID, missingRoleId);
+    assertThat(loaded.get(missingRoleId)).isEmpty();
+    assertThat(RedisUtil.hasKey(redisKey(missingRoleId))).isTrue();
+
+    Map<Long, Set<String>> cached =
+        roleCache.getPermUrisByRoleIds(List.of(ADMIN_ROLE_ID, missingRoleId));
+    assertThat(cached).isEqualTo(loaded);
+    assertThat(roleCache.getPermUrisByRoleId(missingRoleId)).isEmpty();
+    roleCache.deleteCache(missingRoleId);
+  }
+
+  @Test
+  void should_read_cache_written_by_single_role_method() {
+    roleCache.deleteCache(ADMIN_ROLE_ID);
+    Set<String> single = roleCache.getPermUrisByRoleId(ADMIN_ROLE_ID);
+    assertThat(roleCache.getPermUrisByRoleIds(List.of(ADMIN_ROLE_ID)))
+        .containsOnlyKeys(ADMIN_ROLE_ID)
+        .containsEntry(ADMIN_ROLE_ID, single);
+  }
+
+  @Test
+  void should_read_local_cache_without_redis() {
+    String key = redisKey(ADMIN_ROLE_ID);
+    roleCache.deleteCache(ADMIN_ROLE_ID);
+    Set<String> single = roleCache.getPermUrisByRoleId(ADMIN_ROLE_ID);
+    // 只删除 Redis 中的值，本地缓存仍然存在
+    RedisUtil.delete(key);
+    assertThat(roleCache.getPermUrisByRoleIds(List.of(ADMIN_ROLE_ID)))
+        .containsEntry(ADMIN_ROLE_ID, single);
+    assertThat(RedisUtil.hasKey(key)).isFalse();
+    roleCache.deleteCache(ADMIN_ROLE_ID);
+  }
+
+  @Test
+  void should_return_empty_map_when_no_role_ids() {
+    assertThat(roleCache.getPermUrisByRoleIds(List.of())).isEmpty();
+  }
+
+  @Test
+  void should_not_read_old_generation_after_delete_all_cache() {
+    roleCache.getPermUrisByRoleId(ADMIN_ROLE_ID);
+    String oldKey = redisKey(ADMIN_ROLE_ID);
+    assertThat(RedisUtil.hasKey(oldKey)).isTrue();
+
+    roleCache.deleteAllCache();
+
+    String newKey = redisKey(ADMIN_ROLE_ID);
+    assertThat(newKey).isNotEqualTo(oldKey);
+    assertThat(RedisUtil.hasKey(newKey)).isFalse();
+    roleCache.getPermUrisByRoleId(ADMIN_ROLE_ID);
+    assertThat(RedisUtil.hasKey(newKey)).isTrue();
+    RedisUtil.delete(oldKey);
+  }
+
+  private String redisKey(Long roleId) {
+    Cache cache = cacheManager.getCache(RoleCache.URIS_CACHE_PREFIX);
+    return ((TwoLevelCache) Objects.requireNonNull(cache)).redisKey(roleId);
+  }
 }
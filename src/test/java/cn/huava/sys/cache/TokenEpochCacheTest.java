@@ -0,0 +1,42 @@
+package cn.huava.sys.cache;
+
+import static cn.huava.sys.cache.TokenEpochCache.TOKEN_EPOCH_PREFIX;
+import static org.assertj.core.api.Assertions.*;
+
+import cn.huava.common.WithSpringBootTestAnnotation;
+import cn.huava.common.util.RedisUtil;
+import cn.hutool.v7.core.data.id.IdUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests for {@link TokenEpochCache}
+ *
+ * @author Camio1945
+ */
+class TokenEpochCacheTest extends WithSpringBootTestAnnotation {
+
+  @Autowired private TokenEpochCache tokenEpochCache;
+
+  @Test
+  void should_increase_epoch() {
+    long userId = IdUtil.getSnowflakeNextId();
+    assertThat(tokenEpochCache.getEpoch(userId)).isZero();
+    tokenEpochCache.increaseEpoch(userId);
+    assertThat(tokenEpochCache.getEpoch(userId)).isEqualTo(1L);
+    assertThat(tokenEpochCache.getLatestEpoch(userId)).isEqualTo(1L);
+    RedisUtil.delete(TOKEN_EPOCH_PREFIX + "::" + userId);
+  }
+
+  @Test
+  void should_read_latest_epoch_from_redis() {
+    long userId = IdUtil.getSnowflakeNextId();
+    String key = TOKEN_EPOCH_PREFIX + "::" + userId;
+    assertThat(tokenEpochCache.getEpoch(userId)).isZero();
+    // 模拟其他实例递增了纪元，但本实例没有收到通知
+    RedisUtil.getRedissonClient().getAtomicLong(key).set(5L);
+    assertThat(tokenEpochCache.getLatestEpoch(userId)).isEqualTo(5L);
+    assertThat(tokenEpochCache.getEpoch(userId)).isEqualTo(5L);
+    RedisUtil.delete(key);
+  }
+}
@@ -0,0 +1,205 @@
+package cn.huava.sys.cache;
+
+import static cn.huava.sys.cache.UserBloomFilter.BUILDING_KEY;
+import static cn.huava.sys.cache.UserBloomFilter.GENERATION_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.cache.RedisCircuitBreaker;
+import cn.huava.common.util.RedisUtil;
+import cn.huava.sys.mapper.UserMapper;
+import cn.huava.sys.pojo.po.UserExtPo;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+/**
+ * Tests for {@link UserBloomFilter}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class UserBloomFilterTest {
+  @Mock private UserMapper userMapper;
+  @Mock private RedissonClient redissonClient;
+  @Mock private RAtomicLong generation;
+  @Mock private RAtomicLong building;
+  @Mock private RBloomFilter<String> filter1;
+  @Mock private RBloomFilter<String> filter2;
+  @Mock private RLock lock;
+
+  @Spy
+  private RedisCircuitBreaker redisCircuitBreaker =
+      new RedisCircuitBreaker(1, Duration.ofMinutes(1), Duration.ZERO, 1, Duration.ZERO, 100);
+
+  @InjectMocks private UserBloomFilter userBloomFilter;
+
+  private MockedStatic<RedisUtil> redisUtil;
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(userBloomFilter, "expectedInsertions", 1000L);
+    ReflectionTestUtils.setField(userBloomFilter, "falseProbability", 0.01);
+    redisUtil = mockStatic(RedisUtil.class, withSettings().strictness(Strictness.LENIENT));
+    redisUtil.when(RedisUtil::getRedissonClient).thenReturn(redissonClient);
+    lenient().when(redissonClient.getAtomicLong(GENERATION_KEY)).thenReturn(generation);
+    lenient().when(redissonClient.getAtomicLong(BUILDING_KEY)).thenReturn(building);
+    lenient()
+        .when(redissonClient.<String>getBloomFilter("bloom:user:g1", StringCodec.INSTANCE))
+        .thenReturn(filter1);
+    lenient()
+        .when(redissonClient.<String>getBloomFilter("bloom:user:g2", StringCodec.INSTANCE))
+        .thenReturn(filter2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    redisUtil.close();
+  }
+
+  @Test
+  void should_treat_every_user_as_possible_before_first_build() {
+    when(generation.get()).thenReturn(0L);
+
+    assertThat(userBloomFilter.mightContainId(1L)).isTrue();
+    assertThat(userBloomFilter.mightContainUsername("nobody")).isTrue();
+    verifyNoInteractions(filter1);
+  }
+
+  @Test
+  void should_check_current_generation() {
+    when(generation.get()).thenReturn(1L);
+    when(filter1.contains("id:1")).thenReturn(true);
+    when(filter1.contains("username:nobody")).thenReturn(false);
+
+    assertThat(userBloomFilter.mightContainId(1L)).isTrue();
+    assertThat(userBloomFilter.mightContainUsername("nobody")).isFalse();
+  }
+
+  @Test
+  void should_fall_back_to_database_when_filter_is_unavailable() {
+    when(generation.get()).thenReturn(1L);
+    when(filter1.contains("id:1")).thenThrow(new IllegalStateException("not initialized"));
+
+    assertThat(userBloomFilter.mightContainId(1L)).isTrue();
+  }
+
+  @Test
+  void should_treat_every_user_as_possible_while_redis_is_down() {
+    openCircuitBreaker();
+
+    assertThat(userBloomFilter.mightContainId(1L)).isTrue();
+    assertThat(userBloomFilter.mightContainUsername("nobody")).isTrue();
+    verifyNoInteractions(generation, filter1);
+  }
+
+  @Test
+  void should_add_to_current_and_building_generations() {
+    when(building.get()).thenReturn(2L);
+    when(generation.get()).thenReturn(1L);
+
+    userBloomFilter.add(user(5L, "tom"));
+
+    verify(filter1).add(List.of("id:5", "username:tom"));
+    verify(filter2).add(List.of("id:5", "username:tom"));
+  }
+
+  @Test
+  void should_add_again_after_transaction_completes() {
+    when(building.get()).thenReturn(0L);
+    when(generation.get()).thenReturn(1L, 2L);
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userBloomFilter.add(user(5L, "tom"));
+      verify(filter1).add(List.of("id:5", "username:tom"));
+      verifyNoInteractions(filter2);
+
+      // A rebuild that could not see the uncommitted user switched to generation 2 meanwhile
+      TransactionSynchronizationUtils.invokeAfterCompletion(
+          TransactionSynchronizationManager.getSynchronizations(),
+          TransactionSynchronization.STATUS_COMMITTED);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    verify(filter2).add(List.of("id:5", "username:tom"));
+  }
+
+  @Test
+  void should_rebuild_into_next_generation_and_switch() {
+    when(redissonClient.getLock("bloom:user:rebuild")).thenReturn(lock);
+    when(lock.tryLock()).thenReturn(true);
+    when(generation.get()).thenReturn(1L);
+    when(userMapper.selectCount(null)).thenReturn(2L);
+    when(userMapper.selectIdAndUsernamePage(0L, 1000))
+        .thenReturn(List.of(user(1L, "admin"), user(7L, "tom")));
+
+    userBloomFilter.rebuild();
+
+    verify(filter2).tryInit(1000L, 0.01);
+    verify(building).set(2L);
+    verify(filter2).add(List.of("id:1", "username:admin", "id:7", "username:tom"));
+    verify(generation).set(2L);
+    verify(filter1).expire(any(Duration.class));
+    verify(building).delete();
+    verify(lock).unlock();
+  }
+
+  @Test
+  void should_defer_add_and_skip_rebuild_while_redis_is_down() {
+    openCircuitBreaker();
+
+    userBloomFilter.add(user(5L, "tom"));
+    userBloomFilter.rebuild();
+
+    verifyNoInteractions(building, generation, userMapper);
+    verify(redissonClient, never()).getLock(anyString());
+    assertThat(redisCircuitBreaker.getMetrics().getDeferredInvalidationCount()).isOne();
+  }
+
+  @Test
+  void should_skip_rebuild_when_another_instance_is_rebuilding() {
+    when(redissonClient.getLock("bloom:user:rebuild")).thenReturn(lock);
+    when(lock.tryLock()).thenReturn(false);
+
+    userBloomFilter.rebuild();
+
+    verifyNoInteractions(userMapper, generation);
+    verify(lock, never()).unlock();
+  }
+
+  private void openCircuitBreaker() {
+    redisCircuitBreaker.run(
+        () -> {
+          throw new RedisConnectionException("Redis is down");
+        });
+  }
+
+  private static UserExtPo user(long id, String username) {
+    UserExtPo user = new UserExtPo();
+    user.setUsername(username);
+    user.setId(id);
+    return user;
+  }
+}
@@ -1,14 +1,18 @@
 package cn.huava.sys.cache;
 
 import static cn.huava.common.constant.CommonConstant.ADMIN_USER_ID;
+import static cn.huava.sys.cache.UserCache.USER_FULL_ID_CACHE_PREFIX;
 import static cn.huava.sys.cache.UserCache.USER_ID_CACHE_PREFIX;
 import static cn.huava.sys.cache.UserCache.USER_USERNAME_CACHE_PREFIX;
 import static org.assertj.core.api.Assertions.*;
 
 import cn.huava.common.WithSpringBootTestAnnotation;
 import cn.huava.common.util.RedisUtil;
+import cn.huava.sys.mapper.UserMapper;
+import cn.huava.sys.pojo.dto.UserAuthDto;
 import cn.huava.sys.pojo.po.UserExtPo;
 import cn.hutool.v7.core.data.id.IdUtil;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -20,11 +24,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 class UserCacheTest extends WithSpringBootTestAnnotation {
 
   @Autowired private UserCache userCache;
+  @Autowired private UserMapper userMapper;
 
   @Test
-  void should_get_user_by_id() {
+  void should_get_auth_by_id() {
+    UserAuthDto user = userCache.getAuthById(ADMIN_USER_ID);
+    assertThat(user).isEqualTo(new UserAuthDto(ADMIN_USER_ID, "admin", true, false));
+  }
+
+  @Test
+  void should_get_null_auth_by_non_exist_id() {
+    assertThat(userCache.getAuthById(IdUtil.getSnowflakeNextId())).isNull();
+  }
+
+  @Test
+  void should_get_full_user_by_id_from_cache() {
     UserExtPo user = userCache.getById(ADMIN_USER_ID);
-    assertThat(user.getId()).isEqualTo(ADMIN_USER_ID);
+    assertThat(user).isNotNull();
+    assertThat(user.getPassword()).isNotBlank();
+    assertThat(RedisUtil.hasKey(USER_FULL_ID_CACHE_PREFIX + "::" + ADMIN_USER_ID)).isTrue();
+  }
+
+  @Test
+  void should_get_null_full_user_by_non_exist_id() {
+    assertThat(userCache.getById(IdUtil.getSnowflakeNextId())).isNull();
   }
 
   @Test
@@ -41,23 +64,39 @@ class UserCacheTest extends WithSpringBootTestAnnotation {
 
   @Test
   void should_delete_keys_after_save_or_update() {
-    UserExtPo user = userCache.getById(ADMIN_USER_ID);
+    UserExtPo user = userMapper.selectById(ADMIN_USER_ID);
+    userCache.getById(ADMIN_USER_ID);
     userCache.afterSaveOrUpdate(user);
     assertThat(RedisUtil.hasKey(USER_ID_CACHE_PREFIX + "::" + user.getId())).isFalse();
+    assertThat(RedisUtil.hasKey(USER_FULL_ID_CACHE_PREFIX + "::" + user.getId())).isFalse();
     assertThat(RedisUtil.hasKey(USER_USERNAME_CACHE_PREFIX + "::" + user.getUsername())).isFalse();
   }
 
   @Test
   void should_delete_keys_after_delete() {
-    UserExtPo user = userCache.getById(ADMIN_USER_ID);
+    UserExtPo user = userMapper.selectById(ADMIN_USER_ID);
     userCache.afterDelete(user);
     assertThat(RedisUtil.hasKey(USER_ID_CACHE_PREFIX + "::" + user.getId())).isFalse();
     assertThat(RedisUtil.hasKey(USER_USERNAME_CACHE_PREFIX + "::" + user.getUsername())).isFalse();
   }
 
+  @Test
+  void should_delete_keys_after_batch_change() {
+    UserExtPo user = userMapper.selectById(ADMIN_USER_ID);
+    userCache.getAuthById(ADMIN_USER_ID);
+    userCache.getById(ADMIN_USER_ID);
+    userCache.getIdByUsername(user.getUsername());
+
+    userCache.afterBatchChange(List.of(user));
+
+    assertThat(RedisUtil.hasKey(USER_ID_CACHE_PREFIX + "::" + user.getId())).isFalse();
+    assertThat(RedisUtil.hasKey(USER_FULL_ID_CACHE_PREFIX + "::" + user.getId())).isFalse();
+    assertThat(RedisUtil.hasKey(USER_USERNAME_CACHE_PREFIX + "::" + user.getUsername())).isFalse();
+  }
+
   @Test
   void should_delete_keys_before_update() {
-    UserExtPo user = userCache.getById(ADMIN_USER_ID);
+    UserExtPo user = userMapper.selectById(ADMIN_USER_ID);
     userCache.beforeUpdate(user);
     assertThat(RedisUtil.hasKey(USER_USERNAME_CACHE_PREFIX + "::" + user.getUsername())).isFalse();
   }
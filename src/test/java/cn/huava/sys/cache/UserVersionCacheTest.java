@@ -0,0 +1,36 @@
+package cn.huava.sys.cache;
+
+import static cn.huava.sys.cache.UserVersionCache.USER_VERSION_PREFIX;
+import static org.assertj.core.api.Assertions.*;
+
+import cn.huava.common.WithSpringBootTestAnnotation;
+import cn.huava.common.util.RedisUtil;
+import cn.hutool.v7.core.data.id.IdUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests for {@link UserVersionCache}
+ *
+ * @author Camio1945
+ */
+class UserVersionCacheTest extends WithSpringBootTestAnnotation {
+
+  @Autowired private UserVersionCache userVersionCache;
+
+  @Test
+  void should_be_zero_for_user_never_changed() {
+    assertThat(userVersionCache.getVersion(IdUtil.getSnowflakeNextId())).isZero();
+  }
+
+  @Test
+  void should_increase_version_and_update_local_copy() {
+    long userId = IdUtil.getSnowflakeNextId();
+    long before = userVersionCache.getVersion(userId);
+    userVersionCache.increaseVersion(userId);
+    assertThat(userVersionCache.getVersion(userId)).isEqualTo(before + 1);
+    String key = USER_VERSION_PREFIX + "::" + userId;
+    assertThat(RedisUtil.getRedissonClient().getAtomicLong(key).get()).isEqualTo(before + 1);
+    RedisUtil.delete(key);
+  }
+}
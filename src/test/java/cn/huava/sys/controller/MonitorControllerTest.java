@@ -0,0 +1,88 @@
+package cn.huava.sys.controller;
+
+import static cn.huava.common.util.ApiTestUtil.*;
+import static cn.huava.sys.cache.UserCache.USER_ID_CACHE_PREFIX;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import cn.huava.common.WithSpringBootTestAnnotation;
+import cn.huava.common.pojo.dto.CacheMetricsDto;
+import cn.huava.common.pojo.dto.RedisCircuitBreakerDto;
+import cn.huava.common.util.ApiTestUtil;
+import cn.huava.sys.pojo.dto.CacheStatsDto;
+import cn.hutool.v7.core.reflect.TypeReference;
+import cn.hutool.v7.json.JSONUtil;
+import java.util.List;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+/**
+ * Test the apis in {@link MonitorController}. <br>
+ *
+ * @author Camio1945
+ */
+@AutoConfigureMockMvc
+@SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
+class MonitorControllerTest extends WithSpringBootTestAnnotation {
+
+  @Autowired MockMvc mockMvcAutowired;
+
+  @AfterAll
+  @SneakyThrows
+  static void afterAll() {
+    logout();
+  }
+
+  @BeforeEach
+  @SneakyThrows
+  void beforeEach() {
+    if (ApiTestUtil.mockMvc == null) {
+      ApiTestUtil.mockMvc = mockMvcAutowired;
+      loginByAdmin();
+    }
+  }
+
+  @Test
+  @SneakyThrows
+  void should_get_token_cache_stats() {
+    RequestBuilder req = initReq().get("/sys/monitor/tokenCacheStats").build();
+    mockMvc.perform(req).andExpect(status().isOk());
+    MvcResult res = mockMvc.perform(req).andExpect(status().isOk()).andReturn();
+    String resJsonStr = res.getResponse().getContentAsString();
+    CacheStatsDto stats = JSONUtil.toBean(resJsonStr, CacheStatsDto.class);
+    assertThat(stats.getName()).isEqualTo("verifiedAccessToken");
+    assertThat(stats.getHitCount()).isPositive();
+    assertThat(stats.getSize()).isPositive();
+  }
+
+  @Test
+  @SneakyThrows
+  void should_get_cache_stats() {
+    RequestBuilder req = initReq().get("/sys/monitor/cacheStats").build();
+    MvcResult res = mockMvc.perform(req).andExpect(status().isOk()).andReturn();
+    String resJsonStr = res.getResponse().getContentAsString();
+    TypeReference<List<CacheMetricsDto>> type = new TypeReference<>() {};
+    List<CacheMetricsDto> stats = JSONUtil.toBean(resJsonStr, type);
+    // 登录和鉴权都会用到用户缓存
+    assertThat(stats).extracting(CacheMetricsDto::getName).contains(USER_ID_CACHE_PREFIX);
+    assertThat(stats).allSatisfy(s -> assertThat(s.getLoadMillisHistogram()).hasSize(8));
+  }
+
+  @Test
+  @SneakyThrows
+  void should_get_redis_circuit_breaker() {
+    RequestBuilder req = initReq().get("/sys/monitor/redisCircuitBreaker").build();
+    MvcResult res = mockMvc.perform(req).andExpect(status().isOk()).andReturn();
+    String resJsonStr = res.getResponse().getContentAsString();
+    RedisCircuitBreakerDto breaker = JSONUtil.toBean(resJsonStr, RedisCircuitBreakerDto.class);
+    assertThat(breaker.getState()).isEqualTo("CLOSED");
+    assertThat(breaker.getShortCircuitCount()).isZero();
+  }
+}
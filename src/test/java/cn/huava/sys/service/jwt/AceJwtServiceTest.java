@@ -1,12 +1,19 @@
 package cn.huava.sys.service.jwt;
 
+import static cn.huava.common.constant.CommonConstant.MILLIS_PER_SECOND;
+import static cn.huava.common.constant.CommonConstant.REFRESH_TOKEN_TTL_SECONDS;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import cn.huava.sys.cache.RevokedSessionCache;
+import cn.huava.sys.pojo.dto.CacheStatsDto;
 import cn.huava.sys.pojo.dto.UserJwtDto;
-import cn.hutool.v7.json.jwt.JWT;
+import cn.hutool.v7.json.jwt.JWTUtil;
 import java.lang.reflect.Field;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -21,12 +28,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
  */
 @ExtendWith(MockitoExtension.class)
 class AceJwtServiceTest {
+  /** Base64 encoded "testing-jwt-encoding-key" */
+  private static final String JWT_KEY_BASE64 = "dGVzdGluZy1qd3QtZW5jb2Rpbmcta2V5";
 
   @Mock
   private CreateTokenService createTokenService;
 
   @Mock
-  private JwtUtilService jwtUtilService;
+  private RevokedSessionCache revokedSessionCache;
 
   @InjectMocks
   private AceJwtService aceJwtService;
@@ -36,12 +45,7 @@ class AceJwtServiceTest {
     // Set the jwtKeyBase64 field using reflection since it's annotated with @Value
     Field jwtKeyBase64Field = AceJwtService.class.getDeclaredField("jwtKeyBase64");
     jwtKeyBase64Field.setAccessible(true);
-    jwtKeyBase64Field.set(aceJwtService, "dGVzdGluZy1qd3QtZW5jb2Rpbmcta2V5"); // Base64 encoded "testing-jwt-encoding-key"
-
-    // Inject the mocked JwtUtilService
-    Field jwtUtilServiceField = AceJwtService.class.getDeclaredField("jwtUtilService");
-    jwtUtilServiceField.setAccessible(true);
-    jwtUtilServiceField.set(aceJwtService, jwtUtilService);
+    jwtKeyBase64Field.set(aceJwtService, JWT_KEY_BASE64);
   }
 
   @Test
@@ -50,99 +54,218 @@ class AceJwtServiceTest {
     UserJwtDto expectedToken = new UserJwtDto();
     expectedToken.setAccessToken("mocked-token");
 
-    when(createTokenService.createToken(eq(userId), any(byte[].class))).thenReturn(expectedToken);
+    when(createTokenService.createToken(eq(userId), any(Hs256JwtEngine.class)))
+        .thenReturn(expectedToken);
 
     UserJwtDto result = aceJwtService.createToken(userId);
 
     assertThat(result).isEqualTo(expectedToken);
-    verify(createTokenService).createToken(eq(userId), any(byte[].class));
+    verify(createTokenService).createToken(eq(userId), any(Hs256JwtEngine.class));
   }
 
   @Test
-  void should_extract_user_id_from_valid_access_token() {
-    String token = "eyJ0eXAiOiJKV1QiLCJhbGciOiJIUzI1NiJ9.eyJzdWIiOjEsImV4cCI6MTg1MDAwMDB9." +
-                   "someSignature"; // This is a sample JWT token with subject=1 and expiration
+  void should_decode_claims_from_valid_access_token() {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    String token = createTokenByHutool(Map.of("sub", 7L, "iat", now, "exp", now + 60));
 
-    JWT mockJwt = mock(JWT.class);
+    AccessTokenClaims claims = aceJwtService.verifyAccessToken(token);
 
-    // Mock the JWTUtilService to return a JWT with a subject
-    when(jwtUtilService.parseToken(token)).thenReturn(mockJwt);
-    when(mockJwt.getPayload("sub", Long.class)).thenReturn(1L);
+    assertThat(claims).isEqualTo(new AccessTokenClaims(7L, now, now + 60));
+    assertThat(claims.isExpired()).isFalse();
+  }
 
-    Long result = aceJwtService.getUserIdFromAccessToken(token);
+  @Test
+  void should_decode_identity_claims_from_stateless_access_token() {
+    String token =
+        createTokenByHutool(
+            Map.of(
+                "sub", 7L, "epc", 4L, "username", "tom", "roles", List.of(2L, 3L), "ver", 5L));
+
+    AccessTokenClaims claims = aceJwtService.verifyAccessToken(token);
+
+    assertThat(claims.hasIdentity()).isTrue();
+    assertThat(claims.epc()).isEqualTo(4L);
+    assertThat(claims.username()).isEqualTo("tom");
+    assertThat(claims.roleIds()).containsExactly(2L, 3L);
+    assertThat(claims.ver()).isEqualTo(5L);
+    assertThat(new AccessTokenClaims(7L, 0L, 1L).hasIdentity()).isFalse();
+  }
 
-    assertThat(result).isEqualTo(1L);
+  @Test
+  void should_throw_exception_when_token_is_malformed() {
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken("invalid.token.format"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid token");
   }
 
   @Test
-  void should_verify_token_and_check_if_expired() {
-    // This test would require creating a valid JWT token with an expiration time
-    // For now, we'll test with a malformed token to trigger the verification failure
-    String invalidToken = "invalid.token.format";
+  void should_throw_exception_when_signature_is_wrong() {
+    String token = createTokenByHutool(Map.of("sub", 7L));
+    String tampered = token.substring(0, token.length() - 2) + "AA";
 
-    // The actual exception thrown will be different from "invalid token" because
-    // JWTUtil.parseToken will fail before the validation
-    assertThatThrownBy(() -> aceJwtService.isTokenExpired(invalidToken))
-        .isNotNull(); // Just verify that an exception is thrown
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken(tampered))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid token");
   }
 
   @Test
-  void should_return_false_when_token_has_no_exp_claim() {
-    // Test the branch where exp is null, so exp != null is false
-    // This causes the expression to return false due to short-circuit evaluation
-    String token = "dummy.token";
-    JWT mockJwt = mock(JWT.class);
+  void should_throw_exception_when_token_has_no_sub_claim() {
+    // A refresh token has no "sub", it must not be accepted as an access token
+    String token = createTokenByHutool(Map.of("id", "1", "exp", 1L));
+
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken(token))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid token");
+  }
 
-    // Mock the JWTUtilService to return a JWT with null exp
-    when(jwtUtilService.verify(eq(token), any(byte[].class))).thenReturn(true);
-    when(jwtUtilService.parseToken(token)).thenReturn(mockJwt);
-    when(mockJwt.getPayload("exp", Long.class)).thenReturn(null);
+  @Test
+  void should_not_be_expired_when_token_has_no_exp_claim() {
+    String token = createTokenByHutool(Map.of("sub", 1L));
 
-    boolean result = aceJwtService.isTokenExpired(token);
+    AccessTokenClaims claims = aceJwtService.verifyAccessToken(token);
 
-    // The result should be false because exp is null, so exp != null is false
-    assertThat(result).isFalse();
+    assertThat(claims.iat()).isZero();
+    assertThat(claims.exp()).isEqualTo(Long.MAX_VALUE);
+    assertThat(claims.isExpired()).isFalse();
   }
 
   @Test
-  void should_return_true_when_token_is_expired() {
-    // Test the branch where exp is not null but the token is expired
-    // Both conditions are true: exp != null && exp * CommonConstant.MILLIS_PER_SECOND <= System.currentTimeMillis()
-    String token = "dummy.token";
-    JWT mockJwt = mock(JWT.class);
+  void should_serve_repeated_token_from_verified_token_cache() {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    String token = createTokenByHutool(Map.of("sub", 7L, "iat", now, "exp", now + 60));
+
+    AccessTokenClaims first = aceJwtService.verifyAccessToken(token);
+    AccessTokenClaims second = aceJwtService.verifyAccessToken(token);
+
+    assertThat(second).isSameAs(first);
+    CacheStatsDto stats = aceJwtService.getVerifiedTokenCacheStats();
+    assertThat(stats.getHitCount()).isEqualTo(1L);
+    assertThat(stats.getMissCount()).isEqualTo(1L);
+    assertThat(stats.getSize()).isEqualTo(1L);
+  }
 
-    // Use a past timestamp that is definitely expired
-    long pastExp = 1L; // Very old timestamp in seconds
+  @Test
+  void should_reject_cached_signature_with_other_header_and_payload() {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    String token = createTokenByHutool(Map.of("sub", 7L, "iat", now, "exp", now + 60));
+    String other = createTokenByHutool(Map.of("sub", 1L, "iat", now, "exp", now + 60));
+    aceJwtService.verifyAccessToken(token);
+    String forged =
+        other.substring(0, other.lastIndexOf('.')) + token.substring(token.lastIndexOf('.'));
+
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken(forged))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid token");
+  }
 
-    // Mock the JWTUtilService
-    when(jwtUtilService.verify(eq(token), any(byte[].class))).thenReturn(true);
-    when(jwtUtilService.parseToken(token)).thenReturn(mockJwt);
-    when(mockJwt.getPayload("exp", Long.class)).thenReturn(pastExp);
+  @Test
+  void should_not_cache_expired_or_invalid_token() {
+    String expired = createTokenByHutool(Map.of("sub", 7L, "exp", 1L));
+    String tampered = expired.substring(0, expired.length() - 2) + "AA";
+
+    assertThat(aceJwtService.verifyAccessToken(expired).isExpired()).isTrue();
+    assertThat(aceJwtService.verifyAccessToken(expired).isExpired()).isTrue();
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken(tampered))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> aceJwtService.verifyAccessToken("no-dot"))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    CacheStatsDto stats = aceJwtService.getVerifiedTokenCacheStats();
+    assertThat(stats.getHitCount()).isZero();
+    assertThat(stats.getSize()).isZero();
+  }
 
-    boolean result = aceJwtService.isTokenExpired(token);
+  @Test
+  void should_renew_access_token_near_exp_at_most_once_per_session() throws Exception {
+    setRenewWindowMinutes(10);
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    AccessTokenClaims nearExp = sessionClaims(now + 5 * 60, 11L, now - 3600);
+    when(revokedSessionCache.isRevoked(11L)).thenReturn(false);
+    when(createTokenService.createAccessToken(
+            eq(7L), eq(11L), eq(now - 3600), any(Hs256JwtEngine.class)))
+        .thenReturn("renewed-token");
+
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(nearExp)).isEqualTo("renewed-token");
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(nearExp)).isNull();
+    verify(createTokenService, times(1))
+        .createAccessToken(eq(7L), eq(11L), eq(now - 3600), any(Hs256JwtEngine.class));
+    verify(revokedSessionCache, times(1)).isRevoked(11L);
+  }
 
-    // The result should be true because exp is not null AND the expiration time is before current time
-    assertThat(result).isTrue();
+  @Test
+  void should_decode_session_claims_from_access_token() {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    String token =
+        createTokenByHutool(Map.of("sub", 7L, "exp", now + 60, "sid", 11L, "lat", now - 60));
+
+    AccessTokenClaims claims = aceJwtService.verifyAccessToken(token);
+
+    assertThat(claims.sid()).isEqualTo(11L);
+    assertThat(claims.lat()).isEqualTo(now - 60);
+  }
+
+  @Test
+  void should_not_renew_access_token_outside_an_active_session() throws Exception {
+    setRenewWindowMinutes(10);
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    // Issued before sessions existed
+    AccessTokenClaims legacy = new AccessTokenClaims(7L, now, now + 5 * 60);
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(legacy)).isNull();
+    // Login is older than the refresh token lifetime
+    long lat = now - REFRESH_TOKEN_TTL_SECONDS;
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(sessionClaims(now + 60, 11L, lat)))
+        .isNull();
+    verify(revokedSessionCache, never()).isRevoked(anyLong());
+    // Logged out: the session was revoked
+    when(revokedSessionCache.isRevoked(12L)).thenReturn(true);
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(sessionClaims(now + 60, 12L, now)))
+        .isNull();
+    verify(createTokenService, never())
+        .createAccessToken(anyLong(), anyLong(), anyLong(), any(Hs256JwtEngine.class));
+  }
+
+  @Test
+  void should_not_renew_access_token_far_from_exp_or_when_disabled() throws Exception {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    AccessTokenClaims nearExp = sessionClaims(now + 5 * 60, 11L, now);
+    setRenewWindowMinutes(0);
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(nearExp)).isNull();
+
+    setRenewWindowMinutes(10);
+    AccessTokenClaims farFromExp = sessionClaims(now + 3600, 11L, now);
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(farFromExp)).isNull();
+    AccessTokenClaims neverExpires = new AccessTokenClaims(7L, 0L, Long.MAX_VALUE);
+    assertThat(aceJwtService.renewAccessTokenIfNeeded(neverExpires)).isNull();
+    verify(createTokenService, never())
+        .createAccessToken(anyLong(), anyLong(), anyLong(), any(Hs256JwtEngine.class));
   }
 
   @Test
-  void should_return_false_when_token_is_not_expired() {
-    // Test the branch where exp is not null but the token is not expired
-    // First condition is true but second is false: exp != null && exp * CommonConstant.MILLIS_PER_SECOND <= System.currentTimeMillis()
-    String token = "dummy.token";
-    JWT mockJwt = mock(JWT.class);
+  void should_be_expired_when_exp_is_in_the_past() {
+    AccessTokenClaims claims = new AccessTokenClaims(1L, 0L, 1L);
+    assertThat(claims.isExpired()).isTrue();
+  }
 
-    // Calculate a future expiration time (1 hour from now)
-    long futureExp = (System.currentTimeMillis() / cn.huava.common.constant.CommonConstant.MILLIS_PER_SECOND) + 3600;
+  @Test
+  void should_not_be_expired_when_exp_is_in_the_future() {
+    long futureExp = (System.currentTimeMillis() / MILLIS_PER_SECOND) + 3600;
+    AccessTokenClaims claims = new AccessTokenClaims(1L, 0L, futureExp);
+    assertThat(claims.isExpired()).isFalse();
+  }
 
-    // Mock the JWTUtilService
-    when(jwtUtilService.verify(eq(token), any(byte[].class))).thenReturn(true);
-    when(jwtUtilService.parseToken(token)).thenReturn(mockJwt);
-    when(mockJwt.getPayload("exp", Long.class)).thenReturn(futureExp);
+  private void setRenewWindowMinutes(long minutes) throws Exception {
+    Field field = AceJwtService.class.getDeclaredField("renewWindowMinutes");
+    field.setAccessible(true);
+    field.set(aceJwtService, minutes);
+  }
 
-    boolean result = aceJwtService.isTokenExpired(token);
+  private static AccessTokenClaims sessionClaims(long exp, long sid, long lat) {
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    return new AccessTokenClaims(
+        7L, now, exp, 0L, null, null, AccessTokenClaims.NO_VERSION, sid, lat);
+  }
 
-    // The result should be false because exp is not null but the expiration time is after current time
-    assertThat(result).isFalse();
+  private static String createTokenByHutool(Map<String, Object> payload) {
+    return JWTUtil.createToken(payload, Base64.getDecoder().decode(JWT_KEY_BASE64));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package cn.huava.sys.service.jwt;
+
+import cn.hutool.v7.json.jwt.JWTUtil;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 在多线程下对比 hutool 的 JWTUtil 与 {@link Hs256JwtEngine} 签发、验签 token 的吞吐量。<br>
+ * 这不是单元测试，直接运行 main 方法即可（需要先执行 mvnw test-compile 生成 JMH 的辅助类）。
+ *
+ * @author Camio1945
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class Hs256JwtEngineBenchmark {
+  private static final byte[] KEY =
+      Base64.getDecoder().decode("JsbZtEZD+oB3sMEnfbmFuqiBFGpNofZkNHTOeuXqPi8=");
+
+  private final Hs256JwtEngine engine = new Hs256JwtEngine(KEY);
+
+  private String token;
+
+  @Setup
+  public void setUp() {
+    token = engine.sign(w -> w.put("sub", 1L).put("iat", 1L).put("exp", 3601L));
+  }
+
+  @Benchmark
+  public String hutoolSign() {
+    return JWTUtil.createToken(Map.of("sub", 1L, "iat", 1L, "exp", 3601L), KEY);
+  }
+
+  @Benchmark
+  public String engineSign() {
+    return engine.sign(w -> w.put("sub", 1L).put("iat", 1L).put("exp", 3601L));
+  }
+
+  @Benchmark
+  public boolean hutoolVerify() {
+    return JWTUtil.verify(token, KEY);
+  }
+
+  @Benchmark
+  public long engineVerify() {
+    Hs256JwtEngine.ClaimsReader claims = engine.verify(token);
+    return claims == null ? -1L : claims.getLong("sub", 0L);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(Hs256JwtEngineBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
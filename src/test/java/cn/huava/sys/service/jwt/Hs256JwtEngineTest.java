@@ -0,0 +1,149 @@
+package cn.huava.sys.service.jwt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import cn.hutool.v7.json.jwt.JWT;
+import cn.hutool.v7.json.jwt.JWTUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link Hs256JwtEngine}
+ *
+ * @author Camio1945
+ */
+class Hs256JwtEngineTest {
+  private static final byte[] KEY = "testing-jwt-encoding-key".getBytes(StandardCharsets.UTF_8);
+
+  private final Hs256JwtEngine engine = new Hs256JwtEngine(KEY);
+
+  @Test
+  void should_verify_token_signed_by_itself() {
+    String token = engine.sign(w -> w.put("sub", 123L).put("iat", 10L).put("exp", -20L));
+
+    Hs256JwtEngine.ClaimsReader claims = engine.verify(token);
+
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLong("sub", 0L)).isEqualTo(123L);
+    assertThat(claims.getLong("iat", 0L)).isEqualTo(10L);
+    assertThat(claims.getLong("exp", 0L)).isEqualTo(-20L);
+    assertThat(claims.has("id")).isFalse();
+    assertThat(claims.getLong("id", 99L)).isEqualTo(99L);
+  }
+
+  @Test
+  void should_be_compatible_with_hutool() {
+    String token = engine.sign(w -> w.put("sub", 1L).put("name", "张三 \"quoted\" \\ 😀\n"));
+    assertThat(JWTUtil.verify(token, KEY)).isTrue();
+    JWT jwt = JWTUtil.parseToken(token);
+    assertThat(jwt.getPayload("name")).isEqualTo("张三 \"quoted\" \\ 😀\n");
+
+    String hutoolToken = JWTUtil.createToken(Map.of("sub", 2L, "id", "abc\"d", "exp", 30L), KEY);
+    Hs256JwtEngine.ClaimsReader claims = engine.verify(hutoolToken);
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLong("sub", 0L)).isEqualTo(2L);
+    assertThat(claims.getString("id")).isEqualTo("abc\"d");
+    assertThat(claims.getString("exp")).isEqualTo("30");
+  }
+
+  @Test
+  void should_reject_token_signed_by_another_key() {
+    Hs256JwtEngine another = new Hs256JwtEngine("another-key".getBytes(StandardCharsets.UTF_8));
+    String token = another.sign(w -> w.put("sub", 1L));
+    assertThat(engine.verify(token)).isNull();
+  }
+
+  @Test
+  void should_reject_tampered_payload() {
+    String token = engine.sign(w -> w.put("sub", 1L));
+    String forgedPayload =
+        Base64.getUrlEncoder()
+            .withoutPadding()
+            .encodeToString("{\"sub\":2}".getBytes(StandardCharsets.UTF_8));
+    String[] parts = token.split("\\.");
+    assertThat(engine.verify(parts[0] + "." + forgedPayload + "." + parts[2])).isNull();
+  }
+
+  @Test
+  void should_reject_malformed_tokens() {
+    String token = engine.sign(w -> w.put("sub", 1L));
+    assertThat(engine.verify("")).isNull();
+    assertThat(engine.verify("a.b")).isNull();
+    assertThat(engine.verify(".a.b")).isNull();
+    assertThat(engine.verify(token + ".x")).isNull();
+    assertThat(engine.verify(token + "AAAA")).isNull();
+    assertThat(engine.verify(token.substring(0, token.length() - 4))).isNull();
+    assertThat(engine.verify("中" + token)).isNull();
+    assertThat(engine.verify("a".repeat(9000))).isNull();
+  }
+
+  @Test
+  void should_reject_non_canonical_base64url() {
+    String token = engine.sign(w -> w.put("sub", 1L));
+    assertThat(engine.verify(token)).isNotNull();
+    // 带填充
+    assertThat(engine.verify(token + "=")).isNull();
+    // 签名的最后一个字符只用到了高 4 位，低 2 位不为 0 时解码出的字节相同，但不是规范的编码
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    int last = alphabet.indexOf(token.charAt(token.length() - 1));
+    String forged = token.substring(0, token.length() - 1) + alphabet.charAt(last | 1);
+    assertThat(engine.verify(forged)).isNull();
+  }
+
+  @Test
+  void should_treat_numbers_out_of_long_range_as_invalid() {
+    String token =
+        engine.sign(
+            w ->
+                w.put("max", "9223372036854775807")
+                    .put("over", "9223372036854775808")
+                    .put("huge", "9999999999999999999"));
+    Hs256JwtEngine.ClaimsReader claims = engine.verify(token);
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLong("max", 0L)).isEqualTo(Long.MAX_VALUE);
+    assertThat(claims.getLong("over", 0L)).isZero();
+    assertThat(claims.getLong("huge", 0L)).isZero();
+
+    String hutoolToken = JWTUtil.createToken(Map.of("roles", List.of("9999999999999999999")), KEY);
+    claims = engine.verify(hutoolToken);
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLongList("roles")).isNull();
+  }
+
+  @Test
+  void should_reuse_buffers_across_calls_with_different_sizes() {
+    String longValue = "x".repeat(2000);
+    String big = engine.sign(w -> w.put("sub", 1L).put("data", longValue));
+    String small = engine.sign(w -> w.put("sub", 2L));
+
+    Hs256JwtEngine.ClaimsReader bigClaims = engine.verify(big);
+    assertThat(bigClaims).isNotNull();
+    assertThat(bigClaims.getString("data")).isEqualTo(longValue);
+    Hs256JwtEngine.ClaimsReader smallClaims = engine.verify(small);
+    assertThat(smallClaims).isNotNull();
+    assertThat(smallClaims.getLong("sub", 0L)).isEqualTo(2L);
+    assertThat(smallClaims.has("data")).isFalse();
+  }
+
+  @Test
+  void should_write_and_read_long_list_claims() {
+    String token =
+        engine.sign(w -> w.put("roles", List.of(1L, -2L, 300L)).put("empty", List.of()));
+    Hs256JwtEngine.ClaimsReader claims = engine.verify(token);
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLongList("roles")).containsExactly(1L, -2L, 300L);
+    assertThat(claims.getLongList("empty")).isEmpty();
+    assertThat(claims.getLongList("missing")).isNull();
+
+    String hutoolToken =
+        JWTUtil.createToken(Map.of("a", List.of(4, "5"), "b", List.of("x"), "c", 1), KEY);
+    claims = engine.verify(hutoolToken);
+    assertThat(claims).isNotNull();
+    assertThat(claims.getLongList("a")).containsExactly(4L, 5L);
+    assertThat(claims.getLongList("b")).isNull();
+    assertThat(claims.getLongList("c")).isNull();
+  }
+}
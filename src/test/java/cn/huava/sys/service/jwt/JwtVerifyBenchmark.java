@@ -0,0 +1,75 @@
+package cn.huava.sys.service.jwt;
+
+import static cn.huava.common.constant.CommonConstant.MILLIS_PER_SECOND;
+
+import cn.hutool.v7.json.jwt.JWT;
+import cn.hutool.v7.json.jwt.JWTUtil;
+import java.lang.reflect.Field;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 对比 {@link cn.huava.common.filter.JwtAuthFilter} 中旧的三次解析路径（verify + parse + parse）与新的单次验签解码路径
+ * {@link AceJwtService#verifyAccessToken}。<br>
+ * 这不是单元测试，直接运行 main 方法即可（需要先执行 mvnw test-compile 生成 JMH 的辅助类）。
+ *
+ * @author Camio1945
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerifyBenchmark {
+  private static final String JWT_KEY_BASE64 = "JsbZtEZD+oB3sMEnfbmFuqiBFGpNofZkNHTOeuXqPi8=";
+
+  private AceJwtService aceJwtService;
+
+  private String token;
+
+  @Setup
+  public void setUp() throws Exception {
+    aceJwtService = new AceJwtService(null);
+    Field field = AceJwtService.class.getDeclaredField("jwtKeyBase64");
+    field.setAccessible(true);
+    field.set(aceJwtService, JWT_KEY_BASE64);
+    long now = System.currentTimeMillis() / MILLIS_PER_SECOND;
+    token =
+        JWTUtil.createToken(
+            Map.of("sub", 1L, "iat", now, "exp", now + 60 * 60),
+            Base64.getDecoder().decode(JWT_KEY_BASE64));
+  }
+
+  /** 旧的路径：每次解码 key，verify 解析一次，判断过期解析一次，取用户 id 再解析一次 */
+  @Benchmark
+  public Long legacyThreeCalls() {
+    byte[] key = Base64.getDecoder().decode(JWT_KEY_BASE64);
+    if (!JWTUtil.verify(token, key)) {
+      throw new IllegalArgumentException("invalid token");
+    }
+    JWT jwt = JWTUtil.parseToken(token);
+    Long exp = jwt.getPayload("exp", Long.class);
+    if (exp != null && exp * MILLIS_PER_SECOND <= System.currentTimeMillis()) {
+      return null;
+    }
+    return JWTUtil.parseToken(token).getPayload("sub", Long.class);
+  }
+
+  /** 新的路径：key 只解码一次，token 只解析一次、验签一次 */
+  @Benchmark
+  public long singlePass() {
+    AccessTokenClaims claims = aceJwtService.verifyAccessToken(token);
+    return claims.isExpired() ? -1L : claims.sub();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(JwtVerifyBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -8,6 +8,8 @@ import static org.mockito.Mockito.lenient;
 
 import cn.huava.common.pojo.dto.PageDto;
 import cn.huava.common.pojo.qo.PageQo;
+import cn.huava.sys.auth.RoleHierarchy;
+import cn.huava.sys.auth.RolePermBitSets;
 import cn.huava.sys.cache.RoleCache;
 import cn.huava.sys.mapper.RoleMapper;
 import cn.huava.sys.pojo.po.RolePermPo;
@@ -33,13 +35,24 @@ class AceRoleServiceTest {
   @Mock private RolePageService rolePageService;
   @Mock private AceRolePermService rolePermService;
   @Mock private RoleCache roleCache;
+  @Mock private RolePermBitSets rolePermBitSets;
+  @Mock private RoleClosureService roleClosureService;
+  @Mock private RoleHierarchy roleHierarchy;
   @Mock private RoleMapper roleMapper;
 
   private AceRoleService aceRoleService;
 
   @BeforeEach
   void setUp() {
-    aceRoleService = spy(new AceRoleService(rolePageService, rolePermService, roleCache));
+    aceRoleService =
+        spy(
+            new AceRoleService(
+                rolePageService,
+                rolePermService,
+                roleCache,
+                rolePermBitSets,
+                roleClosureService,
+                roleHierarchy));
     // Mock the mapper for the BaseService methods with lenient stubbing to avoid unnecessary
     // stubbing errors
     lenient().doReturn(roleMapper).when(aceRoleService).getBaseMapper();
@@ -117,6 +130,7 @@ class AceRoleServiceTest {
     verify(rolePermService).remove(any(LambdaQueryWrapper.class));
     verify(rolePermService, never()).saveBatch(any());
     verify(roleCache).deleteCache(2L);
+    verify(rolePermBitSets).invalidate();
   }
 
   @Test
@@ -133,6 +147,7 @@ class AceRoleServiceTest {
     verify(rolePermService).remove(any(LambdaQueryWrapper.class));
     verify(rolePermService).saveBatch(any());
     verify(roleCache).deleteCache(2L);
+    verify(rolePermBitSets).invalidate();
   }
 
   @Test
@@ -163,4 +178,27 @@ class AceRoleServiceTest {
     assertThat(permIds).isEmpty();
     verify(rolePermService).list(any(LambdaQueryWrapper.class));
   }
+
+  @Test
+  void should_rebuild_closure_and_refresh_hierarchy_after_hierarchy_changed() {
+    aceRoleService.afterHierarchyChanged();
+
+    var inOrder = inOrder(roleClosureService, roleHierarchy);
+    inOrder.verify(roleClosureService).rebuildClosure();
+    inOrder.verify(roleHierarchy).refresh();
+  }
+
+  @Test
+  void should_delegate_ancestor_check_to_closure_service() {
+    when(roleClosureService.isAncestorOrSelf(2L, 3L)).thenReturn(true);
+
+    assertThat(aceRoleService.isAncestorOrSelf(2L, 3L)).isTrue();
+  }
+
+  @Test
+  void should_check_children_exist() {
+    when(aceRoleService.exists(any(LambdaQueryWrapper.class))).thenReturn(true);
+
+    assertThat(aceRoleService.hasChildren(2L)).isTrue();
+  }
 }
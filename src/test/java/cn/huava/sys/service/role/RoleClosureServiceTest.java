@@ -0,0 +1,115 @@
+package cn.huava.sys.service.role;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import cn.huava.sys.mapper.RoleClosureMapper;
+import cn.huava.sys.mapper.RoleMapper;
+import cn.huava.sys.pojo.po.RoleClosurePo;
+import cn.huava.sys.pojo.po.RolePo;
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Tests for {@link RoleClosureService}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class RoleClosureServiceTest {
+  @Mock private RoleMapper roleMapper;
+  @Mock private RoleClosureMapper roleClosureMapper;
+
+  private RoleClosureService roleClosureService;
+
+  @BeforeEach
+  void setUp() {
+    roleClosureService = spy(new RoleClosureService(roleMapper));
+    lenient().doReturn(roleClosureMapper).when(roleClosureService).getBaseMapper();
+  }
+
+  @Test
+  void should_insert_all_links_when_closure_is_empty() {
+    // 2 <- 3 <- 4, 5 没有上级
+    when(roleMapper.selectList(any()))
+        .thenReturn(List.of(role(2L, 0L), role(3L, 2L), role(4L, 3L), role(5L, null)));
+    doReturn(List.of()).when(roleClosureService).list();
+    doReturn(true).when(roleClosureService).saveBatch(any(Collection.class));
+
+    roleClosureService.rebuildClosure();
+
+    List<String> links = captureSaved();
+    assertThat(links)
+        .containsExactlyInAnyOrder(
+            "2-2-0", "3-3-0", "4-4-0", "5-5-0", "2-3-1", "3-4-1", "2-4-2");
+    verify(roleClosureService, never()).removeByIds(any(Collection.class));
+  }
+
+  @Test
+  void should_only_change_links_that_differ() {
+    // 3 的上级从 2 改为 5
+    when(roleMapper.selectList(any()))
+        .thenReturn(List.of(role(2L, 0L), role(3L, 5L), role(5L, 0L)));
+    doReturn(
+            List.of(
+                link(100L, 2L, 2L, 0),
+                link(101L, 3L, 3L, 0),
+                link(102L, 5L, 5L, 0),
+                link(103L, 2L, 3L, 1)))
+        .when(roleClosureService)
+        .list();
+    doReturn(true).when(roleClosureService).removeByIds(any(Collection.class));
+    doReturn(true).when(roleClosureService).saveBatch(any(Collection.class));
+
+    roleClosureService.rebuildClosure();
+
+    verify(roleClosureService).removeByIds(List.of(103L));
+    assertThat(captureSaved()).containsExactly("5-3-1");
+  }
+
+  @Test
+  void should_stop_at_cycle() {
+    when(roleMapper.selectList(any())).thenReturn(List.of(role(2L, 3L), role(3L, 2L)));
+    doReturn(List.of()).when(roleClosureService).list();
+    doReturn(true).when(roleClosureService).saveBatch(any(Collection.class));
+
+    roleClosureService.rebuildClosure();
+
+    assertThat(captureSaved()).containsExactlyInAnyOrder("2-2-0", "3-3-0", "3-2-1", "2-3-1");
+  }
+
+  @Test
+  void should_treat_role_itself_as_its_own_ancestor() {
+    assertThat(roleClosureService.isAncestorOrSelf(2L, 2L)).isTrue();
+    verifyNoInteractions(roleClosureMapper);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> captureSaved() {
+    ArgumentCaptor<Collection<RoleClosurePo>> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(roleClosureService).saveBatch(captor.capture());
+    return captor.getValue().stream()
+        .map(po -> po.getAncestorId() + "-" + po.getDescendantId() + "-" + po.getDepth())
+        .toList();
+  }
+
+  private static RolePo role(Long id, Long pid) {
+    RolePo role = new RolePo();
+    role.setId(id);
+    role.setPid(pid);
+    return role;
+  }
+
+  private static RoleClosurePo link(Long id, Long ancestorId, Long descendantId, int depth) {
+    RoleClosurePo po = new RoleClosurePo(ancestorId, descendantId, depth);
+    po.setId(id);
+    return po;
+  }
+}
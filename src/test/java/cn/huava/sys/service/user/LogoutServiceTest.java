@@ -4,6 +4,8 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import cn.huava.sys.cache.RevokedSessionCache;
+import cn.huava.sys.cache.TokenEpochCache;
 import cn.huava.sys.pojo.po.RefreshTokenPo;
 import cn.huava.sys.service.refreshtoken.AceRefreshTokenService;
 import org.junit.jupiter.api.Test;
@@ -22,6 +24,10 @@ class LogoutServiceTest {
 
   @Mock private AceRefreshTokenService aceRefreshTokenService;
 
+  @Mock private TokenEpochCache tokenEpochCache;
+
+  @Mock private RevokedSessionCache revokedSessionCache;
+
   @InjectMocks private LogoutService logoutService;
 
   @Test
@@ -39,6 +45,7 @@ class LogoutServiceTest {
     // Then
     verify(aceRefreshTokenService).getByRefreshToken(eq(refreshToken));
     verify(aceRefreshTokenService).softDelete(eq(1L));
+    verify(revokedSessionCache).revoke(1L);
   }
 
   @Test
@@ -54,6 +61,7 @@ class LogoutServiceTest {
     // Then
     verify(aceRefreshTokenService).getByRefreshToken(eq(refreshToken));
     verify(aceRefreshTokenService, never()).softDelete(any(Long.class));
+    verifyNoInteractions(revokedSessionCache);
   }
 
   @Test
@@ -68,4 +76,14 @@ class LogoutServiceTest {
     verify(aceRefreshTokenService).getByRefreshToken(eq(null));
     verify(aceRefreshTokenService, never()).softDelete(any(Long.class));
   }
+
+  @Test
+  void should_delete_refresh_tokens_and_revoke_access_tokens_when_logout_all() {
+    // When
+    logoutService.logoutAll(1L);
+
+    // Then
+    verify(aceRefreshTokenService).softDeleteByUserId(eq(1L));
+    verify(tokenEpochCache).increaseEpoch(eq(1L));
+  }
 }
@@ -4,7 +4,8 @@ import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import cn.huava.common.constant.CommonConstant;
-import cn.huava.sys.pojo.dto.UserJwtDto;
+import cn.huava.sys.pojo.dto.UserAuthDto;
+import cn.huava.sys.cache.UserCache;
 import cn.huava.sys.pojo.po.RefreshTokenPo;
 import cn.huava.sys.service.jwt.AceJwtService;
 import cn.huava.sys.service.refreshtoken.AceRefreshTokenService;
@@ -27,12 +28,13 @@ class RefreshTokenServiceTest {
 
   @Mock private AceRefreshTokenService aceRefreshTokenService;
   @Mock private AceJwtService aceJwtService;
+  @Mock private UserCache userCache;
 
   private RefreshTokenService refreshTokenService;
 
   @BeforeEach
   void setUp() {
-    refreshTokenService = new RefreshTokenService(aceRefreshTokenService, aceJwtService);
+    refreshTokenService = new RefreshTokenService(aceRefreshTokenService, aceJwtService, userCache);
   }
 
   @Test
@@ -42,23 +44,27 @@ class RefreshTokenServiceTest {
     Long userId = 1L;
     String newAccessToken = "new_access_token";
 
+    long sessionId = 99L;
+    long loginTime = Instant.now().minusSeconds(60).getEpochSecond();
+
     RefreshTokenPo refreshTokenPo = new RefreshTokenPo();
     refreshTokenPo.setSysUserId(userId);
+    refreshTokenPo.setId(sessionId);
     refreshTokenPo.setDeleteInfo(0L); // Not deleted
 
     JWT mockJwt = mock(JWT.class);
     when(mockJwt.getPayload("exp", Long.class))
         .thenReturn(Instant.now().plusSeconds(3600).getEpochSecond()); // Not expired
-
-    UserJwtDto userJwtDto = new UserJwtDto();
-    userJwtDto.setAccessToken(newAccessToken);
+    when(mockJwt.getPayload("iat", Long.class)).thenReturn(loginTime);
 
     // Mock static method JWTUtil.parseToken
     try (var mockedStatic = mockStatic(JWTUtil.class)) {
       mockedStatic.when(() -> JWTUtil.parseToken(refreshToken)).thenReturn(mockJwt);
 
       when(aceRefreshTokenService.getByRefreshToken(refreshToken)).thenReturn(refreshTokenPo);
-      when(aceJwtService.createToken(userId)).thenReturn(userJwtDto);
+      when(userCache.getAuthById(userId)).thenReturn(user(0L, true));
+      when(aceJwtService.createAccessToken(userId, sessionId, loginTime))
+          .thenReturn(newAccessToken);
 
       // When
       String result = refreshTokenService.refreshToken(refreshToken);
@@ -66,7 +72,8 @@ class RefreshTokenServiceTest {
       // Then
       assertThat(result).isEqualTo(newAccessToken);
       verify(aceRefreshTokenService).getByRefreshToken(refreshToken);
-      verify(aceJwtService).createToken(userId);
+      // The new access token belongs to the session of the refresh token
+      verify(aceJwtService).createAccessToken(userId, sessionId, loginTime);
     }
   }
 
@@ -152,4 +159,40 @@ class RefreshTokenServiceTest {
       verify(aceRefreshTokenService).getByRefreshToken(refreshToken);
     }
   }
+
+  @Test
+  void should_throw_IllegalArgumentException_when_user_is_deleted_or_disabled() {
+    String refreshToken = "refresh_token_of_removed_user";
+    RefreshTokenPo refreshTokenPo = new RefreshTokenPo();
+    refreshTokenPo.setSysUserId(1L);
+    refreshTokenPo.setDeleteInfo(0L);
+    JWT mockJwt = mock(JWT.class);
+    when(mockJwt.getPayload("exp", Long.class))
+        .thenReturn(Instant.now().plusSeconds(3600).getEpochSecond());
+
+    try (var mockedStatic = mockStatic(JWTUtil.class)) {
+      mockedStatic.when(() -> JWTUtil.parseToken(refreshToken)).thenReturn(mockJwt);
+      when(aceRefreshTokenService.getByRefreshToken(refreshToken)).thenReturn(refreshTokenPo);
+
+      when(userCache.getAuthById(1L)).thenReturn(null);
+      assertThatThrownBy(() -> refreshTokenService.refreshToken(refreshToken))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("Refresh token invalid");
+
+      when(userCache.getAuthById(1L)).thenReturn(user(20260101000000000L, true));
+      assertThatThrownBy(() -> refreshTokenService.refreshToken(refreshToken))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("Refresh token invalid");
+
+      when(userCache.getAuthById(1L)).thenReturn(user(0L, false));
+      assertThatThrownBy(() -> refreshTokenService.refreshToken(refreshToken))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("用户已被禁用");
+      verify(aceJwtService, never()).createAccessToken(anyLong(), anyLong(), anyLong());
+    }
+  }
+
+  private static UserAuthDto user(long deleteInfo, boolean isEnabled) {
+    return new UserAuthDto(1L, "admin", isEnabled, deleteInfo > 0);
+  }
 }
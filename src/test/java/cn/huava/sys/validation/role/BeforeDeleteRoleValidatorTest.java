@@ -8,6 +8,7 @@ import static org.mockito.Mockito.*;
 
 import cn.huava.common.util.Fn;
 import cn.huava.sys.pojo.po.RolePo;
+import cn.huava.sys.service.role.AceRoleService;
 import cn.huava.sys.service.userrole.AceUserRoleService;
 import jakarta.validation.ConstraintValidatorContext;
 import org.junit.jupiter.api.AfterEach;
@@ -28,6 +29,7 @@ class BeforeDeleteRoleValidatorTest {
   private BeforeDeleteRoleValidator validator;
   private ConstraintValidatorContext context;
   private AceUserRoleService userRoleService;
+  private AceRoleService roleService;
 
   private MockedStatic<Fn> fnMock;
 
@@ -36,9 +38,11 @@ class BeforeDeleteRoleValidatorTest {
     validator = new BeforeDeleteRoleValidator();
     context = mock(ConstraintValidatorContext.class);
     userRoleService = mock(AceUserRoleService.class);
+    roleService = mock(AceRoleService.class);
 
     fnMock = mockStatic(Fn.class);
     fnMock.when(() -> Fn.getBean(AceUserRoleService.class)).thenReturn(userRoleService);
+    fnMock.when(() -> Fn.getBean(AceRoleService.class)).thenReturn(roleService);
   }
 
   @AfterEach
@@ -119,6 +123,7 @@ class BeforeDeleteRoleValidatorTest {
     rolePo.setId(2L); // Regular role ID
 
     when(userRoleService.countUserByRoleId(2L)).thenReturn(0L); // No users assigned to this role
+    when(roleService.hasChildren(2L)).thenReturn(false);
 
     // When
     boolean result = validator.isValid(rolePo, context);
@@ -127,4 +132,21 @@ class BeforeDeleteRoleValidatorTest {
     assertThat(result).isTrue();
     verify(userRoleService, times(1)).countUserByRoleId(2L);
   }
+
+  @Test
+  void should_return_false_with_custom_message_when_role_has_children() {
+    RolePo rolePo = new RolePo();
+    rolePo.setId(2L);
+    when(userRoleService.countUserByRoleId(2L)).thenReturn(0L);
+    when(roleService.hasChildren(2L)).thenReturn(true);
+
+    ConstraintValidatorContext.ConstraintViolationBuilder violationBuilder =
+        mock(ConstraintValidatorContext.ConstraintViolationBuilder.class);
+    when(context.buildConstraintViolationWithTemplate("角色下存在下级角色，不能删除"))
+        .thenReturn(violationBuilder);
+    when(violationBuilder.addConstraintViolation()).thenReturn(context);
+
+    assertThat(validator.isValid(rolePo, context)).isFalse();
+    verify(context, times(1)).buildConstraintViolationWithTemplate("角色下存在下级角色，不能删除");
+  }
 }
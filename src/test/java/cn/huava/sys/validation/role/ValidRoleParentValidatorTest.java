@@ -0,0 +1,109 @@
+package cn.huava.sys.validation.role;
+
+import static cn.huava.common.constant.CommonConstant.ADMIN_ROLE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import cn.huava.common.util.Fn;
+import cn.huava.sys.pojo.po.RolePo;
+import cn.huava.sys.service.role.AceRoleService;
+import jakarta.validation.ConstraintValidatorContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Test for {@link ValidRoleParentValidator}
+ *
+ * @author Camio1945
+ */
+@ExtendWith(MockitoExtension.class)
+class ValidRoleParentValidatorTest {
+
+  private ValidRoleParentValidator validator;
+  private ConstraintValidatorContext context;
+  private AceRoleService roleService;
+
+  private MockedStatic<Fn> fnMock;
+
+  @BeforeEach
+  void setUp() {
+    validator = new ValidRoleParentValidator();
+    context = mock(ConstraintValidatorContext.class);
+    roleService = mock(AceRoleService.class);
+
+    fnMock = mockStatic(Fn.class);
+    fnMock.when(() -> Fn.getBean(AceRoleService.class)).thenReturn(roleService);
+  }
+
+  @AfterEach
+  void tearDown() {
+    fnMock.close();
+  }
+
+  @Test
+  void should_return_true_when_role_has_no_parent() {
+    assertThat(validator.isValid(role(2L, null), context)).isTrue();
+    assertThat(validator.isValid(role(2L, 0L), context)).isTrue();
+    verifyNoInteractions(roleService);
+  }
+
+  @Test
+  void should_return_false_when_parent_is_admin_role() {
+    mockViolation();
+
+    assertThat(validator.isValid(role(2L, ADMIN_ROLE_ID), context)).isFalse();
+    verify(context).buildConstraintViolationWithTemplate("不允许以超级管理员角色作为上级角色");
+  }
+
+  @Test
+  void should_return_false_when_parent_does_not_exist() {
+    mockViolation();
+    RolePo deleted = role(3L, null);
+    deleted.setDeleteInfo(1L);
+    when(roleService.getById(3L)).thenReturn(deleted);
+
+    assertThat(validator.isValid(role(null, 3L), context)).isFalse();
+    assertThat(validator.isValid(role(null, 4L), context)).isFalse();
+    verify(context, times(2)).buildConstraintViolationWithTemplate("上级角色不存在");
+  }
+
+  @Test
+  void should_return_false_when_parent_is_itself_or_descendant() {
+    mockViolation();
+    when(roleService.getById(3L)).thenReturn(role(3L, 2L));
+    when(roleService.isAncestorOrSelf(2L, 3L)).thenReturn(true);
+
+    assertThat(validator.isValid(role(2L, 3L), context)).isFalse();
+    verify(context).buildConstraintViolationWithTemplate("上级角色不能是自己或自己的下级角色");
+  }
+
+  @Test
+  void should_return_true_when_parent_is_valid() {
+    when(roleService.getById(3L)).thenReturn(role(3L, null));
+    when(roleService.isAncestorOrSelf(2L, 3L)).thenReturn(false);
+
+    assertThat(validator.isValid(role(2L, 3L), context)).isTrue();
+    assertThat(validator.isValid(role(null, 3L), context)).isTrue();
+    verify(roleService, times(1)).isAncestorOrSelf(2L, 3L);
+  }
+
+  private void mockViolation() {
+    ConstraintValidatorContext.ConstraintViolationBuilder violationBuilder =
+        mock(ConstraintValidatorContext.ConstraintViolationBuilder.class);
+    when(context.buildConstraintViolationWithTemplate(anyString())).thenReturn(violationBuilder);
+    when(violationBuilder.addConstraintViolation()).thenReturn(context);
+  }
+
+  private static RolePo role(Long id, Long pid) {
+    RolePo role = new RolePo();
+    role.setId(id);
+    role.setPid(pid);
+    role.setDeleteInfo(0L);
+    return role;
+  }
+}